@@ -28,7 +28,7 @@ public class AssignmentInConditionChecker extends AbstractIndexAstChecker {
 
 	public void processAst(IASTTranslationUnit ast) {
 		// traverse the ast using the visitor pattern.
-		ast.accept(new CheckCodeVisitor());
+		visitAst(ast, new CheckCodeVisitor());
 	}
 
 	class CheckCodeVisitor extends ASTVisitor {
@@ -66,4 +66,9 @@ public class AssignmentInConditionChecker extends AbstractIndexAstChecker {
 			return false;
 		}
 	}
+
+	@Override
+	protected boolean isCacheable() {
+		return true;
+	}
 }
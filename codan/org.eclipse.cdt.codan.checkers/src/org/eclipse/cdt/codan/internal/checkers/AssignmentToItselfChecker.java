@@ -26,7 +26,7 @@ public class AssignmentToItselfChecker extends AbstractIndexAstChecker {
 
 	public void processAst(IASTTranslationUnit ast) {
 		// traverse the ast using the visitor pattern.
-		ast.accept(new ASTVisitor() {
+		visitAst(ast, new ASTVisitor() {
 			{ // constructor
 				shouldVisitExpressions = true;
 			}
@@ -55,4 +55,9 @@ public class AssignmentToItselfChecker extends AbstractIndexAstChecker {
 			}
 		});
 	}
+
+	@Override
+	protected boolean isCacheable() {
+		return true;
+	}
 }
\ No newline at end of file
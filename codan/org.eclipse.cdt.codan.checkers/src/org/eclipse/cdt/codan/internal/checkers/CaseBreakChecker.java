@@ -43,19 +43,25 @@ public class CaseBreakChecker extends AbstractIndexAstChecker implements IChecke
 	public static final String PARAM_EMPTY_CASE = "empty_case_param"; //$NON-NLS-1$
 	public static final String PARAM_NO_BREAK_COMMENT = "no_break_comment"; //$NON-NLS-1$
 	public static final String DEFAULT_NO_BREAK_COMMENT = "no break"; //$NON-NLS-1$
-	private Boolean _checkLastCase; // Should we check the last case in the switch?
-	private Boolean _checkEmptyCase; // Should we check an empty case (a case without any statements within it)
-	private String _noBreakComment; // The comment suppressing this warning
 
 	public CaseBreakChecker() {
 	}
 
 	/**
 	 * This visitor looks for "switch" statements and invokes "SwitchVisitor" on them.
+	 * The visitor may run after the checker has moved on to another file, so it keeps its own
+	 * copy of the preferences.
 	 */
 	class SwitchFindingVisitor extends ASTVisitor {
-		SwitchFindingVisitor() {
+		private final boolean _checkLastCase; // Should we check the last case in the switch?
+		private final boolean _checkEmptyCase; // Should we check an empty case (a case without any statements within it)
+		private final String _noBreakComment; // The comment suppressing this warning
+
+		SwitchFindingVisitor(boolean checkLastCase, boolean checkEmptyCase, String noBreakComment) {
 			shouldVisitStatements = true;
+			_checkLastCase = checkLastCase;
+			_checkEmptyCase = checkEmptyCase;
+			_noBreakComment = noBreakComment;
 		}
 
 		/**
@@ -226,10 +232,15 @@ public class CaseBreakChecker extends AbstractIndexAstChecker implements IChecke
 	}
 
 	public void processAst(IASTTranslationUnit ast) {
-		_checkLastCase = (Boolean) getPreference(getProblemById(ER_ID, getFile()), PARAM_LAST_CASE);
-		_checkEmptyCase = (Boolean) getPreference(getProblemById(ER_ID, getFile()), PARAM_EMPTY_CASE);
-		_noBreakComment = (String) getPreference(getProblemById(ER_ID, getFile()), PARAM_NO_BREAK_COMMENT);
-		SwitchFindingVisitor visitor = new SwitchFindingVisitor();
-		ast.accept(visitor);
+		Boolean checkLastCase = (Boolean) getPreference(getProblemById(ER_ID, getFile()), PARAM_LAST_CASE);
+		Boolean checkEmptyCase = (Boolean) getPreference(getProblemById(ER_ID, getFile()), PARAM_EMPTY_CASE);
+		String noBreakComment = (String) getPreference(getProblemById(ER_ID, getFile()), PARAM_NO_BREAK_COMMENT);
+		SwitchFindingVisitor visitor = new SwitchFindingVisitor(checkLastCase, checkEmptyCase, noBreakComment);
+		visitAst(ast, visitor);
+	}
+
+	@Override
+	protected boolean isCacheable() {
+		return true;
 	}
 }
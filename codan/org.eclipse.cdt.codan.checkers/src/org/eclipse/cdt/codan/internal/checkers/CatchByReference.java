@@ -47,7 +47,7 @@ public class CatchByReference extends AbstractIndexAstChecker {
 
 	public void processAst(IASTTranslationUnit ast) {
 		// traverse the ast using the visitor pattern.
-		ast.accept(new OnCatch());
+		visitAst(ast, new OnCatch());
 	}
 
 	class OnCatch extends ASTVisitor {
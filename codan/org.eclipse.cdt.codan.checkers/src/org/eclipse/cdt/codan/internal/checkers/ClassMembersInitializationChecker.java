@@ -58,7 +58,7 @@ public class ClassMembersInitializationChecker extends AbstractIndexAstChecker {
 	public static final String PARAM_SKIP = "skip"; //$NON-NLS-1$
 
 	public void processAst(IASTTranslationUnit ast) {
-		ast.accept(new OnEachClass());
+		visitAst(ast, new OnEachClass());
 	}
 
 	class OnEachClass extends ASTVisitor {
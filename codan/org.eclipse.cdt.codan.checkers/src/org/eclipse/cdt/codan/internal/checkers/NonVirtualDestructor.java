@@ -36,7 +36,7 @@ public class NonVirtualDestructor extends AbstractIndexAstChecker {
 
 	public void processAst(IASTTranslationUnit ast) {
 		// Traverse the AST using the visitor pattern.
-		ast.accept(new OnEachClass());
+		visitAst(ast, new OnEachClass());
 	}
 
 	private static ICPPMethod getDestructor(ICPPClassType classType) {
@@ -181,6 +181,22 @@ public class ReturnChecker extends AbstractAstFunctionChecker {
 		}
 	}
 
+	/**
+	 * The problems of a function depend only on its definition and on the declarations it uses.
+	 */
+	@Override
+	protected boolean isIncremental() {
+		return true;
+	}
+
+	/**
+	 * The problems of a file depend only on the file and on the declarations it includes.
+	 */
+	@Override
+	protected boolean isCacheable() {
+		return true;
+	}
+
 	/**
 	 * @param func
 	 */
@@ -27,7 +27,7 @@ public class ReturnStyleChecker extends AbstractIndexAstChecker {
 	}
 
 	public void processAst(IASTTranslationUnit ast) {
-		ast.accept(new ASTVisitor() {
+		visitAst(ast, new ASTVisitor() {
 			{
 				shouldVisitStatements = true;
 			}
@@ -53,4 +53,9 @@ public class ReturnStyleChecker extends AbstractIndexAstChecker {
 			}
 		});
 	}
+
+	@Override
+	protected boolean isCacheable() {
+		return true;
+	}
 }
@@ -44,7 +44,7 @@ public class StatementHasNoEffectChecker extends AbstractIndexAstChecker {
 	public static final String PARAM_EXCEPT_ARG_LIST = "exceptions"; //$NON-NLS-1$
 
 	public void processAst(IASTTranslationUnit ast) {
-		ast.accept(new CheckStmpVisitor());
+		visitAst(ast, new CheckStmpVisitor());
 	}
 
 	class CheckStmpVisitor extends ASTVisitor {
@@ -169,4 +169,9 @@ public class StatementHasNoEffectChecker extends AbstractIndexAstChecker {
 		}
 		return false;
 	}
+
+	@Override
+	protected boolean isCacheable() {
+		return true;
+	}
 }
@@ -37,7 +37,7 @@ public class SuggestedParenthesisChecker extends AbstractIndexAstChecker {
 
 	public void processAst(IASTTranslationUnit ast) {
 		// traverse the ast using the visitor pattern.
-		ast.accept(new ExpressionVisitor());
+		visitAst(ast, new ExpressionVisitor());
 	}
 
 	class ExpressionVisitor extends ASTVisitor {
@@ -134,4 +134,9 @@ public class SuggestedParenthesisChecker extends AbstractIndexAstChecker {
 		super.initPreferences(problem);
 		addPreference(problem, PARAM_NOT, CheckersMessages.SuggestedParenthesisChecker_SuggestParanthesesAroundNot, Boolean.FALSE);
 	}
+
+	@Override
+	protected boolean isCacheable() {
+		return true;
+	}
 }
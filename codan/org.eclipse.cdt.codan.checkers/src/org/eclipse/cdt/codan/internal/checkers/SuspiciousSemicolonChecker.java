@@ -29,7 +29,7 @@ public class SuspiciousSemicolonChecker extends AbstractIndexAstChecker {
 	public static final String PARAM_ALFTER_ELSE = "afterelse"; //$NON-NLS-1$
 
 	public void processAst(IASTTranslationUnit ast) {
-		ast.accept(new ASTVisitor() {
+		visitAst(ast, new ASTVisitor() {
 			{
 				shouldVisitStatements = true;
 			}
@@ -79,4 +79,9 @@ public class SuspiciousSemicolonChecker extends AbstractIndexAstChecker {
 		addPreference(problem, PARAM_ELSE, CheckersMessages.SuspiciousSemicolonChecker_ParamElse, Boolean.FALSE);
 		addPreference(problem, PARAM_ALFTER_ELSE, CheckersMessages.SuspiciousSemicolonChecker_ParamAfterElse, Boolean.FALSE);
 	}
+
+	@Override
+	protected boolean isCacheable() {
+		return true;
+	}
 }
@@ -0,0 +1,529 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT project contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT project contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.codan.core.cxx.internal.model;
+
+import java.util.List;
+
+import org.eclipse.cdt.codan.core.cxx.Activator;
+import org.eclipse.cdt.core.dom.ast.ASTVisitor;
+import org.eclipse.cdt.core.dom.ast.IASTArrayModifier;
+import org.eclipse.cdt.core.dom.ast.IASTDeclSpecifier;
+import org.eclipse.cdt.core.dom.ast.IASTDeclaration;
+import org.eclipse.cdt.core.dom.ast.IASTDeclarator;
+import org.eclipse.cdt.core.dom.ast.IASTEnumerationSpecifier.IASTEnumerator;
+import org.eclipse.cdt.core.dom.ast.IASTExpression;
+import org.eclipse.cdt.core.dom.ast.IASTImplicitName;
+import org.eclipse.cdt.core.dom.ast.IASTInitializer;
+import org.eclipse.cdt.core.dom.ast.IASTName;
+import org.eclipse.cdt.core.dom.ast.IASTNode;
+import org.eclipse.cdt.core.dom.ast.IASTParameterDeclaration;
+import org.eclipse.cdt.core.dom.ast.IASTPointerOperator;
+import org.eclipse.cdt.core.dom.ast.IASTProblem;
+import org.eclipse.cdt.core.dom.ast.IASTStatement;
+import org.eclipse.cdt.core.dom.ast.IASTTranslationUnit;
+import org.eclipse.cdt.core.dom.ast.IASTTypeId;
+import org.eclipse.cdt.core.dom.ast.c.ICASTDesignator;
+import org.eclipse.cdt.core.dom.ast.cpp.ICPPASTCapture;
+import org.eclipse.cdt.core.dom.ast.cpp.ICPPASTCompositeTypeSpecifier.ICPPASTBaseSpecifier;
+import org.eclipse.cdt.core.dom.ast.cpp.ICPPASTNamespaceDefinition;
+import org.eclipse.cdt.core.dom.ast.cpp.ICPPASTTemplateParameter;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+/**
+ * Visitor that combines several visitors into a single traversal of the AST. Every node is
+ * passed to the visitors that are interested in the kind of the node, in the order the visitors
+ * were given. Each visitor sees the same sequence of calls as if it had traversed the AST on
+ * its own: a visitor that skips a node does not receive calls for the children of that node,
+ * a visitor that aborts does not receive any further calls. The traversal of a subtree stops
+ * as soon as no visitor is interested in it anymore.
+ * <p>
+ * Visitors that want to see ambiguous nodes cannot be combined. A visitor that fails with a
+ * runtime exception is logged and treated like a visitor that aborted.
+ */
+public class FusedAstVisitor extends ASTVisitor {
+	private static final int TRANSLATION_UNIT = 0;
+	private static final int NAME = 1;
+	private static final int DECLARATION = 2;
+	private static final int INITIALIZER = 3;
+	private static final int PARAMETER_DECLARATION = 4;
+	private static final int DECLARATOR = 5;
+	private static final int DECL_SPECIFIER = 6;
+	private static final int ARRAY_MODIFIER = 7;
+	private static final int POINTER_OPERATOR = 8;
+	private static final int EXPRESSION = 9;
+	private static final int STATEMENT = 10;
+	private static final int TYPE_ID = 11;
+	private static final int ENUMERATOR = 12;
+	private static final int PROBLEM = 13;
+	private static final int BASE_SPECIFIER = 14;
+	private static final int NAMESPACE = 15;
+	private static final int TEMPLATE_PARAMETER = 16;
+	private static final int CAPTURE = 17;
+	private static final int DESIGNATOR = 18;
+
+	private final ASTVisitor[] visitors;
+	/** The node below which a visitor skips the traversal, or <code>null</code>. */
+	private final IASTNode[] skipped;
+	private final boolean[] aborted;
+	private int activeCount;
+
+	/**
+	 * @param visitors the visitors to combine, none of them may visit ambiguous nodes.
+	 */
+	public FusedAstVisitor(List<ASTVisitor> visitors) {
+		this.visitors = visitors.toArray(new ASTVisitor[visitors.size()]);
+		skipped = new IASTNode[this.visitors.length];
+		aborted = new boolean[this.visitors.length];
+		activeCount = this.visitors.length;
+		boolean excludeInactiveNodes = false;
+		for (ASTVisitor v : this.visitors) {
+			if (v.shouldVisitAmbiguousNodes)
+				throw new IllegalArgumentException();
+			shouldVisitArrayModifiers |= v.shouldVisitArrayModifiers;
+			shouldVisitBaseSpecifiers |= v.shouldVisitBaseSpecifiers;
+			shouldVisitCaptures |= v.shouldVisitCaptures;
+			shouldVisitDeclarations |= v.shouldVisitDeclarations;
+			shouldVisitDeclarators |= v.shouldVisitDeclarators;
+			shouldVisitDeclSpecifiers |= v.shouldVisitDeclSpecifiers;
+			shouldVisitDesignators |= v.shouldVisitDesignators;
+			shouldVisitEnumerators |= v.shouldVisitEnumerators;
+			shouldVisitExpressions |= v.shouldVisitExpressions;
+			shouldVisitInitializers |= v.shouldVisitInitializers;
+			shouldVisitNames |= v.shouldVisitNames;
+			shouldVisitNamespaces |= v.shouldVisitNamespaces;
+			shouldVisitParameterDeclarations |= v.shouldVisitParameterDeclarations;
+			shouldVisitPointerOperators |= v.shouldVisitPointerOperators;
+			shouldVisitProblems |= v.shouldVisitProblems;
+			shouldVisitStatements |= v.shouldVisitStatements;
+			shouldVisitTemplateParameters |= v.shouldVisitTemplateParameters;
+			shouldVisitTranslationUnit |= v.shouldVisitTranslationUnit;
+			shouldVisitTypeIds |= v.shouldVisitTypeIds;
+			includeInactiveNodes |= v.includeInactiveNodes;
+			excludeInactiveNodes |= !v.includeInactiveNodes;
+			shouldVisitImplicitNames |= v.shouldVisitImplicitNames;
+			shouldVisitImplicitNameAlternates |= v.shouldVisitImplicitNameAlternates;
+		}
+		if (includeInactiveNodes && excludeInactiveNodes) {
+			// Inactive declarations have to be skipped for some of the visitors.
+			shouldVisitDeclarations = true;
+		}
+	}
+
+	/**
+	 * Returns whether the visitor wants to see the node.
+	 */
+	private static boolean isInterested(ASTVisitor v, IASTNode node, int kind) {
+		switch (kind) {
+		case TRANSLATION_UNIT:
+			return v.shouldVisitTranslationUnit;
+		case NAME:
+			if (node instanceof IASTImplicitName) {
+				if (!v.shouldVisitImplicitNames)
+					return false;
+				if (((IASTImplicitName) node).isAlternate() && !v.shouldVisitImplicitNameAlternates)
+					return false;
+			}
+			return v.shouldVisitNames;
+		case DECLARATION:
+			return v.shouldVisitDeclarations;
+		case INITIALIZER:
+			return v.shouldVisitInitializers;
+		case PARAMETER_DECLARATION:
+			return v.shouldVisitParameterDeclarations;
+		case DECLARATOR:
+			return v.shouldVisitDeclarators;
+		case DECL_SPECIFIER:
+			return v.shouldVisitDeclSpecifiers;
+		case ARRAY_MODIFIER:
+			return v.shouldVisitArrayModifiers;
+		case POINTER_OPERATOR:
+			return v.shouldVisitPointerOperators;
+		case EXPRESSION:
+			return v.shouldVisitExpressions;
+		case STATEMENT:
+			return v.shouldVisitStatements;
+		case TYPE_ID:
+			return v.shouldVisitTypeIds;
+		case ENUMERATOR:
+			return v.shouldVisitEnumerators;
+		case PROBLEM:
+			return v.shouldVisitProblems;
+		case BASE_SPECIFIER:
+			return v.shouldVisitBaseSpecifiers;
+		case NAMESPACE:
+			return v.shouldVisitNamespaces;
+		case TEMPLATE_PARAMETER:
+			return v.shouldVisitTemplateParameters;
+		case CAPTURE:
+			return v.shouldVisitCaptures;
+		case DESIGNATOR:
+			return v.shouldVisitDesignators;
+		}
+		return false;
+	}
+
+	private static int visit(ASTVisitor v, IASTNode node, int kind) {
+		switch (kind) {
+		case TRANSLATION_UNIT:
+			return v.visit((IASTTranslationUnit) node);
+		case NAME:
+			return v.visit((IASTName) node);
+		case DECLARATION:
+			return v.visit((IASTDeclaration) node);
+		case INITIALIZER:
+			return v.visit((IASTInitializer) node);
+		case PARAMETER_DECLARATION:
+			return v.visit((IASTParameterDeclaration) node);
+		case DECLARATOR:
+			return v.visit((IASTDeclarator) node);
+		case DECL_SPECIFIER:
+			return v.visit((IASTDeclSpecifier) node);
+		case ARRAY_MODIFIER:
+			return v.visit((IASTArrayModifier) node);
+		case POINTER_OPERATOR:
+			return v.visit((IASTPointerOperator) node);
+		case EXPRESSION:
+			return v.visit((IASTExpression) node);
+		case STATEMENT:
+			return v.visit((IASTStatement) node);
+		case TYPE_ID:
+			return v.visit((IASTTypeId) node);
+		case ENUMERATOR:
+			return v.visit((IASTEnumerator) node);
+		case PROBLEM:
+			return v.visit((IASTProblem) node);
+		case BASE_SPECIFIER:
+			return v.visit((ICPPASTBaseSpecifier) node);
+		case NAMESPACE:
+			return v.visit((ICPPASTNamespaceDefinition) node);
+		case TEMPLATE_PARAMETER:
+			return v.visit((ICPPASTTemplateParameter) node);
+		case CAPTURE:
+			return v.visit((ICPPASTCapture) node);
+		case DESIGNATOR:
+			return v.visit((ICASTDesignator) node);
+		}
+		return PROCESS_CONTINUE;
+	}
+
+	private static int leave(ASTVisitor v, IASTNode node, int kind) {
+		switch (kind) {
+		case TRANSLATION_UNIT:
+			return v.leave((IASTTranslationUnit) node);
+		case NAME:
+			return v.leave((IASTName) node);
+		case DECLARATION:
+			return v.leave((IASTDeclaration) node);
+		case INITIALIZER:
+			return v.leave((IASTInitializer) node);
+		case PARAMETER_DECLARATION:
+			return v.leave((IASTParameterDeclaration) node);
+		case DECLARATOR:
+			return v.leave((IASTDeclarator) node);
+		case DECL_SPECIFIER:
+			return v.leave((IASTDeclSpecifier) node);
+		case ARRAY_MODIFIER:
+			return v.leave((IASTArrayModifier) node);
+		case POINTER_OPERATOR:
+			return v.leave((IASTPointerOperator) node);
+		case EXPRESSION:
+			return v.leave((IASTExpression) node);
+		case STATEMENT:
+			return v.leave((IASTStatement) node);
+		case TYPE_ID:
+			return v.leave((IASTTypeId) node);
+		case ENUMERATOR:
+			return v.leave((IASTEnumerator) node);
+		case PROBLEM:
+			return v.leave((IASTProblem) node);
+		case BASE_SPECIFIER:
+			return v.leave((ICPPASTBaseSpecifier) node);
+		case NAMESPACE:
+			return v.leave((ICPPASTNamespaceDefinition) node);
+		case TEMPLATE_PARAMETER:
+			return v.leave((ICPPASTTemplateParameter) node);
+		case CAPTURE:
+			return v.leave((ICPPASTCapture) node);
+		case DESIGNATOR:
+			return v.leave((ICASTDesignator) node);
+		}
+		return PROCESS_CONTINUE;
+	}
+
+	private int dispatchVisit(IASTNode node, int kind) {
+		int skipping = 0;
+		for (int i = 0; i < visitors.length; i++) {
+			if (aborted[i])
+				continue;
+			if (skipped[i] != null) {
+				skipping++;
+				continue;
+			}
+			ASTVisitor v = visitors[i];
+			if (kind == DECLARATION && !v.includeInactiveNodes && !node.isActive()) {
+				skipped[i] = node;
+				skipping++;
+				continue;
+			}
+			if (!isInterested(v, node, kind))
+				continue;
+			int result;
+			try {
+				result = visit(v, node, kind);
+			} catch (OperationCanceledException e) {
+				throw e;
+			} catch (RuntimeException e) {
+				Activator.log(e);
+				result = PROCESS_ABORT;
+			}
+			if (result == PROCESS_ABORT) {
+				abort(i);
+			} else if (result == PROCESS_SKIP) {
+				skipped[i] = node;
+				skipping++;
+			}
+		}
+		if (activeCount == 0)
+			return PROCESS_ABORT;
+		if (skipping == activeCount) {
+			// Nobody is interested in the children, leave() will not be called for the node.
+			for (int i = 0; i < skipped.length; i++) {
+				if (skipped[i] == node)
+					skipped[i] = null;
+			}
+			return PROCESS_SKIP;
+		}
+		return PROCESS_CONTINUE;
+	}
+
+	private int dispatchLeave(IASTNode node, int kind) {
+		for (int i = 0; i < visitors.length; i++) {
+			if (aborted[i])
+				continue;
+			if (skipped[i] != null) {
+				if (skipped[i] == node)
+					skipped[i] = null;
+				continue;
+			}
+			ASTVisitor v = visitors[i];
+			if (!isInterested(v, node, kind))
+				continue;
+			int result;
+			try {
+				result = leave(v, node, kind);
+			} catch (OperationCanceledException e) {
+				throw e;
+			} catch (RuntimeException e) {
+				Activator.log(e);
+				result = PROCESS_ABORT;
+			}
+			if (result == PROCESS_ABORT)
+				abort(i);
+		}
+		return activeCount == 0 ? PROCESS_ABORT : PROCESS_CONTINUE;
+	}
+
+	private void abort(int i) {
+		aborted[i] = true;
+		skipped[i] = null;
+		activeCount--;
+	}
+
+	@Override
+	public int visit(IASTTranslationUnit tu) {
+		return dispatchVisit(tu, TRANSLATION_UNIT);
+	}
+
+	@Override
+	public int visit(IASTName name) {
+		return dispatchVisit(name, NAME);
+	}
+
+	@Override
+	public int visit(IASTDeclaration declaration) {
+		return dispatchVisit(declaration, DECLARATION);
+	}
+
+	@Override
+	public int visit(IASTInitializer initializer) {
+		return dispatchVisit(initializer, INITIALIZER);
+	}
+
+	@Override
+	public int visit(IASTParameterDeclaration parameterDeclaration) {
+		return dispatchVisit(parameterDeclaration, PARAMETER_DECLARATION);
+	}
+
+	@Override
+	public int visit(IASTDeclarator declarator) {
+		return dispatchVisit(declarator, DECLARATOR);
+	}
+
+	@Override
+	public int visit(IASTDeclSpecifier declSpec) {
+		return dispatchVisit(declSpec, DECL_SPECIFIER);
+	}
+
+	@Override
+	public int visit(IASTArrayModifier arrayModifier) {
+		return dispatchVisit(arrayModifier, ARRAY_MODIFIER);
+	}
+
+	@Override
+	public int visit(IASTPointerOperator ptrOperator) {
+		return dispatchVisit(ptrOperator, POINTER_OPERATOR);
+	}
+
+	@Override
+	public int visit(IASTExpression expression) {
+		return dispatchVisit(expression, EXPRESSION);
+	}
+
+	@Override
+	public int visit(IASTStatement statement) {
+		return dispatchVisit(statement, STATEMENT);
+	}
+
+	@Override
+	public int visit(IASTTypeId typeId) {
+		return dispatchVisit(typeId, TYPE_ID);
+	}
+
+	@Override
+	public int visit(IASTEnumerator enumerator) {
+		return dispatchVisit(enumerator, ENUMERATOR);
+	}
+
+	@Override
+	public int visit(IASTProblem problem) {
+		return dispatchVisit(problem, PROBLEM);
+	}
+
+	@Override
+	public int visit(ICPPASTBaseSpecifier baseSpecifier) {
+		return dispatchVisit(baseSpecifier, BASE_SPECIFIER);
+	}
+
+	@Override
+	public int visit(ICPPASTNamespaceDefinition namespaceDefinition) {
+		return dispatchVisit(namespaceDefinition, NAMESPACE);
+	}
+
+	@Override
+	public int visit(ICPPASTTemplateParameter templateParameter) {
+		return dispatchVisit(templateParameter, TEMPLATE_PARAMETER);
+	}
+
+	@Override
+	public int visit(ICPPASTCapture capture) {
+		return dispatchVisit(capture, CAPTURE);
+	}
+
+	@Override
+	public int visit(ICASTDesignator designator) {
+		return dispatchVisit(designator, DESIGNATOR);
+	}
+
+	@Override
+	public int leave(IASTTranslationUnit tu) {
+		return dispatchLeave(tu, TRANSLATION_UNIT);
+	}
+
+	@Override
+	public int leave(IASTName name) {
+		return dispatchLeave(name, NAME);
+	}
+
+	@Override
+	public int leave(IASTDeclaration declaration) {
+		return dispatchLeave(declaration, DECLARATION);
+	}
+
+	@Override
+	public int leave(IASTInitializer initializer) {
+		return dispatchLeave(initializer, INITIALIZER);
+	}
+
+	@Override
+	public int leave(IASTParameterDeclaration parameterDeclaration) {
+		return dispatchLeave(parameterDeclaration, PARAMETER_DECLARATION);
+	}
+
+	@Override
+	public int leave(IASTDeclarator declarator) {
+		return dispatchLeave(declarator, DECLARATOR);
+	}
+
+	@Override
+	public int leave(IASTDeclSpecifier declSpec) {
+		return dispatchLeave(declSpec, DECL_SPECIFIER);
+	}
+
+	@Override
+	public int leave(IASTArrayModifier arrayModifier) {
+		return dispatchLeave(arrayModifier, ARRAY_MODIFIER);
+	}
+
+	@Override
+	public int leave(IASTPointerOperator ptrOperator) {
+		return dispatchLeave(ptrOperator, POINTER_OPERATOR);
+	}
+
+	@Override
+	public int leave(IASTExpression expression) {
+		return dispatchLeave(expression, EXPRESSION);
+	}
+
+	@Override
+	public int leave(IASTStatement statement) {
+		return dispatchLeave(statement, STATEMENT);
+	}
+
+	@Override
+	public int leave(IASTTypeId typeId) {
+		return dispatchLeave(typeId, TYPE_ID);
+	}
+
+	@Override
+	public int leave(IASTEnumerator enumerator) {
+		return dispatchLeave(enumerator, ENUMERATOR);
+	}
+
+	@Override
+	public int leave(IASTProblem problem) {
+		return dispatchLeave(problem, PROBLEM);
+	}
+
+	@Override
+	public int leave(ICPPASTBaseSpecifier baseSpecifier) {
+		return dispatchLeave(baseSpecifier, BASE_SPECIFIER);
+	}
+
+	@Override
+	public int leave(ICPPASTNamespaceDefinition namespaceDefinition) {
+		return dispatchLeave(namespaceDefinition, NAMESPACE);
+	}
+
+	@Override
+	public int leave(ICPPASTTemplateParameter templateParameter) {
+		return dispatchLeave(templateParameter, TEMPLATE_PARAMETER);
+	}
+
+	@Override
+	public int leave(ICPPASTCapture capture) {
+		return dispatchLeave(capture, CAPTURE);
+	}
+
+	@Override
+	public int leave(ICASTDesignator designator) {
+		return dispatchLeave(designator, DESIGNATOR);
+	}
+}
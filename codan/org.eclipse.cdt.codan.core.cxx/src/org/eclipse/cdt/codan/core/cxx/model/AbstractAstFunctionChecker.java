@@ -10,26 +10,74 @@
  *******************************************************************************/
 package org.eclipse.cdt.codan.core.cxx.model;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.cdt.codan.core.cxx.model.FunctionProblemCache.CachedProblem;
 import org.eclipse.cdt.codan.core.model.ICheckerWithPreferences;
+import org.eclipse.cdt.codan.core.model.IProblem;
+import org.eclipse.cdt.codan.core.model.IProblemLocation;
+import org.eclipse.cdt.codan.core.model.IProblemLocationFactory;
+import org.eclipse.cdt.codan.core.param.IProblemPreference;
 import org.eclipse.cdt.core.dom.ast.ASTVisitor;
 import org.eclipse.cdt.core.dom.ast.IASTDeclaration;
+import org.eclipse.cdt.core.dom.ast.IASTFileLocation;
 import org.eclipse.cdt.core.dom.ast.IASTFunctionDefinition;
 import org.eclipse.cdt.core.dom.ast.IASTTranslationUnit;
+import org.eclipse.core.resources.IFile;
 
 /**
  * Abstract class for checkers that do all the work on function definition level
  */
 public abstract class AbstractAstFunctionChecker extends AbstractIndexAstChecker implements ICheckerWithPreferences {
+	private static final int MAX_CACHED_FILES = 8;
+	private static volatile boolean incremental = true;
+	private final Map<String, FunctionProblemCache> problemCaches =
+			new LinkedHashMap<String, FunctionProblemCache>(MAX_CACHED_FILES, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, FunctionProblemCache> eldest) {
+					return size() > MAX_CACHED_FILES;
+				}
+			};
+	// The function definition whose problems the current thread records.
+	private final ThreadLocal<Recording> recording = new ThreadLocal<Recording>();
+
+	private static final class Recording {
+		final IASTFileLocation function;
+		List<CachedProblem> problems = new ArrayList<CachedProblem>();
+
+		Recording(IASTFileLocation function) {
+			this.function = function;
+		}
+	}
+
+	/**
+	 * Enables or disables reusing the problems found in unchanged function definitions, for
+	 * testing and benchmarking.
+	 *
+	 * @param enabled whether checkers supporting it may analyze the functions incrementally
+	 * @see #isIncremental()
+	 */
+	public static void setIncremental(boolean enabled) {
+		incremental = enabled;
+	}
+
 	public void processAst(IASTTranslationUnit ast) {
+		final FunctionProblemCache problemCache = getProblemCache(ast);
 		// traverse the ast using the visitor pattern.
-		ast.accept(new ASTVisitor() {
+		visitAst(ast, new ASTVisitor() {
 			{
 				shouldVisitDeclarations = true;
 			}
 
 			public int visit(IASTDeclaration element) {
 				if (element instanceof IASTFunctionDefinition) {
-					processFunction((IASTFunctionDefinition) element);
+					processFunction((IASTFunctionDefinition) element, problemCache);
 				}
 				// visit all nodes to support inner functions within class definitions 
 				// and gcc extensions
@@ -40,9 +88,163 @@ public abstract class AbstractAstFunctionChecker extends AbstractIndexAstChecker
 
 	/**
 	 * Process function.
-	 * 
+	 *
 	 * @param func
 	 *        - ast node representing function definition
 	 */
 	protected abstract void processFunction(IASTFunctionDefinition func);
+
+	/**
+	 * Returns whether the problems of a function definition depend only on its own text, the
+	 * declarations and preprocessor statements of the file, the index and the preferences of the
+	 * checker. In this case, while the checker runs in the editor, the problems found in a
+	 * function definition are reported again without analyzing it, as long as neither the
+	 * function definition nor anything else it depends on has changed.
+	 * <p>
+	 * The problems need to be reported via the <code>reportProblem</code> methods of the checker,
+	 * with a location within the function definition. The default implementation returns
+	 * <code>false</code>.
+	 *
+	 * @return whether the function definitions may be analyzed incrementally.
+	 */
+	protected boolean isIncremental() {
+		return false;
+	}
+
+	private FunctionProblemCache getProblemCache(IASTTranslationUnit ast) {
+		String path = ast.getFilePath();
+		if (!incremental || !isIncremental() || !isRunningInEditor() || path == null)
+			return null;
+		FunctionProblemCache problemCache = problemCaches.get(path);
+		if (problemCache == null) {
+			problemCache = new FunctionProblemCache();
+			problemCaches.put(path, problemCache);
+		}
+		problemCache.startRun(getModelCache().getDeclarationsFingerprint(ast), getPreferences());
+		return problemCache;
+	}
+
+	private String getPreferences() {
+		StringBuilder buf = new StringBuilder();
+		IFile file = getFile();
+		Collection<IProblem> refProblems = getRuntime().getCheckersRegistry().getRefProblems(this);
+		if (refProblems == null)
+			return ""; // not registered //$NON-NLS-1$
+		for (IProblem refProblem : refProblems) {
+			IProblem problem = getProblemById(refProblem.getId(), file);
+			buf.append(problem.getId()).append(problem.isEnabled() ? '+' : '-');
+			IProblemPreference preference = problem.getPreference();
+			if (preference != null)
+				buf.append(preference.exportValue());
+			buf.append('\n');
+		}
+		return buf.toString();
+	}
+
+	private void processFunction(IASTFunctionDefinition func, FunctionProblemCache problemCache) {
+		IASTFileLocation location = func.getFileLocation();
+		if (problemCache == null || location == null || !func.isPartOfTranslationUnitFile()) {
+			processFunction(func);
+			return;
+		}
+		Long fingerprint = getModelCache().getFunctionFingerprint(func);
+		if (fingerprint == null) {
+			processFunction(func);
+			return;
+		}
+		List<CachedProblem> problems = problemCache.get(fingerprint);
+		if (problems != null) {
+			reportCachedProblems(location, problems);
+			return;
+		}
+		Recording r = new Recording(location);
+		recording.set(r);
+		try {
+			processFunction(func);
+			if (r.problems != null)
+				problemCache.put(fingerprint, r.problems);
+		} finally {
+			recording.remove();
+		}
+	}
+
+	private void reportCachedProblems(IASTFileLocation location, List<CachedProblem> problems) {
+		IProblemLocationFactory locFactory = getRuntime().getProblemLocationFactory();
+		int offset = location.getNodeOffset();
+		int line = location.getStartingLineNumber();
+		for (CachedProblem problem : problems) {
+			IProblemLocation loc;
+			if (problem.startChar < 0) {
+				loc = locFactory.createProblemLocation(getFile(), line + problem.line);
+			} else {
+				loc = locFactory.createProblemLocation(getFile(), offset + problem.startChar,
+						offset + problem.endChar, line + problem.line);
+			}
+			reportProblem(problem.id, loc, problem.args);
+		}
+	}
+
+	/**
+	 * Records a problem reported while a function definition is analyzed, gives up on caching the
+	 * problems of the function definition if the problem cannot be reported again later.
+	 */
+	private void recordProblem(String id, IProblemLocation loc, Object[] args) {
+		Recording r = recording.get();
+		if (r == null || r.problems == null)
+			return;
+		IASTFileLocation recordedFunction = r.function;
+		int offset = recordedFunction.getNodeOffset();
+		int line = recordedFunction.getStartingLineNumber();
+		boolean valid = loc.getData() == null && loc.getLineNumber() >= line
+				&& loc.getLineNumber() <= recordedFunction.getEndingLineNumber()
+				&& (loc.getFile() == null ? getFile() == null : loc.getFile().equals(getFile()));
+		if (valid && loc.getStartingChar() >= 0) {
+			valid = loc.getStartingChar() >= offset && loc.getEndingChar() >= loc.getStartingChar()
+					&& loc.getEndingChar() <= offset + recordedFunction.getNodeLength();
+		}
+		for (int i = 0; valid && i < args.length; i++) {
+			Object arg = args[i];
+			valid = arg == null || arg instanceof String || arg instanceof Number || arg instanceof Boolean;
+		}
+		if (!valid) {
+			r.problems = null;
+			return;
+		}
+		if (loc.getStartingChar() < 0) {
+			r.problems.add(new CachedProblem(id, -1, -1, loc.getLineNumber() - line, args));
+		} else {
+			r.problems.add(new CachedProblem(id, loc.getStartingChar() - offset,
+					loc.getEndingChar() - offset, loc.getLineNumber() - line, args));
+		}
+	}
+
+	@Override
+	public void reportProblem(String problemId, IProblemLocation loc, Object... args) {
+		recordProblem(problemId, loc, args);
+		super.reportProblem(problemId, loc, args);
+	}
+
+	@Override
+	public void reportProblem(IProblem problem, IProblemLocation loc, Object... args) {
+		recordProblem(problem.getId(), loc, args);
+		super.reportProblem(problem, loc, args);
+	}
+
+	@Override
+	public void reportProblem(String id, IFile file, int lineNumber, Object... args) {
+		stopRecording();
+		super.reportProblem(id, file, lineNumber, args);
+	}
+
+	@Override
+	public void reportProblem(String id, IFile file, int lineNumber) {
+		stopRecording();
+		super.reportProblem(id, file, lineNumber);
+	}
+
+	private void stopRecording() {
+		Recording r = recording.get();
+		if (r != null)
+			r.problems = null;
+	}
 }
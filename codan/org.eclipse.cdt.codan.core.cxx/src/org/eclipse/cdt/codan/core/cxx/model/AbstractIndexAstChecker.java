@@ -17,7 +17,12 @@ import org.eclipse.cdt.codan.core.model.ICheckerInvocationContext;
 import org.eclipse.cdt.codan.core.model.IProblem;
 import org.eclipse.cdt.codan.core.model.IProblemLocation;
 import org.eclipse.cdt.codan.core.model.IProblemLocationFactory;
+import org.eclipse.cdt.codan.core.model.IProblemReporter;
+import org.eclipse.cdt.codan.core.model.IProblemReporterSessionPersistent;
 import org.eclipse.cdt.codan.core.model.IRunnableInEditorChecker;
+import org.eclipse.cdt.codan.internal.core.DeferredCheckerTasks;
+import org.eclipse.cdt.codan.internal.core.ICacheableChecker;
+import org.eclipse.cdt.core.dom.ast.ASTVisitor;
 import org.eclipse.cdt.core.dom.ast.IASTFileLocation;
 import org.eclipse.cdt.core.dom.ast.IASTImageLocation;
 import org.eclipse.cdt.core.dom.ast.IASTMacroExpansionLocation;
@@ -41,8 +46,41 @@ import org.eclipse.core.runtime.OperationCanceledException;
  * Clients may extend this class.
  */
 public abstract class AbstractIndexAstChecker extends AbstractCheckerWithProblemPreferences
-		implements ICAstChecker, IRunnableInEditorChecker {
+		implements ICAstChecker, IRunnableInEditorChecker, ICacheableChecker {
+	private static volatile boolean fusedTraversal = true;
 	private CxxModelsCache modelCache;
+	private boolean runningInEditor;
+	// The state of the file this thread has deferred visitors for, until after() is called.
+	private final ThreadLocal<VisitState> deferredState = new ThreadLocal<VisitState>();
+	// The state of the file whose deferred visitors this thread runs.
+	private final ThreadLocal<VisitState> visitState = new ThreadLocal<VisitState>();
+
+	/**
+	 * The state of the checker for a file, captured when a visitor is deferred. The checker is
+	 * not locked while its deferred visitors run, so it may process another file by then.
+	 */
+	static final class VisitState {
+		final CxxModelsCache modelCache;
+		final ICheckerInvocationContext context;
+		final IProblemReporter problemReporter;
+
+		VisitState(CxxModelsCache modelCache, ICheckerInvocationContext context, IProblemReporter problemReporter) {
+			this.modelCache = modelCache;
+			this.context = context;
+			this.problemReporter = problemReporter;
+		}
+	}
+
+	/**
+	 * Enables or disables combining the visitors of the checkers into a single traversal of
+	 * the AST, for testing and benchmarking.
+	 * 
+	 * @param enabled whether visitors passed to {@link #visitAst(IASTTranslationUnit, ASTVisitor)}
+	 * may be combined
+	 */
+	public static void setFusedTraversal(boolean enabled) {
+		fusedTraversal = enabled;
+	}
 
 	@Override
 	public synchronized boolean processResource(IResource resource) throws OperationCanceledException {
@@ -56,30 +94,70 @@ public abstract class AbstractIndexAstChecker extends AbstractCheckerWithProblem
 	}
 
 	private void processFile(IFile file) throws OperationCanceledException {
-		ICheckerInvocationContext context = getContext();
+		modelCache = getModelCache(file, getContext());
+		if (modelCache == null)
+			return;
+
+		try {
+			IASTTranslationUnit ast = modelCache.getAST();
+			if (ast != null) {
+				synchronized (ast) {
+					processAst(ast);
+				}
+			}
+		} catch (CoreException e) {
+			Activator.log(e);
+		} finally {
+			modelCache = null;
+		}
+	}
+
+	private static CxxModelsCache getModelCache(IFile file, ICheckerInvocationContext context) {
 		synchronized (context) {
-			modelCache = context.get(CxxModelsCache.class);
+			CxxModelsCache modelCache = context.get(CxxModelsCache.class);
 			if (modelCache == null) {
 				ICElement celement = CoreModel.getDefault().create(file);
 				if (!(celement instanceof ITranslationUnit)) {
-					return;
+					return null;
 				}
 				modelCache = new CxxModelsCache((ITranslationUnit) celement);
 				context.add(modelCache);
 			}
+			return modelCache;
 		}
+	}
 
+	/**
+	 * Returns whether the problems of the checker for a file depend only on the contents of the
+	 * file, the files it includes, its scanner configuration and the preferences of the checker.
+	 * In this case, the headless code analysis may reuse the problems from its results cache
+	 * while none of these has changed. A checker that uses the index to look at files the file
+	 * does not include must not return <code>true</code>. The default implementation returns
+	 * <code>false</code>.
+	 * 
+	 * @return whether the problems of the checker may be cached.
+	 */
+	protected boolean isCacheable() {
+		return false;
+	}
+
+	/**
+	 * The problems of a checker that is {@link #isCacheable() cacheable} depend on the files the
+	 * file includes, as far as they are known to the index, and on its scanner configuration.
+	 * 
+	 * @see ICacheableChecker#getDependenciesFingerprint(IFile, ICheckerInvocationContext)
+	 */
+	public String getDependenciesFingerprint(IFile file, ICheckerInvocationContext context) {
+		if (!isCacheable())
+			return null;
+		CxxModelsCache cache = getModelCache(file, context);
+		if (cache == null)
+			return null;
 		try {
-			IASTTranslationUnit ast = modelCache.getAST();
-			if (ast != null) {
-				synchronized (ast) {
-					processAst(ast);
-				}
-			}
+			return cache.getIncludesFingerprint();
 		} catch (CoreException e) {
 			Activator.log(e);
-		} finally {
-			modelCache = null;
+			return null;
 		}
 	}
 
@@ -99,15 +177,109 @@ public abstract class AbstractIndexAstChecker extends AbstractCheckerWithProblem
 					context.add(modelCache);
 				}
 			}
+			runningInEditor = true;
 			try {
 				processAst(ast);
 			} finally {
+				runningInEditor = false;
 				modelCache = null; 
 				setContext(null);
 			}
 		}
 	}
 
+	/**
+	 * Traverses the AST with the given visitor. When the code analysis of a file is run by the
+	 * builder, the traversal is deferred until all checkers have processed the file. The visitors
+	 * of all checkers are then combined into a single traversal of the AST, see
+	 * {@link org.eclipse.cdt.codan.core.cxx.internal.model.FusedAstVisitor}. Therefore the checker must not expect the traversal to be complete
+	 * when this method returns, all the work needs to be done by the visitor. While the visitor
+	 * runs, the checker can report problems and access the model cache and the context as usual.
+	 * Since the checker may process another file in the meantime, the visitor must not use other
+	 * fields of the checker. State such as the values of preferences has to be stored in the
+	 * visitor.
+	 * 
+	 * @param ast the AST passed to {@link #processAst(IASTTranslationUnit)}
+	 * @param visitor the visitor to traverse the AST with
+	 */
+	protected void visitAst(IASTTranslationUnit ast, ASTVisitor visitor) {
+		ICheckerInvocationContext context = getContext();
+		if (fusedTraversal && context != null && modelCache != null && !visitor.shouldVisitAmbiguousNodes) {
+			DeferredCheckerTasks deferredTasks = context.get(DeferredCheckerTasks.class);
+			if (deferredTasks != null) {
+				FusedAstTraversal traversal;
+				synchronized (context) {
+					traversal = context.get(FusedAstTraversal.class);
+					if (traversal == null) {
+						traversal = new FusedAstTraversal(ast);
+						context.add(traversal);
+					}
+				}
+				if (traversal.getAST() == ast) {
+					VisitState state = deferredState.get();
+					if (state == null) {
+						state = new VisitState(modelCache, context, getProblemReporter());
+						deferredState.set(state);
+					}
+					traversal.add(this, state, visitor);
+					deferredTasks.add(this, traversal);
+					return;
+				}
+			}
+		}
+		ast.accept(visitor);
+	}
+
+	/**
+	 * Binds the state of a file to the current thread for running the visitors deferred for the
+	 * file. Does not need the checker to be locked.
+	 */
+	void beginDeferredVisit(VisitState state) {
+		visitState.set(state);
+	}
+
+	void endDeferredVisit() {
+		visitState.remove();
+	}
+
+	/**
+	 * Ends the session for the resource. If visitors have been deferred for the resource, the
+	 * session was captured with them, because the checker may have started a session for another
+	 * resource in the meantime.
+	 */
+	@Override
+	public void after(IResource resource) {
+		VisitState state = deferredState.get();
+		if (state == null || state.problemReporter == super.getProblemReporter()) {
+			deferredState.remove();
+			super.after(resource);
+			return;
+		}
+		deferredState.remove();
+		if (state.problemReporter instanceof IProblemReporterSessionPersistent) {
+			((IProblemReporterSessionPersistent) state.problemReporter).done();
+		}
+	}
+
+	@Override
+	public IProblemReporter getProblemReporter() {
+		VisitState state = visitState.get();
+		return state != null ? state.problemReporter : super.getProblemReporter();
+	}
+
+	@Override
+	protected ICheckerInvocationContext getContext() {
+		VisitState state = visitState.get();
+		return state != null ? state.context : super.getContext();
+	}
+
+	/**
+	 * @return whether {@link #processAst(IASTTranslationUnit)} is called for the AST of an editor.
+	 */
+	boolean isRunningInEditor() {
+		return runningInEditor;
+	}
+
 	@Override
 	public boolean runInEditor() {
 		return true;
@@ -162,7 +334,7 @@ public abstract class AbstractIndexAstChecker extends AbstractCheckerWithProblem
 	}
 
 	protected IFile getFile() {
-		return modelCache.getFile();
+		return getModelCache().getFile();
 	}
 
 	protected IProject getProject() {
@@ -171,10 +343,11 @@ public abstract class AbstractIndexAstChecker extends AbstractCheckerWithProblem
 	}
 
 	protected CxxModelsCache getModelCache() {
-		return modelCache;
+		VisitState state = visitState.get();
+		return state != null ? state.modelCache : modelCache;
 	}
 
 	protected ICodanCommentMap getCommentMap() {
-		return modelCache.getCommentedNodeMap();
+		return getModelCache().getCommentedNodeMap();
 	}
 }
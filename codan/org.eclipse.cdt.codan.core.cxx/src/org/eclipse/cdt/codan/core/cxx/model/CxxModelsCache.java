@@ -11,6 +11,13 @@
  *******************************************************************************/
 package org.eclipse.cdt.codan.core.cxx.model;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.WeakHashMap;
 
 import org.eclipse.cdt.codan.core.cxx.Activator;
@@ -19,16 +26,34 @@ import org.eclipse.cdt.codan.core.cxx.internal.model.cfg.CxxControlFlowGraph;
 import org.eclipse.cdt.codan.core.model.ICodanDisposable;
 import org.eclipse.cdt.codan.core.model.cfg.IControlFlowGraph;
 import org.eclipse.cdt.core.CCorePlugin;
+import org.eclipse.cdt.core.dom.ast.ASTVisitor;
+import org.eclipse.cdt.core.dom.ast.IASTCompositeTypeSpecifier;
+import org.eclipse.cdt.core.dom.ast.IASTDeclaration;
+import org.eclipse.cdt.core.dom.ast.IASTFileLocation;
 import org.eclipse.cdt.core.dom.ast.IASTFunctionDefinition;
+import org.eclipse.cdt.core.dom.ast.IASTNode;
+import org.eclipse.cdt.core.dom.ast.IASTPreprocessorStatement;
+import org.eclipse.cdt.core.dom.ast.IASTStatement;
 import org.eclipse.cdt.core.dom.ast.IASTTranslationUnit;
+import org.eclipse.cdt.core.dom.ast.cpp.ICPPASTNamespaceDefinition;
+import org.eclipse.cdt.core.dom.ast.cpp.ICPPASTTemplateDeclaration;
+import org.eclipse.cdt.core.dom.ast.cpp.ICPPASTTemplateParameter;
 import org.eclipse.cdt.core.index.IIndex;
+import org.eclipse.cdt.core.index.IIndexFile;
+import org.eclipse.cdt.core.index.IIndexFileLocation;
+import org.eclipse.cdt.core.index.IIndexInclude;
+import org.eclipse.cdt.core.index.IndexLocationFactory;
 import org.eclipse.cdt.core.model.CoreModel;
 import org.eclipse.cdt.core.model.ICProject;
+import org.eclipse.cdt.core.model.ILanguage;
 import org.eclipse.cdt.core.model.ITranslationUnit;
+import org.eclipse.cdt.core.parser.IExtendedScannerInfo;
+import org.eclipse.cdt.core.parser.IScannerInfo;
 import org.eclipse.cdt.internal.core.dom.rewrite.commenthandler.ASTCommenter;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.OperationCanceledException;
 
 /**
@@ -39,6 +64,8 @@ public class CxxModelsCache implements ICodanDisposable {
 			| ITranslationUnit.AST_CONFIGURE_USING_SOURCE_CONTEXT
 			| ITranslationUnit.AST_SKIP_TRIVIAL_EXPRESSIONS_IN_AGGREGATE_INITIALIZERS
 			| ITranslationUnit.AST_PARSE_INACTIVE_CODE;
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
 
 	private final IFile file;
 	private final ITranslationUnit tu;
@@ -46,6 +73,10 @@ public class CxxModelsCache implements ICodanDisposable {
 	private IIndex index;
 	private final WeakHashMap<IASTFunctionDefinition, IControlFlowGraph> cfgmap;
 	private ICodanCommentMap commentMap;
+	private Map<IASTFunctionDefinition, Long> functionFingerprints;
+	private Long declarationsFingerprint;
+	private String includesFingerprint;
+	private boolean includesFingerprintComputed;
 	private boolean disposed;
 
 	CxxModelsCache(ITranslationUnit tu) {
@@ -96,6 +127,248 @@ public class CxxModelsCache implements ICodanDisposable {
 		return cfg;
 	}
 
+	/**
+	 * Returns a fingerprint of the text of the given function definition and of the scopes
+	 * enclosing it. Function definitions with the same text in the same scopes have the same
+	 * fingerprint, wherever they are located in the file.
+	 *
+	 * @return the fingerprint, or <code>null</code> if the function definition is nested in a
+	 *         function body, or if it has the same fingerprint as another function definition of
+	 *         the file. The text of the function definition may mean something different in
+	 *         these cases.
+	 */
+	synchronized Long getFunctionFingerprint(IASTFunctionDefinition func) {
+		if (functionFingerprints == null) {
+			functionFingerprints = computeFunctionFingerprints(func.getTranslationUnit());
+		}
+		return functionFingerprints.get(func);
+	}
+
+	private static Map<IASTFunctionDefinition, Long> computeFunctionFingerprints(IASTTranslationUnit ast) {
+		final Map<IASTFunctionDefinition, Long> fingerprints = new HashMap<IASTFunctionDefinition, Long>();
+		ast.accept(new ASTVisitor() {
+			{
+				shouldVisitDeclarations = true;
+			}
+
+			@Override
+			public int visit(IASTDeclaration declaration) {
+				if (declaration instanceof IASTFunctionDefinition) {
+					long h = hashEnclosingScopes(FNV_OFFSET_BASIS, declaration);
+					fingerprints.put((IASTFunctionDefinition) declaration, hash(h, declaration.getRawSignature(), 0, -1));
+					return PROCESS_SKIP;
+				}
+				return PROCESS_CONTINUE;
+			}
+		});
+		Set<Long> unique = new HashSet<Long>();
+		Set<Long> duplicates = new HashSet<Long>();
+		for (Long fingerprint : fingerprints.values()) {
+			if (!unique.add(fingerprint))
+				duplicates.add(fingerprint);
+		}
+		if (!duplicates.isEmpty()) {
+			fingerprints.values().removeAll(duplicates);
+		}
+		return fingerprints;
+	}
+
+	/**
+	 * Continues a hash with the names of the namespaces and classes and with the template
+	 * parameters enclosing the given node.
+	 */
+	private static long hashEnclosingScopes(long h, IASTNode node) {
+		for (IASTNode parent = node.getParent(); parent != null; parent = parent.getParent()) {
+			if (parent instanceof ICPPASTNamespaceDefinition) {
+				h = hash(h, "namespace ", 0, -1); //$NON-NLS-1$
+				h = hash(h, ((ICPPASTNamespaceDefinition) parent).getName().toString(), 0, -1);
+			} else if (parent instanceof IASTCompositeTypeSpecifier) {
+				h = hash(h, "class ", 0, -1); //$NON-NLS-1$
+				h = hash(h, ((IASTCompositeTypeSpecifier) parent).getName().toString(), 0, -1);
+			} else if (parent instanceof ICPPASTTemplateDeclaration) {
+				h = hash(h, "template ", 0, -1); //$NON-NLS-1$
+				for (ICPPASTTemplateParameter param : ((ICPPASTTemplateDeclaration) parent).getTemplateParameters()) {
+					h = hash(h, param.getRawSignature(), 0, -1);
+				}
+			} else {
+				continue;
+			}
+			h = (h ^ ';') * FNV_PRIME;
+		}
+		return h;
+	}
+
+	/**
+	 * Returns a fingerprint of what the function definitions of the AST depend on besides their
+	 * own text: the declarations without the bodies of the function definitions, the preprocessor
+	 * statements and the state of the index. As long as it does not change, the analysis of a
+	 * function definition with an unchanged text yields the same result.
+	 */
+	synchronized long getDeclarationsFingerprint(IASTTranslationUnit ast) {
+		if (declarationsFingerprint == null) {
+			long h = FNV_OFFSET_BASIS;
+			for (IASTPreprocessorStatement stmt : ast.getAllPreprocessorStatements()) {
+				h = hash(h, stmt.getRawSignature(), 0, -1);
+			}
+			for (IASTDeclaration decl : ast.getDeclarations(true)) {
+				h = hashWithoutFunctionBodies(h, decl);
+			}
+			IIndex index = ast.getIndex();
+			if (index != null) {
+				h = (h ^ index.getLastWriteAccess()) * FNV_PRIME;
+			}
+			declarationsFingerprint = h;
+		}
+		return declarationsFingerprint;
+	}
+
+	/**
+	 * Returns a fingerprint of the files included by the file, computed from the contents
+	 * hashes stored in the index, and of the configuration the file is parsed with. The
+	 * configuration consists of the language, which distinguishes C from C++, and of the
+	 * scanner info, whose defined symbols also reflect the selected dialect.
+	 *
+	 * @return the fingerprint, or <code>null</code> if the index is not up to date for the file
+	 *         or one of the files it includes.
+	 */
+	synchronized String getIncludesFingerprint() throws CoreException, OperationCanceledException {
+		if (!includesFingerprintComputed) {
+			includesFingerprint = computeIncludesFingerprint();
+			includesFingerprintComputed = true;
+		}
+		return includesFingerprint;
+	}
+
+	private String computeIncludesFingerprint() throws CoreException, OperationCanceledException {
+		if (file == null)
+			return null;
+		IIndex index = getIndex();
+		IIndexFile[] indexFiles = index.getFiles(IndexLocationFactory.getWorkspaceIFL(file));
+		if (indexFiles.length == 0)
+			return null;
+		long h = FNV_OFFSET_BASIS;
+		ILanguage language = tu.getLanguage();
+		if (language != null)
+			h = hash(h, language.getId(), 0, -1);
+		h = hashScannerInfo(h, tu.getScannerInfo(true));
+		for (IIndexFile indexFile : indexFiles) {
+			if (!isUpToDate(indexFile))
+				return null;
+			for (IIndexInclude include : index.findIncludes(indexFile, IIndex.DEPTH_INFINITE)) {
+				if (!include.isResolved()) {
+					h = hash(h, include.getFullName(), 0, -1);
+					continue;
+				}
+				IIndexFile included = index.resolveInclude(include);
+				if (included == null || !isUpToDate(included))
+					return null;
+				h = hash(h, included.getLocation().getURI().toString(), 0, -1);
+				h = (h ^ included.getContentsHash()) * FNV_PRIME;
+			}
+		}
+		return Long.toHexString(h);
+	}
+
+	private static long hashScannerInfo(long h, IScannerInfo scannerInfo) {
+		if (scannerInfo == null)
+			return h;
+		Map<String, String> symbols = scannerInfo.getDefinedSymbols();
+		if (symbols != null) {
+			for (Map.Entry<String, String> symbol : new TreeMap<String, String>(symbols).entrySet()) {
+				h = hashStrings(h, "-D", symbol.getKey(), symbol.getValue()); //$NON-NLS-1$
+			}
+		}
+		h = hashStrings(h, "-I"); //$NON-NLS-1$
+		h = hashStrings(h, scannerInfo.getIncludePaths());
+		if (scannerInfo instanceof IExtendedScannerInfo) {
+			IExtendedScannerInfo extendedInfo = (IExtendedScannerInfo) scannerInfo;
+			h = hashStrings(h, "-iquote"); //$NON-NLS-1$
+			h = hashStrings(h, extendedInfo.getLocalIncludePath());
+			h = hashStrings(h, "-imacros"); //$NON-NLS-1$
+			h = hashStrings(h, extendedInfo.getMacroFiles());
+			h = hashStrings(h, "-include"); //$NON-NLS-1$
+			h = hashStrings(h, extendedInfo.getIncludeFiles());
+		}
+		return h;
+	}
+
+	/**
+	 * Hashes the strings, each followed by a separator such that the boundaries between them
+	 * affect the hash.
+	 */
+	private static long hashStrings(long h, String... strings) {
+		if (strings == null)
+			return h;
+		for (String string : strings) {
+			if (string != null)
+				h = hash(h, string, 0, -1);
+			h = (h ^ '\0') * FNV_PRIME;
+		}
+		return h;
+	}
+
+	/**
+	 * Checks whether the file has not been modified since it was indexed.
+	 */
+	private static boolean isUpToDate(IIndexFile indexFile) throws CoreException {
+		IIndexFileLocation location = indexFile.getLocation();
+		IPath path = IndexLocationFactory.getAbsolutePath(location);
+		if (path == null)
+			return false;
+		long lastModified = path.toFile().lastModified();
+		return lastModified != 0 && lastModified == indexFile.getTimestamp();
+	}
+
+	private static long hashWithoutFunctionBodies(long h, IASTDeclaration decl) {
+		String text = decl.getRawSignature();
+		final IASTFileLocation location = decl.getFileLocation();
+		if (location == null)
+			return hash(h, text, 0, -1);
+
+		final List<IASTFileLocation> bodies = new ArrayList<IASTFileLocation>();
+		decl.accept(new ASTVisitor() {
+			{
+				shouldVisitDeclarations = true;
+			}
+
+			@Override
+			public int visit(IASTDeclaration declaration) {
+				if (declaration instanceof IASTFunctionDefinition) {
+					IASTStatement body = ((IASTFunctionDefinition) declaration).getBody();
+					IASTFileLocation bodyLocation = body != null ? body.getFileLocation() : null;
+					if (bodyLocation != null && bodyLocation.getFileName().equals(location.getFileName()))
+						bodies.add(bodyLocation);
+					return PROCESS_SKIP;
+				}
+				return PROCESS_CONTINUE;
+			}
+		});
+		int pos = 0;
+		for (IASTFileLocation body : bodies) {
+			int start = body.getNodeOffset() - location.getNodeOffset();
+			int end = start + body.getNodeLength();
+			if (start >= pos && end <= text.length()) {
+				h = hash(h, text, pos, start);
+				h = (h ^ '{') * FNV_PRIME;
+				pos = end;
+			}
+		}
+		return hash(h, text, pos, text.length());
+	}
+
+	/**
+	 * Continues a 64-bit FNV-1a hash with the characters of the given range of text, the end
+	 * of the range is the end of the text when negative.
+	 */
+	private static long hash(long h, String text, int start, int end) {
+		if (end < 0)
+			end = text.length();
+		for (int i = start; i < end; i++) {
+			h = (h ^ text.charAt(i)) * FNV_PRIME;
+		}
+		return h;
+	}
+
 	public synchronized ICodanCommentMap getCommentedNodeMap() {
 		return getCommentedNodeMap(tu);
 	}
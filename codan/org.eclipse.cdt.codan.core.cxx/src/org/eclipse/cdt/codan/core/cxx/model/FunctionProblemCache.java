@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT project contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT project contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.codan.core.cxx.model;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The problems a checker has reported for the function definitions of a file, keyed by the
+ * fingerprints of the function definitions. The locations are stored relative to the start of
+ * the function definition, such that the problems can be reported again for an unchanged
+ * function definition that has moved within the file.
+ * <p>
+ * Entries not used by the previous run are dropped. All entries are dropped when the
+ * declarations of the file or the preferences of the checker change.
+ * <p>
+ * This class is thread-safe.
+ */
+final class FunctionProblemCache {
+	/**
+	 * A problem reported for a function definition, with a location relative to the start of
+	 * the function definition.
+	 */
+	static final class CachedProblem {
+		final String id;
+		final int startChar;
+		final int endChar;
+		final int line;
+		final Object[] args;
+
+		CachedProblem(String id, int startChar, int endChar, int line, Object[] args) {
+			this.id = id;
+			this.startChar = startChar;
+			this.endChar = endChar;
+			this.line = line;
+			this.args = args;
+		}
+	}
+
+	private static final class Entry {
+		final List<CachedProblem> problems;
+		int lastRun;
+
+		Entry(List<CachedProblem> problems, int run) {
+			this.problems = problems;
+			this.lastRun = run;
+		}
+	}
+
+	private final Map<Long, Entry> entries = new HashMap<Long, Entry>();
+	private long declarationsFingerprint;
+	private String preferences;
+	private int run;
+
+	/**
+	 * Starts a new run of the checker on the file.
+	 *
+	 * @param declarationsFingerprint fingerprint of the declarations of the file
+	 * @param preferences the preferences of the checker for the file
+	 */
+	synchronized void startRun(long declarationsFingerprint, String preferences) {
+		if (run == 0 || declarationsFingerprint != this.declarationsFingerprint
+				|| !preferences.equals(this.preferences)) {
+			entries.clear();
+			this.declarationsFingerprint = declarationsFingerprint;
+			this.preferences = preferences;
+		} else {
+			for (Iterator<Entry> iterator = entries.values().iterator(); iterator.hasNext();) {
+				if (iterator.next().lastRun < run)
+					iterator.remove();
+			}
+		}
+		run++;
+	}
+
+	/**
+	 * @param functionFingerprint fingerprint of a function definition
+	 * @return the problems reported for the function definition, or <code>null</code> if
+	 *         it has not been analyzed with the current declarations and preferences.
+	 */
+	synchronized List<CachedProblem> get(long functionFingerprint) {
+		Entry entry = entries.get(functionFingerprint);
+		if (entry == null)
+			return null;
+		entry.lastRun = run;
+		return entry.problems;
+	}
+
+	synchronized void put(long functionFingerprint, List<CachedProblem> problems) {
+		entries.put(functionFingerprint, new Entry(problems, run));
+	}
+}
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT project contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT project contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.codan.core.cxx.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.cdt.codan.core.cxx.internal.model.FusedAstVisitor;
+import org.eclipse.cdt.codan.core.cxx.model.AbstractIndexAstChecker.VisitState;
+import org.eclipse.cdt.codan.core.model.ICodanDisposable;
+import org.eclipse.cdt.core.dom.ast.ASTVisitor;
+import org.eclipse.cdt.core.dom.ast.IASTTranslationUnit;
+
+/**
+ * Collects the visitors of the checkers processing a file, such that the AST of the file is
+ * traversed only once for all of them. Stored in the invocation context of the file, the
+ * traversal runs as a deferred task after all checkers have processed the file.
+ * <p>
+ * The checkers are not locked during the traversal. Each visitor runs with the state its checker
+ * had for the file when the visitor was deferred.
+ */
+final class FusedAstTraversal implements ICodanDisposable, Runnable {
+	private final IASTTranslationUnit ast;
+	private final List<AbstractIndexAstChecker> checkers = new ArrayList<AbstractIndexAstChecker>();
+	private final List<VisitState> states = new ArrayList<VisitState>();
+	private final List<ASTVisitor> visitors = new ArrayList<ASTVisitor>();
+
+	FusedAstTraversal(IASTTranslationUnit ast) {
+		this.ast = ast;
+	}
+
+	IASTTranslationUnit getAST() {
+		return ast;
+	}
+
+	synchronized void add(AbstractIndexAstChecker checker, VisitState state, ASTVisitor visitor) {
+		checkers.add(checker);
+		states.add(state);
+		visitors.add(visitor);
+	}
+
+	/**
+	 * Traverses the AST with the visitors of all checkers.
+	 */
+	public void run() {
+		List<AbstractIndexAstChecker> checkers;
+		List<ASTVisitor> visitors;
+		synchronized (this) {
+			checkers = new ArrayList<AbstractIndexAstChecker>(this.checkers);
+			visitors = new ArrayList<ASTVisitor>(this.visitors);
+			for (int i = 0; i < checkers.size(); i++) {
+				checkers.get(i).beginDeferredVisit(states.get(i));
+			}
+			this.checkers.clear();
+			this.states.clear();
+			this.visitors.clear();
+		}
+		try {
+			synchronized (ast) {
+				ast.accept(new FusedAstVisitor(visitors));
+			}
+		} finally {
+			for (AbstractIndexAstChecker checker : checkers) {
+				checker.endDeferredVisit();
+			}
+		}
+	}
+
+	public synchronized void dispose() {
+		checkers.clear();
+		states.clear();
+		visitors.clear();
+	}
+}
@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT project contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT project contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.codan.core.cxx;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.cdt.codan.core.cxx.internal.model.FusedAstVisitor;
+import org.eclipse.cdt.codan.core.model.IChecker;
+import org.eclipse.cdt.codan.core.test.CodanFastCxxAstTestCase;
+import org.eclipse.cdt.core.dom.ast.ASTVisitor;
+import org.eclipse.cdt.core.dom.ast.IASTExpression;
+import org.eclipse.cdt.core.dom.ast.IASTName;
+import org.eclipse.cdt.core.dom.ast.IASTStatement;
+import org.eclipse.cdt.core.dom.ast.IASTTranslationUnit;
+
+/**
+ * Measures the cost of traversing an AST with a growing number of visitors, once with a
+ * separate traversal per visitor and once with a single fused traversal. The visitors only
+ * count nodes, such that the time is dominated by the traversal itself. Not part of a suite.
+ */
+@SuppressWarnings("nls")
+public class FusedAstVisitorSpeedTest extends CodanFastCxxAstTestCase {
+	private static final int FUNCTIONS = 2000;
+	private static final int[] VISITOR_COUNTS = { 1, 2, 4, 8, 16, 24 };
+	private static final int REPEAT = 5;
+
+	private static class CountingVisitor extends ASTVisitor {
+		int count;
+
+		CountingVisitor(int kind) {
+			switch (kind % 3) {
+			case 0:
+				shouldVisitExpressions = true;
+				break;
+			case 1:
+				shouldVisitStatements = true;
+				break;
+			default:
+				shouldVisitNames = true;
+				break;
+			}
+		}
+
+		@Override
+		public int visit(IASTExpression expression) {
+			count++;
+			return PROCESS_CONTINUE;
+		}
+
+		@Override
+		public int visit(IASTStatement statement) {
+			count++;
+			return PROCESS_CONTINUE;
+		}
+
+		@Override
+		public int visit(IASTName name) {
+			count++;
+			return PROCESS_CONTINUE;
+		}
+	}
+
+	public static void main(String[] args) {
+		FusedAstVisitorSpeedTest test = new FusedAstVisitorSpeedTest();
+		test.testTraversalCost();
+	}
+
+	@Override
+	public IChecker getChecker() {
+		return null; // not testing checker
+	}
+
+	@Override
+	public boolean isCpp() {
+		return true;
+	}
+
+	public void testTraversalCost() {
+		IASTTranslationUnit ast = parse(createCode());
+		// Warm up.
+		traverse(ast, VISITOR_COUNTS[VISITOR_COUNTS.length - 1], false);
+		traverse(ast, VISITOR_COUNTS[VISITOR_COUNTS.length - 1], true);
+
+		System.out.println("visitors\tseparate (ms)\tfused (ms)");
+		for (int n : VISITOR_COUNTS) {
+			long separate = Long.MAX_VALUE;
+			long fused = Long.MAX_VALUE;
+			for (int i = 0; i < REPEAT; i++) {
+				separate = Math.min(separate, traverse(ast, n, false));
+				fused = Math.min(fused, traverse(ast, n, true));
+			}
+			System.out.println(n + "\t" + separate + "\t" + fused);
+		}
+	}
+
+	private long traverse(IASTTranslationUnit ast, int n, boolean fused) {
+		List<ASTVisitor> visitors = new ArrayList<ASTVisitor>();
+		for (int i = 0; i < n; i++) {
+			visitors.add(new CountingVisitor(i));
+		}
+		long start = System.currentTimeMillis();
+		if (fused) {
+			ast.accept(new FusedAstVisitor(visitors));
+		} else {
+			for (ASTVisitor visitor : visitors) {
+				ast.accept(visitor);
+			}
+		}
+		return System.currentTimeMillis() - start;
+	}
+
+	private static String createCode() {
+		StringBuilder code = new StringBuilder();
+		code.append("struct S { int a; int b; };\n");
+		for (int i = 0; i < FUNCTIONS; i++) {
+			code.append("int f").append(i).append("(S* s, int n) {\n");
+			code.append("  int sum = 0;\n");
+			code.append("  for (int i = 0; i < n; i++) {\n");
+			code.append("    if (s->a > i && s->b != 0) {\n");
+			code.append("      sum += s->a * i + s->b / 2;\n");
+			code.append("    } else {\n");
+			code.append("      sum -= (i << 2) | n;\n");
+			code.append("    }\n");
+			code.append("  }\n");
+			code.append("  return sum;\n");
+			code.append("}\n");
+		}
+		return code.toString();
+	}
+}
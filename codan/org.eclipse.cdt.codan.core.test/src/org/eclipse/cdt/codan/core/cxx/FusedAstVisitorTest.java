@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT project contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT project contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.codan.core.cxx;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.cdt.codan.core.cxx.internal.model.FusedAstVisitor;
+import org.eclipse.cdt.codan.core.model.IChecker;
+import org.eclipse.cdt.codan.core.test.CodanFastCxxAstTestCase;
+import org.eclipse.cdt.core.dom.ast.ASTGenericVisitor;
+import org.eclipse.cdt.core.dom.ast.ASTVisitor;
+import org.eclipse.cdt.core.dom.ast.IASTFunctionDefinition;
+import org.eclipse.cdt.core.dom.ast.IASTIfStatement;
+import org.eclipse.cdt.core.dom.ast.IASTNode;
+import org.eclipse.cdt.core.dom.ast.IASTTranslationUnit;
+
+/**
+ * Tests that visitors see the same calls in a fused traversal as in their own traversal.
+ */
+public class FusedAstVisitorTest extends CodanFastCxxAstTestCase {
+	/**
+	 * Records the calls it receives, may skip or abort.
+	 */
+	private static class RecordingVisitor extends ASTGenericVisitor {
+		final List<String> calls = new ArrayList<String>();
+		private final Class<?> skip;
+		private final int abortAfter;
+
+		RecordingVisitor(boolean visitNodes, Class<?> skip, int abortAfter) {
+			super(visitNodes);
+			this.skip = skip;
+			this.abortAfter = abortAfter;
+		}
+
+		@Override
+		protected int genericVisit(IASTNode node) {
+			calls.add("visit " + node.getClass().getSimpleName() + "@" + System.identityHashCode(node)); //$NON-NLS-1$ //$NON-NLS-2$
+			if (calls.size() == abortAfter)
+				return PROCESS_ABORT;
+			if (skip != null && skip.isInstance(node))
+				return PROCESS_SKIP;
+			return PROCESS_CONTINUE;
+		}
+
+		@Override
+		protected int genericLeave(IASTNode node) {
+			calls.add("leave " + node.getClass().getSimpleName() + "@" + System.identityHashCode(node)); //$NON-NLS-1$ //$NON-NLS-2$
+			return PROCESS_CONTINUE;
+		}
+	}
+
+	@Override
+	public IChecker getChecker() {
+		return null; // not testing checker
+	}
+
+	@Override
+	public boolean isCpp() {
+		return true;
+	}
+
+	private List<RecordingVisitor> createVisitors() {
+		List<RecordingVisitor> visitors = new ArrayList<RecordingVisitor>();
+		visitors.add(new RecordingVisitor(true, null, -1));
+		RecordingVisitor statements = new RecordingVisitor(false, IASTIfStatement.class, -1);
+		statements.shouldVisitStatements = true;
+		statements.shouldVisitExpressions = true;
+		visitors.add(statements);
+		RecordingVisitor names = new RecordingVisitor(false, null, 10);
+		names.shouldVisitNames = true;
+		visitors.add(names);
+		RecordingVisitor declarations = new RecordingVisitor(false, IASTFunctionDefinition.class, -1);
+		declarations.shouldVisitDeclarations = true;
+		declarations.shouldVisitNames = true;
+		visitors.add(declarations);
+		RecordingVisitor implicitNames = new RecordingVisitor(false, null, -1);
+		implicitNames.shouldVisitNames = true;
+		implicitNames.shouldVisitImplicitNames = true;
+		visitors.add(implicitNames);
+		RecordingVisitor skipAll = new RecordingVisitor(false, IASTTranslationUnit.class, -1);
+		skipAll.shouldVisitTranslationUnit = true;
+		visitors.add(skipAll);
+		return visitors;
+	}
+
+	private void checkFusedTraversal(IASTTranslationUnit ast) {
+		List<RecordingVisitor> separate = createVisitors();
+		for (RecordingVisitor visitor : separate) {
+			ast.accept(visitor);
+		}
+		List<RecordingVisitor> fused = createVisitors();
+		ast.accept(new FusedAstVisitor(new ArrayList<ASTVisitor>(fused)));
+		for (int i = 0; i < separate.size(); i++) {
+			assertEquals("visitor " + i, separate.get(i).calls, fused.get(i).calls); //$NON-NLS-1$
+		}
+	}
+
+	// struct A {
+	//   A operator+(const A& other);
+	//   int x;
+	// };
+	// namespace ns {
+	//   int f(int a, int b) {
+	//     A x, y;
+	//     x = x + y;
+	//     if (a > b) {
+	//       return a * 2;
+	//     }
+	//     for (int i = 0; i < b; i++) {
+	//       a += i;
+	//     }
+	//     return a;
+	//   }
+	// }
+	// int g() {
+	//   int arr[3] = { 1, 2, 3 };
+	//   return ns::f(arr[0], arr[1]);
+	// }
+	public void testSameCallsAsSeparateTraversals() {
+		checkFusedTraversal(parse(getAboveComment()));
+	}
+
+	public void testAbortAll() {
+		IASTTranslationUnit ast = parse("int a; int b; int c;"); //$NON-NLS-1$
+		RecordingVisitor first = new RecordingVisitor(true, null, 2);
+		RecordingVisitor second = new RecordingVisitor(true, null, 3);
+		List<ASTVisitor> visitors = new ArrayList<ASTVisitor>();
+		visitors.add(first);
+		visitors.add(second);
+		assertFalse(ast.accept(new FusedAstVisitor(visitors)));
+		assertEquals(2, first.calls.size());
+		assertEquals(3, second.calls.size());
+	}
+}
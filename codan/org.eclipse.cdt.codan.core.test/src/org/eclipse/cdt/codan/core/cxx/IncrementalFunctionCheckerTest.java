@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT project contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT project contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.codan.core.cxx;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.cdt.codan.core.CodanRuntime;
+import org.eclipse.cdt.codan.core.cxx.model.AbstractAstFunctionChecker;
+import org.eclipse.cdt.codan.core.model.IChecker;
+import org.eclipse.cdt.codan.core.model.ICheckerInvocationContext;
+import org.eclipse.cdt.codan.core.model.IProblemLocation;
+import org.eclipse.cdt.codan.core.model.IProblemReporter;
+import org.eclipse.cdt.codan.core.test.CodanFastCxxAstTestCase;
+import org.eclipse.cdt.codan.internal.core.CheckerInvocationContext;
+import org.eclipse.cdt.core.dom.ast.IASTFunctionDefinition;
+import org.eclipse.cdt.core.dom.ast.IBasicType;
+import org.eclipse.cdt.core.dom.ast.IBinding;
+import org.eclipse.cdt.core.dom.ast.IFunction;
+import org.eclipse.cdt.core.dom.ast.IType;
+import org.eclipse.cdt.core.dom.ast.ITypedef;
+
+/**
+ * Tests that an incremental function checker analyzes only the function definitions that
+ * have changed, and reports the problems of the others again.
+ */
+public class IncrementalFunctionCheckerTest extends CodanFastCxxAstTestCase {
+	private static final String VOID_ID = "void"; //$NON-NLS-1$
+
+	/**
+	 * Records the functions it analyzes, reports the functions returning void.
+	 */
+	private static class CountingChecker extends AbstractAstFunctionChecker {
+		final List<String> processed = new ArrayList<String>();
+
+		@Override
+		protected void processFunction(IASTFunctionDefinition func) {
+			processed.add(func.getDeclarator().getName().toString());
+			IBinding binding = func.getDeclarator().getName().resolveBinding();
+			if (binding instanceof IFunction) {
+				IType type = ((IFunction) binding).getType().getReturnType();
+				while (type instanceof ITypedef) {
+					type = ((ITypedef) type).getType();
+				}
+				if (type instanceof IBasicType && ((IBasicType) type).getKind() == IBasicType.Kind.eVoid)
+					reportProblem(VOID_ID, func.getDeclarator());
+			}
+		}
+
+		@Override
+		protected boolean isIncremental() {
+			return true;
+		}
+	}
+
+	private final CountingChecker checker = new CountingChecker();
+	private final List<String> problems = new ArrayList<String>();
+
+	@Override
+	public IChecker getChecker() {
+		return checker;
+	}
+
+	@Override
+	public boolean isCpp() {
+		return true;
+	}
+
+	/**
+	 * Runs the checker on the code like the editor does.
+	 */
+	private void runInEditor(String code) {
+		parse(code);
+		checker.processed.clear();
+		problems.clear();
+		IProblemReporter reporter = CodanRuntime.getInstance().getProblemReporter();
+		CodanRuntime.getInstance().setProblemReporter(new IProblemReporter() {
+			public void reportProblem(String problemId, IProblemLocation loc, Object... args) {
+				problems.add(problemId + ":" + loc.getLineNumber()); //$NON-NLS-1$
+			}
+		});
+		ICheckerInvocationContext context = new CheckerInvocationContext(null);
+		try {
+			checker.before(null);
+			try {
+				checker.processModel(tu, context);
+			} finally {
+				checker.after(null);
+			}
+		} finally {
+			CodanRuntime.getInstance().setProblemReporter(reporter);
+			context.dispose();
+		}
+	}
+
+	// int f1(int a) { return a; }
+	// void f2() {}
+
+	// int f1(int a) { return a + 1; }
+	//
+	// void f2() {}
+	public void testUnchangedFunctionsAreSkipped() {
+		StringBuilder[] code = getContents(2);
+		runInEditor(code[0].toString());
+		assertEquals(Arrays.asList("f1", "f2"), checker.processed); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(Arrays.asList("void:2"), problems); //$NON-NLS-1$
+
+		runInEditor(code[1].toString());
+		assertEquals(Arrays.asList("f1"), checker.processed); //$NON-NLS-1$
+		assertEquals(Arrays.asList("void:3"), problems); //$NON-NLS-1$
+
+		runInEditor(code[1].toString());
+		assertEquals(0, checker.processed.size());
+		assertEquals(Arrays.asList("void:3"), problems); //$NON-NLS-1$
+	}
+
+	// namespace a {
+	//   typedef void T;
+	//   T f() { }
+	// }
+	// namespace b {
+	//   typedef int T;
+	//   T f() { }
+	// }
+	public void testSameTextInDifferentScopes() {
+		String code = getAboveComment();
+		runInEditor(code);
+		assertEquals(Arrays.asList("f", "f"), checker.processed); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(Arrays.asList("void:3"), problems); //$NON-NLS-1$
+
+		runInEditor(code);
+		assertEquals(0, checker.processed.size());
+		assertEquals(Arrays.asList("void:3"), problems); //$NON-NLS-1$
+	}
+
+	// void g() {
+	//   {
+	//     typedef void T;
+	//     struct S { T f() { } };
+	//   }
+	//   {
+	//     typedef int T;
+	//     struct S { T f() { } };
+	//   }
+	// }
+	public void testSameTextInSameScopes() {
+		String code = getAboveComment();
+		runInEditor(code);
+		assertEquals(Arrays.asList("g", "f", "f"), checker.processed); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		assertEquals(Arrays.asList("void:1", "void:4"), problems); //$NON-NLS-1$ //$NON-NLS-2$
+
+		// The scopes cannot tell the nested functions apart, they are analyzed every time.
+		runInEditor(code);
+		assertEquals(Arrays.asList("f", "f"), checker.processed); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(Arrays.asList("void:1", "void:4"), problems); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+}
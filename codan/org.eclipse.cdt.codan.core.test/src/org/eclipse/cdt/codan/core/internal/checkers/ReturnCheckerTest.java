@@ -11,9 +11,20 @@
  *******************************************************************************/
 package org.eclipse.cdt.codan.core.internal.checkers;
 
+import org.eclipse.cdt.codan.core.CodanRuntime;
+import org.eclipse.cdt.codan.core.model.CheckerLaunchMode;
+import org.eclipse.cdt.codan.core.model.IProblem;
+import org.eclipse.cdt.codan.core.model.IProblemProfile;
+import org.eclipse.cdt.codan.core.model.IProblemReporter;
 import org.eclipse.cdt.codan.core.param.IProblemPreference;
+import org.eclipse.cdt.codan.core.param.RootProblemPreference;
 import org.eclipse.cdt.codan.core.test.CheckerTestCase;
 import org.eclipse.cdt.codan.internal.checkers.ReturnChecker;
+import org.eclipse.cdt.codan.internal.core.CodanBuilder;
+import org.eclipse.cdt.core.dom.ast.IASTTranslationUnit;
+import org.eclipse.cdt.core.model.ITranslationUnit;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.NullProgressMonitor;
 
 /**
  * Test for {@see ReturnCheckerTest} class
@@ -298,4 +309,63 @@ public class ReturnCheckerTest extends CheckerTestCase {
 		loadCodeAndRunCpp(getAboveComment());
 		checkNoErrors();
 	}
-}
\ No newline at end of file
+
+	private void runInEditor(String code) throws CoreException {
+		loadcode(code, "incremental.c"); //$NON-NLS-1$
+		IASTTranslationUnit ast = ((ITranslationUnit) currentCElem).getAST(null, ITranslationUnit.AST_SKIP_ALL_HEADERS);
+		((CodanBuilder) CodanRuntime.getInstance().getBuilder()).runInEditor(ast, currentIFile, new NullProgressMonitor());
+		markers = currentIFile.findMarkers(IProblemReporter.GENERIC_CODE_ANALYSIS_MARKER_TYPE, true, 0);
+	}
+
+	private void enableAsYouType() {
+		IProblemProfile profile = CodanRuntime.getInstance().getCheckersRegistry().getWorkspaceProfile();
+		for (IProblem problem : profile.getProblems()) {
+			IProblemPreference preference = problem.getPreference();
+			if (problem.isEnabled() && preference instanceof RootProblemPreference) {
+				((RootProblemPreference) preference).getLaunchModePreference().enableInLaunchModes(
+						CheckerLaunchMode.RUN_ON_FULL_BUILD, CheckerLaunchMode.RUN_AS_YOU_TYPE);
+			}
+		}
+		CodanRuntime.getInstance().getCheckersRegistry().updateProfile(cproject.getProject(), profile);
+	}
+
+	//	int f1(int a) {
+	//		if (a) return 1;
+	//	}
+	//	int f2(int a) {
+	//		if (a) return 2;
+	//	}
+
+	//	int f1(int a) {
+	//		if (a) return 1;
+	//		return 0;
+	//	}
+	//	// f2 has moved
+	//	int f2(int a) {
+	//		if (a) return 2;
+	//	}
+
+	//	int f1(int a) {
+	//		if (a) return 1;
+	//	}
+	//	int f2(int a) {
+	//		if (a) return 2;
+	//	}
+	//	int f3(int a) {
+	//		if (a) return 3;
+	//	}
+	public void testIncrementalInEditor() throws CoreException {
+		enableAsYouType();
+		StringBuilder[] code = getContents(3);
+		runInEditor(code[0].toString());
+		checkErrorLines(1, 4);
+		// f1 has changed, the problem of f2 moves with it.
+		runInEditor(code[1].toString());
+		checkErrorLines(6);
+		runInEditor(code[1].toString());
+		checkErrorLines(6);
+		// A new declaration invalidates the results of all functions.
+		runInEditor(code[2].toString());
+		checkErrorLines(1, 4, 7);
+	}
+}
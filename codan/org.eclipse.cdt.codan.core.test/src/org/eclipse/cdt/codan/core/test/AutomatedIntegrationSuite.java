@@ -71,6 +71,8 @@ public class AutomatedIntegrationSuite extends TestSuite {
 		suite.addTestSuite(UnusedSymbolInFileScopeCheckerTest.class);
 		// framework
 		suite.addTest(CodanFastTestSuite.suite());
+		suite.addTestSuite(CodanResultsCacheTest.class);
+		suite.addTestSuite(CodanBuilderParallelTest.class);
 		// quick fixes
 		suite.addTestSuite(CreateLocalVariableQuickFixTest.class);
 		suite.addTestSuite(SuggestedParenthesisQuickFixTest.class);
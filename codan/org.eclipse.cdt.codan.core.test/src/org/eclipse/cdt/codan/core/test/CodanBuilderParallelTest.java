@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT project contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT project contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.codan.core.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.cdt.codan.core.CodanRuntime;
+import org.eclipse.cdt.codan.core.cxx.model.AbstractIndexAstChecker;
+import org.eclipse.cdt.codan.core.model.IProblemLocation;
+import org.eclipse.cdt.codan.core.model.IProblemReporter;
+import org.eclipse.cdt.codan.internal.checkers.CaseBreakChecker;
+import org.eclipse.cdt.codan.internal.checkers.ReturnChecker;
+import org.eclipse.cdt.codan.internal.checkers.StatementHasNoEffectChecker;
+import org.eclipse.cdt.codan.internal.core.CodanBuilder;
+import org.eclipse.cdt.codan.internal.core.model.CodanProblemMarker;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+/**
+ * Tests that processing the files of a project in parallel produces the same problems as
+ * processing them one after the other.
+ */
+public class CodanBuilderParallelTest extends CheckerTestCase {
+	// More files than can be processed at the same time.
+	private static final int FILES = 2 * Runtime.getRuntime().availableProcessors() + 4;
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		enableProblems(ReturnChecker.RET_NORET_ID, CaseBreakChecker.ER_ID, StatementHasNoEffectChecker.ER_ID);
+	}
+
+	@Override
+	public void tearDown() throws CoreException {
+		CodanBuilder.setParallel(true);
+		AbstractIndexAstChecker.setFusedTraversal(true);
+		super.tearDown();
+	}
+
+	private void loadFiles(String code) throws CoreException {
+		for (int i = 0; i < FILES; i++) {
+			loadcode(code, "file" + i + ".c"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		indexFiles();
+	}
+
+	private List<String> getMarkers() throws CoreException {
+		IMarker[] markers = cproject.getProject().findMarkers(IProblemReporter.GENERIC_CODE_ANALYSIS_MARKER_TYPE, true,
+				IResource.DEPTH_INFINITE);
+		List<String> result = new ArrayList<String>();
+		for (IMarker m : markers) {
+			result.add(m.getResource().getName() + ":" + m.getAttribute(IMarker.LINE_NUMBER, -1) + ":" //$NON-NLS-1$ //$NON-NLS-2$
+					+ m.getAttribute(IMarker.CHAR_START, -1) + " " + CodanProblemMarker.getProblemId(m)); //$NON-NLS-1$
+		}
+		Collections.sort(result);
+		return result;
+	}
+
+	//	int f(int a) {
+	//		if (a) return 1;
+	//	}
+	//	void g(int a) {
+	//		switch (a) {
+	//		case 1:
+	//			a++;
+	//		case 2:
+	//			break;
+	//		}
+	//		a;
+	//	}
+	public void testSameMarkersAsSequential() throws Exception {
+		loadFiles(getAboveComment());
+
+		CodanBuilder.setParallel(false);
+		runCodan();
+		List<String> sequential = getMarkers();
+		assertEquals(3 * FILES, sequential.size());
+
+		cproject.getProject().deleteMarkers(IProblemReporter.GENERIC_CODE_ANALYSIS_MARKER_TYPE, true,
+				IResource.DEPTH_INFINITE);
+		CodanBuilder.setParallel(true);
+		runCodan();
+		assertEquals(sequential, getMarkers());
+	}
+
+	//	int f(int a) {
+	//		if (a) return 1;
+	//	}
+	//	void g(int a) {
+	//		switch (a) {
+	//		case 1:
+	//			a++;
+	//		case 2:
+	//		case 3:
+	//			break;
+	//		}
+	//		a;
+	//	}
+	public void testFusedTraversalSameMarkersAsSequential() throws Exception {
+		loadFiles(getAboveComment());
+
+		CodanBuilder.setParallel(false);
+		AbstractIndexAstChecker.setFusedTraversal(false);
+		runCodan();
+		List<String> sequential = getMarkers();
+		assertEquals(3 * FILES, sequential.size());
+
+		// The checkers process other files while their visitors for a file are deferred.
+		cproject.getProject().deleteMarkers(IProblemReporter.GENERIC_CODE_ANALYSIS_MARKER_TYPE, true,
+				IResource.DEPTH_INFINITE);
+		CodanBuilder.setParallel(true);
+		AbstractIndexAstChecker.setFusedTraversal(true);
+		runCodan();
+		assertEquals(sequential, getMarkers());
+	}
+
+	//	int f(int a) {
+	//		if (a) return 1;
+	//	}
+	public void testCancelDuringParallelPhase() throws Exception {
+		loadFiles(getAboveComment());
+
+		CodanBuilder.setParallel(true);
+		final NullProgressMonitor monitor = new NullProgressMonitor();
+		final List<String> problems = new ArrayList<String>();
+		IProblemReporter reporter = CodanRuntime.getInstance().getProblemReporter();
+		CodanRuntime.getInstance().setProblemReporter(new IProblemReporter() {
+			public void reportProblem(String problemId, IProblemLocation loc, Object... args) {
+				synchronized (problems) {
+					problems.add(loc.getFile().getName());
+				}
+				monitor.setCanceled(true);
+			}
+		});
+		try {
+			new CodanBuilder().processResource(cproject.getProject(), monitor);
+		} finally {
+			CodanRuntime.getInstance().setProblemReporter(reporter);
+		}
+		assertTrue(monitor.isCanceled());
+		// Only the files that were being processed when the first problem was reported may
+		// have been completed.
+		assertFalse(problems.isEmpty());
+		assertTrue("Processed " + problems.size() + " of " + FILES + " files", problems.size() < FILES); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+}
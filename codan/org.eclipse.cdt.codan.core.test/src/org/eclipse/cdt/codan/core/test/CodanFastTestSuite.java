@@ -17,6 +17,8 @@ import junit.framework.TestSuite;
 
 import org.eclipse.cdt.codan.core.cfg.ControlFlowGraphTest;
 import org.eclipse.cdt.codan.core.cxx.CxxAstUtilsTest;
+import org.eclipse.cdt.codan.core.cxx.FusedAstVisitorTest;
+import org.eclipse.cdt.codan.core.cxx.IncrementalFunctionCheckerTest;
 import org.eclipse.cdt.codan.core.param.BasicProblemPreferenceTest;
 import org.eclipse.cdt.codan.core.param.ListProblemPreferenceTest;
 import org.eclipse.cdt.codan.core.param.MapProblemPreferenceTest;
@@ -43,6 +45,8 @@ public class CodanFastTestSuite extends TestSuite {
 		suite.addTestSuite(ListProblemPreferenceTest.class);
 		suite.addTestSuite(MapProblemPreferenceTest.class);
 		suite.addTestSuite(CxxAstUtilsTest.class);
+		suite.addTestSuite(FusedAstVisitorTest.class);
+		suite.addTestSuite(IncrementalFunctionCheckerTest.class);
 		suite.addTestSuite(ControlFlowGraphTest.class);
 		return suite;
 	}
@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT project contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT project contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.codan.core.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.cdt.codan.core.CodanRuntime;
+import org.eclipse.cdt.codan.core.model.IProblemLocation;
+import org.eclipse.cdt.codan.core.model.IProblemReporter;
+import org.eclipse.cdt.codan.internal.checkers.NonVirtualDestructor;
+import org.eclipse.cdt.codan.internal.checkers.ReturnChecker;
+import org.eclipse.cdt.codan.internal.core.CodanBuilder;
+import org.eclipse.cdt.codan.internal.core.CodanResultsCache;
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+/**
+ * Tests reusing the problems of unchanged files from the results cache.
+ */
+public class CodanResultsCacheTest extends CheckerTestCase {
+	private File cacheFile;
+	private final List<String> problems = new ArrayList<String>();
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		enableProblems(ReturnChecker.RET_NORET_ID);
+		cacheFile = new File(tmpDir, "codan.cache"); //$NON-NLS-1$
+		tempFiles.add(cacheFile);
+	}
+
+	private CodanResultsCache runWithCache() throws IOException {
+		problems.clear();
+		CodanResultsCache cache = new CodanResultsCache(cacheFile);
+		CodanBuilder builder = new CodanBuilder();
+		builder.setResultsCache(cache);
+		IProblemReporter reporter = CodanRuntime.getInstance().getProblemReporter();
+		CodanRuntime.getInstance().setProblemReporter(cache.createProblemReporter(new IProblemReporter() {
+			public void reportProblem(String problemId, IProblemLocation loc, Object... args) {
+				synchronized (problems) {
+					problems.add(problemId + " " + loc.getFile().getName() + ":" + loc.getLineNumber()); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+			}
+		}));
+		try {
+			builder.processResource(cproject.getProject(), new NullProgressMonitor());
+		} finally {
+			CodanRuntime.getInstance().setProblemReporter(reporter);
+		}
+		cache.save();
+		return cache;
+	}
+
+	//	int f(int a) {
+	//		if (a) return 1;
+	//	}
+	public void testUnchangedFile() throws Exception {
+		loadcode(getAboveComment(), "cached.c"); //$NON-NLS-1$
+		indexFiles();
+		CodanResultsCache cache = runWithCache();
+		assertEquals(0, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		List<String> expected = new ArrayList<String>(problems);
+		assertEquals(1, expected.size());
+
+		cache = runWithCache();
+		assertEquals(1, cache.getHits());
+		assertEquals(0, cache.getMisses());
+		assertEquals(expected, problems);
+	}
+
+	//	int f(int a) {
+	//		if (a) return 1;
+	//	}
+
+	//	int f(int a) {
+	//		if (a) return 1;
+	//		return 0;
+	//	}
+	public void testChangedFile() throws Exception {
+		StringBuilder[] code = getContents(2);
+		loadcode(code[0].toString(), "cached.c"); //$NON-NLS-1$
+		indexFiles();
+		runWithCache();
+		assertEquals(1, problems.size());
+
+		loadcode(code[1].toString(), "cached.c"); //$NON-NLS-1$
+		indexFiles();
+		CodanResultsCache cache = runWithCache();
+		assertEquals(0, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(0, problems.size());
+	}
+
+	//	@file:cached.h
+	//	#define RESULT int
+
+	//	@file:cached.c
+	//	#include "cached.h"
+	//	RESULT f(int a) {
+	//		if (a) return 1;
+	//	}
+
+	//	@file:cached.h
+	//	#define RESULT void
+	public void testChangedHeader() throws Exception {
+		StringBuilder[] code = getContents(3);
+		loadcode(code[0].toString());
+		loadcode(code[1].toString());
+		indexFiles();
+		runWithCache();
+		assertEquals(1, problems.size());
+
+		loadcode(code[2].toString());
+		indexFiles();
+		CodanResultsCache cache = runWithCache();
+		assertEquals(0, cache.getHits());
+		assertEquals(0, problems.size());
+	}
+
+	//	struct A {
+	//		virtual void f() { };
+	//		~A();
+	//	};
+	//	int g(int a) {
+	//		if (a) return 1;
+	//	}
+	public void testCheckerNotCacheable() throws Exception {
+		enableProblems(ReturnChecker.RET_NORET_ID, NonVirtualDestructor.PROBLEM_ID);
+		loadcode(getAboveComment(), "cached.cpp"); //$NON-NLS-1$
+		indexFiles();
+		CodanResultsCache cache = runWithCache();
+		assertEquals(1, cache.getMisses());
+		Collections.sort(problems);
+		List<String> expected = new ArrayList<String>(problems);
+		assertEquals(2, expected.size());
+
+		// The file is analyzed again for the checker that has not opted in.
+		cache = runWithCache();
+		assertEquals(1, cache.getHits());
+		assertEquals(0, cache.getMisses());
+		assertEquals(0, cache.getSkippedFiles());
+		Collections.sort(problems);
+		assertEquals(expected, problems);
+	}
+}
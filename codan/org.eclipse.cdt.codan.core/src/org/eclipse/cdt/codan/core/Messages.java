@@ -18,6 +18,9 @@ import org.eclipse.osgi.util.NLS;
  */
 public class Messages extends NLS {
 	public static String CodanApplication_all_option;
+	public static String CodanApplication_cache_option;
+	public static String CodanApplication_CacheStatistics;
+	public static String CodanApplication_Error_CannotWriteCache;
 	public static String CodanApplication_Error_ProjectDoesNotExists;
 	public static String CodanApplication_LogRunProject;
 	public static String CodanApplication_LogRunWorkspace;
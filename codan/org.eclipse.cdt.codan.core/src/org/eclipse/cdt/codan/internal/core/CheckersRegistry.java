@@ -337,7 +337,7 @@ public class CheckersRegistry implements Iterable<IChecker>, ICheckersRegistry {
 	 * @see
 	 * org.eclipse.cdt.codan.core.model.ICheckersRegistry#getDefaultProfile()
 	 */
-	public IProblemProfile getDefaultProfile() {
+	public synchronized IProblemProfile getDefaultProfile() {
 		return profiles.get(DEFAULT);
 	}
 
@@ -347,7 +347,7 @@ public class CheckersRegistry implements Iterable<IChecker>, ICheckersRegistry {
 	 * @see
 	 * org.eclipse.cdt.codan.core.model.ICheckersRegistry#getWorkspaceProfile()
 	 */
-	public IProblemProfile getWorkspaceProfile() {
+	public synchronized IProblemProfile getWorkspaceProfile() {
 		IProblemProfile wp = profiles.get(ResourcesPlugin.getWorkspace());
 		if (wp == null) {
 			wp = (IProblemProfile) getDefaultProfile().clone();
@@ -365,7 +365,7 @@ public class CheckersRegistry implements Iterable<IChecker>, ICheckersRegistry {
 		return wp;
 	}
 
-	public void updateProfile(IResource element, IProblemProfile profile) {
+	public synchronized void updateProfile(IResource element, IProblemProfile profile) {
 		// updating profile can invalidate all cached profiles
 		IProblemProfile defaultProfile = getDefaultProfile();
 		profiles.clear();
@@ -381,7 +381,7 @@ public class CheckersRegistry implements Iterable<IChecker>, ICheckersRegistry {
 	 * org.eclipse.cdt.codan.core.model.ICheckersRegistry#getResourceProfile
 	 * (org.eclipse.core.resources.IResource)
 	 */
-	public IProblemProfile getResourceProfile(IResource element) {
+	public synchronized IProblemProfile getResourceProfile(IResource element) {
 		IProblemProfile prof = profiles.get(element);
 		if (prof == null) {
 			if (element instanceof IProject) {
@@ -15,7 +15,8 @@ import java.util.Iterator;
 import java.util.Map;
 
 /**
- * Class to collect time states for checkers runs
+ * Class to collect time states for checkers runs. Checkers may run on several threads at
+ * the same time, the time is measured per thread.
  */
 public class CheckersTimeStats {
 	public static final String ALL = "ALL"; //$NON-NLS-1$
@@ -31,17 +32,19 @@ public class CheckersTimeStats {
 
 	private static class TimeRecord {
 		private long duration;
-		private long current;
+		private Map<Thread, Long> current = new HashMap<Thread, Long>(4);
 		private int count;
 
 		public void start() {
-			current = System.currentTimeMillis();
+			current.put(Thread.currentThread(), System.currentTimeMillis());
 		}
 
 		public void stop() {
+			Long start = current.remove(Thread.currentThread());
+			if (start == null)
+				return;
 			count++;
-			duration += System.currentTimeMillis() - current;
-			current = 0;
+			duration += System.currentTimeMillis() - start.longValue();
 		}
 
 		/*
@@ -86,7 +89,7 @@ public class CheckersTimeStats {
 	 * @param id
 	 * @param counter
 	 */
-	public void checkerStart(String id, String counter) {
+	public synchronized void checkerStart(String id, String counter) {
 		TimeRecord record = getTimeRecord(id + ":" + counter); //$NON-NLS-1$
 		record.start();
 	}
@@ -95,7 +98,7 @@ public class CheckersTimeStats {
 	 * @param id
 	 * @param counter
 	 */
-	public void checkerStop(String id, String counter) {
+	public synchronized void checkerStop(String id, String counter) {
 		getTimeRecord(id + ":" + counter).stop(); //$NON-NLS-1$
 	}
 
@@ -117,7 +120,7 @@ public class CheckersTimeStats {
 	/**
 	 *
 	 */
-	public void printStats() {
+	public synchronized void printStats() {
 		System.out.println("---"); //$NON-NLS-1$
 		for (Iterator<String> iterator = records.keySet().iterator(); iterator.hasNext();) {
 			String id = iterator.next();
@@ -129,7 +132,7 @@ public class CheckersTimeStats {
 	/**
 	 *
 	 */
-	public void reset() {
+	public synchronized void reset() {
 		records.clear();
 	}
 }
@@ -10,6 +10,8 @@
  *******************************************************************************/
 package org.eclipse.cdt.codan.internal.core;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 
@@ -17,6 +19,7 @@ import org.eclipse.cdt.codan.core.CodanRuntime;
 import org.eclipse.cdt.codan.core.Messages;
 import org.eclipse.cdt.codan.core.model.AbstractProblemReporter;
 import org.eclipse.cdt.codan.core.model.ICodanProblemMarker;
+import org.eclipse.cdt.codan.core.model.IProblemReporter;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IWorkspaceRoot;
@@ -36,6 +39,7 @@ public class CodanApplication implements IApplication {
 	private Collection<String> projects = new ArrayList<String>();
 	private boolean verbose = false;
 	private boolean all = false;
+	private File cacheFile;
 
 	public Object start(IApplicationContext context) throws Exception {
 		String[] args = (String[]) context.getArguments().get("application.args"); //$NON-NLS-1$
@@ -46,14 +50,21 @@ public class CodanApplication implements IApplication {
 		extractArguments(args);
 		CodanBuilder codanBuilder = new CodanBuilder();
 		CodanRuntime runtime = CodanRuntime.getInstance();
-		runtime.setProblemReporter(new AbstractProblemReporter() {
+		IProblemReporter reporter = new AbstractProblemReporter() {
 			@Override
 			protected void reportProblem(ICodanProblemMarker pm) {
 				IResource file = pm.getResource();
 				System.out.println(file.getLocation() + ":" + pm.getLocation().getLineNumber() + ": " //$NON-NLS-1$ //$NON-NLS-2$
 						+ pm.createMessage());
 			}
-		});
+		};
+		CodanResultsCache cache = null;
+		if (cacheFile != null) {
+			cache = new CodanResultsCache(cacheFile);
+			reporter = cache.createProblemReporter(reporter);
+			codanBuilder.setResultsCache(cache);
+		}
+		runtime.setProblemReporter(reporter);
 		IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
 		if (all) {
 			log(Messages.CodanApplication_LogRunWorkspace);
@@ -70,6 +81,15 @@ public class CodanApplication implements IApplication {
 				codanBuilder.processResource(wProject, new NullProgressMonitor());
 			}
 		}
+		if (cache != null) {
+			System.out.println(NLS.bind(Messages.CodanApplication_CacheStatistics, new Object[] {
+					cache.getHits(), cache.getHits() + cache.getMisses(), cache.getSkippedFiles(), cache.getFiles() }));
+			try {
+				cache.save();
+			} catch (IOException e) {
+				System.err.println(NLS.bind(Messages.CodanApplication_Error_CannotWriteCache, cacheFile));
+			}
+		}
 		return EXIT_OK;
 	}
 
@@ -91,6 +111,8 @@ public class CodanApplication implements IApplication {
 				verbose = true;
 			} else if (string.equals("-all")) { //$NON-NLS-1$
 				all = true;
+			} else if (string.equals("-cache") && i + 1 < args.length) { //$NON-NLS-1$
+				cacheFile = new File(args[++i]);
 			} else {
 				projects.add(string);
 			}
@@ -105,6 +127,7 @@ public class CodanApplication implements IApplication {
 		System.out.println(Messages.CodanApplication_Options);
 		System.out.println(Messages.CodanApplication_all_option);
 		System.out.println(Messages.CodanApplication_verbose_option);
+		System.out.println(Messages.CodanApplication_cache_option);
 	}
 
 	public void stop() {
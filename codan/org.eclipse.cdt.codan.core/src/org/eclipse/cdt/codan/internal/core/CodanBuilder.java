@@ -11,7 +11,19 @@
  *******************************************************************************/
 package org.eclipse.cdt.codan.internal.core;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.cdt.codan.core.CodanCorePlugin;
 import org.eclipse.cdt.codan.core.Messages;
@@ -29,6 +41,7 @@ import org.eclipse.core.resources.IResourceDeltaVisitor;
 import org.eclipse.core.resources.IncrementalProjectBuilder;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.SubProgressMonitor;
 
@@ -41,6 +54,72 @@ public class CodanBuilder extends IncrementalProjectBuilder implements ICodanBui
 	 */
 	public static final String BUILDER_ID = "org.eclipse.cdt.codan.core.codanBuilder"; //$NON-NLS-1$
 
+	private static final int MAX_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+	private static final long CANCEL_POLL_INTERVAL = 100;
+
+	private static final ThreadPoolExecutor executor;
+	static {
+		ThreadFactory factory = new ThreadFactory() {
+			private int count;
+
+			public synchronized Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Code Analysis " + ++count); //$NON-NLS-1$
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+		// Idle threads terminate. When all threads are busy, the calling thread processes the
+		// file itself.
+		executor = new ThreadPoolExecutor(0, MAX_THREADS, 10, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+				factory, new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+
+	private static volatile boolean processFilesInParallel = MAX_THREADS > 1;
+	private volatile CodanResultsCache resultsCache;
+
+	/**
+	 * Enables or disables processing the files of a project in parallel, for testing and
+	 * benchmarking.
+	 *
+	 * @param parallel whether files may be processed in parallel
+	 */
+	public static void setParallel(boolean parallel) {
+		processFilesInParallel = parallel && MAX_THREADS > 1;
+	}
+
+	/**
+	 * Sets the cache to reuse the problems of unchanged files from, used by the headless code
+	 * analysis. The problem reporter of the cache needs to be installed in the runtime.
+	 *
+	 * @param cache the results cache, or <code>null</code> to analyze all files
+	 * @see CodanResultsCache#createProblemReporter(org.eclipse.cdt.codan.core.model.IProblemReporter)
+	 */
+	public void setResultsCache(CodanResultsCache cache) {
+		resultsCache = cache;
+	}
+
+	/**
+	 * Monitor passed to the worker threads, it reports cancellation only.
+	 */
+	private static class WorkerMonitor extends NullProgressMonitor {
+		private final IProgressMonitor parent;
+		private volatile boolean canceled;
+
+		WorkerMonitor(IProgressMonitor parent) {
+			this.parent = parent;
+		}
+
+		@Override
+		public boolean isCanceled() {
+			return canceled || parent.isCanceled();
+		}
+
+		@Override
+		public void setCanceled(boolean canceled) {
+			this.canceled = canceled;
+		}
+	}
+
 	private class CodanDeltaVisitor implements IResourceDeltaVisitor {
 		private IProgressMonitor monitor;
 
@@ -129,67 +208,242 @@ public class CodanBuilder extends IncrementalProjectBuilder implements ICodanBui
 		// System.err.println("processing " + resource);
 		monitor.beginTask(Messages.CodanBuilder_Code_Analysis_On + resource, checkers + memsize * tick);
 		try {
-			CheckersTimeStats.getInstance().checkerStart(CheckersTimeStats.ALL);
-			ICheckerInvocationContext context = new CheckerInvocationContext(resource);
-			try {
-				for (IChecker checker : chegistry) {
-					try {
+			if (!runCheckers(resource, monitor, model, checkerLaunchMode))
+				return;
+			if (resource instanceof IContainer
+					&& (checkerLaunchMode == CheckerLaunchMode.RUN_ON_FULL_BUILD || checkerLaunchMode == CheckerLaunchMode.RUN_ON_DEMAND)) {
+				if (processFilesInParallel) {
+					processMembersInParallel((IContainer) resource, new SubProgressMonitor(monitor, memsize * tick));
+					return;
+				}
+				try {
+					IResource[] members = ((IContainer) resource).members();
+					for (int i = 0; i < members.length; i++) {
 						if (monitor.isCanceled())
 							return;
-						if (doesCheckerSupportLaunchMode(checker, checkerLaunchMode)
-								&& checker.enabledInContext(resource)
-								&& chegistry.isCheckerEnabledForLaunchMode(checker, resource, checkerLaunchMode)) {
-							synchronized (checker) {
-								try {
-									checker.before(resource);
-									if (chegistry.isCheckerEnabled(checker, resource)) {
-										try {
-											CheckersTimeStats.getInstance().checkerStart(checker.getClass().getName());
-											if (checkerLaunchMode == CheckerLaunchMode.RUN_AS_YOU_TYPE) {
-												((IRunnableInEditorChecker) checker).processModel(model, context);
-											} else {
-												checker.processResource(resource, context);
-											}
-										} finally {
-											CheckersTimeStats.getInstance().checkerStop(checker.getClass().getName());
+						IResource member = members[i];
+						processResource(member, new SubProgressMonitor(monitor, tick));
+					}
+				} catch (CoreException e) {
+					CodanCorePlugin.log(e);
+				}
+			}
+		} finally {
+			monitor.done();
+		}
+	}
+
+	/**
+	 * Runs the checkers on a single resource, may be called on any thread. The checkers working
+	 * on the same resource run one after the other. A checker is locked while it processes a
+	 * resource, but not while the tasks it has deferred run, such that it can process other
+	 * resources in the meantime.
+	 *
+	 * @return <code>false</code> if the analysis was canceled.
+	 */
+	private boolean runCheckers(IResource resource, IProgressMonitor monitor, Object model, CheckerLaunchMode checkerLaunchMode) {
+		CheckersTimeStats.getInstance().checkerStart(CheckersTimeStats.ALL);
+		CheckersRegistry chegistry = CheckersRegistry.getInstance();
+		ICheckerInvocationContext context = new CheckerInvocationContext(resource);
+		DeferredCheckerTasks deferredTasks = new DeferredCheckerTasks();
+		context.add(deferredTasks);
+		// Checkers that have deferred tasks, their sessions end after the tasks have run.
+		List<IChecker> deferringCheckers = new ArrayList<IChecker>();
+		boolean completed = false;
+		try {
+			for (Iterator<IChecker> iterator = chegistry.iterator(); iterator.hasNext();) {
+				IChecker checker = iterator.next();
+				try {
+					if (monitor.isCanceled())
+						return false;
+					if (doesCheckerSupportLaunchMode(checker, checkerLaunchMode)
+							&& checker.enabledInContext(resource)
+							&& chegistry.isCheckerEnabledForLaunchMode(checker, resource, checkerLaunchMode)) {
+						synchronized (checker) {
+							try {
+								checker.before(resource);
+								if (chegistry.isCheckerEnabled(checker, resource) && !reportCachedProblems(checker, resource,
+										checkerLaunchMode, context)) {
+									boolean processed = false;
+									try {
+										CheckersTimeStats.getInstance().checkerStart(checker.getClass().getName());
+										if (checkerLaunchMode == CheckerLaunchMode.RUN_AS_YOU_TYPE) {
+											((IRunnableInEditorChecker) checker).processModel(model, context);
+										} else {
+											checker.processResource(resource, context);
 										}
+										processed = true;
+									} finally {
+										CheckersTimeStats.getInstance().checkerStop(checker.getClass().getName());
+										if (!processed && resultsCache != null)
+											resultsCache.discardProblems(checker, resource);
 									}
-								} finally {
+								}
+							} finally {
+								if (deferredTasks.hasTasks(checker)) {
+									deferringCheckers.add(checker);
+								} else {
 									checker.after(resource);
 								}
 							}
 						}
-						monitor.worked(1);
-					} catch (OperationCanceledException e) {
-						return;
-					} catch (Throwable e) {
-						CodanCorePlugin.log(e);
 					}
+					monitor.worked(1);
+				} catch (OperationCanceledException e) {
+					return false;
+				} catch (Throwable e) {
+					CodanCorePlugin.log(e);
 				}
-			} finally {
-				context.dispose();
-				CheckersTimeStats.getInstance().checkerStop(CheckersTimeStats.ALL);
-				//CheckersTimeStats.getInstance().printStats();
 			}
-			if (resource instanceof IContainer
-					&& (checkerLaunchMode == CheckerLaunchMode.RUN_ON_FULL_BUILD || checkerLaunchMode == CheckerLaunchMode.RUN_ON_DEMAND)) {
+			try {
+				deferredTasks.run();
+			} catch (OperationCanceledException e) {
+				return false;
+			}
+			completed = true;
+			return true;
+		} finally {
+			for (IChecker checker : deferringCheckers) {
 				try {
-					IResource[] members = ((IContainer) resource).members();
-					for (int i = 0; i < members.length; i++) {
-						if (monitor.isCanceled())
-							return;
-						IResource member = members[i];
-						processResource(member, new SubProgressMonitor(monitor, tick));
+					synchronized (checker) {
+						try {
+							if (!completed && resultsCache != null)
+								resultsCache.discardProblems(checker, resource);
+						} finally {
+							checker.after(resource);
+						}
 					}
-				} catch (CoreException e) {
+				} catch (Throwable e) {
 					CodanCorePlugin.log(e);
 				}
 			}
+			context.dispose();
+			CheckersTimeStats.getInstance().checkerStop(CheckersTimeStats.ALL);
+			//CheckersTimeStats.getInstance().printStats();
+		}
+	}
+
+	/**
+	 * Reports the problems the checker has found in an unchanged resource on a previous run,
+	 * if a results cache is used.
+	 *
+	 * @return <code>true</code> if the checker does not need to process the resource.
+	 */
+	private boolean reportCachedProblems(IChecker checker, IResource resource, CheckerLaunchMode checkerLaunchMode,
+			ICheckerInvocationContext context) {
+		CodanResultsCache cache = resultsCache;
+		if (cache == null || checkerLaunchMode == CheckerLaunchMode.RUN_AS_YOU_TYPE)
+			return false;
+		return cache.reportCachedProblems(checker, resource, context);
+	}
+
+	/**
+	 * Runs the checkers on all resources below the given container. The files are processed in
+	 * parallel, the checkers for the folders run on the calling thread. Does not return before
+	 * all the files have been processed or the analysis has been canceled.
+	 */
+	private void processMembersInParallel(IContainer container, IProgressMonitor monitor) {
+		final WorkerMonitor workerMonitor = new WorkerMonitor(monitor);
+		List<IResource> files = new ArrayList<IResource>();
+		try {
+			if (!collectMembers(container, files, workerMonitor))
+				return;
+		} catch (CoreException e) {
+			CodanCorePlugin.log(e);
+		}
+
+		monitor.beginTask(Messages.CodanBuilder_Code_Analysis_On + container, files.size());
+		CompletionService<IResource> service = new ExecutorCompletionService<IResource>(executor);
+		List<Future<IResource>> futures = new ArrayList<Future<IResource>>(files.size());
+		try {
+			for (final IResource file : files) {
+				if (workerMonitor.isCanceled())
+					return;
+				futures.add(service.submit(new Callable<IResource>() {
+					public IResource call() {
+						if (!workerMonitor.isCanceled())
+							runCheckers(file, workerMonitor, null, CheckerLaunchMode.RUN_ON_FULL_BUILD);
+						return file;
+					}
+				}));
+			}
+			for (int i = 0; i < futures.size(); i++) {
+				if (take(service, workerMonitor) == null)
+					return;
+				monitor.worked(1);
+			}
 		} finally {
+			workerMonitor.setCanceled(true);
+			waitFor(futures);
 			monitor.done();
 		}
 	}
 
+	/**
+	 * Runs the checkers for the folders below the container and collects the files to be processed.
+	 *
+	 * @return <code>false</code> if the analysis was canceled.
+	 */
+	private boolean collectMembers(IContainer container, List<IResource> files, IProgressMonitor monitor) throws CoreException {
+		IResource[] members = container.members();
+		for (int i = 0; i < members.length; i++) {
+			IResource member = members[i];
+			if (member instanceof IContainer) {
+				if (!runCheckers(member, monitor, null, CheckerLaunchMode.RUN_ON_FULL_BUILD))
+					return false;
+				if (!collectMembers((IContainer) member, files, monitor))
+					return false;
+			} else {
+				files.add(member);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Waits for the next file to be completed, returns <code>null</code> when the analysis is
+	 * canceled before.
+	 */
+	private static IResource take(CompletionService<IResource> service, IProgressMonitor monitor) {
+		boolean interrupted = false;
+		try {
+			while (!monitor.isCanceled()) {
+				try {
+					Future<IResource> future = service.poll(CANCEL_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+					if (future != null)
+						return future.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					// runCheckers() does not throw
+					CodanCorePlugin.log(e.getCause());
+					return null;
+				}
+			}
+			return null;
+		} finally {
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void waitFor(List<Future<IResource>> futures) {
+		boolean interrupted = false;
+		for (Future<IResource> future : futures) {
+			while (!future.isDone()) {
+				try {
+					future.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					// reported by take(), if at all
+				}
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
 	private boolean doesCheckerSupportLaunchMode(IChecker checker, CheckerLaunchMode mode) {
 		if (mode == CheckerLaunchMode.RUN_AS_YOU_TYPE)
 			return Checkers.canCheckerRunAsYouType(checker);
@@ -0,0 +1,475 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT project contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT project contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.codan.internal.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.cdt.codan.core.CodanCorePlugin;
+import org.eclipse.cdt.codan.core.CodanRuntime;
+import org.eclipse.cdt.codan.core.model.IChecker;
+import org.eclipse.cdt.codan.core.model.ICheckerInvocationContext;
+import org.eclipse.cdt.codan.core.model.ICodanDisposable;
+import org.eclipse.cdt.codan.core.model.IProblem;
+import org.eclipse.cdt.codan.core.model.IProblemLocation;
+import org.eclipse.cdt.codan.core.model.IProblemLocationFactory;
+import org.eclipse.cdt.codan.core.model.IProblemProfile;
+import org.eclipse.cdt.codan.core.model.IProblemReporter;
+import org.eclipse.cdt.codan.core.model.IProblemReporterSessionPersistent;
+import org.eclipse.cdt.codan.core.param.IProblemPreference;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.FrameworkUtil;
+
+/**
+ * Persistent cache of the problems found by the checkers, used by the headless code analysis.
+ * The problems a checker has found in a file are reused as long as the contents of the file,
+ * the files it depends on, the preferences of the checker and the version of its bundle are
+ * unchanged. Only checkers implementing {@link ICacheableChecker} take part, and only while
+ * they return a dependencies fingerprint. A file for which all checkers can reuse their
+ * problems is not analyzed at all.
+ * <p>
+ * The problems are recorded by the problem reporter created with
+ * {@link #createProblemReporter(IProblemReporter)}, which needs to be installed in the
+ * {@link CodanRuntime}. The cache is consulted by the {@link CodanBuilder} it has been passed to.
+ * <p>
+ * This class is thread-safe.
+ */
+public class CodanResultsCache {
+	private static final int VERSION = 2;
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private static class CachedProblem {
+		final String id;
+		final int startChar;
+		final int endChar;
+		final int line;
+		final String[] args;
+
+		CachedProblem(String id, int startChar, int endChar, int line, String[] args) {
+			this.id = id;
+			this.startChar = startChar;
+			this.endChar = endChar;
+			this.line = line;
+			this.args = args;
+		}
+	}
+
+	private static class Entry {
+		final String fingerprint;
+		final List<CachedProblem> problems;
+		boolean used;
+
+		Entry(String fingerprint, List<CachedProblem> problems) {
+			this.fingerprint = fingerprint;
+			this.problems = problems;
+		}
+	}
+
+	/**
+	 * State of the file being analyzed, stored in its invocation context.
+	 */
+	private class FileState implements ICodanDisposable {
+		String contentsHash;
+		boolean checked;
+		boolean analyzed;
+
+		public void dispose() {
+			if (checked) {
+				synchronized (CodanResultsCache.this) {
+					files++;
+					if (!analyzed)
+						skippedFiles++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reporter for the session of a checker on a resource, records the reported problems.
+	 */
+	private class Session implements IProblemReporterSessionPersistent {
+		private final IResource resource;
+		private final IChecker checker;
+		private String key;
+		private String fingerprint;
+		private List<CachedProblem> recorded;
+
+		Session(IResource resource, IChecker checker) {
+			this.resource = resource;
+			this.checker = checker;
+		}
+
+		public IResource getResource() {
+			return resource;
+		}
+
+		public IChecker getChecker() {
+			return checker;
+		}
+
+		void record(String key, String fingerprint) {
+			this.key = key;
+			this.fingerprint = fingerprint;
+			recorded = new ArrayList<CachedProblem>();
+		}
+
+		public void reportProblem(String problemId, IProblemLocation loc, Object... args) {
+			if (recorded != null)
+				recorded = add(recorded, problemId, loc, args);
+			reporter.reportProblem(problemId, loc, args);
+		}
+
+		private List<CachedProblem> add(List<CachedProblem> problems, String problemId, IProblemLocation loc,
+				Object[] args) {
+			if (!resource.equals(loc.getFile()) || loc.getData() != null)
+				return null;
+			String[] stringArgs = new String[args.length];
+			for (int i = 0; i < args.length; i++) {
+				if (!(args[i] instanceof String))
+					return null;
+				stringArgs[i] = (String) args[i];
+			}
+			problems.add(new CachedProblem(problemId, loc.getStartingChar(), loc.getEndingChar(),
+					loc.getLineNumber(), stringArgs));
+			return problems;
+		}
+
+		void replay(List<CachedProblem> problems) {
+			IProblemLocationFactory locFactory = CodanRuntime.getInstance().getProblemLocationFactory();
+			IFile file = (IFile) resource;
+			for (CachedProblem problem : problems) {
+				IProblemLocation loc;
+				if (problem.startChar < 0) {
+					loc = locFactory.createProblemLocation(file, problem.line);
+				} else {
+					loc = locFactory.createProblemLocation(file, problem.startChar, problem.endChar,
+							problem.line);
+				}
+				reporter.reportProblem(problem.id, loc, (Object[]) problem.args);
+			}
+		}
+
+		public IProblemReporterSessionPersistent createReporter(IResource resource, IChecker checker) {
+			return CodanResultsCache.this.createReporter(resource, checker);
+		}
+
+		public void start() {
+			// nothing to delete
+		}
+
+		public void done() {
+			synchronized (CodanResultsCache.this) {
+				List<Object> sessionKey = getSessionKey(checker, resource);
+				if (sessions.get(sessionKey) == this)
+					sessions.remove(sessionKey);
+				if (recorded != null) {
+					Entry entry = new Entry(fingerprint, recorded);
+					entry.used = true;
+					entries.put(key, entry);
+				}
+			}
+		}
+
+		public void deleteProblems(boolean all) {
+			// nothing to delete
+		}
+	}
+
+	private final File file;
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+	// The open sessions, keyed by checker and resource. Since a checker is not locked while its
+	// deferred tasks run, it may have sessions for several resources at the same time.
+	private final Map<List<Object>, Session> sessions = new HashMap<List<Object>, Session>();
+	private volatile IProblemReporter reporter;
+	private int hits;
+	private int misses;
+	private int files;
+	private int skippedFiles;
+
+	/**
+	 * Creates a cache stored in the given file, reads the file if it exists.
+	 *
+	 * @param file the file to store the cache in
+	 */
+	public CodanResultsCache(File file) {
+		this.file = file;
+		try {
+			load();
+		} catch (IOException e) {
+			entries.clear();
+			CodanCorePlugin.log(e);
+		}
+	}
+
+	/**
+	 * Creates a problem reporter that records the problems of the checkers for the cache and
+	 * passes all problems on to the given reporter.
+	 *
+	 * @param reporter the reporter to pass the problems to
+	 * @return the reporter to install in the {@link CodanRuntime}
+	 */
+	public IProblemReporter createProblemReporter(IProblemReporter reporter) {
+		this.reporter = reporter;
+		return new Session(null, null);
+	}
+
+	private synchronized IProblemReporterSessionPersistent createReporter(IResource resource, IChecker checker) {
+		Session session = new Session(resource, checker);
+		sessions.put(getSessionKey(checker, resource), session);
+		return session;
+	}
+
+	private static List<Object> getSessionKey(IChecker checker, IResource resource) {
+		return Arrays.asList(checker, resource);
+	}
+
+	/**
+	 * Reports the cached problems of the checker for the resource, if they are still valid. Has to
+	 * be called between {@link IChecker#before(IResource)} and {@link IChecker#after(IResource)}.
+	 * Otherwise, records the problems the checker is going to report.
+	 *
+	 * @return whether the cached problems have been reported, and the checker does not need to
+	 *         process the resource.
+	 */
+	public boolean reportCachedProblems(IChecker checker, IResource resource, ICheckerInvocationContext context) {
+		Session session;
+		synchronized (this) {
+			session = sessions.get(getSessionKey(checker, resource));
+		}
+		if (!(resource instanceof IFile) || session == null)
+			return false;
+		FileState state;
+		synchronized (context) {
+			state = context.get(FileState.class);
+			if (state == null) {
+				state = new FileState();
+				context.add(state);
+			}
+		}
+		state.checked = true;
+		String fingerprint = getFingerprint(checker, (IFile) resource, context, state);
+		String key = resource.getFullPath() + "\n" + getCheckerKey(checker); //$NON-NLS-1$
+		if (fingerprint != null) {
+			Entry entry;
+			synchronized (this) {
+				entry = entries.get(key);
+				if (entry != null && entry.fingerprint.equals(fingerprint)) {
+					entry.used = true;
+					hits++;
+				} else {
+					entry = null;
+					misses++;
+				}
+			}
+			if (entry != null) {
+				session.replay(entry.problems);
+				return true;
+			}
+			session.record(key, fingerprint);
+		}
+		state.analyzed = true;
+		return false;
+	}
+
+	/**
+	 * Discards the problems recorded for the checker in its session for the resource, because it
+	 * has not completed the analysis of the resource.
+	 */
+	public synchronized void discardProblems(IChecker checker, IResource resource) {
+		Session session = sessions.get(getSessionKey(checker, resource));
+		if (session != null)
+			session.recorded = null;
+	}
+
+	/**
+	 * Identifies the implementation of the checker by its class and the version of the bundle
+	 * contributing it, such that an update of the checker invalidates its cached problems.
+	 */
+	private static String getCheckerKey(IChecker checker) {
+		Class<?> checkerClass = checker.getClass();
+		Bundle bundle = FrameworkUtil.getBundle(checkerClass);
+		if (bundle == null)
+			return checkerClass.getName();
+		return checkerClass.getName() + ' ' + bundle.getSymbolicName() + '_' + bundle.getVersion();
+	}
+
+	private String getFingerprint(IChecker checker, IFile file, ICheckerInvocationContext context, FileState state) {
+		if (!(checker instanceof ICacheableChecker))
+			return null;
+		if (state.contentsHash == null) {
+			state.contentsHash = getContentsHash(file);
+			if (state.contentsHash == null)
+				return null;
+		}
+		String dependencies = ((ICacheableChecker) checker).getDependenciesFingerprint(file, context);
+		if (dependencies == null)
+			return null;
+		return state.contentsHash + ':' + dependencies + ':' + getPreferencesHash(checker, file);
+	}
+
+	private static String getContentsHash(IFile file) {
+		long h = FNV_OFFSET_BASIS;
+		try {
+			InputStream in = new BufferedInputStream(file.getContents(true));
+			try {
+				for (int b = in.read(); b != -1; b = in.read()) {
+					h = (h ^ b) * FNV_PRIME;
+				}
+			} finally {
+				in.close();
+			}
+		} catch (CoreException e) {
+			return null;
+		} catch (IOException e) {
+			return null;
+		}
+		return Long.toHexString(h);
+	}
+
+	/**
+	 * Hashes everything about the problems of the checker that the user can change.
+	 */
+	private static String getPreferencesHash(IChecker checker, IFile file) {
+		CheckersRegistry registry = CheckersRegistry.getInstance();
+		IProblemProfile profile = registry.getResourceProfile(file);
+		StringBuilder buf = new StringBuilder();
+		for (IProblem refProblem : registry.getRefProblems(checker)) {
+			IProblem problem = profile.findProblem(refProblem.getId());
+			if (problem == null)
+				continue;
+			buf.append(problem.getId()).append(problem.isEnabled()).append(problem.getSeverity());
+			buf.append(problem.getMessagePattern());
+			IProblemPreference preference = problem.getPreference();
+			if (preference != null)
+				buf.append(preference.exportValue());
+			buf.append('\n');
+		}
+		long h = FNV_OFFSET_BASIS;
+		for (int i = 0; i < buf.length(); i++) {
+			h = (h ^ buf.charAt(i)) * FNV_PRIME;
+		}
+		return Long.toHexString(h);
+	}
+
+	private void load() throws IOException {
+		DataInputStream in;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		} catch (FileNotFoundException e) {
+			return;
+		}
+		try {
+			if (in.readInt() != VERSION)
+				return;
+			for (int n = in.readInt(); n > 0; n--) {
+				String key = in.readUTF();
+				String fingerprint = in.readUTF();
+				int count = in.readInt();
+				List<CachedProblem> problems = new ArrayList<CachedProblem>(count);
+				for (int i = 0; i < count; i++) {
+					String id = in.readUTF();
+					int startChar = in.readInt();
+					int endChar = in.readInt();
+					int line = in.readInt();
+					String[] args = new String[in.readInt()];
+					for (int j = 0; j < args.length; j++) {
+						args[j] = in.readUTF();
+					}
+					problems.add(new CachedProblem(id, startChar, endChar, line, args));
+				}
+				entries.put(key, new Entry(fingerprint, problems));
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes the cache to its file. Entries not used or created since the cache was read are
+	 * dropped.
+	 */
+	public synchronized void save() throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			for (Iterator<Entry> iterator = entries.values().iterator(); iterator.hasNext();) {
+				if (!iterator.next().used)
+					iterator.remove();
+			}
+			out.writeInt(VERSION);
+			out.writeInt(entries.size());
+			for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+				Entry entry = mapEntry.getValue();
+				out.writeUTF(mapEntry.getKey());
+				out.writeUTF(entry.fingerprint);
+				out.writeInt(entry.problems.size());
+				for (CachedProblem problem : entry.problems) {
+					out.writeUTF(problem.id);
+					out.writeInt(problem.startChar);
+					out.writeInt(problem.endChar);
+					out.writeInt(problem.line);
+					out.writeInt(problem.args.length);
+					for (String arg : problem.args) {
+						out.writeUTF(arg);
+					}
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * @return the number of times the problems of a checker for a file have been reused.
+	 */
+	public synchronized int getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return the number of times a checker had to process a file it could have reused the
+	 *         problems for, had the file and its dependencies been unchanged.
+	 */
+	public synchronized int getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return the number of files checked while using the cache.
+	 */
+	public synchronized int getFiles() {
+		return files;
+	}
+
+	/**
+	 * @return the number of files none of the checkers had to process.
+	 */
+	public synchronized int getSkippedFiles() {
+		return skippedFiles;
+	}
+}
@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT project contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT project contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.codan.internal.core;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.cdt.codan.core.CodanCorePlugin;
+import org.eclipse.cdt.codan.core.model.IChecker;
+import org.eclipse.cdt.codan.core.model.ICodanDisposable;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+/**
+ * Tasks that checkers defer until all checkers have processed a resource, such that the work
+ * of several checkers can be combined. The builder adds an instance to the invocation context
+ * of every resource it processes. A checker that has deferred a task keeps its session open
+ * until the tasks have run, so the tasks can report problems on behalf of the checker:
+ * {@link IChecker#after(org.eclipse.core.resources.IResource)} is called only afterwards.
+ * <p>
+ * The checker is not locked while the tasks run, it may process other resources on other
+ * threads in the meantime. Therefore a task must not use the fields of the checker, but a
+ * snapshot of the state it needs, taken when the task was deferred.
+ * <p>
+ * This class is thread-safe.
+ */
+public class DeferredCheckerTasks implements ICodanDisposable {
+	private final Set<IChecker> checkers = new HashSet<IChecker>();
+	private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+	/**
+	 * Defers a task on behalf of a checker. A task that is deferred by several checkers runs
+	 * only once.
+	 *
+	 * @param checker the checker the task works for
+	 * @param task the task to run after all checkers have processed the resource
+	 */
+	public synchronized void add(IChecker checker, Runnable task) {
+		checkers.add(checker);
+		if (!tasks.contains(task))
+			tasks.add(task);
+	}
+
+	/**
+	 * @param checker a checker
+	 * @return whether the checker has deferred a task that has not yet run.
+	 */
+	public synchronized boolean hasTasks(IChecker checker) {
+		return checkers.contains(checker);
+	}
+
+	/**
+	 * Runs the deferred tasks, failures are logged.
+	 *
+	 * @throws OperationCanceledException if a task was canceled.
+	 */
+	public void run() throws OperationCanceledException {
+		List<Runnable> toRun;
+		synchronized (this) {
+			toRun = new ArrayList<Runnable>(tasks);
+			tasks.clear();
+			checkers.clear();
+		}
+		for (Runnable task : toRun) {
+			try {
+				task.run();
+			} catch (OperationCanceledException e) {
+				throw e;
+			} catch (Throwable e) {
+				CodanCorePlugin.log(e);
+			}
+		}
+	}
+
+	public synchronized void dispose() {
+		tasks.clear();
+		checkers.clear();
+	}
+}
@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT project contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT project contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.codan.internal.core;
+
+import org.eclipse.cdt.codan.core.model.ICheckerInvocationContext;
+import org.eclipse.core.resources.IFile;
+
+/**
+ * Implemented by checkers whose problems for a file depend only on the contents of the file,
+ * the contents of the files it depends on and the preferences of the checker. The problems
+ * of such a checker can be reused from the {@link CodanResultsCache} while none of them has
+ * changed.
+ */
+public interface ICacheableChecker {
+	/**
+	 * Computes a fingerprint of the files the problems of the checker for the given file depend
+	 * on, not including the file itself, and of the configuration the file is analyzed with.
+	 *
+	 * @param file the file to be checked
+	 * @param context the invocation context of the file, can be used to share the fingerprint
+	 *        between checkers
+	 * @return the fingerprint, or <code>null</code> if it cannot be computed reliably or the
+	 *         problems of the checker must not be cached.
+	 */
+	String getDependenciesFingerprint(IFile file, ICheckerInvocationContext context);
+}
@@ -9522,4 +9522,33 @@ public class AST2CPPTests extends AST2BaseTest {
 		ICPPClassType c= bh.assertNonProblem("A", 1);
 		assertEquals(0, ClassTypeHelper.getPureVirtualMethods(c).length);
 	}
+
+	//	struct A { int x; typedef int T; };
+	//	struct B : A {};
+	//	struct C : A {};
+	//	struct D : B, C {};
+	//	void f(B* b, D* d) {
+	//	  b->x; // 1
+	//	  b->x; // 2
+	//	  B::T t1;
+	//	  B::T t2;
+	//	  B::A a1;
+	//	  B::A a2;
+	//	  d->x; // 3
+	//	  d->x; // 4
+	//	}
+	public void testRepeatedLookupInBaseClasses() throws Exception {
+		BindingAssertionHelper bh= getAssertionHelper();
+		ICPPField x1= bh.assertNonProblem("x; // 1", 1);
+		ICPPField x2= bh.assertNonProblem("x; // 2", 1);
+		assertSame(x1, x2);
+		ITypedef t1= bh.assertNonProblem("T t1", 1);
+		ITypedef t2= bh.assertNonProblem("T t2", 1);
+		assertSame(t1, t2);
+		ICPPClassType a1= bh.assertNonProblem("A a1", 1);
+		ICPPClassType a2= bh.assertNonProblem("A a2", 1);
+		assertSame(a1, a2);
+		bh.assertProblem("x; // 3", 1);
+		bh.assertProblem("x; // 4", 1);
+	}
 }
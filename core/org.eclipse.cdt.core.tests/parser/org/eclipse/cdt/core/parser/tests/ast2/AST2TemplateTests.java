@@ -45,6 +45,7 @@ import org.eclipse.cdt.core.dom.ast.IPointerType;
 import org.eclipse.cdt.core.dom.ast.IProblemBinding;
 import org.eclipse.cdt.core.dom.ast.IQualifierType;
 import org.eclipse.cdt.core.dom.ast.IScope;
+import org.eclipse.cdt.core.dom.ast.ISemanticProblem;
 import org.eclipse.cdt.core.dom.ast.IType;
 import org.eclipse.cdt.core.dom.ast.ITypedef;
 import org.eclipse.cdt.core.dom.ast.IVariable;
@@ -87,6 +88,7 @@ import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPASTNameBase;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.ICPPDeferredClassInstance;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.ICPPInternalUnknownScope;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.ICPPUnknownBinding;
+import org.eclipse.cdt.internal.core.dom.parser.cpp.semantics.CPPTemplates;
 
 public class AST2TemplateTests extends AST2BaseTest {
 	
@@ -5513,4 +5515,43 @@ public class AST2TemplateTests extends AST2BaseTest {
 	public void testReferenceToParameterOfTemplateTemplateParameter_357308() throws Exception {
 		parseAndCheckBindings();
 	}
+
+	//	template<typename T> struct A {};
+	//	A<int> a1;
+	//	A<char> a2;
+	public void testInstantiationBudget() throws Exception {
+		boolean exceeded;
+		CPPTemplates.beginInstantiationBudget(1);
+		try {
+			BindingAssertionHelper bh= getAssertionHelper();
+			bh.assertNonProblem("A<int>", 6, ICPPTemplateInstance.class);
+			IProblemBinding problem= bh.assertProblem("A<char>", 7);
+			assertEquals(ISemanticProblem.BINDING_INSTANTIATION_BUDGET_EXCEEDED, problem.getID());
+		} finally {
+			exceeded= CPPTemplates.endInstantiationBudget();
+		}
+		assertTrue(exceeded);
+	}
+
+	//	template<typename T> struct A {};
+	//	template<typename T> struct A<T*> { typedef T type; };
+	//	A<int*>::type x1;
+	//	A<int*>::type x2;
+	//	A<int>  x3;
+	public void testMemoizedSelectionOfPartialSpecialization() throws Exception {
+		boolean exceeded;
+		CPPTemplates.beginInstantiationBudget(0);
+		try {
+			BindingAssertionHelper bh= getAssertionHelper();
+			ICPPTemplateInstance i1= bh.assertNonProblem("A<int*>::type x1", 7);
+			ICPPTemplateInstance i2= bh.assertNonProblem("A<int*>::type x2", 7);
+			ICPPTemplateInstance i3= bh.assertNonProblem("A<int>", 6);
+			assertSame(i1, i2);
+			assertTrue(i1.getTemplateDefinition() instanceof ICPPClassTemplatePartialSpecialization);
+			assertFalse(i3.getTemplateDefinition() instanceof ICPPClassTemplatePartialSpecialization);
+		} finally {
+			exceeded= CPPTemplates.endInstantiationBudget();
+		}
+		assertFalse(exceeded);
+	}
 }
@@ -0,0 +1,233 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT project contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT project contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.core.parser.tests.ast2;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Test;
+
+import org.eclipse.cdt.core.dom.ast.ASTGenericVisitor;
+import org.eclipse.cdt.core.dom.ast.IASTNode;
+import org.eclipse.cdt.core.dom.ast.IASTTranslationUnit;
+import org.eclipse.cdt.core.dom.ast.gnu.c.GCCLanguage;
+import org.eclipse.cdt.core.dom.ast.gnu.cpp.GPPLanguage;
+import org.eclipse.cdt.core.model.ILanguage;
+import org.eclipse.cdt.core.parser.FileContent;
+import org.eclipse.cdt.core.parser.IncludeFileContentProvider;
+import org.eclipse.cdt.core.parser.NullLogService;
+import org.eclipse.cdt.core.parser.ScannerInfo;
+import org.eclipse.cdt.core.parser.util.ArrayUtil;
+import org.eclipse.cdt.core.testplugin.CTestPlugin;
+import org.eclipse.cdt.core.testplugin.util.BaseTestCase;
+import org.eclipse.cdt.core.testplugin.util.TestSourceReader;
+import org.eclipse.cdt.internal.core.dom.parser.c.CASTCompoundStatement;
+import org.eclipse.cdt.internal.core.dom.parser.c.CASTExpressionList;
+import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPASTCompoundStatement;
+import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPASTExpressionList;
+import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPASTTemplateId;
+
+/**
+ * Measures the heap used by the ASTs of the code snippets of the parser tests, parsed with
+ * the options used by the indexer. The numbers are printed to the console.
+ * <p>
+ * The nodes that trim their child arrays in place are checked in addition: the size of their
+ * child arrays is compared with the size of the arrays they would retain without trimming,
+ * which is obtained by replaying the appends of the parser. The test fails if any of these
+ * arrays is not trimmed.
+ */
+public class ASTHeapUsageTest extends BaseTestCase {
+	private static final int INDEXER_OPTIONS= ILanguage.OPTION_NO_IMAGE_LOCATIONS
+			| ILanguage.OPTION_SKIP_TRIVIAL_EXPRESSIONS_IN_AGGREGATE_INITIALIZERS;
+
+	// Shallow size of arrays on a 64-bit VM with compressed references.
+	private static final int ARRAY_HEADER_SIZE= 16;
+	private static final int REFERENCE_SIZE= 4;
+
+	// The nodes that trim their child arrays in place, and the fields holding the arrays.
+	private static final Class<?>[] TRIMMED_NODES= {
+		CASTCompoundStatement.class, CASTExpressionList.class, CPPASTCompoundStatement.class,
+		CPPASTExpressionList.class, CPPASTTemplateId.class
+	};
+	private static final String[] TRIMMED_FIELDS= {
+		"statements", "expressions", "statements", "expressions", "templateArguments"
+	};
+
+	private static final class NodeCounter extends ASTGenericVisitor {
+		int fCount;
+
+		NodeCounter() {
+			super(true);
+		}
+
+		@Override
+		protected int genericVisit(IASTNode node) {
+			fCount++;
+			return PROCESS_CONTINUE;
+		}
+	}
+
+	/**
+	 * Sums up the size of the child arrays of the nodes that trim them in place, and the size
+	 * of the arrays they would retain without trimming.
+	 */
+	private static final class ChildArraySizes extends ASTGenericVisitor {
+		long fUntrimmedSize;
+		long fSize;
+		String fUntrimmed;
+
+		ChildArraySizes() {
+			super(true);
+		}
+
+		@Override
+		protected int genericVisit(IASTNode node) {
+			for (int i = 0; i < TRIMMED_NODES.length; i++) {
+				if (node.getClass() == TRIMMED_NODES[i]) {
+					try {
+						add(node, TRIMMED_FIELDS[i]);
+					} catch (Exception e) {
+						throw new RuntimeException(e);
+					}
+					break;
+				}
+			}
+			return PROCESS_CONTINUE;
+		}
+
+		private void add(IASTNode node, String fieldName) throws Exception {
+			final Field field= node.getClass().getDeclaredField(fieldName);
+			field.setAccessible(true);
+			final Object[] array= (Object[]) field.get(node);
+			if (array != null && array.length > 0 && array[array.length - 1] == null && fUntrimmed == null) {
+				fUntrimmed= node.getClass().getSimpleName() + "." + fieldName;
+			}
+			fSize+= arraySize(array);
+
+			// replay the appends, starting with the array of a new node.
+			final Constructor<?> ctor= node.getClass().getConstructor();
+			Object[] untrimmed= (Object[]) field.get(ctor.newInstance());
+			if (untrimmed != null) {
+				untrimmed= untrimmed.clone();
+			}
+			if (array != null) {
+				for (Object child : array) {
+					untrimmed= ArrayUtil.append(field.getType().getComponentType(), untrimmed, child);
+				}
+			}
+			fUntrimmedSize+= arraySize(untrimmed);
+		}
+
+		private static long arraySize(Object[] array) {
+			if (array == null)
+				return 0;
+			return (ARRAY_HEADER_SIZE + array.length * REFERENCE_SIZE + 7) & ~7;
+		}
+	}
+
+	public static Test suite() {
+		return suite(ASTHeapUsageTest.class);
+	}
+
+	public void testHeapUsage() throws Exception {
+		measure(AST2Tests.class, false);
+		measure(AST2CPPTests.class, true);
+		measure(AST2TemplateTests.class, true);
+		measure(AST2CPPSpecTest.class, true);
+	}
+
+	private void measure(Class<?> testClass, boolean cpp) throws Exception {
+		List<String> snippets= getSnippets(testClass);
+
+		// warm up
+		parse(snippets, cpp);
+
+		final long before= memoryUsed();
+		final long start= System.currentTimeMillis();
+		List<IASTTranslationUnit> asts= parse(snippets, cpp);
+		final long parseTime= System.currentTimeMillis() - start;
+		final long heap= memoryUsed() - before;
+
+		NodeCounter counter= new NodeCounter();
+		final long visitStart= System.currentTimeMillis();
+		for (IASTTranslationUnit ast : asts) {
+			ast.accept(counter);
+		}
+		final long visitTime= System.currentTimeMillis() - visitStart;
+
+		ChildArraySizes arrays= new ChildArraySizes();
+		for (IASTTranslationUnit ast : asts) {
+			ast.accept(arrays);
+		}
+
+		System.out.println(testClass.getSimpleName() + ": " + asts.size() + " snippets, "
+				+ counter.fCount + " nodes, " + heap / 1024 + "KB heap, "
+				+ (counter.fCount == 0 ? 0 : heap / counter.fCount) + " bytes per node, parsed in "
+				+ parseTime + "ms, visited in " + visitTime + "ms, trimmed child arrays "
+				+ arrays.fSize + " bytes (untrimmed " + arrays.fUntrimmedSize + " bytes)");
+		assertFalse(asts.isEmpty());
+		assertNull(testClass.getSimpleName() + ": untrimmed child array", arrays.fUntrimmed);
+		assertTrue(testClass.getSimpleName() + ": child arrays grew", arrays.fSize <= arrays.fUntrimmedSize);
+	}
+
+	private List<String> getSnippets(Class<?> testClass) throws IOException {
+		List<String> result= new ArrayList<String>();
+		for (Method method : testClass.getMethods()) {
+			final String name= method.getName();
+			if (name.startsWith("test") && method.getParameterTypes().length == 0) {
+				try {
+					StringBuilder[] contents= TestSourceReader.getContentsForTest(
+							CTestPlugin.getDefault().getBundle(), "parser", testClass, name, 1);
+					if (contents.length > 0 && contents[0].length() > 0) {
+						result.add(contents[0].toString());
+					}
+				} catch (IOException e) {
+					// test without code snippet
+				}
+			}
+		}
+		return result;
+	}
+
+	private List<IASTTranslationUnit> parse(List<String> snippets, boolean cpp) throws Exception {
+		final ILanguage language= cpp ? GPPLanguage.getDefault() : GCCLanguage.getDefault();
+		final String fileName= cpp ? "snippet.cpp" : "snippet.c";
+		List<IASTTranslationUnit> result= new ArrayList<IASTTranslationUnit>(snippets.size());
+		for (String code : snippets) {
+			FileContent content= FileContent.create(fileName, code.toCharArray());
+			IASTTranslationUnit ast= language.getASTTranslationUnit(content, new ScannerInfo(),
+					IncludeFileContentProvider.getEmptyFilesProvider(), null, INDEXER_OPTIONS,
+					new NullLogService());
+			if (ast != null) {
+				result.add(ast);
+			}
+		}
+		return result;
+	}
+
+	private long memoryUsed() throws InterruptedException {
+		final Runtime runtime= Runtime.getRuntime();
+		long mem= runtime.totalMemory() - runtime.freeMemory();
+		long newMem= mem;
+		int i= 0;
+		do {
+			Thread.sleep(50);
+			System.gc();
+			mem= newMem;
+			newMem= runtime.totalMemory() - runtime.freeMemory();
+		} while (newMem < mem && ++i < 5);
+		return mem;
+	}
+}
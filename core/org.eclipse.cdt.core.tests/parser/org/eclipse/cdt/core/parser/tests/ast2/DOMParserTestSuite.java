@@ -55,6 +55,7 @@ public class DOMParserTestSuite extends TestCase {
 		suite.addTest(LanguageExtensionsTest.suite());
 		suite.addTest(ASTInactiveCodeTests.suite());
 		suite.addTest(AccessControlTests.suite());
+		suite.addTest(ASTHeapUsageTest.suite());
 		return suite;
 	}
 }
@@ -12,20 +12,31 @@
  *******************************************************************************/
 package org.eclipse.cdt.core.parser.tests.scanner;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.util.Collections;
 
 import junit.framework.TestSuite;
 
+import org.eclipse.cdt.core.dom.ast.IASTPreprocessorIncludeStatement;
+import org.eclipse.cdt.core.dom.parser.cpp.GPPScannerExtensionConfiguration;
+import org.eclipse.cdt.core.index.IIndexFileLocation;
 import org.eclipse.cdt.core.model.ICProject;
 import org.eclipse.cdt.core.parser.ExtendedScannerInfo;
 import org.eclipse.cdt.core.parser.FileContent;
 import org.eclipse.cdt.core.parser.IScannerInfo;
 import org.eclipse.cdt.core.parser.IToken;
+import org.eclipse.cdt.core.parser.NullLogService;
 import org.eclipse.cdt.core.parser.ParserLanguage;
 import org.eclipse.cdt.core.parser.ParserMode;
 import org.eclipse.cdt.core.parser.ScannerInfo;
 import org.eclipse.cdt.core.testplugin.CProjectHelper;
 import org.eclipse.cdt.core.testplugin.util.TestSourceReader;
+import org.eclipse.cdt.internal.core.parser.scanner.CPreprocessor;
+import org.eclipse.cdt.internal.core.parser.scanner.IncludeResolutionCache;
+import org.eclipse.cdt.internal.core.parser.scanner.InternalFileContent;
+import org.eclipse.cdt.internal.core.parser.scanner.InternalFileContentProvider;
+import org.eclipse.cdt.internal.core.parser.scanner.LocationMap;
 import org.eclipse.cdt.internal.core.pdom.indexer.PDOMNullIndexer;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
@@ -278,4 +289,156 @@ public class InclusionTests extends PreprocessorTestsBase {
     	validateInteger("1");
     	validateEOF();
     }
+
+    // #include "guarded.h"
+    // #include "guarded.h"
+    // #include "once.h"
+    // #include "once.h"
+    // #include "unguarded.h"
+    // #include "unguarded.h"
+    // #include "else.h"
+    // #include "else.h"
+    public void testIncludeGuards() throws Exception {
+    	importFile("guarded.h", "#ifndef GUARDED_H\n#define GUARDED_H\ng\n#endif\n");
+    	importFile("once.h", "#pragma once\no\n");
+    	importFile("unguarded.h", "#ifndef UNGUARDED_H\n#define UNGUARDED_H\n#endif\nu\n");
+    	importFile("else.h", "#ifndef ELSE_H\n#define ELSE_H\n#else\ne\n#endif\n");
+    	IFile base = importFile("base.cpp", getAboveComment());
+
+    	FileContent reader= FileContent.create(base);
+    	initializeScanner(reader, ParserLanguage.CPP, ParserMode.COMPLETE_PARSE, new ScannerInfo());
+    	validateIdentifier("g");
+    	validateIdentifier("o");
+    	validateIdentifier("u");
+    	validateIdentifier("u");
+    	validateIdentifier("e");
+    	validateEOF();
+    	// the second inclusions of guarded.h and once.h are skipped
+    	assertEquals(2, ((LocationMap) fLocationResolver).getSkippedGuardedInclusionsCount());
+    	assertEquals(8, fLocationResolver.getIncludeDirectives().length);
+    	for (IASTPreprocessorIncludeStatement include : fLocationResolver.getIncludeDirectives()) {
+    		assertTrue(include.isResolved());
+    	}
+    }
+
+    // #include "guarded.h"
+    // #undef GUARDED_H
+    // #include "guarded.h"
+    public void testUndefinedIncludeGuard() throws Exception {
+    	importFile("guarded.h", "#ifndef GUARDED_H\n#define GUARDED_H\ng\n#endif\n");
+    	IFile base = importFile("base.cpp", getAboveComment());
+
+    	FileContent reader= FileContent.create(base);
+    	initializeScanner(reader, ParserLanguage.CPP, ParserMode.COMPLETE_PARSE, new ScannerInfo());
+    	validateIdentifier("g");
+    	validateIdentifier("g");
+    	validateEOF();
+    	assertEquals(0, ((LocationMap) fLocationResolver).getSkippedGuardedInclusionsCount());
+    }
+
+    private void initializeScannerWithResolutionCache(FileContent input, IScannerInfo scannerInfo) {
+    	InternalFileContentProvider provider= new InternalFileContentProvider() {
+			@Override
+			public InternalFileContent getContentForInclusion(String path) {
+				return (InternalFileContent) FileContent.createForExternalFileLocation(path);
+			}
+			@Override
+			public InternalFileContent getContentForInclusion(IIndexFileLocation ifl, String astPath) {
+				return null;
+			}
+		};
+		provider.setIncludeResolutionCache(IncludeResolutionCache.getInstance());
+		fScanner= new CPreprocessor(input, scannerInfo, ParserLanguage.CPP, new NullLogService(),
+				GPPScannerExtensionConfiguration.getInstance(scannerInfo), provider);
+		fLocationResolver= fScanner.getLocationMap();
+    }
+
+    // #include <cached.h>
+    // c
+    public void testIncludeResolutionCache() throws Exception {
+    	IFolder inc1= importFolder("inc1");
+    	IFolder inc2= importFolder("inc2");
+    	IFile base= importFile("base.cpp", getAboveComment());
+    	String[] path= {inc1.getLocation().toOSString(), inc2.getLocation().toOSString()};
+    	IScannerInfo scannerInfo= new ExtendedScannerInfo(Collections.EMPTY_MAP, path, new String[]{}, null);
+
+    	// the failed lookup is cached
+    	initializeScannerWithResolutionCache(FileContent.create(base), scannerInfo);
+    	validateIdentifier("c");
+    	validateEOF();
+    	assertFalse(fLocationResolver.getIncludeDirectives()[0].isResolved());
+
+    	// adding a file invalidates the cache
+    	importFile("inc2/cached.h", "two\n");
+    	initializeScannerWithResolutionCache(FileContent.create(base), scannerInfo);
+    	validateIdentifier("two");
+    	validateIdentifier("c");
+    	validateEOF();
+
+    	importFile("inc1/cached.h", "one\n");
+    	initializeScannerWithResolutionCache(FileContent.create(base), scannerInfo);
+    	validateIdentifier("one");
+    	validateIdentifier("c");
+    	validateEOF();
+
+    	// a cached location is verified before it is used
+    	new File(inc1.getFile("cached.h").getLocation().toOSString()).delete();
+    	initializeScannerWithResolutionCache(FileContent.create(base), scannerInfo);
+    	validateIdentifier("two");
+    	validateIdentifier("c");
+    	validateEOF();
+    }
+
+    // #include <output.h>
+    // c
+    public void testIncludeResolutionCacheIgnoresBuildOutputs() throws Exception {
+    	IFolder inc= importFolder("inc3");
+    	IFile base= importFile("base3.cpp", getAboveComment());
+    	String[] path= {inc.getLocation().toOSString()};
+    	IScannerInfo scannerInfo= new ExtendedScannerInfo(Collections.EMPTY_MAP, path, new String[]{}, null);
+
+    	initializeScannerWithResolutionCache(FileContent.create(base), scannerInfo);
+    	validateIdentifier("c");
+    	validateEOF();
+
+    	// the header is created behind the back of the workspace, adding a build output keeps
+    	// the failed lookup in the cache.
+    	FileOutputStream out= new FileOutputStream(new File(inc.getLocation().toOSString(), "output.h"));
+    	try {
+    		out.write("o\n".getBytes());
+    	} finally {
+    		out.close();
+    	}
+    	importFile("inc3/output.o", "");
+    	initializeScannerWithResolutionCache(FileContent.create(base), scannerInfo);
+    	validateIdentifier("c");
+    	validateEOF();
+
+    	// adding a header invalidates the cache
+    	importFile("inc3/other.h", "");
+    	initializeScannerWithResolutionCache(FileContent.create(base), scannerInfo);
+    	validateIdentifier("o");
+    	validateIdentifier("c");
+    	validateEOF();
+    }
+
+    // #include <vector>
+    // c
+    public void testIncludeResolutionCacheExtensionlessHeader() throws Exception {
+    	IFolder inc= importFolder("inc4");
+    	IFile base= importFile("base4.cpp", getAboveComment());
+    	String[] path= {inc.getLocation().toOSString()};
+    	IScannerInfo scannerInfo= new ExtendedScannerInfo(Collections.EMPTY_MAP, path, new String[]{}, null);
+
+    	initializeScannerWithResolutionCache(FileContent.create(base), scannerInfo);
+    	validateIdentifier("c");
+    	validateEOF();
+
+    	// adding a header without extension invalidates the failed lookup
+    	importFile("inc4/vector", "v\n");
+    	initializeScannerWithResolutionCache(FileContent.create(base), scannerInfo);
+    	validateIdentifier("v");
+    	validateIdentifier("c");
+    	validateEOF();
+    }
 }
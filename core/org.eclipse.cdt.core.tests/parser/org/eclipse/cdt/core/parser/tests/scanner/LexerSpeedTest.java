@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT project contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT project contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.core.parser.tests.scanner;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.cdt.core.parser.IToken;
+import org.eclipse.cdt.core.parser.util.CharArraySet;
+import org.eclipse.cdt.internal.core.parser.scanner.AbstractCharArray;
+import org.eclipse.cdt.internal.core.parser.scanner.FileCharArray;
+import org.eclipse.cdt.internal.core.parser.scanner.ILexerLog;
+import org.eclipse.cdt.internal.core.parser.scanner.Lexer;
+import org.eclipse.cdt.internal.core.parser.scanner.Lexer.LexerOptions;
+
+/**
+ * Measures the time needed to lex the headers found in a directory, by default
+ * <code>/usr/include</code>. Another directory can be specified with the system property
+ * <code>speedTest.headers</code>.
+ */
+public class LexerSpeedTest {
+	private static final int MAX_FILES= 2000;
+
+	public static void main(String[] args) {
+		try {
+			new LexerSpeedTest().runTest(10);
+		} catch (Exception e) {
+			System.out.println(e);
+		}
+	}
+
+	public void test() throws Exception {
+		runTest(5);
+	}
+
+	private void runTest(int n) throws Exception {
+		File dir= new File(System.getProperty("speedTest.headers", "/usr/include"));
+		List<File> files= new ArrayList<File>();
+		collectHeaders(dir, files);
+		if (files.isEmpty()) {
+			System.out.println("No headers found in " + dir);
+			return;
+		}
+
+		List<AbstractCharArray> contents= new ArrayList<AbstractCharArray>();
+		for (File file : files) {
+			InputStream in= new FileInputStream(file);
+			try {
+				contents.add(FileCharArray.create(file.getPath(), "utf-8", in));
+			} finally {
+				in.close();
+			}
+		}
+
+		long totalTime= 0;
+		long totalTimeShared= 0;
+		for (int i = 0; i < n; ++i) {
+			long time= testLex(contents, false);
+			long timeShared= testLex(contents, true);
+			if (i > 0) {
+				totalTime+= time;
+				totalTimeShared+= timeShared;
+			}
+		}
+		if (n > 1) {
+			System.out.println("Lexing " + files.size() + " headers, average time: " + (totalTime / (n - 1)) +
+					" millisecs, with shared identifiers: " + (totalTimeShared / (n - 1)) + " millisecs");
+		}
+	}
+
+	private long testLex(List<AbstractCharArray> contents, boolean shareIdentifiers) throws Exception {
+		final LexerOptions options= new LexerOptions();
+		final CharArraySet identifiers= shareIdentifiers ? new CharArraySet(1024) : null;
+		long startTime= System.currentTimeMillis();
+		int count= 0;
+		for (AbstractCharArray content : contents) {
+			Lexer lexer= new Lexer(content, options, ILexerLog.NULL, null);
+			if (identifiers != null) {
+				lexer.setIdentifierTable(identifiers);
+			}
+			while (lexer.nextToken().getType() != IToken.tEND_OF_INPUT) {
+				count++;
+			}
+		}
+		long totalTime= System.currentTimeMillis() - startTime;
+		System.out.println("Resulting lexing took " + totalTime + " millisecs " + count + " tokens");
+		return totalTime;
+	}
+
+	private void collectHeaders(File dir, List<File> result) {
+		File[] children= dir.listFiles();
+		if (children == null)
+			return;
+
+		for (File child : children) {
+			if (result.size() >= MAX_FILES)
+				return;
+			if (child.isDirectory()) {
+				collectHeaders(child, result);
+			} else if (child.getName().endsWith(".h")) {
+				result.add(child);
+			}
+		}
+	}
+}
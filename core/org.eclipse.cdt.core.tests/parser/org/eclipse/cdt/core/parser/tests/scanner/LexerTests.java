@@ -16,6 +16,7 @@ import org.eclipse.cdt.core.parser.IGCCToken;
 import org.eclipse.cdt.core.parser.IProblem;
 import org.eclipse.cdt.core.parser.IToken;
 import org.eclipse.cdt.core.parser.tests.ast2.TestLexerLog;
+import org.eclipse.cdt.core.parser.util.CharArraySet;
 import org.eclipse.cdt.core.testplugin.util.BaseTestCase;
 import org.eclipse.cdt.internal.core.parser.scanner.Lexer;
 import org.eclipse.cdt.internal.core.parser.scanner.Lexer.LexerOptions;
@@ -811,4 +812,36 @@ public class LexerTests extends BaseTestCase {
 		token(IToken.tPOUND);
 		eof();
 	}
+
+	public void testIdentifierTable() throws Exception {
+		final String input= "abc  \t abc ab\\\nc a??/\nbc\r\nabc abcd _1 $x";
+		CharArraySet table= new CharArraySet(4);
+		fLog.clear();
+		fLexer= new Lexer(input.toCharArray(), DEFAULT_OPTIONS, fLog, null);
+		fLexer.setIdentifierTable(table);
+		fLog.setInput(input);
+		fLexer.nextToken();
+		fLastEndOffset= 0;
+		
+		final char[] image= fLexer.currentToken().getCharImage();
+		id("abc");
+		ws();
+		assertSame(image, fLexer.currentToken().getCharImage());
+		id("abc");
+		ws();
+		id("abc");
+		ws();
+		id("abc");
+		token(Lexer.tNEWLINE);
+		assertSame(image, fLexer.currentToken().getCharImage());
+		id("abc");
+		ws();
+		id("abcd");
+		ws();
+		id("_1");
+		ws();
+		id("$x");
+		eof();
+		assertEquals(4, table.size());
+	}
 }
@@ -301,6 +301,31 @@ public class LocationMapTests extends BaseTestCase {
 		checkComment(comments[2], "56789abcdef", true, FN, 5,11,1,1);
 	}
 
+	public void testManyComments() {
+		init(DIGITS);
+		for (int i = 0; i < 100; i++) {
+			fLocationMap.encounteredComment(i % 16, i % 16 + 1, i % 2 == 0);
+		}
+		IASTComment[] comments= fLocationMap.getComments();
+		assertEquals(100, comments.length);
+		assertSame(comments[0], fLocationMap.getComments()[0]);
+		fLocationMap.encounteredComment(1, 3, false);
+		IASTComment[] comments2= fLocationMap.getComments();
+		assertEquals(101, comments2.length);
+		assertSame(comments[99], comments2[99]);
+		for (int i = 0; i < 100; i++) {
+			checkComment(comments[i], String.valueOf(DIGITS[i % 16]), i % 2 == 0, FN, i % 16, 1, 1, 1);
+		}
+		checkComment(comments2[100], "12", false, FN, 1, 2, 1, 1);
+	}
+
+	public void testSkipComments() {
+		init(DIGITS);
+		fLocationMap.setRecordComments(false);
+		fLocationMap.encounteredComment(1, 3, true);
+		assertEquals(0, fLocationMap.getComments().length);
+	}
+
 
 	public void testProblems() {
 		init(DIGITS);
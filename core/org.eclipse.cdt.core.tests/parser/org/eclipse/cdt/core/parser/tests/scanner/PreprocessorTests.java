@@ -1364,4 +1364,37 @@ public class PreprocessorTests extends PreprocessorTestsBase {
 			validateProblem(i, IProblem.SCANNER_BAD_BINARY_FORMAT, null);
 		}
 	}
+
+	// #define ONE 1
+	// #define INC ONE+1
+	// #define PASTE x ## ONE
+	// INC INC PASTE PASTE
+	// #undef ONE
+	// INC PASTE
+	// #define ONE 2
+	// INC
+	// #undef INC
+	// #define INC ONE
+	// INC
+	public void testRepeatedExpansionOfObjectStyleMacros() throws Exception {
+		initializeScanner();
+		for (int i = 0; i < 2; i++) {
+			validateInteger("1");
+			validateToken(IToken.tPLUS);
+			validateInteger("1");
+		}
+		validateIdentifier("xONE");
+		validateIdentifier("xONE");
+		validateIdentifier("ONE");
+		validateToken(IToken.tPLUS);
+		validateInteger("1");
+		validateIdentifier("xONE");
+		validateInteger("2");
+		validateToken(IToken.tPLUS);
+		validateInteger("1");
+		validateInteger("2");
+		validateEOF();
+		validateProblemCount(0);
+	}
 }
+
@@ -0,0 +1,229 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT project contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT project contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.index.tests;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.regex.Pattern;
+
+import junit.framework.Test;
+
+import org.eclipse.cdt.core.CCorePlugin;
+import org.eclipse.cdt.core.dom.IPDOMManager;
+import org.eclipse.cdt.core.index.IIndexBinding;
+import org.eclipse.cdt.core.index.IIndexLocationConverter;
+import org.eclipse.cdt.core.index.IndexFilter;
+import org.eclipse.cdt.core.index.ResourceContainerRelativeLocationConverter;
+import org.eclipse.cdt.core.model.ICProject;
+import org.eclipse.cdt.core.model.LanguageManager;
+import org.eclipse.cdt.core.testplugin.CProjectHelper;
+import org.eclipse.cdt.core.testplugin.util.BaseTestCase;
+import org.eclipse.cdt.core.testplugin.util.TestSourceReader;
+import org.eclipse.cdt.internal.core.CCoreInternals;
+import org.eclipse.cdt.internal.core.index.CIndex;
+import org.eclipse.cdt.internal.core.index.FragmentQueryExecutor;
+import org.eclipse.cdt.internal.core.index.IIndexBindingCollector;
+import org.eclipse.cdt.internal.core.index.IIndexFragment;
+import org.eclipse.cdt.internal.core.pdom.PDOM;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+/**
+ * Measures queries of composite indexes with many fragments, sequentially and in parallel.
+ * The fragments are copies of the index of a generated project.
+ * <p>
+ * n.b. this is intentionally not added to any test suite, the numbers are printed to
+ * the console.
+ */
+public class CompositeIndexPerformanceTest extends BaseTestCase {
+	private static final int NAMESPACES = 50;
+	private static final int FUNCTIONS_PER_NAMESPACE = 100;
+	private static final int[] FRAGMENT_COUNTS = {1, 4, 16};
+	private static final int QUERIES = 20;
+
+	private ICProject fProject;
+	private File fExported;
+
+	public static Test suite() {
+		return suite(CompositeIndexPerformanceTest.class);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		fProject= CProjectHelper.createCCProject("CompositeIndexPerformance" + System.currentTimeMillis(), "bin",
+				IPDOMManager.ID_FAST_INDEXER);
+		StringBuilder buf= new StringBuilder();
+		for (int i = 0; i < NAMESPACES; i++) {
+			buf.append("namespace ns").append(i).append(" {\n");
+			buf.append("  class Class").append(i).append(" {};\n");
+			for (int j = 0; j < FUNCTIONS_PER_NAMESPACE; j++) {
+				buf.append("  void func").append(j).append("(Class").append(i).append("* c) {}\n");
+			}
+			buf.append("}\n");
+		}
+		TestSourceReader.createFile(fProject.getProject(), "source.cpp", buf.toString());
+		CCorePlugin.getIndexManager().reindex(fProject);
+		assertTrue(CCorePlugin.getIndexManager().joinIndexer(360000, npm()));
+
+		fExported= File.createTempFile("composite", ".pdom");
+		CCoreInternals.getPDOMManager().exportProjectPDOM(fProject, fExported, createConverter());
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		FragmentQueryExecutor.setParallel(true);
+		if (fExported != null) {
+			fExported.delete();
+		}
+		if (fProject != null) {
+			fProject.getProject().delete(IResource.FORCE | IResource.ALWAYS_DELETE_PROJECT_CONTENT, npm());
+		}
+		super.tearDown();
+	}
+
+	private IIndexLocationConverter createConverter() {
+		return new ResourceContainerRelativeLocationConverter(fProject.getProject());
+	}
+
+	public void testFindBindings() throws Exception {
+		final Pattern[] patterns= {Pattern.compile("ns1"), Pattern.compile("func.*")};
+		for (int count : FRAGMENT_COUNTS) {
+			PDOM[] fragments= openFragments(count);
+			CIndex index= new CIndex(fragments);
+			index.acquireReadLock();
+			try {
+				int expected= -1;
+				for (boolean parallel : new boolean[] {false, true}) {
+					FragmentQueryExecutor.setParallel(parallel);
+					// warm up
+					index.findBindings(patterns, true, IndexFilter.ALL, npm());
+
+					long time= System.currentTimeMillis();
+					int found= 0;
+					for (int i = 0; i < QUERIES; i++) {
+						found= index.findBindings(patterns, true, IndexFilter.ALL, npm()).length;
+					}
+					time= System.currentTimeMillis() - time;
+					if (expected < 0) {
+						expected= found;
+					}
+					assertEquals(expected, found);
+
+					long timeToFirst= measureTimeToFirstResult(index, patterns);
+					System.out.println(count + " fragments, " + (parallel ? "parallel" : "sequential") + ": " +
+							QUERIES + " queries with " + found + " results took " + time + "ms, first result after " +
+							timeToFirst + "ms");
+				}
+			} finally {
+				index.releaseReadLock();
+				closeFragments(fragments);
+			}
+		}
+	}
+
+	public void testFindEquivalentBindings() throws Exception {
+		for (int count : FRAGMENT_COUNTS) {
+			PDOM[] fragments= openFragments(count);
+			CIndex index= new CIndex(fragments);
+			index.acquireReadLock();
+			try {
+				IIndexBinding[] bindings= index.findBindings(Pattern.compile("func.*"), false, IndexFilter.ALL, npm());
+				assertEquals(NAMESPACES * FUNCTIONS_PER_NAMESPACE, bindings.length);
+				long time= System.currentTimeMillis();
+				for (IIndexBinding binding : bindings) {
+					assertEquals(count, index.findEquivalentBindings(binding).length);
+				}
+				time= System.currentTimeMillis() - time;
+				System.out.println(count + " fragments: " + bindings.length + " equivalent binding lookups took " +
+						time + "ms");
+			} finally {
+				index.releaseReadLock();
+				closeFragments(fragments);
+			}
+		}
+	}
+
+	public void testCanceledQuery() throws Exception {
+		PDOM[] fragments= openFragments(4);
+		CIndex index= new CIndex(fragments);
+		index.acquireReadLock();
+		try {
+			for (boolean parallel : new boolean[] {false, true}) {
+				FragmentQueryExecutor.setParallel(parallel);
+				NullProgressMonitor monitor= new NullProgressMonitor();
+				monitor.setCanceled(true);
+				try {
+					index.findBindings(Pattern.compile("func.*"), false, IndexFilter.ALL, monitor);
+					fail("Canceled query returned a result");
+				} catch (OperationCanceledException e) {
+				}
+			}
+		} finally {
+			index.releaseReadLock();
+			closeFragments(fragments);
+		}
+	}
+
+	private long measureTimeToFirstResult(CIndex index, Pattern[] patterns) throws CoreException {
+		final long start= System.currentTimeMillis();
+		final long[] first= {-1};
+		final int[] total= {0};
+		index.findBindings(patterns, true, IndexFilter.ALL, new IIndexBindingCollector() {
+			public boolean accept(IIndexBinding[] bindings) {
+				if (first[0] < 0) {
+					first[0]= System.currentTimeMillis() - start;
+				}
+				total[0]+= bindings.length;
+				return true;
+			}
+		}, npm());
+		assertEquals(FUNCTIONS_PER_NAMESPACE, total[0]);
+		return first[0];
+	}
+
+	private PDOM[] openFragments(int count) throws Exception {
+		PDOM[] result= new PDOM[count];
+		for (int i = 0; i < count; i++) {
+			File copy= File.createTempFile("fragment", ".pdom");
+			copyFile(fExported, copy);
+			result[i]= new PDOM(copy, createConverter(), LanguageManager.getInstance().getPDOMLinkageFactoryMappings());
+		}
+		return result;
+	}
+
+	private void closeFragments(IIndexFragment[] fragments) throws CoreException {
+		for (IIndexFragment fragment : fragments) {
+			PDOM pdom= (PDOM) fragment;
+			pdom.close();
+			pdom.getPath().delete();
+		}
+	}
+
+	private static void copyFile(File from, File to) throws IOException {
+		FileChannel in= new FileInputStream(from).getChannel();
+		try {
+			FileChannel out= new FileOutputStream(to).getChannel();
+			try {
+				in.transferTo(0, in.size(), out);
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -85,6 +85,7 @@ import org.eclipse.cdt.core.testplugin.util.BaseTestCase;
 import org.eclipse.cdt.core.testplugin.util.TestSourceReader;
 import org.eclipse.cdt.internal.core.dom.parser.ASTNode;
 import org.eclipse.cdt.internal.core.pdom.CModelListener;
+import org.eclipse.cdt.internal.core.pdom.indexer.IndexerPreferences;
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
@@ -2423,4 +2424,34 @@ public class IndexBugsTests extends BaseTestCase {
 			index.releaseReadLock();
 		}
 	}
-}
\ No newline at end of file
+
+	public void testParallelIndexer() throws Exception {
+		final IProject project= fCProject.getProject();
+		IndexerPreferences.set(project, IndexerPreferences.KEY_WORKER_THREADS, "4");
+		createFile(project, "parallel.h", "struct Parallel {int field;};\nvoid parallel(Parallel* p);\n");
+		final int sources= 40;
+		for (int i = 0; i < sources; i++) {
+			createFile(project, "parallel" + i + ".cpp", "#include \"parallel.h\"\n" +
+					"void parallel" + i + "(Parallel* p) {parallel(p); p->field= " + i + ";}\n");
+		}
+		CCorePlugin.getIndexManager().reindex(fCProject);
+		waitForIndexer();
+
+		fIndex.acquireReadLock();
+		try {
+			IIndexBinding[] bindings= fIndex.findBindings("parallel".toCharArray(), IndexFilter.ALL, npm());
+			assertEquals(1, bindings.length);
+			assertEquals(1, fIndex.findNames(bindings[0], IIndex.FIND_DECLARATIONS_DEFINITIONS).length);
+			assertEquals(sources, fIndex.findNames(bindings[0], IIndex.FIND_REFERENCES).length);
+			bindings= fIndex.findBindings(new char[][] {"Parallel".toCharArray(), "field".toCharArray()},
+					IndexFilter.ALL, npm());
+			assertEquals(1, bindings.length);
+			assertEquals(sources, fIndex.findNames(bindings[0], IIndex.FIND_REFERENCES).length);
+			for (int i = 0; i < sources; i++) {
+				assertEquals(1, fIndex.findBindings(("parallel" + i).toCharArray(), IndexFilter.ALL, npm()).length);
+			}
+		} finally {
+			fIndex.releaseReadLock();
+		}
+	}
+}
@@ -26,7 +26,11 @@ import org.eclipse.cdt.internal.core.pdom.db.BTree;
 import org.eclipse.cdt.internal.core.pdom.db.ChunkCache;
 import org.eclipse.cdt.internal.core.pdom.db.Database;
 import org.eclipse.cdt.internal.core.pdom.db.IBTreeComparator;
+import org.eclipse.cdt.internal.core.pdom.db.IBTreeKeyPrefixComparator;
+import org.eclipse.cdt.internal.core.pdom.db.IBTreeKeyPrefixVisitor;
 import org.eclipse.cdt.internal.core.pdom.db.IBTreeVisitor;
+import org.eclipse.cdt.internal.core.pdom.db.IString;
+import org.eclipse.cdt.internal.core.pdom.db.KeyPrefix;
 import org.eclipse.core.runtime.CoreException;
 
 /**
@@ -100,6 +104,158 @@ public class BTreeTests extends BaseTestCase {
 		}
 	}
 
+	/**
+	 * Test bulk insertion into an empty and into a non-empty B-tree, duplicates
+	 * are not inserted.
+	 * @throws Exception
+	 */
+	public void testInsertAll() throws Exception {
+		Random random = new Random(4711);
+		for(int i=0; i<20; i++) {
+			final int degree = 2 + random.nextInt(11);
+			final int nRecords = i < 10 ? i * 3 : random.nextInt(20000);
+			final SortedSet expected = new TreeSet();
+			init(degree);
+
+			long[] records = new long[nRecords];
+			for(int j=0; j<nRecords; j++) {
+				Integer value = new Integer(random.nextInt(nRecords + 1));
+				expected.add(value);
+				records[j] = new BTMockRecord(db, value.intValue()).getRecord();
+			}
+			btree.insertAll(records);
+			assertBTreeMatchesSortedSet("[bulk load] ", btree, expected);
+			assertBTreeInvariantsHold("[bulk load]");
+
+			// values not yet in the tree, duplicates within the array are allowed
+			records = new long[nRecords / 2];
+			for(int j=0; j<records.length; j++) {
+				Integer value = new Integer(nRecords + 1 + random.nextInt(nRecords + 1));
+				expected.add(value);
+				records[j] = new BTMockRecord(db, value.intValue()).getRecord();
+			}
+			btree.insertAll(records);
+			assertBTreeMatchesSortedSet("[bulk insert] ", btree, expected);
+			assertBTreeInvariantsHold("[bulk insert]");
+			finish();
+		}
+	}
+
+	/**
+	 * Test compacting a B-tree after random insertions and deletions.
+	 * @throws Exception
+	 */
+	public void testCompact() throws Exception {
+		Random random = new Random(90210);
+		init(8);
+		final SortedSet expected = new TreeSet();
+		final List history = new ArrayList();
+		for(int i=0; i<20000; i++) {
+			if(random.nextDouble() < 0.7 || history.isEmpty()) {
+				Integer value = new Integer(random.nextInt(Integer.MAX_VALUE));
+				if(expected.add(value)) {
+					BTMockRecord btValue = new BTMockRecord(db, value.intValue());
+					history.add(btValue);
+					btree.insert(btValue.getRecord());
+				}
+			} else {
+				BTMockRecord btValue = (BTMockRecord) history.remove(random.nextInt(history.size()));
+				expected.remove(new Integer(btValue.intValue()));
+				btree.delete(btValue.getRecord());
+			}
+		}
+		btree.compact();
+		assertBTreeMatchesSortedSet("[compact] ", btree, expected);
+		assertBTreeInvariantsHold("[compact]");
+		finish();
+	}
+
+	/**
+	 * Test that only B-trees with sparse nodes are compacted: insertions in ascending order leave
+	 * the nodes half empty, random insertions fill about two thirds of them.
+	 * @throws Exception
+	 */
+	public void testCompactIfSparse() throws Exception {
+		init(8);
+		final SortedSet expected = new TreeSet();
+		for(int i=0; i<20000; i++) {
+			expected.add(new Integer(i));
+			btree.insert(new BTMockRecord(db, i).getRecord());
+		}
+		assertTrue(btree.getFillPercentage() < BTree.SPARSE_FILL_PERCENTAGE);
+		assertTrue(btree.compactIfSparse());
+		assertTrue(btree.getFillPercentage() > 90);
+		assertBTreeMatchesSortedSet("[ascending] ", btree, expected);
+		assertBTreeInvariantsHold("[ascending]");
+		finish();
+
+		Random random = new Random(90210);
+		init(8);
+		for(int i=0; i<20000; i++) {
+			btree.insert(new BTMockRecord(db, random.nextInt(Integer.MAX_VALUE)).getRecord());
+		}
+		final int fill = btree.getFillPercentage();
+		assertTrue(fill >= BTree.SPARSE_FILL_PERCENTAGE);
+		assertFalse(btree.compactIfSparse());
+		assertEquals(fill, btree.getFillPercentage());
+		finish();
+	}
+
+	/**
+	 * Test a B-tree storing key prefixes: the prefixes are maintained on insertion, deletion
+	 * and compaction, and lookups using the prefixes find the same records as lookups without them.
+	 * @throws Exception
+	 */
+	public void testKeyPrefixes() throws Exception {
+		final String alphabet = "abAB_z0\u00ff\u0100";
+		Random random = new Random(4711);
+		init(4);
+		btree = new BTree(db, rootRecord, 4, new BTStringRecordComparator());
+		List records = new ArrayList();
+		for(int i=0; i<20000; i++) {
+			if(records.isEmpty() || random.nextInt(10) < 7) {
+				long record = newStringRecord(randomName(random, alphabet));
+				records.add(new Long(record));
+				btree.insert(record);
+			} else {
+				long record = ((Long) records.remove(random.nextInt(records.size()))).longValue();
+				btree.delete(record);
+			}
+		}
+		assertBTreeInvariantsHold("[after insert/delete]");
+		btree.compact();
+		assertBTreeInvariantsHold("[after compact]");
+
+		for(int i=0; i<500; i++) {
+			char[] key = randomName(random, alphabet).toCharArray();
+			for(int mode=0; mode<3; mode++) {
+				List expected = lookup(new BTStringVisitor(key, mode));
+				List actual = lookup(new BTStringPrefixVisitor(key, mode));
+				assertEquals("Lookup of " + new String(key) + ", mode " + mode, expected, actual);
+			}
+		}
+		finish();
+	}
+
+	private String randomName(Random random, String alphabet) {
+		StringBuffer buf = new StringBuffer();
+		for(int n = random.nextInt(12); n>0; n--) {
+			buf.append(alphabet.charAt(random.nextInt(alphabet.length())));
+		}
+		return buf.toString();
+	}
+
+	private long newStringRecord(String name) throws CoreException {
+		long record = db.malloc(Database.PTR_SIZE);
+		db.putRecPtr(record, db.newString(name).getRecord());
+		return record;
+	}
+
+	private List lookup(BTStringVisitor visitor) throws CoreException {
+		btree.accept(visitor);
+		return visitor.result;
+	}
+
 	/**
 	 * Insert/Delete a random number of records into/from the B-tree 
 	 * @param seed the seed for obtaining the deterministic random testing
@@ -226,6 +382,67 @@ public class BTreeTests extends BaseTestCase {
 		}
 	}
 
+	private class BTStringRecordComparator implements IBTreeKeyPrefixComparator {
+		public int compare(long record1, long record2) throws CoreException {
+			int cmp = getName(record1).compareCompatibleWithIgnoreCase(getName(record2));
+			return cmp != 0 ? cmp : (record1 < record2 ? -1 : (record1 > record2 ? 1 : 0));
+		}
+		public long getKeyPrefix(long record) throws CoreException {
+			return getName(record).getKeyPrefix();
+		}
+	}
+
+	private IString getName(long record) throws CoreException {
+		return db.getString(db.getRecPtr(record));
+	}
+
+	/**
+	 * Modes: 0 - case-insensitive prefix, 1 - case-sensitive prefix, 2 - exact name
+	 */
+	private class BTStringVisitor implements IBTreeVisitor {
+		final char[] key;
+		final int mode;
+		final List result = new ArrayList();
+
+		BTStringVisitor(char[] key, int mode) {
+			this.key = key;
+			this.mode = mode;
+		}
+		public int compare(long record) throws CoreException {
+			IString name = getName(record);
+			switch(mode) {
+			case 0:
+				return name.comparePrefix(key, false);
+			case 1:
+				int cmp = name.comparePrefix(key, false);
+				return cmp == 0 ? name.comparePrefix(key, true) : cmp;
+			default:
+				return name.compareCompatibleWithIgnoreCase(key);
+			}
+		}
+		public boolean visit(long record) throws CoreException {
+			result.add(new Long(record));
+			return true;
+		}
+	}
+
+	private class BTStringPrefixVisitor extends BTStringVisitor implements IBTreeKeyPrefixVisitor {
+		final long keyPrefix;
+
+		BTStringPrefixVisitor(char[] key, int mode) {
+			super(key, mode);
+			keyPrefix = KeyPrefix.get(key);
+		}
+		public int comparePrefix(long prefix) {
+			if(mode == 2) {
+				int cmp = KeyPrefix.compare(prefix, keyPrefix);
+				return cmp == 0 ? UNDECIDED : cmp;
+			}
+			int cmp = KeyPrefix.comparePrefix(prefix, keyPrefix, key.length);
+			return mode == 1 && cmp == 0 ? UNDECIDED : cmp;
+		}
+	}
+
 	private class BTMockRecordComparator implements IBTreeComparator {
 		public int compare(long record1, long record2) throws CoreException {
 			return db.getInt(record1) - db.getInt(record2); 
@@ -0,0 +1,427 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT project contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT project contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.pdom.tests;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+import junit.framework.Test;
+
+import org.eclipse.cdt.core.testplugin.CTestPlugin;
+import org.eclipse.cdt.core.testplugin.util.BaseTestCase;
+import org.eclipse.cdt.internal.core.pdom.db.BTree;
+import org.eclipse.cdt.internal.core.pdom.db.ChunkCache;
+import org.eclipse.cdt.internal.core.pdom.db.Database;
+import org.eclipse.cdt.internal.core.pdom.db.IBTreeComparator;
+import org.eclipse.cdt.internal.core.pdom.db.IBTreeKeyPrefixComparator;
+import org.eclipse.cdt.internal.core.pdom.db.IBTreeKeyPrefixVisitor;
+import org.eclipse.cdt.internal.core.pdom.db.IBTreeVisitor;
+import org.eclipse.cdt.internal.core.pdom.db.IString;
+import org.eclipse.cdt.internal.core.pdom.db.KeyPrefix;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * Compares the different ways of accessing the database.
+ * <p>
+ * n.b. this is intentionally not added to any test suite, the numbers are printed to
+ * the console.
+ */
+public class DBPerformanceTest extends BaseTestCase {
+	private static final int RECORD_COUNT = 200000;
+	private static final int LOOKUPS = 2000000;
+	private static final long SMALL_CACHE = 1024 * 1024;
+	private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16};
+	private static final long MEASURE_MILLIS = 2000;
+
+	private File fFile;
+	private long[] fRecords;
+
+	public static Test suite() {
+		return suite(DBPerformanceTest.class);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		IPath path = CTestPlugin.getDefault().getStateLocation().append("tests/");
+		path.toFile().mkdirs();
+		fFile= path.append(getName() + System.currentTimeMillis() + ".dat").toFile();
+
+		Database db = new Database(fFile, new ChunkCache(), 0, false);
+		db.setExclusiveLock();
+		fRecords= new long[RECORD_COUNT];
+		for (int i = 0; i < fRecords.length; i++) {
+			fRecords[i]= db.newString("binding_name_" + i).getRecord();
+		}
+		db.close();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		fFile.delete();
+		super.tearDown();
+	}
+
+	public void testReadOnlyAccess() throws Exception {
+		System.out.println("Database of " + fFile.length() / 1024 + "KB, " + LOOKUPS + " random string reads");
+		// warm up
+		readRandomStrings(false, SMALL_CACHE);
+		readRandomStrings(true, SMALL_CACHE);
+
+		System.out.println("heap chunks, small cache:  " + readRandomStrings(false, SMALL_CACHE) + "ms");
+		System.out.println("heap chunks, large cache:  " + readRandomStrings(false, fFile.length() * 2) + "ms");
+		System.out.println("mapped chunks:             " + readRandomStrings(true, SMALL_CACHE) + "ms");
+	}
+
+	/**
+	 * Measures the throughput of concurrent readers sharing one cache, with a single segment
+	 * (equivalent to a globally synchronized cache) and with the default number of segments.
+	 */
+	public void testConcurrentReaders() throws Exception {
+		final long cacheSize= fFile.length() / 2;
+		System.out.println("Concurrent readers, cache of " + cacheSize / 1024 + "KB, reads per second:");
+		for (int threads : THREAD_COUNTS) {
+			long single= measureConcurrentReads(new ChunkCache(cacheSize, 1), threads);
+			ChunkCache segmented= new ChunkCache(cacheSize);
+			long striped= measureConcurrentReads(segmented, threads);
+			System.out.println(threads + " threads: 1 segment " + single + ", " + 
+					segmented.getSegmentCount() + " segments " + striped);
+		}
+	}
+
+	/**
+	 * Measures the throughput of concurrent readers of a single database whose chunks all fit
+	 * into the cache, such that nearly all reads are cache hits and no reader has to lock the
+	 * chunk table of the database.
+	 */
+	public void testConcurrentReadersOfCachedDatabase() throws Exception {
+		final long cacheSize= fFile.length() * 2;
+		System.out.println("Concurrent readers of one database, cache of " + cacheSize / 1024 + "KB, reads per second:");
+		// warm up
+		measureConcurrentReads(new ChunkCache(cacheSize), 1);
+
+		long base= 0;
+		for (int threads : THREAD_COUNTS) {
+			long reads= measureConcurrentReads(new ChunkCache(cacheSize), threads);
+			if (base == 0) {
+				base= reads;
+			}
+			System.out.println(threads + " threads: " + reads + " (" + reads * 100 / base + "% of 1 thread)");
+		}
+	}
+
+	private long measureConcurrentReads(ChunkCache cache, int threadCount) throws Exception {
+		final Database db = new Database(fFile, cache, 0, true, false);
+		db.setLocked(true);
+		final long[] counts= new long[threadCount];
+		final Throwable[] failure= {null};
+		final long end= System.currentTimeMillis() + MEASURE_MILLIS;
+		Thread[] threads= new Thread[threadCount];
+		for (int i = 0; i < threads.length; i++) {
+			final int idx= i;
+			threads[i]= new Thread() {
+				@Override
+				public void run() {
+					Random random= new Random(idx);
+					try {
+						long count= 0;
+						while ((count & 0xff) != 0 || System.currentTimeMillis() < end) {
+							db.getString(fRecords[random.nextInt(fRecords.length)]).getChars();
+							count++;
+						}
+						counts[idx]= count;
+					} catch (Throwable e) {
+						failure[0]= e;
+					}
+				}
+			};
+			threads[i].start();
+		}
+		long total= 0;
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].join();
+			total+= counts[i];
+		}
+		assertNull(failure[0]);
+		db.setExclusiveLock();
+		db.close();
+		return total * 1000 / MEASURE_MILLIS;
+	}
+
+	/**
+	 * Compares building a b-tree by single inserts in random order with the bulk-load, as used
+	 * when an index is built from scratch. Reports the time to build the tree, the size of the
+	 * database and the time for lookups with a small cache.
+	 */
+	public void testBTreeBulkLoad() throws Exception {
+		System.out.println("b-tree with " + RECORD_COUNT + " strings, database of " + fFile.length() / 1024 + "KB");
+		// warm up
+		buildBTree(false);
+		buildBTree(true);
+
+		System.out.println("single inserts: " + buildBTree(false));
+		System.out.println("bulk-load:      " + buildBTree(true));
+	}
+
+	private String buildBTree(boolean bulk) throws Exception {
+		File file= new File(fFile.getPath() + ".btree");
+		copyFile(fFile, file);
+		try {
+			final Database db = new Database(file, new ChunkCache(SMALL_CACHE), 0, false);
+			db.setExclusiveLock();
+			final long sizeBefore= db.getSizeBytes();
+			final long root= db.malloc(Database.PTR_SIZE);
+			final BTree btree= new BTree(db, root, new IBTreeComparator() {
+				public int compare(long record1, long record2) throws CoreException {
+					return db.getString(record1).compare(db.getString(record2), true);
+				}
+			});
+			long[] records= fRecords.clone();
+			Random random= new Random(4711);
+			for (int i = records.length - 1; i > 0; i--) {
+				int j= random.nextInt(i + 1);
+				long tmp= records[i];
+				records[i]= records[j];
+				records[j]= tmp;
+			}
+
+			long time= System.currentTimeMillis();
+			if (bulk) {
+				btree.insertAll(records);
+			} else {
+				for (long record : records) {
+					btree.insert(record);
+				}
+			}
+			db.flush();
+			time= System.currentTimeMillis() - time;
+			final long treeSize= db.getSizeBytes() - sizeBefore;
+
+			final long lookupTime= lookupRecords(db, btree, random);
+			db.close();
+			return time + "ms, b-tree nodes " + treeSize / 1024 + "KB, " + LOOKUPS / 10 + " lookups " + lookupTime + "ms";
+		} finally {
+			file.delete();
+		}
+	}
+
+	private long lookupRecords(final Database db, BTree btree, Random random) throws CoreException {
+		long time= System.currentTimeMillis();
+		for (int i = 0; i < LOOKUPS / 10; i++) {
+			final IString key= db.getString(fRecords[random.nextInt(fRecords.length)]);
+			final boolean[] found= {false};
+			btree.accept(new IBTreeVisitor() {
+				public int compare(long record) throws CoreException {
+					return db.getString(record).compare(key, true);
+				}
+				public boolean visit(long record) throws CoreException {
+					found[0]= true;
+					return false;
+				}
+			});
+			assertTrue(found[0]);
+		}
+		return System.currentTimeMillis() - time;
+	}
+
+	/**
+	 * Measures the cost and the benefit of compacting a b-tree that was built by single inserts,
+	 * as done after an index has been rebuilt. Inserts in random order leave the nodes about two
+	 * thirds full, inserts in ascending order (e.g. files indexed in the order of their names) about
+	 * half full. Only the latter fall below {@link BTree#SPARSE_FILL_PERCENTAGE} and are compacted by
+	 * {@link BTree#compactIfSparse()}.
+	 */
+	public void testCompactAfterInserts() throws Exception {
+		System.out.println("Compacting a b-tree with " + RECORD_COUNT + " strings, database of " + fFile.length() / 1024 + "KB");
+		// warm up
+		compactBTree(false);
+
+		System.out.println("random order:    " + compactBTree(false));
+		System.out.println("ascending order: " + compactBTree(true));
+	}
+
+	private String compactBTree(boolean ascending) throws Exception {
+		File file= new File(fFile.getPath() + ".btree");
+		copyFile(fFile, file);
+		try {
+			final Database db = new Database(file, new ChunkCache(SMALL_CACHE), 0, false);
+			db.setExclusiveLock();
+			final IBTreeComparator comparator= new IBTreeComparator() {
+				public int compare(long record1, long record2) throws CoreException {
+					return db.getString(record1).compare(db.getString(record2), true);
+				}
+			};
+			long[] records= fRecords.clone();
+			Random random= new Random(4711);
+			if (ascending) {
+				// use a second tree to sort the records
+				new BTree(db, db.malloc(Database.PTR_SIZE), comparator).insertAll(records);
+			} else {
+				for (int i = records.length - 1; i > 0; i--) {
+					int j= random.nextInt(i + 1);
+					long tmp= records[i];
+					records[i]= records[j];
+					records[j]= tmp;
+				}
+			}
+			final BTree btree= new BTree(db, db.malloc(Database.PTR_SIZE), comparator);
+
+			long time= System.currentTimeMillis();
+			for (long record : records) {
+				btree.insert(record);
+			}
+			db.flush();
+			time= System.currentTimeMillis() - time;
+			final int fill= btree.getFillPercentage();
+			final long lookupTime= lookupRecords(db, btree, random);
+
+			long compactTime= System.currentTimeMillis();
+			btree.compact();
+			db.flush();
+			compactTime= System.currentTimeMillis() - compactTime;
+			final int compactFill= btree.getFillPercentage();
+			final long compactLookupTime= lookupRecords(db, btree, random);
+			db.close();
+			return "inserts " + time + "ms (" + fill + "% filled, " + lookupTime + "ms for " + LOOKUPS / 10 + 
+					" lookups), compact " + compactTime + "ms (" + compactFill + "% filled, " + compactLookupTime + 
+					"ms for " + LOOKUPS / 10 + " lookups)";
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Compares prefix lookups, as used for content assist, in a b-tree of names with and without
+	 * key prefixes stored in the nodes.
+	 */
+	public void testPrefixLookup() throws Exception {
+		final String[] starts= {"get", "set", "is", "m_", "_", "Q", "std", "CDT_", ""};
+		final String letters= "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ_0123456789";
+		File file= new File(fFile.getPath() + ".names");
+		try {
+			Database db = new Database(file, new ChunkCache(), 0, false);
+			db.setExclusiveLock();
+			final long roots= db.malloc(2 * Database.PTR_SIZE);
+			Random random= new Random(4711);
+			long[] names= new long[RECORD_COUNT];
+			for (int i = 0; i < names.length; i++) {
+				StringBuilder name= new StringBuilder(starts[random.nextInt(starts.length)]);
+				for (int j = 2 + random.nextInt(15); j > 0; j--) {
+					name.append(letters.charAt(random.nextInt(letters.length())));
+				}
+				names[i]= db.newString(name.toString()).getRecord();
+			}
+			createNameIndex(db, roots, false).insertAll(names.clone());
+			createNameIndex(db, roots + Database.PTR_SIZE, true).insertAll(names.clone());
+			db.close();
+
+			String[] keys= new String[LOOKUPS / 1000];
+			for (int i = 0; i < keys.length; i++) {
+				StringBuilder key= new StringBuilder(starts[random.nextInt(starts.length)]);
+				for (int j = 1 + random.nextInt(2); j > 0; j--) {
+					key.append(letters.charAt(random.nextInt(letters.length())));
+				}
+				keys[i]= key.toString();
+			}
+			System.out.println("Prefix lookups in a b-tree of " + RECORD_COUNT + " names, database of " + file.length() / 1024 + "KB");
+			// warm up
+			lookupPrefixes(file, roots, false, keys);
+			lookupPrefixes(file, roots, true, keys);
+
+			System.out.println("without key prefixes: " + lookupPrefixes(file, roots, false, keys));
+			System.out.println("with key prefixes:    " + lookupPrefixes(file, roots, true, keys));
+		} finally {
+			file.delete();
+		}
+	}
+
+	private static BTree createNameIndex(final Database db, long root, boolean keyPrefixes) {
+		if (keyPrefixes) {
+			return new BTree(db, root, new IBTreeKeyPrefixComparator() {
+				public int compare(long record1, long record2) throws CoreException {
+					return db.getString(record1).compareCompatibleWithIgnoreCase(db.getString(record2));
+				}
+				public long getKeyPrefix(long record) throws CoreException {
+					return db.getString(record).getKeyPrefix();
+				}
+			});
+		}
+		return new BTree(db, root, new IBTreeComparator() {
+			public int compare(long record1, long record2) throws CoreException {
+				return db.getString(record1).compareCompatibleWithIgnoreCase(db.getString(record2));
+			}
+		});
+	}
+
+	private String lookupPrefixes(File file, long roots, boolean keyPrefixes, String[] keys) throws Exception {
+		final Database db = new Database(file, new ChunkCache(SMALL_CACHE), 0, true, false);
+		db.setLocked(true);
+		final BTree btree= createNameIndex(db, keyPrefixes ? roots + Database.PTR_SIZE : roots, keyPrefixes);
+		final int[] count= {0};
+		long time= System.currentTimeMillis();
+		for (String key : keys) {
+			final char[] prefix= key.toCharArray();
+			final long keyPrefix= KeyPrefix.get(prefix);
+			btree.accept(new IBTreeKeyPrefixVisitor() {
+				public int compare(long record) throws CoreException {
+					return db.getString(record).comparePrefix(prefix, false);
+				}
+				public int comparePrefix(long prefixOfRecord) {
+					return KeyPrefix.comparePrefix(prefixOfRecord, keyPrefix, prefix.length);
+				}
+				public boolean visit(long record) throws CoreException {
+					count[0]++;
+					return true;
+				}
+			});
+		}
+		time= System.currentTimeMillis() - time;
+		db.setExclusiveLock();
+		db.close();
+		return time + "ms for " + keys.length + " lookups, " + count[0] + " matches";
+	}
+
+	private static void copyFile(File from, File to) throws IOException {
+		FileChannel in= new FileInputStream(from).getChannel();
+		try {
+			FileChannel out= new FileOutputStream(to).getChannel();
+			try {
+				in.transferTo(0, in.size(), out);
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private long readRandomStrings(boolean mapped, long cacheSize) throws Exception {
+		Database db = new Database(fFile, new ChunkCache(cacheSize), 0, true, mapped);
+		assertEquals(mapped, db.isMapped());
+		db.setLocked(true);
+		Random random= new Random(4711);
+		long time= System.currentTimeMillis();
+		int length= 0;
+		for (int i = 0; i < LOOKUPS; i++) {
+			length+= db.getString(fRecords[random.nextInt(fRecords.length)]).getChars().length;
+		}
+		time= System.currentTimeMillis() - time;
+		assertTrue(length > 0);
+		db.setExclusiveLock();
+		db.close();
+		return time;
+	}
+}
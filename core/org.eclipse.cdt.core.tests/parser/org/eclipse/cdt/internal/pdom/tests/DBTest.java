@@ -13,7 +13,11 @@
 package org.eclipse.cdt.internal.pdom.tests;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 import java.util.Random;
 
 import junit.framework.Test;
@@ -102,6 +106,324 @@ public class DBTest extends BaseTestCase {
 		}
 	}
 	
+	public void testMappedReadOnlyDatabase() throws Exception {
+		File f = getTestDir().append("testMapped.dat").toFile();
+		f.delete();
+		Database wdb = new Database(f, new ChunkCache(), 3, false);
+		wdb.setExclusiveLock();
+		long[] records= new long[5000];
+		for (int i = 0; i < records.length; i++) {
+			records[i]= wdb.newString("name" + i).getRecord();
+		}
+		long longString= wdb.newString(new String(new char[ShortString.MAX_LENGTH * 3]).replace('\0', 'x')).getRecord();
+		wdb.close();
+
+		Database rdb = new Database(f, new ChunkCache(), 0, true, true);
+		try {
+			rdb.setLocked(true);
+			assertTrue(rdb.isMapped());
+			assertEquals(3, rdb.getVersion());
+			for (int i = 0; i < records.length; i++) {
+				IString name= rdb.getString(records[i]);
+				assertEquals("name" + i, name.getString());
+				assertEquals(0, name.compare("name" + i, true));
+			}
+			assertEquals(ShortString.MAX_LENGTH * 3, rdb.getString(longString).getChars().length);
+		} finally {
+			rdb.setExclusiveLock();
+			rdb.close();
+			f.delete();
+		}
+
+		// writable databases are never mapped
+		Database db2 = new Database(getTestDir().append("testMapped2.dat").toFile(), new ChunkCache(), 0, false, true);
+		assertFalse(db2.isMapped());
+		db2.setExclusiveLock();
+		db2.close();
+		db2.getLocation().delete();
+	}
+
+	public void testConcurrentReadersWithEviction() throws Exception {
+		final int count= 20000;
+		final long[] records= new long[count];
+		for (int i = 0; i < count; i++) {
+			records[i]= db.newString("name" + i).getRecord();
+		}
+		db.flush();
+		db.giveUpExclusiveLock(true);
+		
+		// a cache much smaller than the database forces evictions from all threads. 
+		ChunkCache cache= new ChunkCache(Database.CHUNK_SIZE * 16, 4);
+		final Database rdb= new Database(db.getLocation(), cache, 0, true, false);
+		rdb.setLocked(true);
+		final Throwable[] failure= {null};
+		Thread[] threads= new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final int seed= t;
+			threads[t]= new Thread() {
+				@Override
+				public void run() {
+					Random random= new Random(seed);
+					try {
+						for (int j = 0; j < 20000; j++) {
+							int i= random.nextInt(count);
+							assertEquals("name" + i, rdb.getString(records[i]).getString());
+						}
+					} catch (Throwable e) {
+						failure[0]= e;
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertNull(failure[0]);
+		assertTrue(rdb.getCacheMisses() > 0);
+		assertTrue(rdb.getCacheEvictions() > 0);
+		
+		cache.setMaxSize(Database.CHUNK_SIZE * 2);
+		assertEquals("name5", rdb.getString(records[5]).getString());
+		rdb.setExclusiveLock();
+		rdb.close();
+		db.setExclusiveLock();
+	}
+
+	public void testChunkSizeStoredInHeader() throws Exception {
+		File f = getTestDir().append("testChunkSize.dat").toFile();
+		f.delete();
+		final int chunkSize= Database.CHUNK_SIZE * 4;
+		Database wdb = new Database(f, new ChunkCache(), 1, false, false, chunkSize);
+		try {
+			wdb.setExclusiveLock();
+			assertEquals(chunkSize, wdb.getChunkSize());
+			long[] records= new long[2000];
+			for (int i = 0; i < records.length; i++) {
+				records[i]= wdb.newString("name" + i).getRecord();
+			}
+			// a new chunk provides multiple blocks of maximum size
+			long block1= wdb.malloc(Database.MAX_MALLOC_SIZE);
+			long block2= wdb.malloc(Database.MAX_MALLOC_SIZE);
+			assertEquals(Database.CHUNK_SIZE, Math.abs(block2 - block1));
+			wdb.close();
+			assertEquals(0, f.length() % chunkSize);
+
+			// the chunk size of an existing database is taken from the header.
+			Database rdb = new Database(f, new ChunkCache(), 0, true, false, Database.CHUNK_SIZE);
+			rdb.setLocked(true);
+			assertEquals(chunkSize, rdb.getChunkSize());
+			for (int i = 0; i < records.length; i++) {
+				assertEquals("name" + i, rdb.getString(records[i]).getString());
+			}
+			rdb.setExclusiveLock();
+			rdb.close();
+
+			// clearing the database migrates it to the requested chunk size.
+			wdb = new Database(f, new ChunkCache(), 0, false, false, Database.CHUNK_SIZE);
+			wdb.setExclusiveLock();
+			assertEquals(chunkSize, wdb.getChunkSize());
+			wdb.clear(2);
+			assertEquals(Database.CHUNK_SIZE, wdb.getChunkSize());
+			long record= wdb.newString("migrated").getRecord();
+			wdb.close();
+			wdb = new Database(f, new ChunkCache(), 0, true);
+			wdb.setLocked(true);
+			assertEquals(Database.CHUNK_SIZE, wdb.getChunkSize());
+			assertEquals(2, wdb.getVersion());
+			assertEquals("migrated", wdb.getString(record).getString());
+			wdb.setExclusiveLock();
+			wdb.close();
+		} finally {
+			f.delete();
+		}
+	}
+
+	public void testKillAndRecover() throws Exception {
+		File f = getTestDir().append("testKillAndRecover.dat").toFile();
+		File crashed = getTestDir().append("testKillAndRecoverCrashed.dat").toFile();
+		f.delete();
+		crashed.delete();
+		// use a small cache, such that chunks of the open transaction are spilled to the log.
+		Database wdb = new Database(f, new ChunkCache(Database.CHUNK_SIZE * 4), 1, false);
+		try {
+			wdb.setExclusiveLock();
+			long counter= wdb.malloc(Database.INT_SIZE);
+			wdb.putInt(counter, 1);
+			long[] committed= createStrings(wdb, "committed");
+			wdb.flush();
+			assertEquals(0, Database.getTransactionLogFile(f).length());
+
+			wdb.putInt(counter, 2);
+			long[] logged= createStrings(wdb, "logged");
+			wdb.commitWithoutCheckpoint();
+
+			wdb.putInt(counter, 3);
+			long[] uncommitted= createStrings(wdb, "uncommitted");
+			wdb.giveUpExclusiveLock(false);
+			// spilled chunks are read back from the log
+			assertEquals(3, wdb.getInt(counter));
+			checkStrings(wdb, "uncommitted", uncommitted);
+
+			// kill the process, the last record of the log is torn.
+			copyFile(f, crashed, 0);
+			copyFile(Database.getTransactionLogFile(f), Database.getTransactionLogFile(crashed), 5);
+
+			Database rdb = new Database(crashed, new ChunkCache(), 1, false);
+			rdb.setLocked(true);
+			assertTrue(rdb.getRecoveredChunks() > 0);
+			assertFalse(Database.getTransactionLogFile(crashed).exists());
+			assertEquals(1, rdb.getVersion());
+			assertEquals(2, rdb.getInt(counter));
+			checkStrings(rdb, "committed", committed);
+			checkStrings(rdb, "logged", logged);
+			rdb.setExclusiveLock();
+			rdb.close();
+
+			wdb.setExclusiveLock();
+			wdb.close();
+			assertFalse(Database.getTransactionLogFile(f).exists());
+			wdb = new Database(f, new ChunkCache(), 1, false);
+			wdb.setLocked(true);
+			assertEquals(0, wdb.getRecoveredChunks());
+			assertEquals(3, wdb.getInt(counter));
+			checkStrings(wdb, "uncommitted", uncommitted);
+			wdb.setExclusiveLock();
+			wdb.close();
+		} finally {
+			f.delete();
+			crashed.delete();
+		}
+	}
+
+	public void testLogBoundedWithinTransaction() throws Exception {
+		File f = getTestDir().append("testLogBounded.dat").toFile();
+		f.delete();
+		Database wdb = new Database(f, new ChunkCache(), 1, false);
+		try {
+			wdb.setExclusiveLock();
+			long counter= wdb.malloc(Database.INT_SIZE);
+			wdb.flush();
+			assertEquals(0, wdb.getUncommittedBytes());
+
+			wdb.putInt(counter, 0);
+			wdb.giveUpExclusiveLock(false);
+			final long size= wdb.getUncommittedBytes();
+			assertTrue(size > 0);
+			// a chunk written repeatedly within a transaction occupies a single record of the log.
+			for (int i = 1; i < 10; i++) {
+				wdb.setExclusiveLock();
+				wdb.putInt(counter, i);
+				wdb.giveUpExclusiveLock(false);
+				assertEquals(size, wdb.getUncommittedBytes());
+			}
+			wdb.setExclusiveLock();
+			wdb.flush();
+			assertEquals(0, wdb.getUncommittedBytes());
+			assertEquals(9, wdb.getInt(counter));
+			wdb.close();
+		} finally {
+			f.delete();
+		}
+	}
+
+	public void testRecoveryTruncatesToCommittedSize() throws Exception {
+		File f = getTestDir().append("testRecoveryTruncates.dat").toFile();
+		File crashed = getTestDir().append("testRecoveryTruncatesCrashed.dat").toFile();
+		f.delete();
+		crashed.delete();
+		Database wdb = new Database(f, new ChunkCache(), 1, false);
+		try {
+			wdb.setExclusiveLock();
+			long[] committed= createStrings(wdb, "committed");
+			wdb.commitWithoutCheckpoint();
+
+			// the database file contains garbage beyond the committed chunks.
+			copyFile(f, crashed, 0);
+			RandomAccessFile raf= new RandomAccessFile(crashed, "rw");
+			try {
+				raf.setLength(raf.length() + 3 * Database.CHUNK_SIZE);
+			} finally {
+				raf.close();
+			}
+			copyFile(Database.getTransactionLogFile(f), Database.getTransactionLogFile(crashed), 0);
+
+			wdb.flush();
+			Database rdb = new Database(crashed, new ChunkCache(), 1, false);
+			assertEquals(f.length(), crashed.length());
+			rdb.setLocked(true);
+			checkStrings(rdb, "committed", committed);
+			rdb.setExclusiveLock();
+			rdb.close();
+			wdb.close();
+		} finally {
+			f.delete();
+			crashed.delete();
+		}
+	}
+
+	public void testLeftoverLogOfDeletedDatabase() throws Exception {
+		File f = getTestDir().append("testLeftoverLog.dat").toFile();
+		File fresh = getTestDir().append("testLeftoverLogFresh.dat").toFile();
+		Database.delete(f);
+		Database.delete(fresh);
+		Database wdb = new Database(f, new ChunkCache(), 1, false);
+		try {
+			wdb.setExclusiveLock();
+			createStrings(wdb, "committed");
+			wdb.commitWithoutCheckpoint();
+
+			// the database file has been removed, its log is left behind.
+			copyFile(Database.getTransactionLogFile(f), Database.getTransactionLogFile(fresh), 0);
+			assertFalse(fresh.exists());
+
+			Database rdb = new Database(fresh, new ChunkCache(), 2, false);
+			assertEquals(0, rdb.getRecoveredChunks());
+			assertFalse(Database.getTransactionLogFile(fresh).exists());
+			rdb.setExclusiveLock();
+			assertEquals(2, rdb.getVersion());
+			assertTrue(rdb.getSizeBytes() <= Database.CHUNK_SIZE);
+			rdb.close();
+
+			wdb.flush();
+			wdb.close();
+			assertTrue(Database.delete(f));
+			assertFalse(f.exists());
+			assertFalse(Database.getTransactionLogFile(f).exists());
+		} finally {
+			Database.delete(f);
+			Database.delete(fresh);
+		}
+	}
+
+	private long[] createStrings(Database db, String prefix) throws CoreException {
+		long[] records= new long[1000];
+		for (int i = 0; i < records.length; i++) {
+			records[i]= db.newString(prefix + i).getRecord();
+		}
+		return records;
+	}
+
+	private void checkStrings(Database db, String prefix, long[] records) throws CoreException {
+		for (int i = 0; i < records.length; i++) {
+			assertEquals(prefix + i, db.getString(records[i]).getString());
+		}
+	}
+
+	private void copyFile(File from, File to, int truncate) throws IOException {
+		FileChannel in= new FileInputStream(from).getChannel();
+		try {
+			FileChannel out= new FileOutputStream(to).getChannel();
+			try {
+				in.transferTo(0, in.size() - truncate, out);
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
 	public void testFreeBlockLinking() throws Exception {
 		final int realsize = 42;
 		final int deltas = (realsize+Database.BLOCK_HEADER_SIZE + Database.BLOCK_SIZE_DELTA - 1) / Database.BLOCK_SIZE_DELTA;
@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT project contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT project contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.pdom.tests;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import junit.framework.Test;
+
+import org.eclipse.cdt.core.CCorePlugin;
+import org.eclipse.cdt.core.dom.ILinkage;
+import org.eclipse.cdt.core.dom.IPDOMManager;
+import org.eclipse.cdt.core.index.IIndex;
+import org.eclipse.cdt.core.model.ICProject;
+import org.eclipse.cdt.core.testplugin.CProjectHelper;
+import org.eclipse.cdt.core.testplugin.util.BaseTestCase;
+import org.eclipse.cdt.core.testplugin.util.TestSourceReader;
+import org.eclipse.cdt.internal.core.index.IndexBasedFileContentProvider;
+import org.eclipse.cdt.internal.core.parser.SavedFilesProvider;
+import org.eclipse.cdt.internal.core.parser.scanner.InternalFileContent;
+import org.eclipse.cdt.internal.core.parser.scanner.InternalFileContent.InclusionKind;
+import org.eclipse.cdt.internal.core.pdom.HeaderContentCache;
+import org.eclipse.cdt.internal.core.pdom.IndexerStatistics;
+import org.eclipse.cdt.internal.core.pdom.indexer.ProjectIndexerInputAdapter;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+/**
+ * Tests for the cache of the content of included files shared by the translation units
+ * of an indexer task. The cache is used as the fall-back factory of the index based file
+ * content provider, as done by the indexer.
+ */
+public class HeaderContentCacheTests extends BaseTestCase {
+	private ICProject fCProject;
+	private IIndex fIndex;
+	private File fDir;
+
+	public static Test suite() {
+		return suite(HeaderContentCacheTests.class);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		fCProject= CProjectHelper.createCCProject("HeaderContentCacheTests" + System.currentTimeMillis(), "bin", IPDOMManager.ID_FAST_INDEXER);
+		TestSourceReader.createFile(fCProject.getProject(), "indexed.h", "int i;");
+		TestSourceReader.createFile(fCProject.getProject(), "source.cpp", "#include \"indexed.h\"\n");
+		CCorePlugin.getIndexManager().reindex(fCProject);
+		waitForIndexer(fCProject);
+		fIndex= CCorePlugin.getIndexManager().getIndex(fCProject);
+		fIndex.acquireReadLock();
+
+		// headers outside of the workspace are not indexed
+		fDir= File.createTempFile("headercache", "");
+		fDir.delete();
+		fDir.mkdir();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		fIndex.releaseReadLock();
+		for (File file : fDir.listFiles()) {
+			file.delete();
+		}
+		fDir.delete();
+		if (fCProject != null) {
+			fCProject.getProject().delete(IResource.FORCE | IResource.ALWAYS_DELETE_PROJECT_CONTENT, new NullProgressMonitor());
+		}
+		super.tearDown();
+	}
+
+	private IndexBasedFileContentProvider createProvider(HeaderContentCache cache) {
+		return new IndexBasedFileContentProvider(fIndex, new ProjectIndexerInputAdapter(fCProject, false),
+				ILinkage.CPP_LINKAGE_ID, cache.createContentProvider(SavedFilesProvider.getInstance()));
+	}
+
+	public void testRepeatedInclusionIsSkipped() throws Exception {
+		File header= writeFile("header.h", "int a;");
+		IndexerStatistics stats= new IndexerStatistics();
+		HeaderContentCache cache= new HeaderContentCache(HeaderContentCache.DEFAULT_BUDGET, stats);
+		IndexBasedFileContentProvider provider= createProvider(cache);
+
+		InternalFileContent c1= provider.getContentForInclusion(header.getPath());
+		assertEquals(InclusionKind.USE_SOURCE, c1.getKind());
+		InternalFileContent c2= provider.getContentForInclusion(header.getPath());
+		assertEquals(InclusionKind.SKIP_FILE, c2.getKind());
+
+		// the next translation unit gets the cached content
+		provider.cleanupAfterTranslationUnit();
+		InternalFileContent c3= provider.getContentForInclusion(header.getPath());
+		assertEquals(InclusionKind.USE_SOURCE, c3.getKind());
+		assertSame(c1.getSource(), c3.getSource());
+		c2= provider.getContentForInclusion(header.getPath());
+		assertEquals(InclusionKind.SKIP_FILE, c2.getKind());
+		assertEquals(1, stats.fHeaderCacheHits);
+		assertEquals(1, stats.fHeaderCacheMisses);
+	}
+
+	public void testIndexedHeaderIsFoundInIndex() throws Exception {
+		IFile indexed= fCProject.getProject().getFile("indexed.h");
+		IndexerStatistics stats= new IndexerStatistics();
+		HeaderContentCache cache= new HeaderContentCache(HeaderContentCache.DEFAULT_BUDGET, stats);
+		IndexBasedFileContentProvider provider= createProvider(cache);
+
+		for (int i = 0; i < 2; i++) {
+			InternalFileContent content= provider.getContentForInclusion(indexed.getLocation().toOSString());
+			assertEquals(InclusionKind.FOUND_IN_INDEX, content.getKind());
+			provider.cleanupAfterTranslationUnit();
+		}
+		assertEquals(0, stats.fHeaderCacheHits);
+		assertEquals(0, stats.fHeaderCacheMisses);
+		assertEquals(0, cache.getSize());
+	}
+
+	public void testContentIsShared() throws Exception {
+		File header= writeFile("header.h", "int a;");
+		IndexerStatistics stats= new IndexerStatistics();
+		HeaderContentCache cache= new HeaderContentCache(HeaderContentCache.DEFAULT_BUDGET, stats);
+		IndexBasedFileContentProvider provider1= createProvider(cache);
+		IndexBasedFileContentProvider provider2= createProvider(cache);
+
+		InternalFileContent c1= provider1.getContentForInclusion(header.getPath());
+		InternalFileContent c2= provider2.getContentForInclusion(header.getPath());
+		assertNotSame(c1, c2);
+		assertSame(c1.getSource(), c2.getSource());
+		assertEquals("int a;", c2.getSource().toString());
+		assertEquals(1, stats.fHeaderCacheHits);
+		assertEquals(1, stats.fHeaderCacheMisses);
+	}
+
+	public void testModifiedFileIsReread() throws Exception {
+		File header= writeFile("header.h", "int a;");
+		IndexerStatistics stats= new IndexerStatistics();
+		HeaderContentCache cache= new HeaderContentCache(HeaderContentCache.DEFAULT_BUDGET, stats);
+		IndexBasedFileContentProvider provider= createProvider(cache);
+
+		provider.getContentForInclusion(header.getPath());
+		provider.cleanupAfterTranslationUnit();
+		writeFile("header.h", "int a; int b;");
+		header.setLastModified(header.lastModified() + 2000);
+		InternalFileContent content= provider.getContentForInclusion(header.getPath());
+		assertEquals(2, stats.fHeaderCacheMisses);
+		assertEquals("int a; int b;", content.getSource().toString());
+	}
+
+	public void testEviction() throws Exception {
+		File h1= writeFile("h1.h", "int a1;");
+		File h2= writeFile("h2.h", "int a2;");
+		File h3= writeFile("h3.h", "int a3;");
+		IndexerStatistics stats= new IndexerStatistics();
+		HeaderContentCache cache= new HeaderContentCache(30, stats);
+		IndexBasedFileContentProvider provider= createProvider(cache);
+
+		provider.getContentForInclusion(h1.getPath());
+		provider.getContentForInclusion(h2.getPath());
+		provider.getContentForInclusion(h3.getPath());
+		assertEquals(21, cache.getSize());
+		assertEquals(3, stats.fHeaderCacheMisses);
+
+		File h4= writeFile("h4.h", "int a4;");
+		File h5= writeFile("h5.h", "int a5;");
+		provider.cleanupAfterTranslationUnit();
+		provider.getContentForInclusion(h1.getPath());
+		provider.getContentForInclusion(h4.getPath());
+		provider.getContentForInclusion(h5.getPath());
+		assertTrue(cache.getSize() <= 30);
+		assertEquals(5, stats.fHeaderCacheMisses);
+
+		// h1 was used recently, h2 was evicted.
+		provider.cleanupAfterTranslationUnit();
+		provider.getContentForInclusion(h1.getPath());
+		assertEquals(5, stats.fHeaderCacheMisses);
+		provider.getContentForInclusion(h2.getPath());
+		assertEquals(6, stats.fHeaderCacheMisses);
+	}
+
+	private File writeFile(String name, String content) throws IOException {
+		File file= new File(fDir, name);
+		FileWriter writer= new FileWriter(file);
+		try {
+			writer.write(content);
+		} finally {
+			writer.close();
+		}
+		return file;
+	}
+}
@@ -11,7 +11,10 @@
  *******************************************************************************/
 package org.eclipse.cdt.internal.pdom.tests;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.Test;
 
@@ -23,6 +26,7 @@ import org.eclipse.cdt.core.dom.ast.cpp.ICPPBinding;
 import org.eclipse.cdt.core.index.IIndexBinding;
 import org.eclipse.cdt.core.index.IIndexLocationConverter;
 import org.eclipse.cdt.core.index.IndexFilter;
+import org.eclipse.cdt.core.index.IndexLocationFactory;
 import org.eclipse.cdt.core.index.ResourceContainerRelativeLocationConverter;
 import org.eclipse.cdt.core.model.ICProject;
 import org.eclipse.cdt.core.model.LanguageManager;
@@ -31,11 +35,15 @@ import org.eclipse.cdt.core.testplugin.util.BaseTestCase;
 import org.eclipse.cdt.core.testplugin.util.TestSourceReader;
 import org.eclipse.cdt.internal.core.CCoreInternals;
 import org.eclipse.cdt.internal.core.index.IIndexFragment;
+import org.eclipse.cdt.internal.core.index.IIndexFragmentFile;
+import org.eclipse.cdt.internal.core.index.IIndexFragmentName;
 import org.eclipse.cdt.internal.core.index.IWritableIndexFragment;
 import org.eclipse.cdt.internal.core.pdom.PDOM;
 import org.eclipse.cdt.internal.core.pdom.PDOMManager;
 import org.eclipse.cdt.internal.core.pdom.WritablePDOM;
 import org.eclipse.cdt.internal.core.pdom.db.ChunkCache;
+import org.eclipse.cdt.internal.core.pdom.dom.PDOMBinding;
+import org.eclipse.cdt.internal.core.pdom.dom.PDOMName;
 import org.eclipse.cdt.internal.core.pdom.indexer.IndexerPreferences;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
@@ -206,6 +214,57 @@ public class PDOMCPPBugsTest extends BaseTestCase {
 		pdom.releaseWriteLock();
 	}
 	
+	public void testConcurrentReadersAndWriters() throws Exception {
+		final WritablePDOM pdom= (WritablePDOM) CCoreInternals.getPDOMManager().getPDOM(cproject);
+		final AtomicInteger readers= new AtomicInteger();
+		final AtomicBoolean writing= new AtomicBoolean();
+		final AtomicInteger violations= new AtomicInteger();
+		Thread[] threads= new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			final int id= i;
+			threads[i]= new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int j = 0; j < 500; j++) {
+							if (id % 4 == 0) {
+								// only one thread may upgrade a read lock, otherwise the writers block each other.
+								final int readLocks= id == 0 ? j % 2 : 0;
+								if (readLocks > 0)
+									pdom.acquireReadLock();
+								pdom.acquireWriteLock(readLocks);
+								if (writing.getAndSet(true) || readers.get() != 0)
+									violations.incrementAndGet();
+								writing.set(false);
+								pdom.releaseWriteLock(readLocks, false);
+								if (readLocks > 0)
+									pdom.releaseReadLock();
+							} else {
+								pdom.acquireReadLock();
+								readers.incrementAndGet();
+								if (writing.get())
+									violations.incrementAndGet();
+								readers.decrementAndGet();
+								pdom.releaseReadLock();
+							}
+						}
+					} catch (InterruptedException e) {
+						violations.incrementAndGet();
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join(60000);
+			assertFalse("lock is blocked", thread.isAlive());
+		}
+		assertEquals(0, violations.get());
+		assertFalse(pdom.hasWaitingReaders());
+		pdom.acquireWriteLock();
+		pdom.releaseWriteLock();
+	}
+
 	public void test191679() throws Exception {
 		IProject project= cproject.getProject();
 		IFolder cHeaders= cproject.getProject().getFolder("cHeaders");
@@ -252,5 +311,79 @@ public class PDOMCPPBugsTest extends BaseTestCase {
 			pdom.releaseReadLock();
 		}
 	}
-}
 
+	private String createCalls(String function, int count) {
+		StringBuilder buf= new StringBuilder();
+		buf.append("void ").append(function).append("(int);\n");
+		buf.append("void caller() {\n");
+		for (int i = 0; i < count; i++) {
+			buf.append("\t").append(function).append("(").append(i).append(");\n");
+		}
+		buf.append("}\n");
+		return buf.toString();
+	}
+
+	public void testReferenceIndex() throws Exception {
+		IProject project= cproject.getProject();
+		final int refsPerFile= PDOMBinding.REFERENCE_INDEX_THRESHOLD;
+		IFile file1= TestSourceReader.createFile(project, "refs1.cpp", createCalls("log", refsPerFile));
+		IFile file2= TestSourceReader.createFile(project, "refs2.cpp", createCalls("log", refsPerFile));
+		IFile file3= TestSourceReader.createFile(project, "refs3.cpp", createCalls("log", 3));
+
+		CCorePlugin.getIndexManager().reindex(cproject);
+		assertTrue(CCorePlugin.getIndexManager().joinIndexer(10000, npm()));
+
+		final PDOM pdom= (PDOM) CCoreInternals.getPDOMManager().getPDOM(cproject);
+		pdom.acquireReadLock();
+		try {
+			IIndexBinding[] ib= pdom.findBindings(new char[][] {"log".toCharArray()}, IndexFilter.ALL, npm());
+			assertEquals(1, ib.length);
+			assertEquals(2 * refsPerFile + 3, ((PDOMBinding) ib[0]).getReferenceCount());
+
+			IIndexFragmentName[] all= pdom.findReferences(ib[0], null, 0, -1);
+			assertEquals(2 * refsPerFile + 3, all.length);
+			assertEquals(all.length, pdom.findNames(ib[0], IIndexFragment.FIND_REFERENCES).length);
+			for (int i = 1; i < all.length; i++) {
+				if (all[i].getFile().equals(all[i-1].getFile())) {
+					assertTrue(all[i-1].getNodeOffset() < all[i].getNodeOffset());
+				}
+			}
+
+			// restricted to a set of files
+			IIndexFragmentFile[] files= pdom.getFiles(IndexLocationFactory.getWorkspaceIFL(file2));
+			assertEquals(1, files.length);
+			IIndexFragmentName[] refs= pdom.findReferences(ib[0], files, 0, -1);
+			assertEquals(refsPerFile, refs.length);
+			for (IIndexFragmentName ref : refs) {
+				assertEquals(files[0], ref.getFile());
+			}
+			IIndexFragmentFile[] files3= pdom.getFiles(IndexLocationFactory.getWorkspaceIFL(file3));
+			assertEquals(3, pdom.findReferences(ib[0], files3, 0, -1).length);
+
+			// paging
+			IIndexFragmentName[] page= pdom.findReferences(ib[0], null, 10, 20);
+			assertEquals(20, page.length);
+			for (int i = 0; i < page.length; i++) {
+				assertEquals(((PDOMName) all[i + 10]).getRecord(), ((PDOMName) page[i]).getRecord());
+			}
+			assertEquals(3, pdom.findReferences(ib[0], null, all.length - 3, 20).length);
+		} finally {
+			pdom.releaseReadLock();
+		}
+
+		// the references of a file that is indexed again are removed from the index
+		file1.setContents(new ByteArrayInputStream(createCalls("log", 1).getBytes()), IResource.FORCE, npm());
+		CCorePlugin.getIndexManager().reindex(cproject);
+		assertTrue(CCorePlugin.getIndexManager().joinIndexer(10000, npm()));
+		pdom.acquireReadLock();
+		try {
+			IIndexBinding[] ib= pdom.findBindings(new char[][] {"log".toCharArray()}, IndexFilter.ALL, npm());
+			assertEquals(1, ib.length);
+			assertEquals(refsPerFile + 4, pdom.findReferences(ib[0], null, 0, -1).length);
+			IIndexFragmentFile[] files= pdom.getFiles(IndexLocationFactory.getWorkspaceIFL(file1));
+			assertEquals(1, pdom.findReferences(ib[0], files, 0, -1).length);
+		} finally {
+			pdom.releaseReadLock();
+		}
+	}
+}
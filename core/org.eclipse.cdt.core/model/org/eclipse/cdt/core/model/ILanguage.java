@@ -82,6 +82,14 @@ public interface ILanguage extends IAdaptable {
 	 */
 	public final static int OPTION_PARSE_INACTIVE_CODE= 0x20;
 
+	/**
+	 * Option for {@link #getASTTranslationUnit(FileContent, IScannerInfo, IncludeFileContentProvider, IIndex, int, IParserLogService)}
+	 * Instructs the preprocessor not to record the comments of the translation unit, 
+	 * {@link IASTTranslationUnit#getComments()} will return an empty array.
+	 * @since 5.4
+	 */
+	public final static int OPTION_SKIP_COMMENTS= 0x40;
+
 	/**
 	 * Return the language id for this language.
 	 * This is to differentiate languages from each other.
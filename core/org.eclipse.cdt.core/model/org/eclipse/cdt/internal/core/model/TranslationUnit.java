@@ -70,6 +70,7 @@ import org.eclipse.cdt.internal.core.dom.parser.ASTTranslationUnit;
 import org.eclipse.cdt.internal.core.index.IndexBasedFileContentProvider;
 import org.eclipse.cdt.internal.core.parser.InternalParserUtil;
 import org.eclipse.cdt.internal.core.parser.ParserLogService;
+import org.eclipse.cdt.internal.core.parser.scanner.IncludeResolutionCache;
 import org.eclipse.cdt.internal.core.parser.scanner.InternalFileContentProvider;
 import org.eclipse.cdt.internal.core.pdom.indexer.ProjectIndexerIncludeResolutionHeuristics;
 import org.eclipse.cdt.internal.core.pdom.indexer.ProjectIndexerInputAdapter;
@@ -834,6 +835,7 @@ public class TranslationUnit extends Openable implements ITranslationUnit {
 		if (fileContentsProvider instanceof InternalFileContentProvider) {
 			final ProjectIndexerIncludeResolutionHeuristics heuristics = new ProjectIndexerIncludeResolutionHeuristics(cprj.getProject(), pathResolver);
 			((InternalFileContentProvider) fileContentsProvider).setIncludeResolutionHeuristics(heuristics);
+			((InternalFileContentProvider) fileContentsProvider).setIncludeResolutionCache(IncludeResolutionCache.getInstance());
 		}
 		
 		return fileContentsProvider;
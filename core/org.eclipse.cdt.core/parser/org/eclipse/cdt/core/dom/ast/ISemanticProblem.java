@@ -34,6 +34,11 @@ public interface ISemanticProblem {
 	int BINDING_RECURSION_IN_LOOKUP 				=    14;
 	int BINDING_INVALID_TEMPLATE_ARGUMENTS 			=    15;
 	int BINDING_NO_CLASS 							= 	 16; 
+	/** 
+	 * The number of template instances that may be created for a translation unit has been exceeded.
+	 * @since 5.4
+	 */
+	int BINDING_INSTANTIATION_BUDGET_EXCEEDED 		=    17;
 
 	int TYPE_NO_NAME 								= 10000;
 	int TYPE_UNRESOLVED_NAME 						= 10001;
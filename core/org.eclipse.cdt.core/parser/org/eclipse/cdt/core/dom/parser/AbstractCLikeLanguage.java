@@ -128,6 +128,7 @@ public abstract class AbstractCLikeLanguage extends AbstractLanguage implements
 		final IScanner scanner= createScanner(reader, scanInfo, fileCreator, log);
 		scanner.setComputeImageLocations((options & OPTION_NO_IMAGE_LOCATIONS) == 0);
 		scanner.setProcessInactiveCode((options & OPTION_PARSE_INACTIVE_CODE) != 0);
+		scanner.setScanComments((options & OPTION_SKIP_COMMENTS) == 0);
 
 		final ISourceCodeParser parser= createParser(scanner, log, index, false, options);
 
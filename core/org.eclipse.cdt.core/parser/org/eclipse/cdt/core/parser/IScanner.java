@@ -14,6 +14,7 @@ package org.eclipse.cdt.core.parser;
 import java.util.Map;
 
 import org.eclipse.cdt.core.dom.ast.IASTName;
+import org.eclipse.cdt.core.dom.ast.IASTTranslationUnit;
 import org.eclipse.cdt.core.dom.ast.IMacroBinding;
 import org.eclipse.cdt.internal.core.parser.scanner.ILocationResolver;
 import org.eclipse.cdt.internal.core.parser.scanner.Lexer;
@@ -107,8 +108,9 @@ public interface IScanner {
 	public int getCodeBranchNesting();
 	
 	/**
+	 * Turns on/off recording of the comments of the translation unit. When turned off,
+	 * {@link IASTTranslationUnit#getComments()} returns an empty array.
 	 * @noreference This method is not intended to be referenced by clients.
 	 */
-	@Deprecated
 	public void setScanComments(boolean val);
 }
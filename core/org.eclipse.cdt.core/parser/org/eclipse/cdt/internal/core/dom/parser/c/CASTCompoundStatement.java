@@ -45,7 +45,7 @@ public class CASTCompoundStatement extends ASTNode implements IASTCompoundStatem
 
     public IASTStatement[] getStatements() {
         if (statements == null) return IASTStatement.EMPTY_STATEMENT_ARRAY;
-        return (IASTStatement[]) ArrayUtil.trim(IASTStatement.class, statements);
+        return statements= (IASTStatement[]) ArrayUtil.trim(IASTStatement.class, statements);
     }
 
     public void addStatement(IASTStatement statement) {
@@ -47,7 +47,7 @@ public class CASTExpressionList extends ASTNode implements IASTExpressionList,
     public IASTExpression[] getExpressions() {
         if (expressions == null)
             return IASTExpression.EMPTY_EXPRESSION_ARRAY;
-        return (IASTExpression[]) ArrayUtil.trim( IASTExpression.class, expressions );
+        return expressions= (IASTExpression[]) ArrayUtil.trim( IASTExpression.class, expressions );
     }
 
     public void addExpression(IASTExpression expression) {
@@ -47,7 +47,7 @@ public class CPPASTCompoundStatement extends ASTNode implements
 
     public IASTStatement[] getStatements() {
         if( statements == null ) return IASTStatement.EMPTY_STATEMENT_ARRAY;
-        return (IASTStatement[]) ArrayUtil.trim( IASTStatement.class, statements );
+        return statements= (IASTStatement[]) ArrayUtil.trim( IASTStatement.class, statements );
     }
 
     public void addStatement(IASTStatement statement) {
@@ -69,7 +69,7 @@ public class CPPASTExpressionList extends ASTNode implements ICPPASTExpressionLi
 	
 	public IASTExpression[] getExpressions() {
         if (expressions == null) return IASTExpression.EMPTY_EXPRESSION_ARRAY;
-        return (IASTExpression[]) ArrayUtil.trim(IASTExpression.class, expressions);
+        return expressions= ArrayUtil.trim(expressions);
     }
 
     public void addExpression(IASTExpression expression) {
@@ -107,7 +107,7 @@ public class CPPASTTemplateId extends CPPASTNameBase implements ICPPASTTemplateI
 
     public IASTNode[] getTemplateArguments() {
         if (templateArguments == null) return ICPPASTTemplateId.EMPTY_ARG_ARRAY;
-        return (IASTNode[]) ArrayUtil.trim(IASTNode.class, templateArguments);
+        return templateArguments= (IASTNode[]) ArrayUtil.trim(IASTNode.class, templateArguments);
     }
 
     @Override
@@ -31,6 +31,7 @@ import org.eclipse.cdt.internal.core.dom.Linkage;
 import org.eclipse.cdt.internal.core.dom.parser.ASTTranslationUnit;
 import org.eclipse.cdt.internal.core.dom.parser.IASTAmbiguityParent;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.semantics.CPPVisitor;
+import org.eclipse.cdt.internal.core.dom.parser.cpp.semantics.LookupCache;
 import org.eclipse.cdt.internal.core.index.IIndexScope;
 import org.eclipse.cdt.internal.core.parser.scanner.InternalFileContent;
 
@@ -41,6 +42,7 @@ public class CPPASTTranslationUnit extends ASTTranslationUnit implements ICPPAST
     private CPPNamespaceScope fScope = null;
     private ICPPNamespace fBinding = null;
 	private final CPPScopeMapper fScopeMapper= new CPPScopeMapper(this);
+	private LookupCache fLookupCache;
 	
 	public CPPASTTranslationUnit() {
 	}
@@ -176,6 +178,26 @@ public class CPPASTTranslationUnit extends ASTTranslationUnit implements ICPPAST
 		fScopeMapper.handleAdditionalDirectives(scope);
 	}
 
+	/**
+	 * Returns the cache for the results of name lookups in this AST.
+	 */
+	public LookupCache getLookupCache() {
+		if (fLookupCache == null) {
+			fLookupCache= new LookupCache();
+		}
+		return fLookupCache;
+	}
+
+	/**
+	 * Discards the cached results of name lookups, called when a class or namespace scope
+	 * of this AST gains members.
+	 */
+	public void invalidateLookupCache() {
+		if (fLookupCache != null) {
+			fLookupCache.clear();
+		}
+	}
+
 	@Override
 	public void resolveAmbiguities() {
 		accept(new CPPASTAmbiguityResolver()); 
@@ -155,6 +155,7 @@ public class CPPClassScope extends CPPScope implements ICPPClassScope {
 	 */
 	@Override
 	public void addBinding(IBinding binding) {
+		invalidateLookupCache();
 	    if (binding instanceof ICPPConstructor) {
 	        addConstructor(binding);
 	        return;
@@ -182,6 +183,7 @@ public class CPPClassScope extends CPPScope implements ICPPClassScope {
 			if (qname.isFullyQualified() && b != null)
 				return;
 		}
+		invalidateLookupCache();
 		IASTNode parent = name.getParent();
 		if (parent instanceof IASTDeclarator) {
 			if (CPPVisitor.isConstructor(this, (IASTDeclarator) parent)) {
@@ -22,8 +22,10 @@ import org.eclipse.cdt.core.dom.ast.ASTVisitor;
 import org.eclipse.cdt.core.dom.ast.DOMException;
 import org.eclipse.cdt.core.dom.ast.EScopeKind;
 import org.eclipse.cdt.core.dom.ast.IASTDeclaration;
+import org.eclipse.cdt.core.dom.ast.IASTName;
 import org.eclipse.cdt.core.dom.ast.IASTNode;
 import org.eclipse.cdt.core.dom.ast.IASTTranslationUnit;
+import org.eclipse.cdt.core.dom.ast.IBinding;
 import org.eclipse.cdt.core.dom.ast.IScope;
 import org.eclipse.cdt.core.dom.ast.cpp.ICPPASTLinkageSpecification;
 import org.eclipse.cdt.core.dom.ast.cpp.ICPPASTNamespaceDefinition;
@@ -63,6 +65,22 @@ public class CPPNamespaceScope extends CPPScope implements ICPPInternalNamespace
 		return EScopeKind.eNamespace;
 	}
 
+	@Override
+	public void addName(IASTName name) {
+		if (getKind() != EScopeKind.eLocal && name.isActive()) {
+			invalidateLookupCache();
+		}
+		super.addName(name);
+	}
+
+	@Override
+	public void addBinding(IBinding binding) {
+		if (getKind() != EScopeKind.eLocal) {
+			invalidateLookupCache();
+		}
+		super.addBinding(binding);
+	}
+
 	/* (non-Javadoc)
 	 * @see org.eclipse.cdt.core.dom.ast.cpp.ICPPNamespaceScope#getUsingDirectives()
 	 */
@@ -323,6 +323,19 @@ abstract public class CPPScope implements ICPPASTInternalScope {
 		}
 	}
 
+	/**
+	 * Discards the cached results of name lookups in the AST this scope belongs to. Has to be
+	 * called by scopes whose members affect cached lookups whenever they gain members.
+	 */
+	protected final void invalidateLookupCache() {
+		if (physicalNode != null) {
+			IASTTranslationUnit tu= physicalNode.getTranslationUnit();
+			if (tu instanceof CPPASTTranslationUnit) {
+				((CPPASTTranslationUnit) tu).invalidateLookupCache();
+			}
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see org.eclipse.cdt.core.dom.ast.IScope#find(java.lang.String)
 	 */
@@ -25,10 +25,12 @@ import org.eclipse.cdt.core.dom.ast.IScope;
 import org.eclipse.cdt.core.dom.ast.cpp.ICPPBase;
 import org.eclipse.cdt.core.dom.ast.cpp.ICPPClassScope;
 import org.eclipse.cdt.core.dom.ast.cpp.ICPPClassType;
+import org.eclipse.cdt.core.dom.ast.cpp.ICPPConstructor;
 import org.eclipse.cdt.core.dom.ast.cpp.ICPPMember;
 import org.eclipse.cdt.core.index.IIndexFileSet;
 import org.eclipse.cdt.core.parser.util.ArrayUtil;
 import org.eclipse.cdt.core.parser.util.CharArrayObjectMap;
+import org.eclipse.cdt.core.parser.util.CharArrayUtils;
 import org.eclipse.cdt.internal.core.dom.parser.ProblemBinding;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.ICPPDeferredClassInstance;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.ICPPInternalUnknownScope;
@@ -49,6 +51,23 @@ class BaseClassLookup {
 		if (classType == null) 
 			return;
 		
+		// Results that neither raise a problem nor skip a dependent base are cached per AST.
+		LookupCache cache= null;
+		char[] key= null;
+		int flags= 0;
+		if (!data.contentAssist && !data.prefixLookup && data.tu != null && data.problem == null
+				&& data.skippedScope == null) {
+			cache= data.tu.getLookupCache();
+			key= data.astName.getLookupKey();
+			flags= (data.typesOnly ? LookupCache.TYPES_ONLY : 0)
+					| (data.checkPointOfDecl ? LookupCache.CHECK_POINT_OF_DECL : 0);
+			IBinding[] result= cache.get(classScope, key, flags);
+			if (result != null) {
+				data.foundItems = ArrayUtil.addAll((Object[]) data.foundItems, result);
+				return;
+			}
+		}
+
 		final HashMap<IScope, BaseClassLookup> infoMap = new HashMap<IScope, BaseClassLookup>();
 		BaseClassLookup rootInfo= lookupInBaseClass(data, null, false, classType, fileSet, infoMap, 0);
 		if (data.contentAssist) {
@@ -58,6 +77,9 @@ class BaseClassLookup {
 			IBinding[] result= rootInfo.collectResult(data, true, IBinding.EMPTY_BINDING_ARRAY);
 			if (data.problem == null) {
 				data.foundItems = ArrayUtil.addAll((Object[]) data.foundItems, result);
+				if (cache != null && data.skippedScope == null && isCacheable(result, key)) {
+					cache.put(classScope, key, flags, result);
+				}
 			} else if (result.length > 0) {
 				data.problem.setCandidateBindings(result);
 			}
@@ -65,6 +87,20 @@ class BaseClassLookup {
 		}
 	}
 
+	/**
+	 * The result of looking up the name of a class depends on whether constructors are
+	 * requested, such results are not cached.
+	 */
+	private static boolean isCacheable(IBinding[] result, char[] key) {
+		for (IBinding binding : result) {
+			if (binding instanceof ICPPClassType || binding instanceof ICPPConstructor) {
+				if (CharArrayUtils.equals(binding.getNameCharArray(), key))
+					return false;
+			}
+		}
+		return true;
+	}
+
 
 	private final ICPPClassType fClassType;
 	private IBinding[] fBindings;
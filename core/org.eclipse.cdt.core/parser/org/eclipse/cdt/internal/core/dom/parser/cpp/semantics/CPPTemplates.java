@@ -157,6 +157,25 @@ public class CPPTemplates {
 	private static final ICPPFunction[] NO_FUNCTIONS = {};
 	static enum TypeSelection {PARAMETERS, RETURN_TYPE, PARAMETERS_AND_RETURN_TYPE}
 
+	/**
+	 * Limits the number of template instances that may be created on the current thread,
+	 * until {@link #endInstantiationBudget()} is called. Once the budget is exhausted, further
+	 * instantiations result in problem bindings. While the budget is in place, the partial
+	 * specializations selected for the arguments of class templates are memoized.
+	 * @param budget the maximum number of instances, <code>0</code> for no limit.
+	 */
+	public static void beginInstantiationBudget(int budget) {
+		InstantiationContext.begin(budget);
+	}
+
+	/**
+	 * Removes the limit set by {@link #beginInstantiationBudget(int)} for the current thread.
+	 * @return whether instantiations were rejected because the budget was exhausted.
+	 */
+	public static boolean endInstantiationBudget() {
+		return InstantiationContext.end();
+	}
+
 	/**
 	 * Instantiates a class template with the given arguments. May return <code>null</code>.
 	 */
@@ -247,7 +266,7 @@ public class CPPTemplates {
 		}
 	}
 
-	private static IBinding createProblem(ICPPClassTemplate template, int id) {
+	private static IBinding createProblem(ICPPTemplateDefinition template, int id) {
 		IASTNode node= new CPPASTName(template.getNameCharArray());
 		return new ProblemBinding(node, id, template.getNameCharArray());
 	}
@@ -305,6 +324,9 @@ public class CPPTemplates {
 			return instance;
 		}
 	
+		if (!InstantiationContext.acquireInstance())
+			return createProblem(template, ISemanticProblem.BINDING_INSTANTIATION_BUDGET_EXCEEDED);
+
 		IBinding owner= template.getOwner();
 		instance = CPPTemplates.createInstance(owner, template, map, arguments);
 		addInstance(template, arguments, instance);
@@ -328,6 +350,9 @@ public class CPPTemplates {
 				return null;
 		}
 
+		if (!InstantiationContext.acquireInstance())
+			return createProblem(partialSpec, ISemanticProblem.BINDING_INSTANTIATION_BUDGET_EXCEEDED);
+
 		instance= createInstance(partialSpec.getOwner(), partialSpec, tpMap, args);
 		addInstance(partialSpec, args, instance);
 		return instance;
@@ -346,6 +371,9 @@ public class CPPTemplates {
 			return instance;
 		}
 
+		if (!InstantiationContext.acquireInstance())
+			return createProblem(template, ISemanticProblem.BINDING_INSTANTIATION_BUDGET_EXCEEDED);
+
 		IBinding owner= template.getOwner();
 		instance = CPPTemplates.createInstance(owner, template, map, arguments);
 		addInstance(template, arguments, instance);
@@ -1907,6 +1935,22 @@ public class CPPTemplates {
 			return null;
 		}
 
+		final InstantiationContext context= isDef ? null : InstantiationContext.getCurrent();
+		if (context == null)
+			return selectSpecialization(specializations, args, isDef);
+
+		final String key= ASTTypeUtil.getArgumentListString(args, true);
+		InstantiationContext.Selection selection= context.getSelection(template, key, specializations.length);
+		if (selection != null)
+			return selection.getResult();
+
+		IBinding result= selectSpecialization(specializations, args, isDef);
+		context.putSelection(template, key, specializations.length, result);
+		return result;
+	}
+
+	private static IBinding selectSpecialization(ICPPClassTemplatePartialSpecialization[] specializations,
+			ICPPTemplateArgument[] args, boolean isDef) throws DOMException {
 		ICPPClassTemplatePartialSpecialization bestMatch = null, spec = null;
 		CPPTemplateParameterMap bestMap= null;
 		boolean bestMatchIsBest = true;
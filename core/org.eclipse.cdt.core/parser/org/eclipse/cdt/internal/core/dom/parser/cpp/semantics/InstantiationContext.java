@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT project contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT project contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.dom.parser.cpp.semantics;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.cdt.core.dom.ast.IBinding;
+import org.eclipse.cdt.core.dom.ast.cpp.ICPPClassTemplate;
+
+/**
+ * State of the template instantiations performed on one thread between
+ * {@link CPPTemplates#beginInstantiationBudget(int)} and {@link CPPTemplates#endInstantiationBudget()},
+ * typically while one translation unit is parsed and resolved by the indexer.
+ * <p>
+ * The context limits the number of instances that may be created and memoizes the partial
+ * specializations selected for the arguments of class templates. The selections are keyed by
+ * the normalized argument list, the same key the instance caches of AST and index templates
+ * use. Since partial specializations are added to a template while the AST is resolved, a
+ * selection is reused only as long as the number of partial specializations is unchanged.
+ */
+final class InstantiationContext {
+	private static final ThreadLocal<InstantiationContext> fgCurrent= new ThreadLocal<InstantiationContext>();
+
+	static final class Selection {
+		private final int fSpecializationCount;
+		private final IBinding fResult;
+
+		Selection(int specializationCount, IBinding result) {
+			fSpecializationCount= specializationCount;
+			fResult= result;
+		}
+
+		/**
+		 * Returns the instance of the selected partial specialization, or <code>null</code>
+		 * if no partial specialization matches the arguments.
+		 */
+		IBinding getResult() {
+			return fResult;
+		}
+	}
+
+	private final int fBudget;
+	private int fInstances;
+	private boolean fExhausted;
+	private final Map<ICPPClassTemplate, Map<String, Selection>> fSelections=
+		new HashMap<ICPPClassTemplate, Map<String, Selection>>();
+
+	private InstantiationContext(int budget) {
+		fBudget= budget;
+	}
+
+	static void begin(int budget) {
+		fgCurrent.set(new InstantiationContext(budget));
+	}
+
+	/**
+	 * Removes the context of the current thread.
+	 * @return whether instantiations were rejected since the context was created.
+	 */
+	static boolean end() {
+		InstantiationContext context= fgCurrent.get();
+		fgCurrent.remove();
+		return context != null && context.fExhausted;
+	}
+
+	/**
+	 * Returns the context of the current thread, or <code>null</code>.
+	 */
+	static InstantiationContext getCurrent() {
+		return fgCurrent.get();
+	}
+
+	/**
+	 * Accounts for an instance about to be created on the current thread.
+	 * @return <code>false</code> if the budget of the current thread is exhausted.
+	 */
+	static boolean acquireInstance() {
+		InstantiationContext context= fgCurrent.get();
+		if (context == null)
+			return true;
+
+		if (context.fBudget > 0 && context.fInstances >= context.fBudget) {
+			context.fExhausted= true;
+			return false;
+		}
+		context.fInstances++;
+		return true;
+	}
+
+	/**
+	 * Returns the memoized selection of a partial specialization, or <code>null</code>.
+	 */
+	Selection getSelection(ICPPClassTemplate template, String arguments, int specializationCount) {
+		Map<String, Selection> map= fSelections.get(template);
+		if (map != null) {
+			Selection selection= map.get(arguments);
+			if (selection != null && selection.fSpecializationCount == specializationCount)
+				return selection;
+		}
+		return null;
+	}
+
+	void putSelection(ICPPClassTemplate template, String arguments, int specializationCount, IBinding result) {
+		Map<String, Selection> map= fSelections.get(template);
+		if (map == null) {
+			map= new HashMap<String, Selection>();
+			fSelections.put(template, map);
+		}
+		map.put(arguments, new Selection(specializationCount, result));
+	}
+}
@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT project contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT project contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.dom.parser.cpp.semantics;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.cdt.core.dom.ast.IBinding;
+import org.eclipse.cdt.core.dom.ast.IScope;
+import org.eclipse.cdt.core.parser.util.CharArrayUtils;
+import org.eclipse.cdt.internal.core.parser.util.Profiler;
+
+/**
+ * Memoizes the results of name lookups for one AST, keyed by the scope the lookup was
+ * started in, the name and the flags that influence the result. The cache is cleared
+ * whenever a class or namespace scope of the AST gains members.
+ */
+public final class LookupCache {
+	static final int TYPES_ONLY= 0x1;
+	static final int CHECK_POINT_OF_DECL= 0x2;
+
+	private static final int MAX_ENTRIES= 10000;
+	private static final String HITS= "LookupCache.hits"; //$NON-NLS-1$
+	private static final String MISSES= "LookupCache.misses"; //$NON-NLS-1$
+
+	private static final class Key {
+		private final IScope fScope;
+		private final char[] fName;
+		private final int fFlags;
+		private final int fHash;
+
+		Key(IScope scope, char[] name, int flags) {
+			fScope= scope;
+			fName= name;
+			fFlags= flags;
+			fHash= (scope.hashCode() * 31 + CharArrayUtils.hash(name)) * 31 + flags;
+		}
+
+		@Override
+		public int hashCode() {
+			return fHash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			final Key other= (Key) obj;
+			return fScope == other.fScope && fFlags == other.fFlags && CharArrayUtils.equals(fName, other.fName);
+		}
+	}
+
+	private final Map<Key, IBinding[]> fResults= new HashMap<Key, IBinding[]>();
+
+	/**
+	 * Returns the cached result of a lookup, or <code>null</code> if it is not known.
+	 */
+	IBinding[] get(IScope scope, char[] name, int flags) {
+		IBinding[] result= fResults.get(new Key(scope, name, flags));
+		Profiler.incrementCounter(result != null ? HITS : MISSES);
+		return result;
+	}
+
+	void put(IScope scope, char[] name, int flags, IBinding[] result) {
+		if (fResults.size() >= MAX_ENTRIES) {
+			fResults.clear();
+		}
+		fResults.put(new Key(scope, name, flags), result);
+	}
+
+	/**
+	 * Discards all cached results.
+	 */
+	public void clear() {
+		if (!fResults.isEmpty()) {
+			fResults.clear();
+		}
+	}
+}
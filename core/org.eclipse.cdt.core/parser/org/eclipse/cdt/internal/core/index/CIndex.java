@@ -24,6 +24,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 import org.eclipse.cdt.core.CCorePlugin;
@@ -43,6 +44,8 @@ import org.eclipse.cdt.core.index.IIndexMacro;
 import org.eclipse.cdt.core.index.IIndexName;
 import org.eclipse.cdt.core.index.IndexFilter;
 import org.eclipse.cdt.internal.core.dom.Linkage;
+import org.eclipse.cdt.internal.core.index.FragmentQueryExecutor.IFragmentQuery;
+import org.eclipse.cdt.internal.core.index.FragmentQueryExecutor.IResultHandler;
 import org.eclipse.cdt.internal.core.index.composite.CompositingNotImplementedError;
 import org.eclipse.cdt.internal.core.index.composite.ICompositesFactory;
 import org.eclipse.cdt.internal.core.index.composite.c.CCompositesFactory;
@@ -96,60 +99,45 @@ public class CIndex implements IIndex {
 		return findBindings(new Pattern[] { pattern }, isFullyQualified, filter, monitor);
 	}
 
-	public IIndexBinding[] findBindings(Pattern[] patterns, boolean isFullyQualified, IndexFilter filter,
+	public IIndexBinding[] findBindings(final Pattern[] patterns, final boolean isFullyQualified, IndexFilter filter,
 			IProgressMonitor monitor) throws CoreException {
 		if (SPECIALCASE_SINGLES && fFragments.length == 1) {
 			 return fFragments[0].findBindings(patterns, isFullyQualified, filter, monitor);
 		} else {
-			List<IIndexBinding[]> result = new ArrayList<IIndexBinding[]>();
-			ILinkage[] linkages = Linkage.getIndexerLinkages();
-			for (ILinkage linkage : linkages) {
-				if (filter.acceptLinkage(linkage)) {
-					IIndexFragmentBinding[][] fragmentBindings = new IIndexFragmentBinding[fPrimaryFragmentCount][];
-					for (int i = 0; i < fPrimaryFragmentCount; i++) {
-						try {
-							IBinding[] part = fFragments[i].findBindings(patterns, isFullyQualified, retargetFilter(linkage, filter), monitor);
-							fragmentBindings[i] = new IIndexFragmentBinding[part.length];
-							System.arraycopy(part, 0, fragmentBindings[i], 0, part.length);
-						} catch (CoreException e) {
-							CCorePlugin.log(e);
-							fragmentBindings[i] = IIndexFragmentBinding.EMPTY_INDEX_BINDING_ARRAY;
-						}
-					}
-					ICompositesFactory factory = getCompositesFactory(linkage.getLinkageID());
-					result.add(factory.getCompositeBindings(fragmentBindings));
+			return findBindings(filter, new BindingQuery() {
+				@Override
+				IBinding[] find(IIndexFragment fragment, IndexFilter f, IProgressMonitor m) throws CoreException {
+					return fragment.findBindings(patterns, isFullyQualified, f, m);
 				}
-			}
-			return flatten(result);
+			}, false, monitor);
 		}
 	}
 
-	public IIndexBinding[] findMacroContainers(Pattern pattern, IndexFilter filter, IProgressMonitor monitor)
+	/**
+	 * Same as {@link #findBindings(Pattern[], boolean, IndexFilter, IProgressMonitor)}, however the
+	 * bindings are passed to the collector as soon as a fragment has been searched.
+	 */
+	public void findBindings(final Pattern[] patterns, final boolean isFullyQualified, IndexFilter filter,
+			IIndexBindingCollector collector, IProgressMonitor monitor) throws CoreException {
+		findBindings(filter, new BindingQuery() {
+			@Override
+			IBinding[] find(IIndexFragment fragment, IndexFilter f, IProgressMonitor m) throws CoreException {
+				return fragment.findBindings(patterns, isFullyQualified, f, m);
+			}
+		}, collector, monitor);
+	}
+
+	public IIndexBinding[] findMacroContainers(final Pattern pattern, IndexFilter filter, IProgressMonitor monitor)
 			throws CoreException {
 		if (SPECIALCASE_SINGLES && fFragments.length == 1) {
 			 return fFragments[0].findMacroContainers(pattern, filter, monitor);
 		} else {
-			List<IIndexBinding[]> result = new ArrayList<IIndexBinding[]>();
-			ILinkage[] linkages = Linkage.getIndexerLinkages();
-			for (ILinkage linkage : linkages) {
-				if (filter.acceptLinkage(linkage)) {
-					IIndexFragmentBinding[][] fragmentBindings = new IIndexFragmentBinding[fPrimaryFragmentCount][];
-					for (int i = 0; i < fPrimaryFragmentCount; i++) {
-						try {
-							IBinding[] part = fFragments[i].findMacroContainers(pattern,
-									retargetFilter(linkage, filter), monitor);
-							fragmentBindings[i] = new IIndexFragmentBinding[part.length];
-							System.arraycopy(part, 0, fragmentBindings[i], 0, part.length);
-						} catch (CoreException e) {
-							CCorePlugin.log(e);
-							fragmentBindings[i] = IIndexFragmentBinding.EMPTY_INDEX_BINDING_ARRAY;
-						}
-					}
-					ICompositesFactory factory = getCompositesFactory(linkage.getLinkageID());
-					result.add(factory.getCompositeBindings(fragmentBindings));
+			return findBindings(filter, new BindingQuery() {
+				@Override
+				IBinding[] find(IIndexFragment fragment, IndexFilter f, IProgressMonitor m) throws CoreException {
+					return fragment.findMacroContainers(pattern, f, m);
 				}
-			}
-			return flatten(result);
+			}, false, monitor);
 		}
 	}
 
@@ -377,7 +365,7 @@ public class CIndex implements IIndex {
 		return result;
 	}
 
-	public IIndexBinding[] findBindings(char[][] names, IndexFilter filter, IProgressMonitor monitor)
+	public IIndexBinding[] findBindings(final char[][] names, IndexFilter filter, IProgressMonitor monitor)
 			throws CoreException {
 		if (SPECIALCASE_SINGLES && fFragments.length == 1) {
 			try {
@@ -390,33 +378,33 @@ public class CIndex implements IIndex {
 			if (monitor == null) {
 				monitor= new NullProgressMonitor();
 			}
-			List<IIndexBinding[]> result = new ArrayList<IIndexBinding[]>();
 			ILinkage[] linkages = Linkage.getIndexerLinkages();
 			monitor.beginTask(Messages.CIndex_FindBindingsTask_label, fFragments.length * linkages.length);
-			for (ILinkage linkage : linkages) {
-				if (filter.acceptLinkage(linkage)) {
-					IIndexFragmentBinding[][] fragmentBindings = new IIndexFragmentBinding[fPrimaryFragmentCount][];
-					for (int i = 0; i < fPrimaryFragmentCount; i++) {
-						try {
-							IBinding[] part = fFragments[i].findBindings(names, retargetFilter(linkage, filter),
-									new SubProgressMonitor(monitor, 1));
-							fragmentBindings[i] = new IIndexFragmentBinding[part.length];
-							System.arraycopy(part, 0, fragmentBindings[i], 0, part.length);
-						} catch (CoreException e) {
-							CCorePlugin.log(e);
-							fragmentBindings[i] = IIndexFragmentBinding.EMPTY_INDEX_BINDING_ARRAY;
-						}
-					}
-					ICompositesFactory factory = getCompositesFactory(linkage.getLinkageID());
-					result.add(factory.getCompositeBindings(fragmentBindings));
+			IIndexBinding[] result= findBindings(filter, new BindingQuery() {
+				@Override
+				IBinding[] find(IIndexFragment fragment, IndexFilter f, IProgressMonitor m) throws CoreException {
+					return fragment.findBindings(names, f, m);
 				}
-			}
+			}, true, monitor);
 			monitor.done();
-			return flatten(result);
-
+			return result;
 		}
 	}
 
+	/**
+	 * Same as {@link #findBindings(char[][], IndexFilter, IProgressMonitor)}, however the
+	 * bindings are passed to the collector as soon as a fragment has been searched.
+	 */
+	public void findBindings(final char[][] names, IndexFilter filter, IIndexBindingCollector collector,
+			IProgressMonitor monitor) throws CoreException {
+		findBindings(filter, new BindingQuery() {
+			@Override
+			IBinding[] find(IIndexFragment fragment, IndexFilter f, IProgressMonitor m) throws CoreException {
+				return fragment.findBindings(names, f, m);
+			}
+		}, collector, monitor);
+	}
+
 	public IIndexBinding adaptBinding(IBinding binding) {
 		try {
 			if (SPECIALCASE_SINGLES && fFragments.length == 1) {
@@ -466,6 +454,7 @@ public class CIndex implements IIndex {
 	}
 
 	public IIndexFragmentBinding[] findEquivalentBindings(IBinding binding) throws CoreException {
+		// Adapting a binding is too cheap to be worth dispatching to the fragments in parallel.
 		List<IIndexFragmentBinding> result = new ArrayList<IIndexFragmentBinding>();
 		for (IIndexFragment fragment : fFragments) {
 			IIndexFragmentBinding adapted = fragment.adaptBinding(binding);
@@ -501,6 +490,101 @@ public class CIndex implements IIndex {
 		throw new CompositingNotImplementedError();
 	}
 
+	/**
+	 * Query for bindings in a single fragment.
+	 */
+	private static abstract class BindingQuery {
+		abstract IBinding[] find(IIndexFragment fragment, IndexFilter filter, IProgressMonitor monitor)
+				throws CoreException;
+
+		IFragmentQuery<IIndexFragmentBinding[]> withFilter(final IndexFilter filter) {
+			return new IFragmentQuery<IIndexFragmentBinding[]>() {
+				public IIndexFragmentBinding[] query(IIndexFragment fragment, IProgressMonitor monitor)
+						throws CoreException {
+					IBinding[] part = find(fragment, filter, monitor);
+					IIndexFragmentBinding[] result = new IIndexFragmentBinding[part.length];
+					System.arraycopy(part, 0, result, 0, part.length);
+					return result;
+				}
+			};
+		}
+	}
+
+	/**
+	 * Runs a query for bindings on the primary fragments, for each accepted linkage. The
+	 * fragments are searched in parallel if there are enough of them.
+	 */
+	private IIndexBinding[] findBindings(IndexFilter filter, BindingQuery query, final boolean reportWork,
+			final IProgressMonitor monitor) throws CoreException {
+		List<IIndexBinding[]> result = new ArrayList<IIndexBinding[]>();
+		ILinkage[] linkages = Linkage.getIndexerLinkages();
+		for (ILinkage linkage : linkages) {
+			if (filter.acceptLinkage(linkage)) {
+				final IIndexFragmentBinding[][] fragmentBindings = new IIndexFragmentBinding[fPrimaryFragmentCount][];
+				FragmentQueryExecutor.run(getPrimaryFragments(), query.withFilter(retargetFilter(linkage, filter)),
+						new IResultHandler<IIndexFragmentBinding[]>() {
+					public boolean handle(int index, IIndexFragmentBinding[] bindings) {
+						fragmentBindings[index] = bindings;
+						if (reportWork) {
+							monitor.worked(1);
+						}
+						return true;
+					}
+				}, monitor);
+				ICompositesFactory factory = getCompositesFactory(linkage.getLinkageID());
+				result.add(factory.getCompositeBindings(fragmentBindings));
+			}
+		}
+		return flatten(result);
+	}
+
+	/**
+	 * Runs a query for bindings on the primary fragments and passes the results to the collector
+	 * fragment by fragment.
+	 */
+	private void findBindings(IndexFilter filter, BindingQuery query, final IIndexBindingCollector collector,
+			IProgressMonitor monitor) throws CoreException {
+		if (monitor == null) {
+			monitor= new NullProgressMonitor();
+		}
+		if (SPECIALCASE_SINGLES && fFragments.length == 1) {
+			try {
+				IBinding[] part = query.find(fFragments[0], filter, monitor);
+				IIndexBinding[] result = new IIndexBinding[part.length];
+				System.arraycopy(part, 0, result, 0, part.length);
+				if (result.length > 0) {
+					collector.accept(result);
+				}
+			} catch (CoreException e) {
+				CCorePlugin.log(e);
+			}
+			return;
+		}
+
+		final boolean[] canceled= {false};
+		ILinkage[] linkages = Linkage.getIndexerLinkages();
+		for (ILinkage linkage : linkages) {
+			if (filter.acceptLinkage(linkage)) {
+				final ICompositesFactory factory = getCompositesFactory(linkage.getLinkageID());
+				final Set<IIndexFragmentBinding> known= factory.createFragmentBindingSet();
+				FragmentQueryExecutor.run(getPrimaryFragments(), query.withFilter(retargetFilter(linkage, filter)),
+						new IResultHandler<IIndexFragmentBinding[]>() {
+					public boolean handle(int index, IIndexFragmentBinding[] bindings) throws CoreException {
+						IIndexBinding[] composites= factory.getNewCompositeBindings(bindings, known);
+						if (composites.length > 0 && !collector.accept(composites)) {
+							canceled[0]= true;
+							return false;
+						}
+						return true;
+					}
+				}, monitor);
+				if (canceled[0] || monitor.isCanceled()) {
+					return;
+				}
+			}
+		}
+	}
+
 	private IndexFilter retargetFilter(final ILinkage linkage, final IndexFilter filter) {
 		return new IndexFilter() {
 			@Override
@@ -514,90 +598,59 @@ public class CIndex implements IIndex {
 		};
 	}
 
-	public IIndexBinding[] findBindingsForPrefix(char[] prefix, boolean filescope, IndexFilter filter,
+	public IIndexBinding[] findBindingsForPrefix(final char[] prefix, final boolean filescope, IndexFilter filter,
 			IProgressMonitor monitor) throws CoreException {
 		if (SPECIALCASE_SINGLES && fFragments.length == 1) {
 			return fFragments[0].findBindingsForPrefix(prefix, filescope, filter, monitor);
 		} else {
-			List<IIndexBinding[]> result = new ArrayList<IIndexBinding[]>();
-			ILinkage[] linkages = Linkage.getIndexerLinkages();
-			for (ILinkage linkage : linkages) {
-				if (filter.acceptLinkage(linkage)) {
-					IIndexFragmentBinding[][] fragmentBindings = new IIndexFragmentBinding[fPrimaryFragmentCount][];
-					for (int i = 0; i < fPrimaryFragmentCount; i++) {
-						try {
-							IBinding[] part = fFragments[i].findBindingsForPrefix(prefix, filescope,
-									retargetFilter(linkage, filter), monitor);
-							fragmentBindings[i] = new IIndexFragmentBinding[part.length];
-							System.arraycopy(part, 0, fragmentBindings[i], 0, part.length);
-						} catch (CoreException e) {
-							CCorePlugin.log(e);
-							fragmentBindings[i] = IIndexFragmentBinding.EMPTY_INDEX_BINDING_ARRAY;
-						}
-					}
-					ICompositesFactory factory = getCompositesFactory(linkage.getLinkageID());
-					result.add(factory.getCompositeBindings(fragmentBindings));
+			return findBindings(filter, new BindingQuery() {
+				@Override
+				IBinding[] find(IIndexFragment fragment, IndexFilter f, IProgressMonitor m) throws CoreException {
+					return fragment.findBindingsForPrefix(prefix, filescope, f, m);
 				}
-			}
-			return flatten(result);
+			}, false, monitor);
 		}
 	}
 
-	public IIndexBinding[] findBindingsForContentAssist(char[] prefix, boolean filescope,
+	/**
+	 * Same as {@link #findBindingsForPrefix(char[], boolean, IndexFilter, IProgressMonitor)}, however
+	 * the bindings are passed to the collector as soon as a fragment has been searched.
+	 */
+	public void findBindingsForPrefix(final char[] prefix, final boolean filescope, IndexFilter filter,
+			IIndexBindingCollector collector, IProgressMonitor monitor) throws CoreException {
+		findBindings(filter, new BindingQuery() {
+			@Override
+			IBinding[] find(IIndexFragment fragment, IndexFilter f, IProgressMonitor m) throws CoreException {
+				return fragment.findBindingsForPrefix(prefix, filescope, f, m);
+			}
+		}, collector, monitor);
+	}
+
+	public IIndexBinding[] findBindingsForContentAssist(final char[] prefix, final boolean filescope,
 			IndexFilter filter, IProgressMonitor monitor) throws CoreException {
 		if (SPECIALCASE_SINGLES && fFragments.length == 1) {
 			return fFragments[0].findBindingsForContentAssist(prefix, filescope, filter, monitor);
 		} else {
-			List<IIndexBinding[]> result = new ArrayList<IIndexBinding[]>();
-			ILinkage[] linkages = Linkage.getIndexerLinkages();
-			for (ILinkage linkage : linkages) {
-				if (filter.acceptLinkage(linkage)) {
-					IIndexFragmentBinding[][] fragmentBindings = new IIndexFragmentBinding[fPrimaryFragmentCount][];
-					for (int i = 0; i < fPrimaryFragmentCount; i++) {
-						try {
-							IBinding[] part = fFragments[i].findBindingsForContentAssist(prefix,
-									filescope, retargetFilter(linkage, filter), monitor);
-							fragmentBindings[i] = new IIndexFragmentBinding[part.length];
-							System.arraycopy(part, 0, fragmentBindings[i], 0, part.length);
-						} catch (CoreException e) {
-							CCorePlugin.log(e);
-							fragmentBindings[i] = IIndexFragmentBinding.EMPTY_INDEX_BINDING_ARRAY;
-						}
-					}
-					ICompositesFactory factory = getCompositesFactory(linkage.getLinkageID());
-					result.add(factory.getCompositeBindings(fragmentBindings));
+			return findBindings(filter, new BindingQuery() {
+				@Override
+				IBinding[] find(IIndexFragment fragment, IndexFilter f, IProgressMonitor m) throws CoreException {
+					return fragment.findBindingsForContentAssist(prefix, filescope, f, m);
 				}
-			}
-			return flatten(result);
+			}, false, monitor);
 		}
 	}
 
-	public IIndexBinding[] findBindings(char[] name, boolean filescope, IndexFilter filter, IProgressMonitor monitor)
-			throws CoreException {
+	public IIndexBinding[] findBindings(final char[] name, final boolean filescope, IndexFilter filter,
+			IProgressMonitor monitor) throws CoreException {
 		if (SPECIALCASE_SINGLES && fFragments.length == 1) {
 			return fFragments[0].findBindings(name, filescope, filter, monitor);
 		} else {
-			List<IIndexBinding[]> result = new ArrayList<IIndexBinding[]>();
-			ILinkage[] linkages = Linkage.getIndexerLinkages();
-			for (ILinkage linkage : linkages) {
-				if (filter.acceptLinkage(linkage)) {
-					IIndexFragmentBinding[][] fragmentBindings = new IIndexFragmentBinding[fPrimaryFragmentCount][];
-					for (int i = 0; i < fPrimaryFragmentCount; i++) {
-						try {
-							IBinding[] part = fFragments[i].findBindings(name, filescope,
-									retargetFilter(linkage, filter), monitor);
-							fragmentBindings[i] = new IIndexFragmentBinding[part.length];
-							System.arraycopy(part, 0, fragmentBindings[i], 0, part.length);
-						} catch (CoreException e) {
-							CCorePlugin.log(e);
-							fragmentBindings[i] = IIndexFragmentBinding.EMPTY_INDEX_BINDING_ARRAY;
-						}
-					}
-					ICompositesFactory factory = getCompositesFactory(linkage.getLinkageID());
-					result.add(factory.getCompositeBindings(fragmentBindings));
+			return findBindings(filter, new BindingQuery() {
+				@Override
+				IBinding[] find(IIndexFragment fragment, IndexFilter f, IProgressMonitor m) throws CoreException {
+					return fragment.findBindings(name, filescope, f, m);
 				}
-			}
-			return flatten(result);
+			}, false, monitor);
 		}
 	}
 
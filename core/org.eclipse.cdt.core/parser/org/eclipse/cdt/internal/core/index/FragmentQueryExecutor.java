@@ -0,0 +1,241 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT project contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT project contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.index;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.cdt.core.CCorePlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+/**
+ * Runs a query on several fragments of an index. When there are enough fragments, they are
+ * queried in parallel on a bounded pool of threads. The results are passed to the calling
+ * thread in the order in which the fragments complete.
+ * <p>
+ * The read locks of the fragments are not owned by threads, the caller needs to hold them
+ * for the duration of the query. The fragments are never interrupted, a query is canceled
+ * via the progress monitor passed to the fragments. A query does not return before all of
+ * its fragments have stopped, such that the caller can release the read locks afterwards.
+ * When the monitor of the caller is canceled, the query throws an {@link OperationCanceledException}
+ * on the calling thread rather than returning partial results.
+ */
+public final class FragmentQueryExecutor {
+	/**
+	 * Query on a single fragment.
+	 */
+	public interface IFragmentQuery<T> {
+		/**
+		 * Runs the query on a fragment, may be called on any thread.
+		 * @param monitor monitor to check for cancellation, it does not report progress.
+		 */
+		T query(IIndexFragment fragment, IProgressMonitor monitor) throws CoreException;
+	}
+
+	/**
+	 * Receives the results of the fragments, always called on the thread that runs the query.
+	 * Fragments that fail or return <code>null</code> are not reported.
+	 */
+	public interface IResultHandler<T> {
+		/**
+		 * Handles the result of the fragment with the given index.
+		 * @return <code>false</code> to cancel the fragments that have not yet completed.
+		 */
+		boolean handle(int index, T result) throws CoreException;
+	}
+
+	/**
+	 * Minimum number of fragments that are queried in parallel.
+	 */
+	public static final int PARALLEL_THRESHOLD= 3;
+
+	private static final int MAX_THREADS= Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+	private static final ThreadPoolExecutor sExecutor;
+	static {
+		ThreadFactory factory= new ThreadFactory() {
+			private int fCount;
+			public synchronized Thread newThread(Runnable r) {
+				Thread thread= new Thread(r, "C/C++ Index Query " + ++fCount); //$NON-NLS-1$
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+		// Idle threads terminate. When all threads are busy, the calling thread runs the query
+		// itself, such that nested queries cannot deadlock.
+		sExecutor= new ThreadPoolExecutor(0, MAX_THREADS, 10, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(), factory, new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+
+	private static volatile boolean sParallel= MAX_THREADS > 1;
+
+	/**
+	 * Enables or disables the parallel queries, for testing and benchmarking.
+	 */
+	public static void setParallel(boolean parallel) {
+		sParallel= parallel && MAX_THREADS > 1;
+	}
+
+	/**
+	 * Monitor passed to the fragments, it is canceled when the query is canceled.
+	 */
+	private static class QueryMonitor extends NullProgressMonitor {
+		private final IProgressMonitor fParent;
+		private volatile boolean fCanceled;
+
+		QueryMonitor(IProgressMonitor parent) {
+			fParent= parent;
+		}
+		@Override
+		public boolean isCanceled() {
+			return fCanceled || (fParent != null && fParent.isCanceled());
+		}
+		@Override
+		public void setCanceled(boolean canceled) {
+			fCanceled= canceled;
+		}
+		void checkParentCanceled() {
+			if (fParent != null && fParent.isCanceled()) {
+				throw new OperationCanceledException();
+			}
+		}
+	}
+
+	private FragmentQueryExecutor() {
+	}
+
+	/**
+	 * Runs a query on the given fragments and passes the results to the handler. Failures of
+	 * individual fragments are logged, their result is omitted.
+	 * @param fragments the fragments to query
+	 * @param query the query to run on each fragment
+	 * @param handler receives the results on the calling thread
+	 * @param monitor a monitor for cancellation only, may be <code>null</code>. When it is canceled,
+	 * the results that have not yet been passed to the handler are dropped.
+	 * @throws OperationCanceledException when the monitor is canceled.
+	 */
+	public static <T> void run(IIndexFragment[] fragments, IFragmentQuery<T> query, IResultHandler<T> handler,
+			IProgressMonitor monitor) throws CoreException {
+		final QueryMonitor queryMonitor= new QueryMonitor(monitor);
+		if (!sParallel || fragments.length < PARALLEL_THRESHOLD) {
+			for (int i = 0; i < fragments.length; i++) {
+				T result= runQuery(fragments[i], query, queryMonitor);
+				queryMonitor.checkParentCanceled();
+				if (result != null && !handler.handle(i, result)) {
+					return;
+				}
+			}
+			return;
+		}
+
+		CompletionService<Object[]> service= new ExecutorCompletionService<Object[]>(sExecutor);
+		List<Future<Object[]>> futures= new ArrayList<Future<Object[]>>(fragments.length);
+		try {
+			for (int i = 0; i < fragments.length; i++) {
+				futures.add(service.submit(createTask(i, fragments[i], query, queryMonitor)));
+			}
+			for (int i = 0; i < fragments.length; i++) {
+				Object[] pair= take(service);
+				if (queryMonitor.isCanceled())
+					break;
+				@SuppressWarnings("unchecked")
+				T result= (T) pair[1];
+				if (result != null && !handler.handle((Integer) pair[0], result)) {
+					return;
+				}
+			}
+		} finally {
+			// Stop the fragments that are still running, without interrupting them.
+			queryMonitor.setCanceled(true);
+			waitFor(futures);
+		}
+		// Fragments that have been canceled may have returned partial results.
+		queryMonitor.checkParentCanceled();
+	}
+
+	private static <T> Callable<Object[]> createTask(final int index, final IIndexFragment fragment,
+			final IFragmentQuery<T> query, final QueryMonitor monitor) {
+		return new Callable<Object[]>() {
+			public Object[] call() {
+				if (monitor.isCanceled()) {
+					return new Object[] {index, null};
+				}
+				return new Object[] {index, runQuery(fragment, query, monitor)};
+			}
+		};
+	}
+
+	private static <T> T runQuery(IIndexFragment fragment, IFragmentQuery<T> query, QueryMonitor monitor) {
+		try {
+			return query.query(fragment, monitor);
+		} catch (CoreException e) {
+			if (!monitor.isCanceled()) {
+				CCorePlugin.log(e);
+			}
+		} catch (OperationCanceledException e) {
+		}
+		return null;
+	}
+
+	private static void waitFor(List<Future<Object[]>> futures) {
+		boolean interrupted= false;
+		for (Future<Object[]> future : futures) {
+			while (!future.isDone()) {
+				try {
+					future.get();
+				} catch (InterruptedException e) {
+					interrupted= true;
+				} catch (ExecutionException e) {
+					// Reported by take(), if at all.
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static Object[] take(CompletionService<Object[]> service) throws CoreException {
+		boolean interrupted= false;
+		try {
+			while (true) {
+				try {
+					return service.take().get();
+				} catch (InterruptedException e) {
+					interrupted= true;
+				}
+			}
+		} catch (ExecutionException e) {
+			final Throwable cause= e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new CoreException(CCorePlugin.createStatus(cause.getMessage(), cause));
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -0,0 +1,27 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT project contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT project contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.index;
+
+import org.eclipse.cdt.core.index.IIndexBinding;
+import org.eclipse.core.runtime.CoreException;
+
+/**
+ * Receives the bindings found by a query of a {@link CIndex} incrementally, as the fragments
+ * of the index deliver them. The collector is called on the thread that runs the query.
+ */
+public interface IIndexBindingCollector {
+	/**
+	 * Accepts the bindings found in one of the fragments, bindings that are equivalent to
+	 * bindings accepted before are omitted.
+	 * @return <code>false</code> to cancel the query.
+	 */
+	boolean accept(IIndexBinding[] bindings) throws CoreException;
+}
@@ -152,6 +152,11 @@ public interface IWritableIndex extends IIndex {
 	 */
 	long getDatabaseSizeBytes();
 
+	/**
+	 * Returns the number of bytes of changes that have not yet been committed to the database.
+	 */
+	long getUncommittedBytes();
+
 	/**
 	 * Clears the result cache, caller needs to hold a write-lock.
 	 */
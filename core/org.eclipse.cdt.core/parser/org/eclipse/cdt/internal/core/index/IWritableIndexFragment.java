@@ -112,4 +112,9 @@ public interface IWritableIndexFragment extends IIndexFragment {
 	 * @return the size of the database in bytes
 	 */
 	long getDatabaseSizeBytes();
+
+	/**
+	 * @return the number of bytes of changes that have not yet been committed to the database
+	 */
+	long getUncommittedBytes();
 }
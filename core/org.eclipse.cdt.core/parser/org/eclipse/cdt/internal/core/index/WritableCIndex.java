@@ -177,4 +177,11 @@ public class WritableCIndex extends CIndex implements IWritableIndex {
 	public long getDatabaseSizeBytes() {
 		return fWritableFragment.getDatabaseSizeBytes();
 	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.cdt.internal.core.index.IWritableIndex#getUncommittedBytes()
+	 */
+	public long getUncommittedBytes() {
+		return fWritableFragment.getUncommittedBytes();
+	}
 }
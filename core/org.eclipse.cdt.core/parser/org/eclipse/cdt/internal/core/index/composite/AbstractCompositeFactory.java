@@ -11,7 +11,10 @@
  *******************************************************************************/
 package org.eclipse.cdt.internal.core.index.composite;
 
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
 import java.util.TreeSet;
 
 import org.eclipse.cdt.core.CCorePlugin;
@@ -75,6 +78,21 @@ public abstract class AbstractCompositeFactory implements ICompositesFactory {
 		return result;
 	}
 
+	public final IIndexBinding[] getNewCompositeBindings(IIndexFragmentBinding[] bindings,
+			Set<IIndexFragmentBinding> known) {
+		List<IIndexBinding> result= new ArrayList<IIndexBinding>(bindings.length);
+		for (IIndexFragmentBinding binding : bindings) {
+			if (known.add(binding)) {
+				result.add(getCompositeBinding(binding));
+			}
+		}
+		return result.toArray(new IIndexBinding[result.size()]);
+	}
+
+	public final Set<IIndexFragmentBinding> createFragmentBindingSet() {
+		return new TreeSet<IIndexFragmentBinding>(fragmentComparator);
+	}
+
 	public final IIndexFragmentBinding[] findEquivalentBindings(IBinding binding) {
 		CIndex cindex= (CIndex) index;
 		try {
@@ -10,6 +10,8 @@
  *******************************************************************************/
 package org.eclipse.cdt.internal.core.index.composite;
 
+import java.util.Set;
+
 import org.eclipse.cdt.core.dom.ast.IBinding;
 import org.eclipse.cdt.core.dom.ast.IType;
 import org.eclipse.cdt.core.dom.ast.IValue;
@@ -41,6 +43,19 @@ public interface ICompositesFactory {
 	 */
 	public IIndexBinding[] getCompositeBindings(IIndexFragmentBinding[][] bindings);
 
+	/**
+	 * Returns composite bindings for those of the specified bindings that are not equivalent to
+	 * any of the bindings in <code>known</code>, which are added to it. Allows for merging the
+	 * bindings of several fragments incrementally, <code>known</code> must be created with
+	 * {@link #createFragmentBindingSet()}.
+	 */
+	public IIndexBinding[] getNewCompositeBindings(IIndexFragmentBinding[] bindings, Set<IIndexFragmentBinding> known);
+
+	/**
+	 * Creates a set of fragment bindings, in which equivalent bindings are considered equal.
+	 */
+	public Set<IIndexFragmentBinding> createFragmentBindingSet();
+
 	/**
 	 * Selects all equivalent bindings from the available fragments
 	 */
@@ -54,6 +54,25 @@ public abstract class AbstractCharArray {
 	 */
 	public abstract void arraycopy(int offset, char[] destination, int destinationPos, int length);
 
+	/**
+	 * Returns the array backing the characters around the given offset, or <code>null</code> if
+	 * the characters cannot be accessed directly. The lexer uses the array to scan runs of
+	 * characters without calling {@link #get(int)} for each of them. Subclasses must not modify
+	 * the returned array.
+	 * @see #getSegmentOffset(int)
+	 */
+	public char[] getSegment(int offset) {
+		return null;
+	}
+
+	/**
+	 * Returns the offset in this array that corresponds to the first element of the array returned
+	 * by {@link #getSegment(int)} for the given offset.
+	 */
+	public int getSegmentOffset(int offset) {
+		return 0;
+	}
+
 	/**
 	 * This method is slow. Use only for debugging.
 	 */
@@ -42,6 +42,7 @@ import org.eclipse.cdt.core.parser.ParseError;
 import org.eclipse.cdt.core.parser.ParserLanguage;
 import org.eclipse.cdt.core.parser.util.CharArrayIntMap;
 import org.eclipse.cdt.core.parser.util.CharArrayMap;
+import org.eclipse.cdt.core.parser.util.CharArraySet;
 import org.eclipse.cdt.core.parser.util.CharArrayUtils;
 import org.eclipse.cdt.internal.core.dom.IIncludeFileResolutionHeuristics;
 import org.eclipse.cdt.internal.core.parser.EmptyFilesProvider;
@@ -74,6 +75,7 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
 	
     private static final char[] EMPTY_CHAR_ARRAY = new char[0];
     private static final char[] ONE = "1".toCharArray(); //$NON-NLS-1$
+    private static final char[] ONCE = "once".toCharArray(); //$NON-NLS-1$
 
 
     // standard built-ins
@@ -169,13 +171,16 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
     private final ExpressionEvaluator fExpressionEvaluator;
 	private final MacroDefinitionParser fMacroDefinitionParser;
 	private final MacroExpander fMacroExpander;
+	private final MacroExpansionCache fExpansionCache= new MacroExpansionCache();
 
     // configuration
     final private LexerOptions fLexOptions= new LexerOptions();
     final private char[] fAdditionalNumericLiteralSuffixes;
     final private CharArrayIntMap fKeywords;
     final private CharArrayIntMap fPPKeywords;
+    final private CharArraySet fIdentifiers= new CharArraySet(1024);
     private IncludeSearchPathElement[] fIncludeSearchPath;
+    private IncludeResolutionCache.Configuration fIncludeResolutions;
     private String[][] fPreIncludedFiles= null;
 
     private int fContentAssistLimit= -1;
@@ -188,6 +193,10 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
 
     /** Set of already included files */
     private final HashSet<String> fAllIncludedFiles= new HashSet<String>();
+    // Include guards and '#pragma once' of the included files, inclusions resolved without heuristics.
+    private final HashMap<String, char[]> fIncludeGuards= new HashMap<String, char[]>();
+    private final HashSet<String> fPragmaOnceFiles= new HashSet<String>();
+    private final HashMap<String, String> fResolvedInclusions= new HashMap<String, String>();
 
 	private final Lexer fRootLexer;
 	private final ScannerContext fRootContext;
@@ -232,16 +241,21 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
         fExpressionEvaluator= new ExpressionEvaluator();
         fMacroDefinitionParser= new MacroDefinitionParser();
         fMacroExpander= new MacroExpander(this, fMacroDictionary, fLocationMap, fLexOptions);
+        fMacroExpander.setExpansionCache(fExpansionCache);
         fIncludeFileResolutionHeuristics= fFileContentProvider.getIncludeHeuristics();
 
         final String filePath= fRootContent.getFileLocation();
         configureIncludeSearchPath(new File(filePath).getParentFile(), info);
+        final IncludeResolutionCache resolutionCache= fFileContentProvider.getIncludeResolutionCache();
+        if (resolutionCache != null) {
+        	fIncludeResolutions= resolutionCache.getConfiguration(fIncludeSearchPath);
+        }
         setupMacroDictionary(configuration, info, language);		
 
         ILocationCtx ctx= fLocationMap.pushTranslationUnit(filePath, fRootContent.getSource());
         fAllIncludedFiles.add(filePath);
     	fFileContentProvider.reportTranslationUnitFile(filePath);
-        fRootLexer= new Lexer(fRootContent.getSource(), fLexOptions, this, this);
+        fRootLexer= newLexer(fRootContent.getSource());
         fRootContext= fCurrentContext= new ScannerContext(ctx, null, fRootLexer);
         if (info instanceof IExtendedScannerInfo) {
         	final IExtendedScannerInfo einfo= (IExtendedScannerInfo) info;
@@ -271,6 +285,7 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
 	}
 
 	public void setScanComments(boolean val) {
+		fLocationMap.setRecordComments(val);
 	}
 
 	public ILocationResolver getLocationResolver() {
@@ -382,12 +397,21 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
 		fRootContent= null;
 	}
 
+    /**
+     * Creates a lexer for a file, the images of identifiers are shared among all of them.
+     */
+    private Lexer newLexer(AbstractCharArray input) {
+    	final Lexer lexer= new Lexer(input, fLexOptions, this, this);
+    	lexer.setIdentifierTable(fIdentifiers);
+    	return lexer;
+    }
+
     private void handlePreIncludedFiles() {
     	final String[] imacro= fPreIncludedFiles[0];
     	if (imacro != null && imacro.length > 0) {
     		final char[] buffer= createSyntheticFile(imacro);
     		ILocationCtx ctx= fLocationMap.pushPreInclusion(new CharArray(buffer), 0, true);
-    		fCurrentContext= new ScannerContext(ctx, fCurrentContext, new Lexer(buffer, fLexOptions, this, this));
+    		fCurrentContext= new ScannerContext(ctx, fCurrentContext, newLexer(new CharArray(buffer)));
     		ScannerContext preCtx= fCurrentContext;
     		try {
 				while (internalFetchToken(preCtx, CHECK_NUMBERS, false).getType() != IToken.tEND_OF_INPUT) {
@@ -404,7 +428,7 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
     	if (include != null && include.length > 0) {
     		final char[] buffer= createSyntheticFile(include);
     		ILocationCtx ctx= fLocationMap.pushPreInclusion(new CharArray(buffer), 0, false);
-    		fCurrentContext= new ScannerContext(ctx, fCurrentContext, new Lexer(buffer, fLexOptions, this, this));
+    		fCurrentContext= new ScannerContext(ctx, fCurrentContext, newLexer(new CharArray(buffer)));
     	}
     	fPreIncludedFiles= null;
     }
@@ -729,6 +753,10 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
         			return ppToken;
         		}
             	final ILocationCtx locationCtx = fCurrentContext.getLocationCtx();
+            	final char[] guard= fCurrentContext.getIncludeGuard();
+            	if (guard != null) {
+            		fIncludeGuards.put(locationCtx.getFilePath(), guard);
+            	}
             	fLocationMap.popContext(locationCtx);
         		fCurrentContext= fCurrentContext.getParent();
         		assert fCurrentContext != null;
@@ -748,6 +776,7 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
                	}
         	
         	case IToken.tIDENTIFIER:
+        		fCurrentContext.guardContent();
         		fCurrentContext.nextPPToken(); // consume the identifier
         		if ((options & NO_EXPANSION) == 0) {
         			final Lexer lexer= fCurrentContext.getLexer();
@@ -776,6 +805,7 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
         		}
         		break;
         	}
+			fCurrentContext.guardContent();
 			fCurrentContext.nextPPToken();
         	return ppToken;
         }
@@ -944,20 +974,6 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
 			}
 		}
 
-        if (currentFile != null && quoteInclude && !includeNext) {
-            // Check to see if we find a match in the current directory
-    		final File currentDir= new File(currentFile).getParentFile();
-    		if (currentDir != null) {
-        		final String fileLocation = ScannerUtility.createReconciledPath(
-        				currentDir.getAbsolutePath(), includeDirective);
-    			reader = tester.checkFile(fileLocation, false, null);
-    			if (reader != null) {
-    				return reader;
-    			}
-    		}
-        }
-        
-        // Now we need to search for the file on the include search path.
         // If this is a include_next directive then the search starts with the directory 
         // in the search path after the one where the current file was found.
         IncludeSearchPathElement searchAfter= null;
@@ -973,7 +989,43 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
         	}
         }
 
-        for (IncludeSearchPathElement path : fIncludeSearchPath) {
+        // Try the resolution of a previous parse with the same include search path
+        String resolutionKey= null;
+        if (fIncludeResolutions != null) {
+        	resolutionKey= createResolutionKey(includeDirective, quoteInclude, includeNext, currentFile,
+        			searchAfter);
+        	final IncludeResolutionCache.Resolution resolution= fIncludeResolutions.get(resolutionKey);
+        	if (resolution == IncludeResolutionCache.NOT_FOUND) {
+        		return findInclusionByHeuristics(includeDirective, currentFile, tester);
+        	}
+        	if (resolution != null) {
+        		final int pathIndex= resolution.getPathIndex();
+        		reader= tester.checkFile(resolution.getLocation(), false,
+        				pathIndex < 0 ? null : fIncludeSearchPath[pathIndex]);
+        		if (reader != null) {
+        			return reader;
+        		}
+        		fIncludeResolutions.remove(resolutionKey);
+        	}
+        }
+
+        if (currentFile != null && quoteInclude && !includeNext) {
+            // Check to see if we find a match in the current directory
+    		final File currentDir= new File(currentFile).getParentFile();
+    		if (currentDir != null) {
+        		final String fileLocation = ScannerUtility.createReconciledPath(
+        				currentDir.getAbsolutePath(), includeDirective);
+    			reader = tester.checkFile(fileLocation, false, null);
+    			if (reader != null) {
+    				recordResolution(resolutionKey, fileLocation, -1);
+    				return reader;
+    			}
+    		}
+        }
+        
+        // Now we need to search for the file on the include search path.
+        for (int i= 0; i < fIncludeSearchPath.length; i++) {
+        	final IncludeSearchPathElement path= fIncludeSearchPath[i];
         	if (searchAfter != null) {
         		if (searchAfter.equals(path)) {
         			searchAfter= null;
@@ -983,11 +1035,18 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
         		if (fileLocation != null) {
         			reader= tester.checkFile(fileLocation, false, path);
         			if (reader != null) {
+        				recordResolution(resolutionKey, fileLocation, i);
         				return reader;
         			}
         		}
         	}
         }
+        recordResolution(resolutionKey, null, -1);
+        return findInclusionByHeuristics(includeDirective, currentFile, tester);
+    }
+
+    private <T> T findInclusionByHeuristics(final String includeDirective, final String currentFile,
+    		final IIncludeFileTester<T> tester) {
         if (fIncludeFileResolutionHeuristics != null) {
         	String location= fIncludeFileResolutionHeuristics.findInclusion(includeDirective, currentFile);
         	if (location != null) {
@@ -997,6 +1056,43 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
         return null;
     }
 
+    /**
+     * Computes the key for the resolution of an include directive. The result of resolving
+     * a quote include depends on the directory of the current file, the one of an include_next
+     * directive depends on the position in the include search path.
+     */
+    private String createResolutionKey(String includeDirective, boolean quoteInclude,
+    		boolean includeNext, String currentFile, IncludeSearchPathElement searchAfter) {
+    	StringBuilder buf= new StringBuilder();
+    	buf.append(quoteInclude ? '"' : '<');
+    	if (includeNext) {
+    		int pathIndex= -1;
+    		if (searchAfter != null) {
+    			for (int i= 0; i < fIncludeSearchPath.length; i++) {
+    				if (fIncludeSearchPath[i].equals(searchAfter)) {
+    					pathIndex= i;
+    					break;
+    				}
+    			}
+    		}
+    		buf.append("next:").append(pathIndex); //$NON-NLS-1$
+    	} else if (quoteInclude && currentFile != null) {
+    		final File currentDir= new File(currentFile).getParentFile();
+    		if (currentDir != null) {
+    			buf.append(currentDir.getAbsolutePath());
+    		}
+    	}
+    	buf.append('|').append(includeDirective);
+    	return buf.toString();
+    }
+
+    private void recordResolution(String key, String location, int pathIndex) {
+    	if (key != null) {
+    		fIncludeResolutions.put(key, location == null ?
+    				IncludeResolutionCache.NOT_FOUND : new IncludeResolutionCache.Resolution(location, pathIndex));
+    	}
+    }
+
     private IncludeSearchPathElement findFileInIncludePath(String file, String includeDirective) {
         for (IncludeSearchPathElement path : fIncludeSearchPath) {
     		String fileLocation = path.getLocation(includeDirective);
@@ -1021,12 +1117,13 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
     		final char[] expansionImage = macro.getExpansionImage();
     		if (expansionImage == null) {
     			// this is an undef
-    			fMacroDictionary.remove(macro.getNameCharArray());
+    			fExpansionCache.remove(fMacroDictionary.remove(macro.getNameCharArray()));
     		} else {
     			PreprocessorMacro result= MacroDefinitionParser.parseMacroDefinition(
     					macro.getNameCharArray(), macro.getParameterList(), expansionImage);
     			final IASTFileLocation loc= macro.getFileLocation();
     			fLocationMap.registerMacroFromIndex(result, loc, -1);
+    			fExpansionCache.remove(fMacroDictionary.get(result.getNameCharArray()));
     			fMacroDictionary.put(result.getNameCharArray(), result);
     		}
     	} catch (Exception e) {
@@ -1082,6 +1179,20 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
     	final int type = fPPKeywords.get(name);
     	int condEndOffset;
     	switch (type) {
+    	case IPreprocessorDirective.ppIf:
+    	case IPreprocessorDirective.ppIfdef:
+    	case IPreprocessorDirective.ppIfndef:
+    	case IPreprocessorDirective.ppElif:
+    	case IPreprocessorDirective.ppElse:
+    	case IPreprocessorDirective.ppEndif:
+    	case IPreprocessorDirective.ppPragma:
+    		// conditionals and pragmas track the include guard themselves
+    		break;
+    	default:
+    		fCurrentContext.guardContent();
+    		break;
+    	}
+    	switch (type) {
     	case IPreprocessorDirective.ppImport:
     	case IPreprocessorDirective.ppInclude:
     		executeInclude(lexer, startOffset, false, fCurrentContext.getCodeState() == CodeState.eActive,
@@ -1160,7 +1271,12 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
     		if (fCurrentContext.getCodeState() == CodeState.eActive) {
     			int endOffset= lexer.currentToken().getEndOffset();
     			fLocationMap.encounterPoundPragma(startOffset, condOffset, condEndOffset, endOffset);
+    			if (!withinExpansion && CharArrayUtils.equals(lexer.getInputChars(condOffset, condEndOffset), ONCE)) {
+    				fPragmaOnceFiles.add(getCurrentFilename());
+    				break;
+    			}
     		}
+    		fCurrentContext.guardContent();
     		break;
     	case IPreprocessorDirective.ppIgnore:
     		lexer.consumeLine(ORIGIN_PREPROCESSOR_DIRECTIVE);
@@ -1273,11 +1389,25 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
 				isHeuristic= resolved.fHeuristic;
 			}
 		} else {
-			final InternalFileContent fi= findInclusion(includeDirective, userInclude, include_next,
-					getCurrentFilename(), createCodeReaderTester);
-			if (fi != null) {
+			final String inclusionKey= getInclusionKey(includeDirective, userInclude, include_next);
+			final String guardedPath= inclusionKey != null ? fResolvedInclusions.get(inclusionKey) : null;
+			InternalFileContent fi= null;
+			if (guardedPath != null && isIncludeGuardDefined(guardedPath)) {
+				// The inclusion has no effect, there is no need to look at the file.
+				path= guardedPath;
+				fLocationMap.skippedGuardedInclusion();
+			} else {
+				fi= findInclusion(includeDirective, userInclude, include_next, getCurrentFilename(),
+						createCodeReaderTester);
+			}
+			if (path != null) {
+				// Skipped because of the include guard.
+			} else if (fi != null) {
 				path= fi.getFileLocation();
 				isHeuristic= fi.isFoundByHeuristics();
+				if (inclusionKey != null && !isHeuristic) {
+					fResolvedInclusions.put(inclusionKey, path);
+				}
 				switch (fi.getKind()) {
 				case FOUND_IN_INDEX:
 					processInclusionFromIndex(poundOffset, path, fi);
@@ -1290,8 +1420,9 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
 						ILocationCtx ctx= fLocationMap.pushInclusion(poundOffset, nameOffsets[0], nameOffsets[1],
 								condEndOffset, source, path, headerName, userInclude, isHeuristic, fi.isSource());
 						ScannerContext fctx= new ScannerContext(ctx, fCurrentContext,
-								new Lexer(source, fLexOptions, this, this));
+								newLexer(source));
 						fctx.setFoundOnPath(fi.getFoundOnPath(), includeDirective);
+						fctx.detectIncludeGuard();
 						fCurrentContext= fctx;
 					}
 					fLocationMap.replacingFile(fFileContentProvider, fi);
@@ -1319,6 +1450,34 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
 		}
 	}
 
+	/**
+	 * Returns a key for caching the resolution of an include directive, or <code>null</code> if
+	 * the resolution depends on more than the directive and the directory of the current file.
+	 */
+	private String getInclusionKey(String includeDirective, boolean quoteInclude, boolean includeNext) {
+		if (includeNext)
+			return null;
+		if (!quoteInclude)
+			return '<' + includeDirective;
+
+		final String currentFile= getCurrentFilename();
+		if (currentFile == null)
+			return null;
+		final int idx= Math.max(currentFile.lastIndexOf('/'), currentFile.lastIndexOf(File.separatorChar));
+		return currentFile.substring(0, idx + 1) + '"' + includeDirective;
+	}
+
+	/**
+	 * Checks whether a further inclusion of the given file has no effect, because it is
+	 * marked with '#pragma once' or its include guard is defined.
+	 */
+	private boolean isIncludeGuardDefined(String path) {
+		if (fPragmaOnceFiles.contains(path))
+			return true;
+		final char[] guard= fIncludeGuards.get(path);
+		return guard != null && fMacroDictionary.get(guard) != null;
+	}
+
 	private void processInclusionFromIndex(int offset, String path, InternalFileContent fi) {
 		List<IIndexMacro> mdefs= fi.getMacroDefinitions();
 		for (IIndexMacro macro : mdefs) {
@@ -1362,8 +1521,10 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
     		throws OffsetLimitReachedException {
 		try {
 			ObjectStyleMacro macrodef = fMacroDefinitionParser.parseMacroDefinition(lexer, this);
-			if (isActive)
+			if (isActive) {
+				fExpansionCache.remove(fMacroDictionary.get(macrodef.getNameCharArray()));
 				fMacroDictionary.put(macrodef.getNameCharArray(), macrodef);
+			}
 			
 			final Token name= fMacroDefinitionParser.getNameToken();
 			fLocationMap.encounterPoundDefine(startOffset, name.getOffset(), name.getEndOffset(),
@@ -1393,6 +1554,7 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
     	PreprocessorMacro definition;
     	if (isActive) {
     		definition= fMacroDictionary.remove(namechars, 0, namechars.length);
+    		fExpansionCache.remove(definition);
     	} else {
     		definition= fMacroDictionary.get(namechars);
     	}
@@ -1412,6 +1574,9 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
 		boolean isTaken= false;
 		PreprocessorMacro macro= null;
 		final Conditional conditional= fCurrentContext.newBranch(BranchKind.eIf, withinExpansion);
+		if (fCurrentContext.getCodeBranchNesting() == 1) {
+			fCurrentContext.guardConditional(isIfndef && tt == IToken.tIDENTIFIER ? name.getCharImage() : null);
+		}
 		if (conditional.canHaveActiveBranch(withinExpansion)) {
 	    	// we need an identifier
 			if (tt != IToken.tIDENTIFIER) {
@@ -1451,6 +1616,13 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
 			handleProblem(IProblem.PREPROCESSOR_UNBALANCE_CONDITION, name, startOffset, condEndOffset);
 			return fCurrentContext.getCodeState();
 		}
+		if (fCurrentContext.getCodeBranchNesting() == 1) {
+			if (isElif) {
+				fCurrentContext.guardBranch();
+			} else {
+				fCurrentContext.guardConditional(null);
+			}
+		}
 		
 		boolean isTaken= false;
 		IASTName[] refs= IASTName.EMPTY_NAME_ARRAY;
@@ -1498,6 +1670,9 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
 			handleProblem(IProblem.PREPROCESSOR_UNBALANCE_CONDITION, Keywords.cELSE, startOffset, endOffset);
     		return fCurrentContext.getCodeState();
 		}
+		if (fCurrentContext.getCodeBranchNesting() == 1) {
+			fCurrentContext.guardBranch();
+		}
 		
 		final boolean isTaken= cond.canHaveActiveBranch(withinExpansion);
 		ASTElse stmt = fLocationMap.encounterPoundElse(startOffset, endOffset, isTaken);
@@ -1512,7 +1687,11 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
 		final Conditional cond= fCurrentContext.newBranch(BranchKind.eEnd, withinExpansion);
 		if (cond == null) {
 			handleProblem(IProblem.PREPROCESSOR_UNBALANCE_CONDITION, Keywords.cENDIF, startOffset, endOffset);
+			fCurrentContext.guardContent();
 		} else {
+			if (fCurrentContext.getCodeBranchNesting() == 0) {
+				fCurrentContext.guardEnd();
+			}
 			ASTEndif stmt = fLocationMap.encounterPoundEndIf(startOffset, endOffset);
 			if (!cond.isActive(withinExpansion))
 				stmt.setInactive();
@@ -1658,8 +1837,13 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
         }
         final boolean contentAssist = fContentAssistLimit>=0 && fCurrentContext == fRootContext;
         final ITokenSequence input= stopAtNewline ? fLineInputToMacroExpansion : fInputToMacroExpansion;
-		final MacroExpander expander = withinExpansion ? new MacroExpander(this, fMacroDictionary,
-				fLocationMap, fLexOptions) : fMacroExpander;
+		final MacroExpander expander;
+		if (withinExpansion) {
+			expander= new MacroExpander(this, fMacroDictionary, fLocationMap, fLexOptions);
+			expander.setExpansionCache(fExpansionCache);
+		} else {
+			expander= fMacroExpander;
+		}
         TokenList replacement= expander.expand(input, (options & PROTECT_DEFINED) != 0, macro,
         		identifier, contentAssist);
     	final IASTName[] expansions= expander.clearImplicitExpansions();
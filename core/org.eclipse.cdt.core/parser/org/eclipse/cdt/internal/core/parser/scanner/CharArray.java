@@ -56,6 +56,16 @@ public final class CharArray extends AbstractCharArray {
 		return offset < fArray.length;
 	}
 
+	@Override
+	public char[] getSegment(int offset) {
+		return fArray;
+	}
+
+	@Override
+	public int getSegmentOffset(int offset) {
+		return 0;
+	}
+
 	@Override
 	public long getContentsHash() {
 		if (hash64 == 0 && fArray.length != 0) {
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT project contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT project contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.parser.scanner;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache for the resolution of include directives, shared by all parses of the workspace.
+ * For each include search path the cache stores the location a directive was resolved to,
+ * or the fact that the directive could not be resolved on the search path. This saves
+ * probing the directories of long include search paths over and over again.
+ * <p>
+ * A cached location is verified by the preprocessor before it is used, a cached negative
+ * lookup is trusted. Therefore the cache has to be cleared whenever files or folders are
+ * added or removed. Changes in the workspace are tracked via resource deltas, changes to
+ * files outside of the workspace are picked up when the index is rebuilt.
+ */
+public final class IncludeResolutionCache {
+	private static final int MAX_CONFIGURATIONS= 64;
+	private static final int MAX_RESOLUTIONS= 50000;
+
+	/**
+	 * The result of resolving an include directive.
+	 */
+	static final class Resolution {
+		private final String fLocation;
+		private final int fPathIndex;
+
+		Resolution(String location, int pathIndex) {
+			fLocation= location;
+			fPathIndex= pathIndex;
+		}
+
+		/**
+		 * Returns the location the directive was resolved to.
+		 */
+		String getLocation() {
+			return fLocation;
+		}
+
+		/**
+		 * Returns the index of the element of the include search path the directive was
+		 * resolved with, or <code>-1</code> if it was resolved relative to the current file.
+		 */
+		int getPathIndex() {
+			return fPathIndex;
+		}
+	}
+
+	/**
+	 * Marker for a directive that could not be resolved on the include search path.
+	 */
+	static final Resolution NOT_FOUND= new Resolution(null, -1);
+
+	/**
+	 * The resolutions for one include search path.
+	 */
+	static final class Configuration {
+		private final Map<String, Resolution> fResolutions= new ConcurrentHashMap<String, Resolution>();
+
+		Resolution get(String key) {
+			return fResolutions.get(key);
+		}
+
+		void put(String key, Resolution resolution) {
+			if (fResolutions.size() >= MAX_RESOLUTIONS) {
+				fResolutions.clear();
+			}
+			fResolutions.put(key, resolution);
+		}
+
+		void remove(String key) {
+			fResolutions.remove(key);
+		}
+	}
+
+	private static final IncludeResolutionCache INSTANCE= new IncludeResolutionCache();
+
+	public static IncludeResolutionCache getInstance() {
+		return INSTANCE;
+	}
+
+	private final LinkedHashMap<String, Configuration> fConfigurations=
+		new LinkedHashMap<String, Configuration>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Configuration> eldest) {
+				return size() > MAX_CONFIGURATIONS;
+			}
+		};
+
+	private IncludeResolutionCache() {
+	}
+
+	/**
+	 * Returns the resolutions for the given include search path.
+	 */
+	synchronized Configuration getConfiguration(IncludeSearchPathElement[] searchPath) {
+		StringBuilder buf= new StringBuilder();
+		for (IncludeSearchPathElement element : searchPath) {
+			buf.append(element.isForQuoteIncludesOnly() ? '"' : '<');
+			buf.append(element.getPath());
+			buf.append('\0');
+		}
+		final String signature= buf.toString();
+		Configuration result= fConfigurations.get(signature);
+		if (result == null) {
+			result= new Configuration();
+			fConfigurations.put(signature, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Discards all cached resolutions. Parsers that are currently running continue to
+	 * use the resolutions they have already obtained.
+	 */
+	public synchronized void clear() {
+		fConfigurations.clear();
+	}
+}
@@ -22,6 +22,7 @@ import org.eclipse.cdt.internal.core.parser.scanner.InternalFileContent.Inclusio
  */
 public abstract class InternalFileContentProvider extends IncludeFileContentProvider {
 	private IIncludeFileResolutionHeuristics fIncludeResolutionHeuristics;
+	private IncludeResolutionCache fIncludeResolutionCache;
 
 	/**
 	 * Check whether the specified inclusion exists.
@@ -76,4 +77,17 @@ public abstract class InternalFileContentProvider extends IncludeFileContentProv
 	public final void setIncludeResolutionHeuristics(IIncludeFileResolutionHeuristics heuristics) {
 		fIncludeResolutionHeuristics= heuristics;
 	}
+
+	/**
+	 * Returns the cache for the resolution of include directives, or <code>null</code> if
+	 * include directives shall be resolved without a cache. The cache may only be used when
+	 * {@link #getInclusionExists(String)} reflects the file system of the workspace.
+	 */
+	public final IncludeResolutionCache getIncludeResolutionCache() {
+		return fIncludeResolutionCache;
+	}
+
+	public final void setIncludeResolutionCache(IncludeResolutionCache cache) {
+		fIncludeResolutionCache= cache;
+	}
 }
@@ -106,6 +106,18 @@ public abstract class LazyCharArray extends AbstractCharArray {
 		}
 	}
 
+	@Override
+	public final char[] getSegment(int offset) {
+		final Chunk chunk= getChunkForOffset(offset);
+		return chunk != null ? getChunkData(chunk) : null;
+	}
+
+	@Override
+	public final int getSegmentOffset(int offset) {
+		final Chunk chunk= getChunkForOffset(offset);
+		return chunk != null ? chunk.fCharOffset : 0;
+	}
+
 	private void readAllChunks() {
 		if (fLength < 0) {
 			getChunkForOffset(Integer.MAX_VALUE);
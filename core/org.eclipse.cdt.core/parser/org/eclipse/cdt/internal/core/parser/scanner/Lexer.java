@@ -15,6 +15,7 @@ import org.eclipse.cdt.core.parser.IGCCToken;
 import org.eclipse.cdt.core.parser.IProblem;
 import org.eclipse.cdt.core.parser.IToken;
 import org.eclipse.cdt.core.parser.OffsetLimitReachedException;
+import org.eclipse.cdt.core.parser.util.CharArraySet;
 import org.eclipse.cdt.core.parser.util.CharArrayUtils;
 
 /**
@@ -46,6 +47,28 @@ final public class Lexer implements ITokenSequence {
 	
 	private static final int END_OF_INPUT = -1;
 	private static final int ORIGIN_LEXER = OffsetLimitReachedException.ORIGIN_LEXER;
+
+	// character classes for scanning runs of characters directly in the input
+	private static final boolean[] IDENTIFIER_PART= new boolean[128];
+	private static final boolean[] WHITESPACE= new boolean[128];
+	static {
+		for (char c= 'a'; c <= 'z'; c++) {
+			IDENTIFIER_PART[c]= true;
+		}
+		for (char c= 'A'; c <= 'Z'; c++) {
+			IDENTIFIER_PART[c]= true;
+		}
+		for (char c= '0'; c <= '9'; c++) {
+			IDENTIFIER_PART[c]= true;
+		}
+		IDENTIFIER_PART['_']= true;
+		
+		// '\r' is not included, it may be part of a windows line-ending
+		WHITESPACE[' ']= true;
+		WHITESPACE['\t']= true;
+		WHITESPACE[0xb]= true;
+		WHITESPACE['\f']= true;
+	}
 	
 	public final static class LexerOptions implements Cloneable {
 		public boolean fSupportDollarInIdentifiers= true;
@@ -90,6 +113,14 @@ final public class Lexer implements ITokenSequence {
 	private int fMarkEndOffset;
 	private int fMarkPrefetchedChar;
 	
+	// the segment of the input that is scanned directly 
+	private char[] fSegment;
+	private int fSegmentOffset;
+	private int fSegmentEndOffset;
+	
+	// images of identifiers shared between lexers
+	private CharArraySet fIdentifiers;
+	
 	public Lexer(char[] input, LexerOptions options, ILexerLog log, Object source) {
 		this(new CharArray(input), 0, input.length, options, log, source);
 	}
@@ -140,6 +171,15 @@ final public class Lexer implements ITokenSequence {
 		return fSupportContentAssist;
 	}
 
+	/**
+	 * Causes the images of identifiers to be taken from the given table. Identifiers that are
+	 * not yet part of the table are added to it. Identical identifiers of all the lexers sharing
+	 * the table use the same image, which saves one allocation per identifier token.
+	 */
+	public void setIdentifierTable(CharArraySet identifiers) {
+		fIdentifiers= identifiers;
+	}
+
 	/**
 	 * Call this before consuming the name-token in the include directive. It causes the header-file 
 	 * tokens to be created. 
@@ -357,6 +397,7 @@ final public class Lexer implements ITokenSequence {
 			case 0xb:  // vertical tab
 			case '\f': 
 			case '\r':
+				skipRun(WHITESPACE);
 				continue;
 
 			case 'L':
@@ -738,6 +779,28 @@ final public class Lexer implements ITokenSequence {
     	return new TokenWithImage(kind, fSource, offset, endOffset, image);
     }
 
+    /**
+     * Creates an identifier token with an image from the identifier table.
+     */
+    private Token newIdentifierToken(final int offset, final int imageLength) {
+    	final int endOffset= fOffset;
+    	if (endOffset-offset != imageLength) {
+    		return newToken(IToken.tIDENTIFIER, offset, imageLength);
+    	}
+    	char[] buffer;
+    	int bufferOffset;
+    	if (offset >= fSegmentOffset && endOffset <= fSegmentEndOffset && fSegment != null) {
+    		buffer= fSegment;
+    		bufferOffset= offset-fSegmentOffset;
+    	} else {
+    		buffer= new char[imageLength];
+    		fInput.arraycopy(offset, buffer, 0, imageLength);
+    		bufferOffset= 0;
+    	}
+    	final char[] image= fIdentifiers.keyAt(fIdentifiers.addIndex(buffer, bufferOffset, imageLength));
+    	return new TokenWithImage(IToken.tIDENTIFIER, fSource, offset, endOffset, image);
+    }
+
     private void handleProblem(int problemID, char[] arg, int offset) {
     	fLog.handleProblem(problemID, arg, offset, fOffset);
     }
@@ -925,6 +988,11 @@ final public class Lexer implements ITokenSequence {
     	boolean isPartOfIdentifier= true;
     	int c= fCharPhase3;
         while (true) {
+        	final int run= skipRun(IDENTIFIER_PART);
+        	if (run > 0) {
+        		length+= run;
+        		c= fCharPhase3;
+        	}
         	switch(c) {
             case 'a': case 'b': case 'c': case 'd': case 'e': case 'f': case 'g': case 'h': case 'i': 
             case 'j': case 'k': case 'l': case 'm': case 'n': case 'o': case 'p': case 'q': case 'r': 
@@ -986,6 +1054,9 @@ final public class Lexer implements ITokenSequence {
         	c= nextCharPhase3();
         }
 
+        if (fIdentifiers != null && tokenKind == IToken.tIDENTIFIER) {
+        	return newIdentifierToken(start, length);
+        }
         return newToken(tokenKind, start, length);
 	}
 	
@@ -1164,6 +1235,55 @@ final public class Lexer implements ITokenSequence {
 		while (true);
 	}
 	
+	/**
+	 * Consumes the current character and the characters following it, as long as they belong
+	 * to the given character class. The characters are read directly from a segment of the input,
+	 * which is a lot cheaper than calling {@link #nextCharPhase3()} for each of them. Characters of
+	 * the class never start a trigraph, a line-splice or a windows line-ending.
+	 * @return the number of characters consumed, <code>0</code> if the current character is not
+	 * part of the class or stems from a sequence of multiple characters.
+	 */
+	private int skipRun(boolean[] charClass) {
+		final int c= fCharPhase3;
+		if (c < 0 || c >= charClass.length || !charClass[c] || fEndOffset != fOffset+1) 
+			return 0;
+		
+		final int pos= fEndOffset;
+		if (pos < fSegmentOffset || pos >= fSegmentEndOffset || fSegment == null) {
+			if (!isValidOffset(pos) || !loadSegment(pos)) 
+				return 0;
+		}
+		int end= fSegmentEndOffset;
+		if (fLimit >= 0 && fLimit < end) {
+			end= fLimit;
+		}
+		final char[] segment= fSegment;
+		final int delta= fSegmentOffset;
+		int i= pos-delta;
+		final int endIdx= end-delta;
+		while (i < endIdx) {
+			final char d= segment[i];
+			if (d >= charClass.length || !charClass[d])
+				break;
+			i++;
+		}
+		final int endOffset= i+delta;
+		fEndOffset= endOffset;
+		nextCharPhase3();
+		return endOffset-pos+1;
+	}
+
+	private boolean loadSegment(int offset) {
+		final char[] segment= fInput.getSegment(offset);
+		if (segment == null) 
+			return false;
+		
+		fSegment= segment;
+		fSegmentOffset= fInput.getSegmentOffset(offset);
+		fSegmentEndOffset= fSegmentOffset+segment.length;
+		return true;
+	}
+
 	/**
 	 * Maps a trigraph to the character it encodes.
 	 * @param c trigraph without leading question marks.
@@ -32,6 +32,13 @@ class LocationCtxContainer extends LocationCtx {
 	private int fChildSequenceLength;
 
 	private ArrayList<LocationCtx> fChildren;
+	/**
+	 * Sequence numbers and end-offsets in this context of the children, kept in arrays such
+	 * that the lookups by sequence number or offset do not need to touch the children.
+	 */
+	private int[] fChildSequenceNumbers;
+	private int[] fChildOffsets;
+	private int[] fChildEndOffsets;
 	private AbstractCharArray fSource;
 	private int[] fLineOffsets;
 	
@@ -51,10 +58,28 @@ class LocationCtxContainer extends LocationCtx {
 	public void addChild(LocationCtx locationCtx) {
 		if (fChildren == null) {
 			fChildren= new ArrayList<LocationCtx>();
+			fChildSequenceNumbers= new int[4];
+			fChildOffsets= new int[4];
+			fChildEndOffsets= new int[4];
 		}
+		final int idx= fChildren.size();
+		if (idx == fChildSequenceNumbers.length) {
+			fChildSequenceNumbers= grow(fChildSequenceNumbers);
+			fChildOffsets= grow(fChildOffsets);
+			fChildEndOffsets= grow(fChildEndOffsets);
+		}
+		fChildSequenceNumbers[idx]= locationCtx.fSequenceNumber;
+		fChildOffsets[idx]= locationCtx.fOffsetInParent;
+		fChildEndOffsets[idx]= locationCtx.fEndOffsetInParent;
 		fChildren.add(locationCtx);
 	}
 
+	private static int[] grow(int[] array) {
+		int[] result= new int[array.length * 2];
+		System.arraycopy(array, 0, result, 0, array.length);
+		return result;
+	}
+
 	public char[] getSource(int offset, int length) {
 		if (fSource.isValidOffset(offset + length - 1)) {
 			char[] result= new char[length];
@@ -73,14 +98,21 @@ class LocationCtxContainer extends LocationCtx {
 	public final int getSequenceNumberForOffset(int offset, boolean checkChildren) {
 		int result= fSequenceNumber + fChildSequenceLength + offset;
 		if (checkChildren && fChildren != null) {
-			for (int i= fChildren.size() - 1; i >= 0; i--) {
-				final LocationCtx child= fChildren.get(i);
-				if (child.fEndOffsetInParent > offset) {	// child was inserted behind the offset, adjust sequence number
-					result-= child.getSequenceLength();
+			// The children are sorted by their end-offsets, find the first one inserted behind
+			// the offset. The sequence numbers for the offset are counted backwards from there.
+			int upper= fChildren.size();
+			int lower= 0;
+			while (upper > lower) {
+				int middle= (upper + lower) / 2;
+				if (fChildEndOffsets[middle] > offset) {
+					upper= middle;
 				} else {
-					return result;
+					lower= middle + 1;
 				}
 			}
+			if (lower < fChildren.size()) {
+				return fChildSequenceNumbers[lower] - fChildEndOffsets[lower] + offset;
+			}
 		}
 		return result;
 	}
@@ -200,10 +232,9 @@ class LocationCtxContainer extends LocationCtx {
 		int lower= 0;
 		while (upper > lower) {
 			int middle= (upper + lower) / 2;
-			LocationCtx child= fChildren.get(middle);
-			int childSequenceNumber= child.fSequenceNumber;
+			int childSequenceNumber= fChildSequenceNumbers[middle];
 			if (beforeReplacedChars) {
-				childSequenceNumber-= child.fEndOffsetInParent - child.fOffsetInParent; 
+				childSequenceNumber-= fChildEndOffsets[middle] - fChildOffsets[middle]; 
 			}
 			if (childSequenceNumber <= sequenceNumber) {
 				lower= middle + 1;
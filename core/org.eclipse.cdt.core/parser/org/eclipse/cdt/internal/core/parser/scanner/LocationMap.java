@@ -11,6 +11,7 @@
 package org.eclipse.cdt.internal.core.parser.scanner;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -48,13 +49,19 @@ public class LocationMap implements ILocationResolver {
 
     private ArrayList<ASTPreprocessorNode> fDirectives= new ArrayList<ASTPreprocessorNode>();
     private ArrayList<ASTProblem> fProblems= new ArrayList<ASTProblem>();
-    private ArrayList<ASTComment> fComments= new ArrayList<ASTComment>();
+    // comments are stored as pairs of sequence numbers, the nodes are created on demand.
+    private int[] fCommentNumbers= new int[32];
+    private BitSet fBlockComments= new BitSet();
+    private int fCommentCount;
+    private boolean fRecordComments= true;
+    private ASTComment[] fComments= {};
     private ArrayList<ASTMacroDefinition> fBuiltinMacros= new ArrayList<ASTMacroDefinition>();
 	private ArrayList<ASTPreprocessorName> fMacroReferences= new ArrayList<ASTPreprocessorName>();
 	
     private LocationCtxFile fRootContext= null;
     private LocationCtx fCurrentContext= null;
 	private int fLastChildInsertionOffset;
+	private int fSkippedGuardedInclusions;
 
 	// stuff computed on demand
 	private IdentityHashMap<IBinding, IASTPreprocessorMacroDefinition> fMacroDefinitionMap= null;
@@ -236,10 +243,45 @@ public class LocationMap implements ILocationResolver {
 				nameEndOffset, endOffset, name, filename, userInclude, active, heuristic));
 	}
 
+	/**
+	 * Reports an inclusion that is skipped without looking at the file, because its include guard
+	 * is defined or it is marked with '#pragma once'. The inclusion itself is reported via
+	 * {@link #encounterPoundInclude}.
+	 */
+	public void skippedGuardedInclusion() {
+		fSkippedGuardedInclusions++;
+	}
+
+	/**
+	 * Returns the number of inclusions skipped because of include guards or '#pragma once'.
+	 */
+	public int getSkippedGuardedInclusionsCount() {
+		return fSkippedGuardedInclusions;
+	}
+
+	/**
+	 * Controls whether comments are recorded, by default they are.
+	 */
+	public void setRecordComments(boolean val) {
+		fRecordComments= val;
+	}
+
 	public void encounteredComment(int offset, int endOffset, boolean isBlockComment) {
-		offset= getSequenceNumberForOffset(offset);
-		endOffset= getSequenceNumberForOffset(endOffset);
-		fComments.add(new ASTComment(fTranslationUnit, offset, endOffset, isBlockComment));
+		if (!fRecordComments)
+			return;
+
+		final int idx= 2 * fCommentCount;
+		if (idx == fCommentNumbers.length) {
+			int[] newNumbers= new int[2 * idx];
+			System.arraycopy(fCommentNumbers, 0, newNumbers, 0, idx);
+			fCommentNumbers= newNumbers;
+		}
+		fCommentNumbers[idx]= getSequenceNumberForOffset(offset);
+		fCommentNumbers[idx + 1]= getSequenceNumberForOffset(endOffset);
+		if (isBlockComment) {
+			fBlockComments.set(fCommentCount);
+		}
+		fCommentCount++;
 	}
 
 	public void encounterProblem(int id, char[] arg, int offset, int endOffset) {
@@ -660,7 +702,19 @@ public class LocationMap implements ILocationResolver {
     }
 
 	public IASTComment[] getComments() {
-    	return fComments.toArray(new IASTComment[fComments.size()]);
+		final int done= fComments.length;
+		if (done < fCommentCount) {
+			ASTComment[] comments= new ASTComment[fCommentCount];
+			System.arraycopy(fComments, 0, comments, 0, done);
+			for (int i = done; i < fCommentCount; i++) {
+				comments[i]= new ASTComment(fTranslationUnit, fCommentNumbers[2 * i],
+						fCommentNumbers[2 * i + 1], fBlockComments.get(i));
+			}
+			fComments= comments;
+		}
+		IASTComment[] result= new IASTComment[fCommentCount];
+		System.arraycopy(fComments, 0, result, 0, fCommentCount);
+		return result;
 	}
 
     public IASTPreprocessorStatement[] getAllPreprocessorStatements() {
@@ -132,6 +132,10 @@ public class MacroExpander {
 	private int fStartOffset;
 	private int fEndOffset;
 	
+	// for caching expansions of object-style macros
+	private MacroExpansionCache fExpansionCache;
+	private MacroExpansionCache.Entry fRecording;
+	
 	// for using the expander to track expansions
 	private String fFixedCurrentFilename;
 	private int fFixedLineNumber;
@@ -145,6 +149,14 @@ public class MacroExpander {
 		fLog= log;
 	}
 	
+	/**
+	 * Sets the cache used for the expansions of object-style macros. The cache must be shared
+	 * only with expanders that use the same macro dictionary.
+	 */
+	void setExpansionCache(MacroExpansionCache cache) {
+		fExpansionCache= cache;
+	}
+
 	/** 
 	 * Expects that the identifier has been consumed, stores the result in the list provided.
 	 */
@@ -156,6 +168,19 @@ public class MacroExpander {
 		fEndOffset= identifier.getEndOffset();
 		fCompletionMode= completionMode;
 		
+		if (fExpansionCache != null && !completionMode && !macro.isFunctionStyle() && !macro.isDynamic()) {
+			MacroExpansionCache.Entry entry= fExpansionCache.get(macro, isPPCondition, fDictionary);
+			if (entry != null) {
+				for (int i = 0; i < entry.getNestedExpansionCount(); i++) {
+					encounterImplicitMacroExpansion(entry.getNestedMacro(i), entry.getNestedIdentifier(i));
+				}
+				TokenList result= entry.getTokens().cloneTokens();
+				postProcessTokens(result);
+				return result;
+			}
+			fRecording= new MacroExpansionCache.Entry(macro, isPPCondition);
+		}
+		
 		IdentityHashMap<PreprocessorMacro, PreprocessorMacro> forbidden= new IdentityHashMap<PreprocessorMacro, PreprocessorMacro>();
 		
 		// setup input sequence
@@ -171,6 +196,9 @@ public class MacroExpander {
 			input.prepend(firstExpansion);
 
 			result= expandAll(input, forbidden, isPPCondition, null);
+			if (fRecording != null) {
+				fExpansionCache.put(fRecording, result);
+			}
 		} catch (CompletionInMacroExpansionException e) {
 			// for content assist in macro expansions, we return the list of tokens of the 
 			// parameter at the current cursor position and hope that they make sense if 
@@ -178,6 +206,8 @@ public class MacroExpander {
 			// For a better solution one would have to perform the expansion with artificial
 			// parameters and then check where the completion token ends up in the expansion.
 			result= e.getParameterTokens().cloneTokens();
+		} finally {
+			fRecording= null;
 		}
 		postProcessTokens(result);
 		return result;
@@ -343,6 +373,13 @@ public class MacroExpander {
 			case IToken.tIDENTIFIER:
 				final char[] image = t.getCharImage();
 				PreprocessorMacro macro= fDictionary.get(image);
+				if (fRecording != null) {
+					if (macro != null && (macro.isFunctionStyle() || macro.isDynamic())) {
+						fRecording= null;
+					} else {
+						fRecording.addDependency(image, macro);
+					}
+				}
 				if (protect || (tracker != null && tracker.isDone())) {
 					result.append(t);
 				} else if (protectDefinedConstructs && Arrays.equals(image, Keywords.cDEFINED)) {
@@ -356,12 +393,9 @@ public class MacroExpander {
 					t.setType(CPreprocessor.tEXPANDED_IDENTIFIER); // prevent any further expansion
 					result.append(t);
 				} else {
-					if (fLocationMap != null) {
-						ImageLocationInfo info= null;
-						if (fLexOptions.fCreateImageLocations) {
-							info = createImageLocationInfo(t);
-						}
-						fImplicitMacroExpansions.add(fLocationMap.encounterImplicitMacroExpansion(macro, info));
+					encounterImplicitMacroExpansion(macro, t);
+					if (fRecording != null) {
+						fRecording.addNestedExpansion(macro, t);
 					}
 					TokenList replacement= new TokenList();
 
@@ -390,6 +424,16 @@ public class MacroExpander {
 		return result;
 	}
 
+	private void encounterImplicitMacroExpansion(PreprocessorMacro macro, Token identifier) {
+		if (fLocationMap != null) {
+			ImageLocationInfo info= null;
+			if (fLexOptions.fCreateImageLocations) {
+				info = createImageLocationInfo(identifier);
+			}
+			fImplicitMacroExpansions.add(fLocationMap.encounterImplicitMacroExpansion(macro, info));
+		}
+	}
+
 	private ImageLocationInfo createImageLocationInfo(Token t) {
 		if (fLocationMap != null) {
 			final Object s= t.fSource;
@@ -554,6 +598,8 @@ public class MacroExpander {
 	}
 	
 	private void handleProblem(int problemID, char[] arg) {
+		// the problem has to be reported for every use of the macro
+		fRecording= null;
 		fLog.handleProblem(problemID, arg, fStartOffset, fEndOffset);
 	}
 
@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT project contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT project contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.parser.scanner;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import org.eclipse.cdt.core.parser.util.CharArrayMap;
+import org.eclipse.cdt.internal.core.parser.util.Profiler;
+
+/**
+ * Caches the expansions of object-style macros, such that repeated uses of a macro do not
+ * have to go through the replacement and rescanning steps of the {@link MacroExpander}.
+ * <p>
+ * An expansion is cached only if it does not depend on the context of the macro reference,
+ * i.e. it must not involve function-style or dynamic macros (<code>__LINE__</code>, ...), and
+ * must not report problems. For every identifier looked up during the expansion the cache
+ * stores the macro it resolved to. An entry is used only as long as all these identifiers
+ * still resolve to the same macros, so it becomes stale whenever one of them is defined or
+ * undefined.
+ */
+final class MacroExpansionCache {
+	private static final int MAX_ENTRIES= 5000;
+	private static final String HITS= "MacroExpansionCache.hits"; //$NON-NLS-1$
+	private static final String MISSES= "MacroExpansionCache.misses"; //$NON-NLS-1$
+
+	/**
+	 * The expansion of a macro, recorded while the macro is expanded.
+	 */
+	static final class Entry {
+		private final PreprocessorMacro fMacro;
+		private final boolean fIsPPCondition;
+		private final ArrayList<char[]> fNames= new ArrayList<char[]>();
+		private final ArrayList<PreprocessorMacro> fResolved= new ArrayList<PreprocessorMacro>();
+		private final ArrayList<PreprocessorMacro> fNestedMacros= new ArrayList<PreprocessorMacro>(2);
+		private final ArrayList<Token> fNestedIdentifiers= new ArrayList<Token>(2);
+		private TokenList fTokens;
+
+		Entry(PreprocessorMacro macro, boolean isPPCondition) {
+			fMacro= macro;
+			fIsPPCondition= isPPCondition;
+		}
+
+		/**
+		 * Records the result of looking up an identifier in the macro dictionary.
+		 */
+		void addDependency(char[] name, PreprocessorMacro resolved) {
+			fNames.add(name);
+			fResolved.add(resolved);
+		}
+
+		/**
+		 * Records a nested macro expansion that needs to be reported for every use of the entry.
+		 */
+		void addNestedExpansion(PreprocessorMacro macro, Token identifier) {
+			fNestedMacros.add(macro);
+			fNestedIdentifiers.add(identifier);
+		}
+
+		int getNestedExpansionCount() {
+			return fNestedMacros.size();
+		}
+
+		PreprocessorMacro getNestedMacro(int i) {
+			return fNestedMacros.get(i);
+		}
+
+		Token getNestedIdentifier(int i) {
+			return fNestedIdentifiers.get(i);
+		}
+
+		/**
+		 * Returns the tokens of the expansion before they have been post-processed. The caller
+		 * must not modify the tokens.
+		 */
+		TokenList getTokens() {
+			return fTokens;
+		}
+
+		private boolean isValid(CharArrayMap<PreprocessorMacro> dictionary) {
+			for (int i = 0; i < fNames.size(); i++) {
+				if (dictionary.get(fNames.get(i)) != fResolved.get(i))
+					return false;
+			}
+			return true;
+		}
+	}
+
+	private final IdentityHashMap<PreprocessorMacro, Entry> fEntries= new IdentityHashMap<PreprocessorMacro, Entry>();
+
+	/**
+	 * Returns the cached expansion for the macro, or <code>null</code> if there is no valid
+	 * expansion in the cache.
+	 */
+	Entry get(PreprocessorMacro macro, boolean isPPCondition, CharArrayMap<PreprocessorMacro> dictionary) {
+		Entry entry= fEntries.get(macro);
+		if (entry != null && entry.fIsPPCondition == isPPCondition && entry.isValid(dictionary)) {
+			Profiler.incrementCounter(HITS);
+			return entry;
+		}
+		Profiler.incrementCounter(MISSES);
+		return null;
+	}
+
+	/**
+	 * Stores a recorded entry together with the tokens of the expansion. The tokens are copied,
+	 * markers that are removed by post-processing are omitted.
+	 */
+	void put(Entry entry, TokenList expansion) {
+		TokenList tokens= new TokenList();
+		for (Token t= expansion.first(); t != null; t= (Token) t.getNext()) {
+			switch (t.getType()) {
+			case CPreprocessor.tSCOPE_MARKER:
+			case CPreprocessor.tSPACE:
+			case CPreprocessor.tNOSPACE:
+				break;
+			default:
+				tokens.append((Token) t.clone());
+				break;
+			}
+		}
+		entry.fTokens= tokens;
+		if (fEntries.size() >= MAX_ENTRIES) {
+			fEntries.clear();
+		}
+		fEntries.put(entry.fMacro, entry);
+	}
+
+	/**
+	 * Discards the cached expansion of a macro that has been undefined or redefined.
+	 */
+	void remove(PreprocessorMacro macro) {
+		if (macro != null) {
+			fEntries.remove(macro);
+		}
+	}
+}
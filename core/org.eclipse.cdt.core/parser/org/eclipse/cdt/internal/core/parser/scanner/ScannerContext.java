@@ -22,6 +22,8 @@ import org.eclipse.cdt.core.parser.OffsetLimitReachedException;
 final class ScannerContext {
 	enum BranchKind {eIf, eElif, eElse, eEnd}
 	enum CodeState {eActive, eParseInactive, eSkipInactive}
+	/** States of the detection of an include guard, see {@link ScannerContext#getIncludeGuard()} */
+	private enum GuardState {eNone, eExpected, eOpen, eClosed, eInvalid}
 
 	final static class Conditional {
 		private final CodeState fInitialState;
@@ -51,6 +53,8 @@ final class ScannerContext {
 	private CodeState fCurrentState= CodeState.eActive;
 	private IncludeSearchPathElement fFoundOnPath;
 	private String fFoundViaDirective;
+	private GuardState fGuardState= GuardState.eNone;
+	private char[] fIncludeGuard;
 
 	/**
 	 * @param ctx 
@@ -290,6 +294,64 @@ final class ScannerContext {
 		return fFoundViaDirective;
 	}
 
+	/**
+	 * Starts to track whether the file of this context is guarded by an include guard.
+	 */
+	public void detectIncludeGuard() {
+		fGuardState= GuardState.eExpected;
+	}
+
+	/**
+	 * Reports a token or a directive other than a conditional. Outside of the conditionals
+	 * it prevents the file from being considered as guarded.
+	 */
+	public void guardContent() {
+		if (fGuardState != GuardState.eNone && getCodeBranchNesting() == 0) {
+			fGuardState= GuardState.eInvalid;
+		}
+	}
+
+	/**
+	 * Reports the start of a conditional at the outermost level of this context.
+	 * @param ifndefMacro the macro tested by an '#ifndef' or <code>null</code> for other conditionals.
+	 */
+	public void guardConditional(char[] ifndefMacro) {
+		if (fGuardState == GuardState.eExpected && ifndefMacro != null) {
+			fGuardState= GuardState.eOpen;
+			fIncludeGuard= ifndefMacro;
+		} else if (fGuardState != GuardState.eNone) {
+			fGuardState= GuardState.eInvalid;
+		}
+	}
+
+	/**
+	 * Reports an '#elif' or '#else' of a conditional at the outermost level of this context.
+	 */
+	public void guardBranch() {
+		if (fGuardState != GuardState.eNone) {
+			fGuardState= GuardState.eInvalid;
+		}
+	}
+
+	/**
+	 * Reports the end of a conditional at the outermost level of this context.
+	 */
+	public void guardEnd() {
+		if (fGuardState == GuardState.eOpen) {
+			fGuardState= GuardState.eClosed;
+		}
+	}
+
+	/**
+	 * Returns the macro guarding the file of this context, or <code>null</code>. The file is guarded
+	 * when it consists of a single conditional '#ifndef X' ... '#endif'. Once X is defined, a
+	 * further inclusion of the file has no effect. The result is valid only when the entire
+	 * file has been processed.
+	 */
+	public char[] getIncludeGuard() {
+		return fGuardState == GuardState.eClosed ? fIncludeGuard : null;
+	}
+
 	/**
 	 * Returns the element of the include search path that was used to find this context, or <code>null</code> if not applicable.
 	 */
@@ -24,6 +24,14 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.eclipse.cdt.core.CCorePlugin;
 import org.eclipse.cdt.core.dom.IPDOMIndexerTask;
@@ -49,10 +57,12 @@ import org.eclipse.cdt.core.parser.IncludeFileContentProvider;
 import org.eclipse.cdt.core.parser.ParserUtil;
 import org.eclipse.cdt.core.parser.ScannerInfo;
 import org.eclipse.cdt.internal.core.dom.IIncludeFileResolutionHeuristics;
+import org.eclipse.cdt.internal.core.dom.parser.cpp.semantics.CPPTemplates;
 import org.eclipse.cdt.internal.core.index.IIndexFragment;
 import org.eclipse.cdt.internal.core.index.IIndexFragmentFile;
 import org.eclipse.cdt.internal.core.index.IWritableIndex;
 import org.eclipse.cdt.internal.core.index.IndexBasedFileContentProvider;
+import org.eclipse.cdt.internal.core.parser.scanner.IncludeResolutionCache;
 import org.eclipse.cdt.internal.core.parser.scanner.InternalFileContentProvider;
 import org.eclipse.cdt.internal.core.parser.scanner.StreamHasher;
 import org.eclipse.cdt.utils.EFSExtensionManager;
@@ -61,6 +71,7 @@ import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.osgi.util.NLS;
@@ -108,7 +119,7 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 			fRequestIsCounted = true;
 		}
 
-		public Object[] getPreprocessingDirectives() throws CoreException {
+		public synchronized Object[] getPreprocessingDirectives() throws CoreException {
 			if (fPreprocessingDirectives == null) {
 				if (fIndexFile == null)
 					return new Object[0];
@@ -117,7 +128,7 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 			return fPreprocessingDirectives;
 		}
 		
-		public ICPPUsingDirective[] getUsingDirectives() throws CoreException {
+		public synchronized ICPPUsingDirective[] getUsingDirectives() throws CoreException {
 			if (fDirectives == null) {
 				if (fIndexFile == null)
 					return ICPPUsingDirective.EMPTY_ARRAY;
@@ -126,15 +137,15 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 			return fDirectives;
 		}
 
-		public void setPreprocessorDirectives(IIndexInclude[] includes, IIndexMacro[] macros) throws CoreException {
+		public synchronized void setPreprocessorDirectives(IIndexInclude[] includes, IIndexMacro[] macros) throws CoreException {
 			fPreprocessingDirectives= merge(includes, macros);
 		}
 
-		public void setUsingDirectives(ICPPUsingDirective[] usingDirectives) {
+		public synchronized void setUsingDirectives(ICPPUsingDirective[] usingDirectives) {
 			fDirectives= usingDirectives;
 		}
 
-		public void clearCaches() {
+		public synchronized void clearCaches() {
 			fPreprocessingDirectives= null;
 			fDirectives= null;
 		}
@@ -189,8 +200,19 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 	private ITodoTaskUpdater fTodoTaskUpdater;
 	private final boolean fIsFastIndexer;
 	private long fFileSizeLimit= 0;
-	private InternalFileContentProvider fCodeReaderFactory;
+	// The content providers track the current translation unit, every parser thread needs its own one.
+	private final ThreadLocal<InternalFileContentProvider> fCodeReaderFactory= new ThreadLocal<InternalFileContentProvider>();
+	// The content of included files is shared by the translation units of the task.
+	private final HeaderContentCache fHeaderContentCache;
+	private int fWorkerThreads= 1;
+	private int fInstantiationBudget= 0;
+	private ParserPipeline fPipeline;
 	private int fSwallowOutOfMemoryError= 5;
+	// The translation units stored in the index are committed in groups, at most fCommitInterval ms
+	// apart or when the uncommitted changes exceed MAX_UNCOMMITTED_BYTES.
+	private static final long MAX_UNCOMMITTED_BYTES= 64 * 1024 * 1024;
+	private long fCommitInterval= 60000;
+	private long fLastCommit;
 	/**
 	 * A queue of urgent indexing tasks that contribute additional files to this task.
 	 * The files from the urgent tasks are indexed before all not yet processed files. 
@@ -206,6 +228,7 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 		Collections.addAll(fFilesToRemove, filesToRemove);
 		incrementRequestedFilesCount(fFilesToUpdate.length + fFilesToRemove.size());
 		fUrgentTasks = new LinkedList<AbstractIndexerTask>();
+		fHeaderContentCache= new HeaderContentCache(HeaderContentCache.DEFAULT_BUDGET, fStatistics);
 	}
 	
 	public final void setIndexHeadersWithoutContext(UnusedHeaderStrategy mode) {
@@ -240,6 +263,33 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 		fFileSizeLimit= limit;
 	}
 
+	/**
+	 * Sets the number of threads used to parse files. With more than one thread, files are
+	 * parsed concurrently while the thread running the task writes the results to the index.
+	 * The input adapter of the task must support being accessed by multiple threads.
+	 */
+	public final void setWorkerThreads(int count) {
+		fWorkerThreads= Math.max(1, count);
+	}
+
+	/**
+	 * Sets the number of template instances that may be created while a translation unit is
+	 * parsed and its names are resolved, <code>0</code> for no limit. Instantiations beyond the
+	 * budget result in problem bindings.
+	 */
+	public final void setInstantiationBudget(int budget) {
+		fInstantiationBudget= budget;
+	}
+
+	/**
+	 * Sets the maximum time in seconds between two commits of the translation units stored in
+	 * the index, <code>0</code> to commit only at the end of the task or when the uncommitted
+	 * changes grow too large.
+	 */
+	public final void setCommitInterval(int seconds) {
+		fCommitInterval= Math.max(0, seconds) * 1000L;
+	}
+
 	protected abstract IWritableIndex createIndex();
 	protected abstract IIncludeFileResolutionHeuristics createIncludeHeuristics();
 	protected abstract IncludeFileContentProvider createReaderFactory();
@@ -248,6 +298,14 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 	protected ITodoTaskUpdater createTodoTaskUpdater() {
 		return null;
 	}
+
+	/**
+	 * Returns the cache for resolving include directives, or <code>null</code> if the indexer
+	 * cannot keep the cache in sync with the file system.
+	 */
+	protected IncludeResolutionCache getIncludeResolutionCache() {
+		return null;
+	}
 	
 	protected IScannerInfo createDefaultScannerConfig(int linkageID) {
 		return new ScannerInfo();
@@ -289,23 +347,26 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 			}
 			return null;
 		}
-		if (fCodeReaderFactory == null) {
+		InternalFileContentProvider codeReaderFactory= fCodeReaderFactory.get();
+		if (codeReaderFactory == null) {
 			InternalFileContentProvider fileContentProvider = createInternalFileContentProvider();
 			if (fIsFastIndexer) {
 				IndexBasedFileContentProvider ibfcp = new IndexBasedFileContentProvider(fIndex, fResolver,
-						language.getLinkageID(), fileContentProvider, this);
+						language.getLinkageID(), fHeaderContentCache.createContentProvider(fileContentProvider), this);
 				ibfcp.setSupportFillGapFromContextToHeader(inContext);
 				ibfcp.setFileSizeLimit(fFileSizeLimit);
-				fCodeReaderFactory= ibfcp;
+				codeReaderFactory= ibfcp;
 			} else {
-				fCodeReaderFactory= fileContentProvider;
+				codeReaderFactory= fileContentProvider;
 			}
+			fCodeReaderFactory.set(codeReaderFactory);
 		} else if (fIsFastIndexer) {
-			((IndexBasedFileContentProvider) fCodeReaderFactory).setLinkage(language.getLinkageID());
+			((IndexBasedFileContentProvider) codeReaderFactory).setLinkage(language.getLinkageID());
 		}
-		fCodeReaderFactory.setIncludeResolutionHeuristics(createIncludeHeuristics());
+		codeReaderFactory.setIncludeResolutionHeuristics(createIncludeHeuristics());
+		codeReaderFactory.setIncludeResolutionCache(getIncludeResolutionCache());
 		try {
-			IASTTranslationUnit ast= language.getASTTranslationUnit(codeReader, scanInfo, fCodeReaderFactory,
+			IASTTranslationUnit ast= language.getASTTranslationUnit(codeReader, scanInfo, codeReaderFactory,
 					fIndex, options, getLogService());
 			if (pm.isCanceled()) {
 				return null;
@@ -313,7 +374,7 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 			return ast;
 		} finally {
 			if (fIsFastIndexer) {
-				((IndexBasedFileContentProvider) fCodeReaderFactory).cleanupAfterTranslationUnit();
+				((IndexBasedFileContentProvider) codeReaderFactory).cleanupAfterTranslationUnit();
 			}
 		}
 	}
@@ -347,9 +408,14 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 			if (getSkipReferences() == SKIP_ALL_REFERENCES) {
 				fASTOptions |= ILanguage.OPTION_SKIP_FUNCTION_BODIES;
 			}
+			if (fTodoTaskUpdater == null) {
+				// comments are needed only for updating the tasks
+				fASTOptions |= ILanguage.OPTION_SKIP_COMMENTS;
+			}
 
 			fIndex.resetCacheCounters();
 			fIndex.acquireReadLock();
+			fLastCommit= System.currentTimeMillis();
 	
 			try {
 				try {
@@ -421,6 +487,7 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 				fIndex.releaseReadLock();
 			}
 		} finally {
+			fHeaderContentCache.clear();
 			synchronized (this) {
 				fTaskCompleted = true;
 			}
@@ -578,14 +645,29 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 
 	private IndexFileContent createFileInfo(FileKey key, IIndexFile ifile) {
 		IndexFileContent info = new IndexFileContent();
-		fFileInfos.put(key, info);
 		info.fIndexFile= ifile;
+		synchronized (fFileInfos) {
+			fFileInfos.put(key, info);
+		}
 		return info;
 	}
 
 	private IndexFileContent getFileInfo(int linkageID, IIndexFileLocation ifl) {
 		FileKey key= new FileKey(linkageID, ifl.getURI());
-		return fFileInfos.get(key);
+		synchronized (fFileInfos) {
+			return fFileInfos.get(key);
+		}
+	}
+
+	/**
+	 * Checks whether an update was requested for the given file and the file has not yet
+	 * been updated.
+	 */
+	private boolean isUpdatePending(int linkageID, IIndexFileLocation ifl) {
+		synchronized (fFileInfos) {
+			final IndexFileContent info= getFileInfo(linkageID, ifl);
+			return info != null && info.fRequestUpdate && !info.fIsUpdated;
+		}
 	}
 
 	private boolean isSourceUnitConfigChange(Object tu, IIndexFragmentFile ifile) {
@@ -727,24 +809,29 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 		// Sources
 		List<Object> files= fileListMap.get(getFileListKey(linkageID, true));
 		if (files != null) {
-			for (Iterator<Object> iter = files.iterator(); iter.hasNext();) {
-				Object tu = iter.next();
-				if (monitor.isCanceled() || hasUrgentTasks())
-					return;
+			startPipeline(linkageID, files, monitor);
+			try {
+				for (Iterator<Object> iter = files.iterator(); iter.hasNext();) {
+					Object tu = iter.next();
+					if (monitor.isCanceled() || hasUrgentTasks())
+						return;
 
-				final IIndexFileLocation ifl = fResolver.resolveFile(tu);
-				if (ifl != null) {
-					final IndexFileContent info= getFileInfo(linkageID, ifl);
-					if (info != null && info.fRequestUpdate && !info.fIsUpdated) {
-						info.fRequestIsCounted= false;
-						final IScannerInfo scannerInfo= fResolver.getBuildConfiguration(linkageID, tu);
-						parseFile(tu, linkageID, ifl, scannerInfo, false, monitor);
-						if (info.fIsUpdated) {
-							updateFileCount(1, 0, 0);	// a source file was parsed
+					final IIndexFileLocation ifl = fResolver.resolveFile(tu);
+					if (ifl != null) {
+						final IndexFileContent info= getFileInfo(linkageID, ifl);
+						if (info != null && info.fRequestUpdate && !info.fIsUpdated) {
+							info.fRequestIsCounted= false;
+							final IScannerInfo scannerInfo= fResolver.getBuildConfiguration(linkageID, tu);
+							parseFile(tu, linkageID, ifl, scannerInfo, false, monitor);
+							if (info.fIsUpdated) {
+								updateFileCount(1, 0, 0);	// a source file was parsed
+							}
 						}
 					}
+					iter.remove();
 				}
-				iter.remove();
+			} finally {
+				stopPipeline();
 			}
 		}
 		
@@ -780,22 +867,313 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 
 			// Headers without context
 			contextMap= null;
-			for (Iterator<Object> iter = files.iterator(); iter.hasNext();) {
-				if (monitor.isCanceled() || hasUrgentTasks())
-					return;
+			startPipeline(linkageID, files, monitor);
+			try {
+				for (Iterator<Object> iter = files.iterator(); iter.hasNext();) {
+					if (monitor.isCanceled() || hasUrgentTasks())
+						return;
 
-				final Object header= iter.next();
-				final IIndexFileLocation ifl = fResolver.resolveFile(header);
-				final IndexFileContent info= getFileInfo(linkageID, ifl);
-				if (info != null && info.fRequestUpdate && !info.fIsUpdated) {
-					info.fRequestIsCounted= false;
-					final IScannerInfo scannerInfo= fResolver.getBuildConfiguration(linkageID, header);
-					parseFile(header, linkageID, ifl, scannerInfo, false, monitor);
-					if (info.fIsUpdated) {
-						updateFileCount(0, 1, 1);	// a header was parsed without context
+					final Object header= iter.next();
+					final IIndexFileLocation ifl = fResolver.resolveFile(header);
+					final IndexFileContent info= getFileInfo(linkageID, ifl);
+					if (info != null && info.fRequestUpdate && !info.fIsUpdated) {
+						info.fRequestIsCounted= false;
+						final IScannerInfo scannerInfo= fResolver.getBuildConfiguration(linkageID, header);
+						parseFile(header, linkageID, ifl, scannerInfo, false, monitor);
+						if (info.fIsUpdated) {
+							updateFileCount(0, 1, 1);	// a header was parsed without context
+						}
+					}
+					iter.remove();
+				}
+			} finally {
+				stopPipeline();
+			}
+		}
+	}
+
+	/**
+	 * Starts parsing the given files ahead of time, if the task is configured to use multiple
+	 * threads. The pipeline must be stopped before the list of files is modified by anything
+	 * else than iterating over it.
+	 */
+	private void startPipeline(int linkageID, List<Object> files, IProgressMonitor monitor) {
+		if (fWorkerThreads > 1 && files.size() > 1) {
+			fPipeline= new ParserPipeline(linkageID, files, fWorkerThreads, monitor);
+		}
+	}
+
+	private void stopPipeline() throws InterruptedException {
+		if (fPipeline != null) {
+			try {
+				fPipeline.stop();
+			} finally {
+				fPipeline= null;
+			}
+		}
+	}
+
+	/**
+	 * The result of parsing a file, ready to be written to the index.
+	 */
+	private static final class ParsedFile {
+		final IPath fPath;
+		Data fData;
+		long fContentsHash;
+		int fConfigHash;
+		Throwable fError;
+		boolean fInstantiationBudgetExceeded;
+
+		ParsedFile(IPath path) {
+			fPath= path;
+		}
+	}
+
+	private static final class PendingFile {
+		final int fPosition;
+		ParsedFile fResult;
+		boolean fDone;
+		boolean fDiscarded;
+
+		PendingFile(int position) {
+			fPosition= position;
+		}
+	}
+
+	private static final int MAX_WORKER_THREADS= Math.max(2, Runtime.getRuntime().availableProcessors());
+	private static final ThreadPoolExecutor sWorkerExecutor;
+	static {
+		ThreadFactory factory= new ThreadFactory() {
+			private int fCount;
+			public synchronized Thread newThread(Runnable r) {
+				Thread thread= new Thread(r, "C/C++ Indexer Worker " + ++fCount); //$NON-NLS-1$
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+		// Idle threads terminate. When all threads are busy, a pipeline runs with fewer workers.
+		sWorkerExecutor= new ThreadPoolExecutor(0, MAX_WORKER_THREADS, 10, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(), factory, new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	/**
+	 * Parses files and resolves their names on worker threads ahead of the thread running the
+	 * task, which takes the results in the original order and writes them to the index. Thus
+	 * the decisions about which headers to store with which AST are made by a single thread.
+	 * The workers run on a bounded pool of threads shared by all indexer tasks.
+	 * <p>
+	 * The workers rely on the read-lock held by the task. They access the index while
+	 * holding the shared lock of the pipeline, the exclusive lock is obtained for writing. In
+	 * order not to block the workers for every single file, the exclusive lock is kept until
+	 * the next result is not yet available.
+	 * <p>
+	 * Every result waiting for the writer holds an entire AST. When the heap is almost full the
+	 * workers stop parsing ahead until the writer has caught up.
+	 */
+	private final class ParserPipeline {
+		private static final int MAX_HEAP_PERCENTAGE_FOR_LOOK_AHEAD= 75;
+		private static final long LOW_HEAP_WAIT_MILLIS= 50;
+
+		private final int fLinkageID;
+		private final Object[] fFiles;
+		private final IProgressMonitor fMonitor;
+		private final List<Future<?>> fWorkers= new ArrayList<Future<?>>();
+		private final int fLookAhead;
+		private final ReentrantReadWriteLock fIndexAccess= new ReentrantReadWriteLock(true);
+		private final HashMap<Object, Integer> fPositions= new HashMap<Object, Integer>();
+		private final HashMap<Object, PendingFile> fClaimed= new HashMap<Object, PendingFile>();
+		private final LinkedList<PendingFile> fNotTaken= new LinkedList<PendingFile>();
+		private final PendingFile fTakenByWriter= new PendingFile(-1);
+		private int fNext;
+		private int fLimit;
+		private volatile boolean fStopped;
+		private boolean fWriting;
+
+		ParserPipeline(int linkageID, List<Object> files, int threads, final IProgressMonitor monitor) {
+			fLinkageID= linkageID;
+			fFiles= files.toArray();
+			for (int i = fFiles.length - 1; i >= 0; i--) {
+				fPositions.put(fFiles[i], i);
+			}
+			fLookAhead= 2 * threads;
+			fLimit= fLookAhead;
+			fMonitor= new NullProgressMonitor() {
+				@Override
+				public boolean isCanceled() {
+					return monitor.isCanceled();
+				}
+			};
+			final Runnable worker= new Runnable() {
+				public void run() {
+					work();
+				}
+			};
+			try {
+				for (int i = 0; i < threads; i++) {
+					fWorkers.add(sWorkerExecutor.submit(worker));
+				}
+			} catch (RejectedExecutionException e) {
+				// All threads of the pool are busy, the writer parses the remaining files itself.
+			}
+		}
+
+		private void work() {
+			while (true) {
+				final Object tu;
+				final PendingFile pending;
+				synchronized (this) {
+					while (!fStopped && fNext < fFiles.length) {
+						try {
+							if (fNext >= fLimit) {
+								wait();
+							} else if (isHeapLow()) {
+								// The writer does not notify us when memory is released.
+								wait(LOW_HEAP_WAIT_MILLIS);
+							} else {
+								break;
+							}
+						} catch (InterruptedException e) {
+							return;
+						}
+					}
+					if (fStopped || fNext >= fFiles.length)
+						return;
+					pending= new PendingFile(fNext);
+					tu= fFiles[fNext++];
+					if (fClaimed.containsKey(tu))
+						continue;
+					fClaimed.put(tu, pending);
+					fNotTaken.add(pending);
+				}
+				ParsedFile result= null;
+				fIndexAccess.readLock().lock();
+				try {
+					if (!fStopped) {
+						result= parseInAdvance(tu);
+					}
+				} finally {
+					fIndexAccess.readLock().unlock();
+					synchronized (this) {
+						if (!pending.fDiscarded) {
+							pending.fResult= result;
+						}
+						pending.fDone= true;
+						notifyAll();
+					}
+				}
+			}
+		}
+
+		/**
+		 * Checks whether there are results waiting for the writer while the heap is almost full.
+		 */
+		private boolean isHeapLow() {
+			if (fNotTaken.isEmpty())
+				return false;
+			final Runtime runtime= Runtime.getRuntime();
+			final long used= runtime.totalMemory() - runtime.freeMemory();
+			return used > runtime.maxMemory() / 100 * MAX_HEAP_PERCENTAGE_FOR_LOOK_AHEAD;
+		}
+
+		private ParsedFile parseInAdvance(Object tu) {
+			final IIndexFileLocation ifl = fResolver.resolveFile(tu);
+			if (ifl == null || !isUpdatePending(fLinkageID, ifl))
+				return null;
+			final IScannerInfo scannerInfo= fResolver.getBuildConfiguration(fLinkageID, tu);
+			return parseFile(tu, fLinkageID, ifl, scannerInfo, false, fMonitor, false);
+		}
+
+		/**
+		 * Returns the result for the given file, if it has not been parsed by one of the
+		 * workers it is parsed on the calling thread.
+		 */
+		ParsedFile take(Object tu, int linkageID, IIndexFileLocation ifl, IScannerInfo scanInfo,
+				boolean inContext, IProgressMonitor pm) throws InterruptedException {
+			PendingFile pending;
+			synchronized (this) {
+				Integer position= fPositions.get(tu);
+				if (position != null) {
+					// Files are taken in order, results for files skipped by the caller are discarded.
+					while (!fNotTaken.isEmpty() && fNotTaken.getFirst().fPosition <= position) {
+						PendingFile skipped= fNotTaken.removeFirst();
+						if (skipped.fPosition < position) {
+							skipped.fDiscarded= true;
+							skipped.fResult= null;
+						}
 					}
+					fLimit= Math.max(fLimit, position + 1 + fLookAhead);
+					notifyAll();
+				}
+				pending= fClaimed.get(tu);
+				if (pending == null) {
+					// Prevent the workers from parsing the file.
+					fClaimed.put(tu, fTakenByWriter);
+				} else if (pending == fTakenByWriter) {
+					pending= null;
+				}
+			}
+			if (pending != null) {
+				if (!isDone(pending)) {
+					// Let the workers continue while we wait.
+					endWrite();
+				}
+				ParsedFile result;
+				synchronized (this) {
+					while (!pending.fDone) {
+						wait();
+					}
+					result= pending.fResult;
+					pending.fResult= null;
+				}
+				if (result != null) {
+					return result;
+				}
+			}
+			endWrite();
+			fIndexAccess.readLock().lock();
+			try {
+				return parseFile(tu, linkageID, ifl, scanInfo, inContext, pm, false);
+			} finally {
+				fIndexAccess.readLock().unlock();
+			}
+		}
+
+		private synchronized boolean isDone(PendingFile pending) {
+			return pending.fDone;
+		}
+
+		/**
+		 * Obtains exclusive access to the index, to be called before writing to it.
+		 */
+		void beginWrite() {
+			if (!fWriting) {
+				fIndexAccess.writeLock().lock();
+				fWriting= true;
+			}
+		}
+
+		private void endWrite() {
+			if (fWriting) {
+				fWriting= false;
+				fIndexAccess.writeLock().unlock();
+			}
+		}
+
+		/**
+		 * Discards the results not taken and waits for the workers to terminate.
+		 */
+		void stop() throws InterruptedException {
+			synchronized (this) {
+				fStopped= true;
+				notifyAll();
+			}
+			endWrite();
+			for (Future<?> worker : fWorkers) {
+				try {
+					worker.get();
+				} catch (ExecutionException e) {
+					CCorePlugin.log(e.getCause());
 				}
-				iter.remove();
 			}
 		}
 	}
@@ -849,6 +1227,29 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 
 	private void parseFile(Object tu, int linkageID, IIndexFileLocation ifl, IScannerInfo scanInfo,
 			boolean inContext, IProgressMonitor pm) throws CoreException, InterruptedException {
+		final ParsedFile file;
+		if (fPipeline != null) {
+			IPath path= getPathForLabel(ifl);
+			pm.subTask(getMessage(MessageKind.parsingFileTask,
+					path.lastSegment(), path.removeLastSegments(1).toString()));
+			file= fPipeline.take(tu, linkageID, ifl, scanInfo, inContext, pm);
+			fPipeline.beginWrite();
+		} else {
+			file= parseFile(tu, linkageID, ifl, scanInfo, inContext, pm, true);
+		}
+		if (file != null) {
+			writeToIndex(linkageID, file, pm);
+		}
+	}
+
+	/**
+	 * Parses a file and resolves the names in the parts of the AST that need to be stored in
+	 * the index. The index is not modified, such that this may be called on multiple threads.
+	 * Errors are recorded in the result rather than thrown.
+	 * @return the result or <code>null</code> if the file cannot be parsed for the linkage.
+	 */
+	private ParsedFile parseFile(Object tu, int linkageID, IIndexFileLocation ifl, IScannerInfo scanInfo,
+			boolean inContext, IProgressMonitor pm, boolean reportProgress) {
 		IPath path= getPathForLabel(ifl);
 		AbstractLanguage[] langs= fResolver.getLanguages(tu, true);
 		AbstractLanguage lang= null;
@@ -859,43 +1260,121 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 			}
 		}
 		if (lang == null) {
-			return;
+			return null;
 		}
 		
-		Throwable th= null;
+		final ParsedFile result= new ParsedFile(path);
+		CPPTemplates.beginInstantiationBudget(fInstantiationBudget);
 		try {
 			if (fShowActivity) {
 				trace("Indexer: parsing " + path.toOSString()); //$NON-NLS-1$
 			}
-			pm.subTask(getMessage(MessageKind.parsingFileTask,
-					path.lastSegment(), path.removeLastSegments(1).toString()));
+			if (reportProgress) {
+				pm.subTask(getMessage(MessageKind.parsingFileTask,
+						path.lastSegment(), path.removeLastSegments(1).toString()));
+			}
 			long start= System.currentTimeMillis();
 			FileContent codeReader= fResolver.getCodeReader(tu);
 			IASTTranslationUnit ast= createAST(tu, lang, codeReader, scanInfo, fASTOptions, inContext, pm);
-			fStatistics.fParsingTime += System.currentTimeMillis() - start;
+			synchronized (fStatistics) {
+				fStatistics.fParsingTime += System.currentTimeMillis() - start;
+			}
 			if (ast != null) {
-				writeToIndex(linkageID, ast, codeReader.getContentsHash(), computeHashCode(scanInfo), pm);
+				result.fContentsHash= codeReader.getContentsHash();
+				result.fConfigHash= computeHashCode(scanInfo);
+				result.fData= prepareSymbols(ast, collectFilesToUpdate(linkageID, ast), pm);
 			}
 		} catch (CoreException e) {
-			th= e;
+			result.fError= e;
 		} catch (RuntimeException e) {
-			th= e;
+			result.fError= e;
 		} catch (StackOverflowError e) {
-			th= e;
+			result.fError= e;
 		} catch (AssertionError e) {
-			th= e;
+			result.fError= e;
 		} catch (OutOfMemoryError e) {
+			result.fError= e;
+		} finally {
+			result.fInstantiationBudgetExceeded= CPPTemplates.endInstantiationBudget();
+		}
+		return result;
+	}
+
+	private void writeToIndex(int linkageID, ParsedFile file, IProgressMonitor pm)
+			throws CoreException, InterruptedException {
+		if (file.fInstantiationBudgetExceeded) {
+			fStatistics.fInstantiationBudgetExceeded++;
+			if (fShowProblems) {
+				trace("Indexer: template instantiation budget exceeded in " + file.fPath.toOSString()); //$NON-NLS-1$
+			}
+		}
+		Throwable th= file.fError;
+		if (th == null && file.fData != null) {
+			try {
+				writeToIndex(linkageID, file.fData, file.fContentsHash, file.fConfigHash, pm);
+			} catch (CoreException e) {
+				th= e;
+			} catch (RuntimeException e) {
+				th= e;
+			} catch (StackOverflowError e) {
+				th= e;
+			} catch (AssertionError e) {
+				th= e;
+			} catch (OutOfMemoryError e) {
+				th= e;
+			}
+		}
+		if (th instanceof OutOfMemoryError) {
 			if (--fSwallowOutOfMemoryError < 0)
-				throw e;
-			th= e;
+				throw (OutOfMemoryError) th;
 		}
 		if (th != null) {
-			swallowError(path, th);
+			swallowError(file.fPath, th);
 		}
 	}
-	
+
 	private void writeToIndex(final int linkageID, IASTTranslationUnit ast, long fileContentsHash,
 			int configHash, IProgressMonitor pm) throws CoreException, InterruptedException {
+		Data data= prepareSymbols(ast, collectFilesToUpdate(linkageID, ast), pm);
+		writeToIndex(linkageID, data, fileContentsHash, configHash, pm);
+	}
+
+	private void writeToIndex(final int linkageID, Data data, long fileContentsHash, int configHash,
+			IProgressMonitor pm) throws CoreException, InterruptedException {
+		// Files may have been updated with another AST after the names have been resolved.
+		ArrayList<IIndexFileLocation> files= new ArrayList<IIndexFileLocation>(data.fFiles.length);
+		for (IIndexFileLocation ifl : data.fFiles) {
+			IndexFileContent info= getFileInfo(linkageID, ifl);
+			Assert.isNotNull(info);
+			if (!info.fIsUpdated) {
+				files.add(ifl);
+			}
+		}
+		IIndexFileLocation[] ifls= files.toArray(new IIndexFileLocation[files.size()]);
+		try {
+			storeSymbols(data, ifls, fIndex, 1, false, fileContentsHash, configHash, fTodoTaskUpdater, pm);
+		} finally {
+			// mark as updated in any case, to avoid parsing files that caused an exception to be thrown.
+			synchronized (fFileInfos) {
+				for (IIndexFileLocation ifl : ifls) {
+					getFileInfo(linkageID, ifl).fIsUpdated= true;
+				}
+			}
+		}
+		final long now= System.currentTimeMillis();
+		if ((fCommitInterval > 0 && now - fLastCommit >= fCommitInterval)
+				|| fIndex.getUncommittedBytes() > MAX_UNCOMMITTED_BYTES) {
+			fIndex.flush();
+			fLastCommit= now;
+		}
+	}
+
+	/**
+	 * Computes the files of an AST that need to be stored in the index, included files come
+	 * before the files including them.
+	 */
+	private IIndexFileLocation[] collectFilesToUpdate(final int linkageID, IASTTranslationUnit ast)
+			throws CoreException {
 		HashSet<IIndexFileLocation> enteredFiles= new HashSet<IIndexFileLocation>();
 		ArrayList<IIndexFileLocation> orderedIFLs= new ArrayList<IIndexFileLocation>();
 		
@@ -907,22 +1386,10 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 			collectOrderedIFLs(linkageID, inclusion, enteredFiles, orderedIFLs);
 		}
 		
-		IndexFileContent info= getFileInfo(linkageID, topIfl);
-		if (info != null && info.fRequestUpdate && !info.fIsUpdated) {
+		if (isUpdatePending(linkageID, topIfl)) {
 			orderedIFLs.add(topIfl);
 		}
-		
-		IIndexFileLocation[] ifls= orderedIFLs.toArray(new IIndexFileLocation[orderedIFLs.size()]);
-		try {
-			addSymbols(ast, ifls, fIndex, 1, false, fileContentsHash, configHash, fTodoTaskUpdater, pm);
-		} finally {
-			// mark as updated in any case, to avoid parsing files that caused an exception to be thrown.
-			for (IIndexFileLocation ifl : ifls) {
-				info= getFileInfo(linkageID, ifl);
-				Assert.isNotNull(info);
-				info.fIsUpdated= true;
-			}
-		}
+		return orderedIFLs.toArray(new IIndexFileLocation[orderedIFLs.size()]);
 	}
 
 	private void collectOrderedIFLs(final int linkageID, IASTInclusionNode inclusion,
@@ -942,6 +1409,13 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 	}
 
 	public final boolean needToUpdateHeader(int linkageID, IIndexFileLocation ifl) throws CoreException {
+		// Called by the parsers, which may run on multiple threads.
+		synchronized (fFileInfos) {
+			return doNeedToUpdateHeader(linkageID, ifl);
+		}
+	}
+
+	private boolean doNeedToUpdateHeader(int linkageID, IIndexFileLocation ifl) throws CoreException {
 		IndexFileContent info= getFileInfo(linkageID, ifl);
 		if (info == null) {
 			IIndexFile ifile= null;
@@ -1085,16 +1559,18 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 	}
 
 	public final IndexFileContent getFileContent(int linkageID, IIndexFileLocation ifl) throws CoreException {
-		if (!needToUpdateHeader(linkageID, ifl)) {
-			IndexFileContent info= getFileInfo(linkageID, ifl);
-			Assert.isNotNull(info);
-			if (info.fIndexFile == null) {
-				info.fIndexFile= fIndex.getFile(linkageID, ifl);
+		synchronized (fFileInfos) {
+			if (!doNeedToUpdateHeader(linkageID, ifl)) {
+				IndexFileContent info= getFileInfo(linkageID, ifl);
+				Assert.isNotNull(info);
 				if (info.fIndexFile == null) {
-					return null;
+					info.fIndexFile= fIndex.getFile(linkageID, ifl);
+					if (info.fIndexFile == null) {
+						return null;
+					}
 				}
+				return info;
 			}
-			return info;
 		}
 		return null;
 	}
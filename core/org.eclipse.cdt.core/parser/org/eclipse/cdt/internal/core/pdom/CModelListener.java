@@ -17,15 +17,20 @@ import java.util.Map;
 import org.eclipse.cdt.core.CCorePlugin;
 import org.eclipse.cdt.core.dom.IPDOMIndexer;
 import org.eclipse.cdt.core.dom.IPDOMManager;
+import org.eclipse.cdt.core.model.CoreModel;
 import org.eclipse.cdt.core.model.ElementChangedEvent;
 import org.eclipse.cdt.core.model.ICElement;
 import org.eclipse.cdt.core.model.ICElementDelta;
 import org.eclipse.cdt.core.model.ICProject;
 import org.eclipse.cdt.core.model.IElementChangedListener;
 import org.eclipse.cdt.core.model.ITranslationUnit;
+import org.eclipse.cdt.internal.core.parser.scanner.IncludeResolutionCache;
 import org.eclipse.cdt.internal.core.pdom.indexer.DeltaAnalyzer;
+import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceChangeEvent;
 import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
 import org.eclipse.core.runtime.CoreException;
 
 /**
@@ -152,8 +157,47 @@ public class CModelListener implements IElementChangedListener, IResourceChangeL
 	}
 
 	public void resourceChanged(IResourceChangeEvent event) {
-		if (event.getType() == IResourceChangeEvent.POST_BUILD) {
+		switch (event.getType()) {
+		case IResourceChangeEvent.POST_BUILD:
 			fManager.handlePostBuildEvent();
+			break;
+		case IResourceChangeEvent.POST_CHANGE:
+			if (event.getDelta() != null && addsOrRemovesResources(event.getDelta())) {
+				IncludeResolutionCache.getInstance().clear();
+			}
+			break;
+		}
+	}
+
+	/**
+	 * Checks whether folders or C/C++ files have been added or removed, such that include directives
+	 * may resolve differently. Files without an extension are considered, they may be headers
+	 * (e.g. of the standard library). Derived files and files with other extensions, e.g. the outputs
+	 * of a build, are ignored.
+	 */
+	private boolean addsOrRemovesResources(IResourceDelta delta) {
+		final boolean[] result= {false};
+		try {
+			delta.accept(new IResourceDeltaVisitor() {
+				public boolean visit(IResourceDelta d) {
+					if (result[0])
+						return false;
+					if (d.getKind() == IResourceDelta.ADDED || d.getKind() == IResourceDelta.REMOVED) {
+						final IResource resource= d.getResource();
+						if (resource.getType() != IResource.FILE
+								|| (!resource.isDerived() && (resource.getFileExtension() == null
+										|| CoreModel.isValidTranslationUnitName(resource.getProject(), resource.getName())))) {
+							result[0]= true;
+							return false;
+						}
+					}
+					return true;
+				}
+			});
+		} catch (CoreException e) {
+			CCorePlugin.log(e);
+			return true;
 		}
+		return result[0];
 	}
 }
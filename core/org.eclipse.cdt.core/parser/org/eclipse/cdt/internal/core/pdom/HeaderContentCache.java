@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT project contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT project contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.pdom;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.eclipse.cdt.core.index.IIndexFileLocation;
+import org.eclipse.cdt.internal.core.parser.scanner.AbstractCharArray;
+import org.eclipse.cdt.internal.core.parser.scanner.CharArray;
+import org.eclipse.cdt.internal.core.parser.scanner.InternalFileContent;
+import org.eclipse.cdt.internal.core.parser.scanner.InternalFileContentProvider;
+import org.eclipse.cdt.internal.core.parser.scanner.InternalFileContent.InclusionKind;
+
+/**
+ * Cache for the content of the files included by the translation units of an indexer task.
+ * Common headers are read and decoded once per task rather than once per translation unit.
+ * The cache is shared by the parser threads of the task, the least recently used files are
+ * evicted when the cached content exceeds the budget.
+ * <p>
+ * The cache holds the raw content of files only. It is consulted by the fall-back factory of
+ * the {@link org.eclipse.cdt.internal.core.index.IndexBasedFileContentProvider}, after that
+ * has checked whether the file was already included into the translation unit, whether it can
+ * be taken from the index and whether it exceeds the size limit.
+ * <p>
+ * Only local files that fit into a single {@link CharArray} are cached. An entry is discarded
+ * when the time stamp or the size of the file changes.
+ */
+public final class HeaderContentCache {
+	/** Default budget in characters, 16MB of memory */
+	public static final int DEFAULT_BUDGET= 8 * 1024 * 1024;
+
+	private static final class Entry {
+		final CharArray fContent;
+		final long fTimestamp;
+		final long fFileSize;
+
+		Entry(CharArray content, long timestamp, long fileSize) {
+			fContent= content;
+			fTimestamp= timestamp;
+			fFileSize= fileSize;
+		}
+	}
+
+	/**
+	 * Content provider that serves the content of files from the cache and populates it from its
+	 * delegate. Inclusions by path are passed on to the delegate, such that its checks are always
+	 * performed.
+	 */
+	private final class CachingContentProvider extends InternalFileContentProvider {
+		private final InternalFileContentProvider fDelegate;
+
+		CachingContentProvider(InternalFileContentProvider delegate) {
+			fDelegate= delegate;
+		}
+
+		@Override
+		public boolean getInclusionExists(String path) {
+			return fDelegate.getInclusionExists(path);
+		}
+
+		@Override
+		public InternalFileContent getContentForInclusion(String path) {
+			return fDelegate.getContentForInclusion(path);
+		}
+
+		@Override
+		public InternalFileContent getContentForInclusion(IIndexFileLocation ifl, String astPath) {
+			final File file= new File(astPath);
+			InternalFileContent result= get(astPath, file);
+			if (result == null) {
+				result= fDelegate.getContentForInclusion(ifl, astPath);
+				put(astPath, file, result);
+			}
+			return result;
+		}
+
+		@Override
+		public InternalFileContent getContentForContextToHeaderGap(String location) {
+			return fDelegate.getContentForContextToHeaderGap(location);
+		}
+
+		@Override
+		public void reportTranslationUnitFile(String filePath) {
+			fDelegate.reportTranslationUnitFile(filePath);
+		}
+
+		@Override
+		public Boolean hasFileBeenIncludedInCurrentTranslationUnit(String location) {
+			return fDelegate.hasFileBeenIncludedInCurrentTranslationUnit(location);
+		}
+	}
+
+	private final LinkedHashMap<String, Entry> fEntries= new LinkedHashMap<String, Entry>(64, 0.75f, true);
+	private final int fBudget;
+	private final IndexerStatistics fStatistics;
+	private long fSize;
+
+	/**
+	 * @param budget the maximum number of characters held by the cache.
+	 * @param statistics receives the number of hits and misses, may be <code>null</code>.
+	 */
+	public HeaderContentCache(int budget, IndexerStatistics statistics) {
+		fBudget= budget;
+		fStatistics= statistics;
+	}
+
+	/**
+	 * Returns a content provider that reads the content of files through this cache, to be used
+	 * as the fall-back factory of an index based file content provider.
+	 */
+	public InternalFileContentProvider createContentProvider(InternalFileContentProvider delegate) {
+		return new CachingContentProvider(delegate);
+	}
+
+	/**
+	 * Returns the number of characters held by the cache.
+	 */
+	public synchronized long getSize() {
+		return fSize;
+	}
+
+	/**
+	 * Removes all entries from the cache.
+	 */
+	public synchronized void clear() {
+		fEntries.clear();
+		fSize= 0;
+	}
+
+	private InternalFileContent get(String path, File file) {
+		Entry entry;
+		synchronized (this) {
+			entry= fEntries.get(path);
+		}
+		if (entry != null) {
+			if (entry.fTimestamp == file.lastModified() && entry.fFileSize == file.length()) {
+				countAccess(true);
+				return new InternalFileContent(path, entry.fContent);
+			}
+			remove(path, entry);
+		}
+		countAccess(false);
+		return null;
+	}
+
+	private void put(String path, File file, InternalFileContent content) {
+		if (content == null || content.getKind() != InclusionKind.USE_SOURCE)
+			return;
+
+		final AbstractCharArray source= content.getSource();
+		if (!(source instanceof CharArray) || source.getLength() > fBudget / 4)
+			return;
+
+		final long timestamp= file.lastModified();
+		if (timestamp == 0)
+			return;
+
+		final CharArray chars= (CharArray) source;
+		// Compute the hash before the array is shared with other threads.
+		chars.getContentsHash();
+		final Entry entry= new Entry(chars, timestamp, file.length());
+		synchronized (this) {
+			Entry old= fEntries.put(path, entry);
+			if (old != null) {
+				fSize-= old.fContent.getLength();
+			}
+			fSize+= chars.getLength();
+			evict();
+		}
+	}
+
+	private synchronized void remove(String path, Entry entry) {
+		if (fEntries.get(path) == entry) {
+			fEntries.remove(path);
+			fSize-= entry.fContent.getLength();
+		}
+	}
+
+	private void evict() {
+		for (Iterator<Entry> it= fEntries.values().iterator(); fSize > fBudget && it.hasNext();) {
+			fSize-= it.next().fContent.getLength();
+			it.remove();
+		}
+	}
+
+	private void countAccess(boolean hit) {
+		if (fStatistics != null) {
+			synchronized (fStatistics) {
+				if (hit) {
+					fStatistics.fHeaderCacheHits++;
+				} else {
+					fStatistics.fHeaderCacheMisses++;
+				}
+			}
+		}
+	}
+}
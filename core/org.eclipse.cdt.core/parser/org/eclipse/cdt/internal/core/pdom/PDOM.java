@@ -28,6 +28,11 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Pattern;
 
 import org.eclipse.cdt.core.CCorePlugin;
@@ -101,6 +106,7 @@ public class PDOM extends PlatformObject implements IPDOM {
 	private static final int BLOCKED_WRITE_LOCK_OUTPUT_INTERVAL = 30000;
 	private static final int LONG_WRITE_LOCK_REPORT_THRESHOLD = 1000;
 	private static final int LONG_READ_LOCK_WAIT_REPORT_THRESHOLD = 1000;
+	private static final int LONG_WRITE_LOCK_WAIT_REPORT_THRESHOLD = 1000;
 	static boolean sDEBUG_LOCKS= false; // initialized in the PDOMManager, because IBM needs PDOM independent of runtime plugin.
 
 	/**
@@ -210,10 +216,14 @@ public class PDOM extends PlatformObject implements IPDOM {
 	 *  CDT 8.1 development (versions not supported on teh 8.0.x branch)
 	 *  120.0 - Enumerators in global index, bug 356235
 	 *  120.1 - Specializations of using declarations, bug 357293.
+	 *  121.0 - Configurable chunk size stored in the database header, 120.x databases
+	 *          are still supported (they use chunks of 4K).
+	 *  122.0 - Key prefixes stored in the nodes of the binding and macro b-trees.
+	 *  123.0 - Index of the references of a binding ordered by file and offset.
 	 */
-	private static final int MIN_SUPPORTED_VERSION= version(120, 0);
-	private static final int MAX_SUPPORTED_VERSION= version(120, Short.MAX_VALUE);
-	private static final int DEFAULT_VERSION = version(120, 1);
+	private static final int MIN_SUPPORTED_VERSION= version(123, 0);
+	private static final int MAX_SUPPORTED_VERSION= version(123, Short.MAX_VALUE);
+	private static final int DEFAULT_VERSION = version(123, 0);
 
 	private static int version(int major, int minor) {
 		return (major << 16) + minor;
@@ -246,7 +256,7 @@ public class PDOM extends PlatformObject implements IPDOM {
 	public static final int PROPERTIES = Database.DATA_AREA + 8;
 	public static final int END= Database.DATA_AREA + 12;
 	static {
-		assert END <= Database.CHUNK_SIZE;
+		assert END <= Database.CHUNK_SIZE_OFFSET;
 	}
 
 	public static class ChangeEvent {
@@ -315,6 +325,7 @@ public class PDOM extends PlatformObject implements IPDOM {
 		this.locationConverter = locationConverter;
 		if (sDEBUG_LOCKS) {
 			fLockDebugging= new HashMap<Thread, DebugLockInfo>();
+			fLockStatistics= new LockStatistics();
 			System.out.println("Debugging PDOM Locks"); //$NON-NLS-1$
 		}
 	}
@@ -328,7 +339,7 @@ public class PDOM extends PlatformObject implements IPDOM {
 
 	private void loadDatabase(File dbPath, ChunkCache cache) throws CoreException {
 		fPath= dbPath;
-		final boolean lockDB= db == null || lockCount != 0;
+		final boolean lockDB= db == null || fLockCount.get() != 0;
 
 		clearCaches();
 		db = new Database(fPath, cache, getDefaultVersion(), isPermanentlyReadOnly());
@@ -337,7 +348,7 @@ public class PDOM extends PlatformObject implements IPDOM {
 		if (isSupportedVersion()) {
 			readLinkages();
 		}
-		db.setLocked(lockCount != 0);
+		db.setLocked(fLockCount.get() != 0);
 	}
 
 	public IIndexLocationConverter getLocationConverter() {
@@ -467,7 +478,7 @@ public class PDOM extends PlatformObject implements IPDOM {
 	}
 
 	protected void clear() throws CoreException {
-		assert lockCount < 0; // needs write-lock.
+		assert fLockCount.get() < 0; // needs write-lock.
 
 		// Clear out the database, everything is set to zero.
 		int vers = getDefaultVersion();
@@ -477,7 +488,7 @@ public class PDOM extends PlatformObject implements IPDOM {
 	}
 
 	void reloadFromFile(File file) throws CoreException {
-		assert lockCount < 0;	// must have write lock.
+		assert fLockCount.get() < 0;	// must have write lock.
 		File oldFile= fPath;
 		clearCaches();
 		try {
@@ -487,7 +498,7 @@ public class PDOM extends PlatformObject implements IPDOM {
 		}
 		loadDatabase(file, db.getChunkCache());
 		db.setExclusiveLock();
-		oldFile.delete();
+		Database.delete(oldFile);
 		fEvent.fReloaded= true;
 	}
 
@@ -794,24 +805,41 @@ public class PDOM extends PlatformObject implements IPDOM {
 
 	// Read-write lock rules. Readers don't conflict with other readers,
 	// Writers conflict with readers, and everyone conflicts with writers.
-	private Object mutex = new Object();
-	private int lockCount;
-	private int waitingReaders;
-	private long lastWriteAccess= 0;
-	private long lastReadAccess= 0;
+	// The lock count is -1 while a writer holds the lock, otherwise it is the number of read locks.
+	// Read locks are not owned by threads. As long as other readers hold the lock an additional
+	// read lock is obtained or released with a compare-and-set, all other transitions are made while
+	// holding the mutex.
+	private final ReentrantLock fMutex= new ReentrantLock();
+	private final Condition fReadersMayProceed= fMutex.newCondition();
+	private final Condition fWriterMayProceed= fMutex.newCondition();
+	private final AtomicInteger fLockCount= new AtomicInteger();
+	private volatile int fWaitingReaders;
+	private volatile int fWaitingWriters;
+	private volatile long lastWriteAccess= 0;
+	private volatile long lastReadAccess= 0;
 	private long timeWriteLockAcquired;
 
 	public void acquireReadLock() throws InterruptedException {
+		if (!sDEBUG_LOCKS) {
+			// Join the readers that already hold the lock.
+			for (int count= fLockCount.get(); count > 0; count= fLockCount.get()) {
+				if (fLockCount.compareAndSet(count, count + 1))
+					return;
+			}
+		}
 		long t = sDEBUG_LOCKS ? System.nanoTime() : 0;
-		synchronized (mutex) {
-			++waitingReaders;
+		fMutex.lock();
+		try {
+			++fWaitingReaders;
 			try {
-				while (lockCount < 0)
-					mutex.wait();
+				while (fLockCount.get() < 0)
+					fReadersMayProceed.await();
 			} finally {
-				--waitingReaders;
+				if (--fWaitingReaders == 0 && fWaitingWriters > 0) {
+					fWriterMayProceed.signalAll();
+				}
 			}
-			++lockCount;
+			fLockCount.incrementAndGet();
 			db.setLocked(true);
 
 			if (sDEBUG_LOCKS) {
@@ -820,30 +848,59 @@ public class PDOM extends PlatformObject implements IPDOM {
 					System.out.println("Acquired index read lock after " + t + " ms wait."); //$NON-NLS-1$//$NON-NLS-2$
 				}
 				incReadLock(fLockDebugging);
+				fLockStatistics.readLockAcquired(fLockDebugging, t);
 			}
+		} finally {
+			fMutex.unlock();
 		}
 	}
 
 	public void releaseReadLock() {
+		lastReadAccess= System.currentTimeMillis();
+		if (!sDEBUG_LOCKS) {
+			// Leave the lock to the other readers.
+			for (int count= fLockCount.get(); count > 1; count= fLockCount.get()) {
+				if (fLockCount.compareAndSet(count, count - 1)) {
+					if (fWaitingWriters > 0) {
+						signalWriters();
+					}
+					return;
+				}
+			}
+		}
 		boolean clearCache= false;
-		synchronized (mutex) {
-			assert lockCount > 0: "No lock to release"; //$NON-NLS-1$
+		fMutex.lock();
+		try {
+			assert fLockCount.get() > 0: "No lock to release"; //$NON-NLS-1$
 			if (sDEBUG_LOCKS) {
+				fLockStatistics.readLockReleased(fLockDebugging);
 				decReadLock(fLockDebugging);
 			}
 
-			lastReadAccess= System.currentTimeMillis();
-			if (lockCount > 0)
-				--lockCount;
-			mutex.notifyAll();
-			clearCache= lockCount == 0;
-			db.setLocked(lockCount != 0);
+			int count= fLockCount.get();
+			if (count > 0)
+				count= fLockCount.decrementAndGet();
+			if (fWaitingWriters > 0)
+				fWriterMayProceed.signalAll();
+			clearCache= count == 0;
+			db.setLocked(count != 0);
+		} finally {
+			fMutex.unlock();
 		}
 		if (clearCache) {
 			clearResultCache();
 		}
 	}
 
+	private void signalWriters() {
+		fMutex.lock();
+		try {
+			fWriterMayProceed.signalAll();
+		} finally {
+			fMutex.unlock();
+		}
+	}
+
 	/**
 	 * Acquire a write lock on this PDOM. Blocks until any existing read/write locks are released.
 	 * @throws InterruptedException
@@ -861,33 +918,48 @@ public class PDOM extends PlatformObject implements IPDOM {
 	 */
 	public void acquireWriteLock(int giveupReadLocks) throws InterruptedException {
 		assert !isPermanentlyReadOnly();
-		synchronized (mutex) {
+		fMutex.lock();
+		try {
 			if (sDEBUG_LOCKS) {
 				incWriteLock(giveupReadLocks);
 			}
 
 			if (giveupReadLocks > 0) {
 				// give up on read locks
-				assert lockCount >= giveupReadLocks: "Not enough locks to release"; //$NON-NLS-1$
-				if (lockCount < giveupReadLocks) {
-					giveupReadLocks= lockCount;
+				final int count= fLockCount.get();
+				assert count >= giveupReadLocks: "Not enough locks to release"; //$NON-NLS-1$
+				if (count < giveupReadLocks) {
+					giveupReadLocks= Math.max(count, 0);
 				}
 			} else {
 				giveupReadLocks= 0;
 			}
 
 			// Let the readers go first
-			long start= sDEBUG_LOCKS ? System.currentTimeMillis() : 0;
-			while (lockCount > giveupReadLocks || waitingReaders > 0) {
-				mutex.wait(BLOCKED_WRITE_LOCK_OUTPUT_INTERVAL);
-				if (sDEBUG_LOCKS) {
-					start = reportBlockedWriteLock(start, giveupReadLocks);
+			final long waitStart= sDEBUG_LOCKS ? System.currentTimeMillis() : 0;
+			long start= waitStart;
+			++fWaitingWriters;
+			try {
+				while (fWaitingReaders > 0 || !fLockCount.compareAndSet(giveupReadLocks, -1)) {
+					fWriterMayProceed.await(BLOCKED_WRITE_LOCK_OUTPUT_INTERVAL, TimeUnit.MILLISECONDS);
+					if (sDEBUG_LOCKS) {
+						start = reportBlockedWriteLock(start, giveupReadLocks);
+					}
 				}
+			} finally {
+				--fWaitingWriters;
 			}
-			lockCount= -1;
-			if (sDEBUG_LOCKS)
+			if (sDEBUG_LOCKS) {
 				timeWriteLockAcquired = System.currentTimeMillis();
+				long t= timeWriteLockAcquired - waitStart;
+				if (t >= LONG_WRITE_LOCK_WAIT_REPORT_THRESHOLD) {
+					System.out.println("Acquired index write lock after " + t + " ms wait."); //$NON-NLS-1$//$NON-NLS-2$
+				}
+				fLockStatistics.writeLockAcquired(t);
+			}
 			db.setExclusiveLock();
+		} finally {
+			fMutex.unlock();
 		}
 	}
 
@@ -906,31 +978,36 @@ public class PDOM extends PlatformObject implements IPDOM {
 		} catch (CoreException e) {
 			CCorePlugin.log(e);
 		}
-		assert lockCount == -1;
+		assert fLockCount.get() == -1;
 		lastWriteAccess= System.currentTimeMillis();
 		final ChangeEvent event= fEvent;
 		fEvent= new ChangeEvent();
-		synchronized (mutex) {
+		fMutex.lock();
+		try {
 			if (sDEBUG_LOCKS) {
 				long timeHeld = lastWriteAccess - timeWriteLockAcquired;
 				if (timeHeld >= LONG_WRITE_LOCK_REPORT_THRESHOLD) {
 					System.out.println("Index write lock held for " + timeHeld + " ms");
 				}
+				fLockStatistics.writeLockReleased(timeHeld);
 				decWriteLock(establishReadLocks);
 			}
 
-			if (lockCount < 0)
-				lockCount= establishReadLocks;
-			mutex.notifyAll();
-			db.setLocked(lockCount != 0);
+			if (fLockCount.get() < 0)
+				fLockCount.set(establishReadLocks);
+			if (fWaitingReaders > 0)
+				fReadersMayProceed.signalAll();
+			if (fWaitingWriters > 0)
+				fWriterMayProceed.signalAll();
+			db.setLocked(fLockCount.get() != 0);
+		} finally {
+			fMutex.unlock();
 		}
 		fireChange(event);
 	}
 
 	public boolean hasWaitingReaders() {
-		synchronized (mutex) {
-			return waitingReaders > 0;
-		}
+		return fWaitingReaders > 0;
 	}
 
 	public long getLastWriteAccess() {
@@ -1019,12 +1096,65 @@ public class PDOM extends PlatformObject implements IPDOM {
 			}
 		}
 		if ((options & FIND_REFERENCES) != 0) {
-			for (name = pdomBinding.getFirstReference(); name != null; name= name.getNextInBinding()) {
-				if (isCommitted(name)) {
-					names.add(name);
+			findReferences(pdomBinding, null, 0, -1, names);
+		}
+	}
+
+	/**
+	 * Returns the references of a binding ordered by file and offset, optionally restricted to a
+	 * set of files. The result can be paged via the number of references to skip and the maximum
+	 * number of references to return. 
+	 * @param binding the binding to search references for
+	 * @param files the files to search in, or <code>null</code> to search all files.
+	 * @param skip the number of references to skip
+	 * @param max the maximum number of references to return, or <code>-1</code> for no limit.
+	 */
+	public IIndexFragmentName[] findReferences(IBinding binding, IIndexFragmentFile[] files, int skip, int max)
+			throws CoreException {
+		ArrayList<IIndexFragmentName> names= new ArrayList<IIndexFragmentName>();
+		IIndexFragmentBinding myBinding= adaptBinding(binding);
+		if (myBinding instanceof PDOMBinding) {
+			long[] fileRecords= null;
+			if (files != null) {
+				int count= 0;
+				fileRecords= new long[files.length];
+				for (IIndexFragmentFile file : files) {
+					if (file instanceof PDOMFile && file.getIndexFragment() == this) {
+						fileRecords[count++]= ((PDOMFile) file).getRecord();
+					}
+				}
+				if (count < fileRecords.length) {
+					long[] copy= new long[count];
+					System.arraycopy(fileRecords, 0, copy, 0, count);
+					fileRecords= copy;
 				}
 			}
+			findReferences((PDOMBinding) myBinding, fileRecords, skip, max, names);
 		}
+		return names.toArray(new IIndexFragmentName[names.size()]);
+	}
+
+	private void findReferences(PDOMBinding pdomBinding, long[] fileRecords, final int skip, final int max,
+			final ArrayList<IIndexFragmentName> names) throws CoreException {
+		if (max == 0)
+			return;
+		final int initialSize= names.size();
+		pdomBinding.acceptReferences(fileRecords, new PDOMBinding.IReferenceVisitor() {
+			int toSkip= skip;
+			public boolean visit(PDOMName name) throws CoreException {
+				if (isCommitted(name)) {
+					if (toSkip > 0) {
+						toSkip--;
+					} else {
+						names.add(name);
+						if (max > 0 && names.size() - initialSize >= max) {
+							return false;
+						}
+					}
+				}
+				return true;
+			}
+		});
 	}
 
 	private void findNamesForMyBinding(PDOMMacroContainer container, int options, ArrayList<IIndexFragmentName> names)
@@ -1219,6 +1349,14 @@ public class PDOM extends PlatformObject implements IPDOM {
 	}
 
 	public void close() throws CoreException {
+		if (sDEBUG_LOCKS) {
+			fMutex.lock();
+			try {
+				fLockStatistics.write(fPath.getName());
+			} finally {
+				fMutex.unlock();
+			}
+		}
 		db.close();
 		clearCaches();
 	}
@@ -1433,6 +1571,8 @@ public class PDOM extends PlatformObject implements IPDOM {
 		int fReadLocks;
 		int fWriteLocks;
 		List<StackTraceElement[]> fTraces= new ArrayList<StackTraceElement[]>();
+		String fReadLockCaller;
+		long fReadLockAcquired;
 
 		public int addTrace() {
 			fTraces.add(Thread.currentThread().getStackTrace());
@@ -1455,8 +1595,121 @@ public class PDOM extends PlatformObject implements IPDOM {
 		}
 	}
 
+	// For debugging lock issues, accumulates wait and hold times per caller of the lock methods.
+	static class LockStatistics {
+		private static final String[] LOCK_CLASSES= {
+			"java.lang.Thread", //$NON-NLS-1$
+			PDOM.class.getName(), WritablePDOM.class.getName(), PDOMProxy.class.getName(),
+			YieldableIndexLock.class.getName(),
+			"org.eclipse.cdt.internal.core.index.CIndex", //$NON-NLS-1$
+			"org.eclipse.cdt.internal.core.index.WritableCIndex" //$NON-NLS-1$
+		};
+
+		private static class Entry {
+			int fReadLocks;
+			long fReadWait;
+			long fMaxReadWait;
+			long fReadHeld;
+			int fWriteLocks;
+			long fWriteWait;
+			long fMaxWriteWait;
+			long fWriteHeld;
+			long fMaxWriteHeld;
+			int fStarvedWriters;
+		}
+
+		private final Map<String, Entry> fEntries= new TreeMap<String, Entry>();
+		private String fWriteLockCaller;
+
+		/**
+		 * Returns the first method on the stack that is not part of the index locking.
+		 */
+		private static String getCaller() {
+			StackTraceElement[] trace= Thread.currentThread().getStackTrace();
+			outer: for (StackTraceElement ste : trace) {
+				final String className= ste.getClassName();
+				for (String lockClass : LOCK_CLASSES) {
+					if (className.equals(lockClass))
+						continue outer;
+				}
+				return className + '.' + ste.getMethodName();
+			}
+			return "<unknown>"; //$NON-NLS-1$
+		}
+
+		private Entry getEntry(String caller) {
+			Entry entry= fEntries.get(caller);
+			if (entry == null) {
+				entry= new Entry();
+				fEntries.put(caller, entry);
+			}
+			return entry;
+		}
+
+		void readLockAcquired(Map<Thread, DebugLockInfo> lockDebugging, long waitMillis) {
+			final String caller= getCaller();
+			Entry entry= getEntry(caller);
+			entry.fReadLocks++;
+			entry.fReadWait+= waitMillis;
+			entry.fMaxReadWait= Math.max(entry.fMaxReadWait, waitMillis);
+
+			DebugLockInfo info= lockDebugging.get(Thread.currentThread());
+			if (info != null && info.fReadLocks == 1) {
+				info.fReadLockCaller= caller;
+				info.fReadLockAcquired= System.currentTimeMillis();
+			}
+		}
+
+		void readLockReleased(Map<Thread, DebugLockInfo> lockDebugging) {
+			DebugLockInfo info= lockDebugging.get(Thread.currentThread());
+			if (info != null && info.fReadLocks == 1 && info.fReadLockCaller != null) {
+				getEntry(info.fReadLockCaller).fReadHeld+= System.currentTimeMillis() - info.fReadLockAcquired;
+			}
+		}
+
+		void writeLockAcquired(long waitMillis) {
+			fWriteLockCaller= getCaller();
+			Entry entry= getEntry(fWriteLockCaller);
+			entry.fWriteLocks++;
+			entry.fWriteWait+= waitMillis;
+			entry.fMaxWriteWait= Math.max(entry.fMaxWriteWait, waitMillis);
+			if (waitMillis >= LONG_WRITE_LOCK_WAIT_REPORT_THRESHOLD) {
+				entry.fStarvedWriters++;
+			}
+		}
+
+		void writeLockReleased(long heldMillis) {
+			if (fWriteLockCaller != null) {
+				Entry entry= getEntry(fWriteLockCaller);
+				entry.fWriteHeld+= heldMillis;
+				entry.fMaxWriteHeld= Math.max(entry.fMaxWriteHeld, heldMillis);
+				fWriteLockCaller= null;
+			}
+		}
+
+		@SuppressWarnings("nls")
+		void write(String pdomName) {
+			System.out.println("---------------------  Lock Statistics for " + pdomName + " ---------------------");
+			for (Map.Entry<String, Entry> e : fEntries.entrySet()) {
+				Entry entry= e.getValue();
+				System.out.println(e.getKey() + ":");
+				if (entry.fReadLocks > 0) {
+					System.out.println("  " + entry.fReadLocks + " read locks, waited " + entry.fReadWait + " ms (max "
+							+ entry.fMaxReadWait + " ms), held " + entry.fReadHeld + " ms");
+				}
+				if (entry.fWriteLocks > 0) {
+					System.out.println("  " + entry.fWriteLocks + " write locks, waited " + entry.fWriteWait + " ms (max "
+							+ entry.fMaxWriteWait + " ms), held " + entry.fWriteHeld + " ms (max " + entry.fMaxWriteHeld
+							+ " ms), " + entry.fStarvedWriters + " waits over " + LONG_WRITE_LOCK_WAIT_REPORT_THRESHOLD + " ms");
+				}
+			}
+			System.out.println("---------------------------------------------------------------");
+		}
+	}
+
 	// For debugging lock issues
 	private Map<Thread, DebugLockInfo> fLockDebugging;
+	private LockStatistics fLockStatistics;
 
 	// For debugging lock issues
 	private static DebugLockInfo getLockInfo(Map<Thread, DebugLockInfo> lockDebugging) {
@@ -1532,7 +1785,7 @@ public class PDOM extends PlatformObject implements IPDOM {
 		if (now >= start + BLOCKED_WRITE_LOCK_OUTPUT_INTERVAL) {
 			System.out.println();
 			System.out.println("Blocked writeLock");
-			System.out.println("  lockcount= " + lockCount + ", giveupReadLocks=" + giveupReadLocks + ", waitingReaders=" + waitingReaders);
+			System.out.println("  lockcount= " + fLockCount.get() + ", giveupReadLocks=" + giveupReadLocks + ", waitingReaders=" + fWaitingReaders + ", waitingWriters=" + fWaitingWriters);
 			outputReadLocks(fLockDebugging);
 			start= now;
 		}
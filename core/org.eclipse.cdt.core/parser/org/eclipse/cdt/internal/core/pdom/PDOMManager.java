@@ -68,8 +68,10 @@ import org.eclipse.cdt.internal.core.index.IndexChangeEvent;
 import org.eclipse.cdt.internal.core.index.IndexFactory;
 import org.eclipse.cdt.internal.core.index.IndexerStateEvent;
 import org.eclipse.cdt.internal.core.index.provider.IndexProviderManager;
+import org.eclipse.cdt.internal.core.parser.scanner.IncludeResolutionCache;
 import org.eclipse.cdt.internal.core.pdom.PDOM.IListener;
 import org.eclipse.cdt.internal.core.pdom.db.ChunkCache;
+import org.eclipse.cdt.internal.core.pdom.db.Database;
 import org.eclipse.cdt.internal.core.pdom.dom.IPDOMLinkageFactory;
 import org.eclipse.cdt.internal.core.pdom.dom.PDOMProjectIndexLocationConverter;
 import org.eclipse.cdt.internal.core.pdom.indexer.AbstractPDOMIndexer;
@@ -231,7 +233,8 @@ public class PDOMManager implements IWritableIndexManager, IListener {
 		
 		fTraceIndexerSetup= String.valueOf(true).equals(Platform.getDebugOption(TRACE_INDEXER_SETUP));
 		final CoreModel model = CoreModel.getDefault();
-		ResourcesPlugin.getWorkspace().addResourceChangeListener(fCModelListener, IResourceChangeEvent.POST_BUILD);
+		ResourcesPlugin.getWorkspace().addResourceChangeListener(fCModelListener,
+				IResourceChangeEvent.POST_CHANGE | IResourceChangeEvent.POST_BUILD);
 		model.addElementChangedListener(fCModelListener);
 		LanguageManager.getInstance().registerLanguageChangeListener(fLanguageChangeListener);
 		final int types= CProjectDescriptionEvent.DATA_APPLIED;
@@ -348,7 +351,7 @@ public class PDOMManager implements IWritableIndexManager, IListener {
 						IProject currentOwner= currentCOwner.getProject();
 						if (!currentOwner.exists()) {
 							fFileToProject.remove(dbFile);
-							dbFile.delete();
+							Database.delete(dbFile);
 						}
 						dbName= null;
 						dbFile= null;
@@ -360,6 +363,7 @@ public class PDOMManager implements IWritableIndexManager, IListener {
 			if (dbName == null) {
 				dbName = createNewDatabaseName(project);
 				dbFile= fileFromDatabaseName(dbName);
+				Database.delete(dbFile);
 				storeDatabaseName(rproject, dbName);
 				fromScratch= true;
 			}
@@ -862,7 +866,7 @@ public class PDOMManager implements IWritableIndexManager, IListener {
         				try {
         					finalpdom.close();
         					if (delete) {
-        						finalpdom.getDB().getLocation().delete();
+        						Database.delete(finalpdom.getDB().getLocation());
         					}
         				} catch (CoreException e) {
         					CCorePlugin.log(e);
@@ -938,6 +942,8 @@ public class PDOMManager implements IWritableIndexManager, IListener {
 	}
 
 	public void reindex(final ICProject project) {
+		// Files outside of the workspace are not covered by resource deltas.
+		IncludeResolutionCache.getInstance().clear();
 		Job job= new Job(Messages.PDOMManager_notifyJob_label) { 
 			@Override
 			protected IStatus run(IProgressMonitor monitor) {
@@ -1191,8 +1197,8 @@ public class PDOMManager implements IWritableIndexManager, IListener {
 	 * @throws IllegalArgumentException if a file exists at targetLocation
 	 */
 	public void exportProjectPDOM(ICProject cproject, File targetLocation, final IIndexLocationConverter newConverter) throws CoreException {
-		if (targetLocation.exists()) {
-			boolean deleted= targetLocation.delete();
+		if (targetLocation.exists() || Database.getTransactionLogFile(targetLocation).exists()) {
+			boolean deleted= Database.delete(targetLocation);
 			if (!deleted) {
 				throw new IllegalArgumentException(
 						MessageFormat.format(Messages.PDOMManager_ExistingFileCollides,
@@ -1220,6 +1226,7 @@ public class PDOMManager implements IWritableIndexManager, IListener {
 			newPDOM.acquireWriteLock();
 			try {
 				newPDOM.rewriteLocations(newConverter);
+				newPDOM.compactIndexes();
 
 				// ensure fragment id has a sensible value, in case callee's do not
 				// overwrite their own values
@@ -1245,6 +1252,7 @@ public class PDOMManager implements IWritableIndexManager, IListener {
 		// make a copy of the database
 		String newName= createNewDatabaseName(project);
 		File newFile= fileFromDatabaseName(newName);
+		Database.delete(newFile);
 		OutputStream out= new FileOutputStream(newFile);
 		try {
 			int version= 0;
@@ -13,6 +13,7 @@
 package org.eclipse.cdt.internal.core.pdom;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -82,7 +83,7 @@ abstract public class PDOMWriter {
 		ArrayList<IASTPreprocessorIncludeStatement> fIncludes= new ArrayList<IASTPreprocessorIncludeStatement>();
 	}
 
-	private boolean fShowProblems;
+	protected boolean fShowProblems;
 	protected boolean fShowInclusionProblems;
 	private boolean fShowScannerProblems;
 	private boolean fShowSyntaxProblems;
@@ -135,6 +136,23 @@ abstract public class PDOMWriter {
 		return fSkipReferences;
 	}
 
+	/**
+	 * Symbols extracted from an AST with their names resolved, ready to be stored in the index.
+	 * @see PDOMWriter#prepareSymbols(IASTTranslationUnit, IIndexFileLocation[], IProgressMonitor)
+	 */
+	protected static final class Data {
+		final IASTTranslationUnit fAST;
+		final IIndexFileLocation[] fFiles;
+		final Map<IIndexFileLocation, Symbols> fSymbolMap= new HashMap<IIndexFileLocation, Symbols>();
+		final HashSet<IASTPreprocessorIncludeStatement> fContextIncludes= new HashSet<IASTPreprocessorIncludeStatement>();
+		final ArrayList<IStatus> fStati= new ArrayList<IStatus>();
+
+		Data(IASTTranslationUnit ast, IIndexFileLocation[] ifls) {
+			fAST= ast;
+			fFiles= ifls;
+		}
+	}
+
 	/**
 	 * Extracts symbols from the given AST and adds them to the index.
 	 * 
@@ -145,25 +163,57 @@ abstract public class PDOMWriter {
 	public void addSymbols(IASTTranslationUnit ast, IIndexFileLocation[] ifls, IWritableIndex index,
 			int readlockCount, boolean flushIndex, long fileContentsHash, int configHash,
 			ITodoTaskUpdater taskUpdater, IProgressMonitor pm) throws InterruptedException, CoreException {
+		Data data= prepareSymbols(ast, ifls, pm);
+		storeSymbols(data, ifls, index, readlockCount, flushIndex, fileContentsHash, configHash,
+				taskUpdater, pm);
+	}
+
+	/**
+	 * Extracts the symbols for the given files from the AST and resolves their names. This
+	 * does not modify the index, it may run concurrently with other threads reading the index.
+	 */
+	protected final Data prepareSymbols(IASTTranslationUnit ast, IIndexFileLocation[] ifls,
+			IProgressMonitor pm) throws CoreException {
 		if (fShowProblems) {
 			fShowInclusionProblems= true;
 			fShowScannerProblems= true;
 			fShowSyntaxProblems= true;
 		}
-		final Map<IIndexFileLocation, Symbols> symbolMap= new HashMap<IIndexFileLocation, Symbols>();
+		final Data data= new Data(ast, ifls);
 		for (IIndexFileLocation ifl : ifls) {
-			prepareInMap(symbolMap, ifl);
+			prepareInMap(data.fSymbolMap, ifl);
 		}
-		ArrayList<IStatus> stati= new ArrayList<IStatus>();
-
-		HashSet<IASTPreprocessorIncludeStatement> contextIncludes= new HashSet<IASTPreprocessorIncludeStatement>();
-		extractSymbols(ast, symbolMap, contextIncludes);
+		extractSymbols(ast, data.fSymbolMap, data.fContextIncludes);
 
 		// name resolution
-		resolveNames(symbolMap, ifls, stati, pm);
+		resolveNames(data.fSymbolMap, ifls, data.fStati, pm);
+		return data;
+	}
+
+	/**
+	 * Stores symbols prepared by {@link #prepareSymbols} in the index. The files to be stored
+	 * may be a subset of the ones the symbols have been prepared for, e.g. when some of the
+	 * headers have been stored with another AST in the meantime.
+	 */
+	protected final void storeSymbols(Data data, IIndexFileLocation[] ifls, IWritableIndex index,
+			int readlockCount, boolean flushIndex, long fileContentsHash, int configHash,
+			ITodoTaskUpdater taskUpdater, IProgressMonitor pm) throws InterruptedException, CoreException {
+		final IASTTranslationUnit ast= data.fAST;
+		final ArrayList<IStatus> stati= data.fStati;
+		HashSet<IASTPreprocessorIncludeStatement> contextIncludes= data.fContextIncludes;
+		if (ifls.length != data.fFiles.length && !contextIncludes.isEmpty()) {
+			// Don't establish the context for a file that is not stored with this AST.
+			final HashSet<IIndexFileLocation> stored= new HashSet<IIndexFileLocation>(Arrays.asList(ifls));
+			contextIncludes= new HashSet<IASTPreprocessorIncludeStatement>();
+			for (IASTPreprocessorIncludeStatement include : data.fContextIncludes) {
+				if (stored.contains(fResolver.resolveASTPath(include.getPath()))) {
+					contextIncludes.add(include);
+				}
+			}
+		}
 
 		// index update
-		storeSymbolsInIndex(symbolMap, ifls, ast.getLinkage().getLinkageID(), fileContentsHash,
+		storeSymbolsInIndex(data.fSymbolMap, ifls, ast.getLinkage().getLinkageID(), fileContentsHash,
 				configHash, contextIncludes, index, readlockCount, flushIndex, stati, pm);
 
 		if (taskUpdater != null) {
@@ -239,9 +289,10 @@ abstract public class PDOMWriter {
 	private void resolveNames(final Map<IIndexFileLocation, Symbols> symbolMap, IIndexFileLocation[] ifls,
 			ArrayList<IStatus> stati, IProgressMonitor pm) {
 		long start= System.currentTimeMillis();
+		int problemBindings= 0, references= 0, declarations= 0;
 		for (IIndexFileLocation path : ifls) {
 			if (pm.isCanceled()) {
-				return;
+				break;
 			}
 			Symbols symbols= symbolMap.get(path);
 
@@ -259,7 +310,7 @@ abstract public class PDOMWriter {
 								binding instanceof ICPPFunctionTemplate)) {
 								na[0]= null;
 						} else if (binding instanceof IProblemBinding) {
-							fStatistics.fProblemBindingCount++;
+							problemBindings++;
 							if (fShowProblems) {
 								reportProblem((IProblemBinding) binding);
 							}
@@ -271,13 +322,13 @@ abstract public class PDOMWriter {
 								if (!isRequiredReference(name)) {
 									na[0]= null;
 								} else {
-									fStatistics.fReferenceCount++;
+									references++;
 								}
 							} else {
-								fStatistics.fReferenceCount++;
+								references++;
 							}
 						} else {
-							fStatistics.fDeclarationCount++;
+							declarations++;
 						}
 					} catch (RuntimeException e) {
 						th= e;
@@ -295,7 +346,13 @@ abstract public class PDOMWriter {
 				}
 			}
 		}
-		fStatistics.fResolutionTime += System.currentTimeMillis()-start;
+		// Names may be resolved on multiple threads.
+		synchronized (fStatistics) {
+			fStatistics.fProblemBindingCount += problemBindings;
+			fStatistics.fReferenceCount += references;
+			fStatistics.fDeclarationCount += declarations;
+			fStatistics.fResolutionTime += System.currentTimeMillis()-start;
+		}
 	}
 
 	private void extractSymbols(IASTTranslationUnit ast, final Map<IIndexFileLocation, Symbols> symbolMap,
@@ -375,8 +432,16 @@ abstract public class PDOMWriter {
 			}
 		}
 
-		fStatistics.fUnresolvedIncludesCount += unresolvedIncludes;
-		fStatistics.fPreprocessorProblemCount += ast.getPreprocessorProblemsCount() - unresolvedIncludes;
+		final List<IASTProblem> problems= visitor.getProblems();
+		final LocationMap locationMap= (LocationMap) ast.getAdapter(LocationMap.class);
+		synchronized (fStatistics) {
+			if (locationMap != null) {
+				fStatistics.fSkippedGuardedInclusions += locationMap.getSkippedGuardedInclusionsCount();
+			}
+			fStatistics.fUnresolvedIncludesCount += unresolvedIncludes;
+			fStatistics.fPreprocessorProblemCount += ast.getPreprocessorProblemsCount() - unresolvedIncludes;
+			fStatistics.fSyntaxProblemsCount += problems.size();
+		}
 		if (fShowScannerProblems || fShowInclusionProblems) {
 			final boolean reportAll= fShowScannerProblems && fShowInclusionProblems;
 			IASTProblem[] scannerProblems= ast.getPreprocessorProblems();
@@ -387,8 +452,6 @@ abstract public class PDOMWriter {
 			}
 		}
 
-		final List<IASTProblem> problems= visitor.getProblems();
-		fStatistics.fSyntaxProblemsCount += problems.size();
 		if (fShowSyntaxProblems) {
 			for (IASTProblem problem : problems) {
 				reportProblem(problem);
@@ -476,7 +539,9 @@ abstract public class PDOMWriter {
 		file= index.addUncommittedFile(linkageID, location);
 		try {
 			file.setScannerConfigurationHashcode(configHash);
-			Symbols lists= symbolMap.get(location);
+			// The symbols of a file are no longer needed once it is stored, release them right away
+			// rather than after all files of the AST have been stored.
+			Symbols lists= symbolMap.remove(location);
 			if (lists != null) {
 				IASTPreprocessorStatement[] macros= lists.fMacros.toArray(new IASTPreprocessorStatement[lists.fMacros.size()]);
 				IASTName[][] names= lists.fNames.toArray(new IASTName[lists.fNames.size()][]);
@@ -189,15 +189,23 @@ public class WritablePDOM extends PDOM implements IWritableIndexFragment {
 
 		clearFileIndex();
 		final List<PDOMFile> notConverted = new ArrayList<PDOMFile>();
+		long[] converted= new long[pdomfiles.size()];
+		int count= 0;
 		for (PDOMFile file : pdomfiles) {
 			String internalFormat = newConverter.toInternalFormat(file.getLocation());
 			if (internalFormat != null) {
 				file.setInternalLocation(internalFormat);
-				getFileIndex().insert(file.getRecord());
+				converted[count++]= file.getRecord();
 			} else {
 				notConverted.add(file);
 			}
 		}
+		if (count < converted.length) {
+			long[] tmp= new long[count];
+			System.arraycopy(converted, 0, tmp, 0, count);
+			converted= tmp;
+		}
+		getFileIndex().insertAll(converted);
 
 		// remove content where converter returns null
 		for (PDOMFile file : notConverted) {
@@ -206,6 +214,19 @@ public class WritablePDOM extends PDOM implements IWritableIndexFragment {
 		}
 	}
 
+	/**
+	 * Rebuilds the sparse b-trees of the index bottom-up with full nodes. This reduces the size
+	 * of the database and the number of chunks touched by lookups. It is worthwhile after the
+	 * index has been built from scratch, requires a write-lock.
+	 * @see BTree#compactIfSparse()
+	 */
+	public void compactIndexes() throws CoreException {
+		getFileIndex().compactIfSparse();
+		for (PDOMLinkage linkage : getLinkageImpls()) {
+			linkage.compactIndexes();
+		}
+	}
+
 	boolean isClearedBecauseOfVersionMismatch() {
 		return fClearedBecauseOfVersionMismatch;
 	}
@@ -276,4 +297,11 @@ public class WritablePDOM extends PDOM implements IWritableIndexFragment {
 	public long getDatabaseSizeBytes() {
 		return getDB().getSizeBytes();
 	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.cdt.internal.core.index.IWritableIndexFragment#getUncommittedBytes()
+	 */
+	public long getUncommittedBytes() {
+		return getDB().getUncommittedBytes();
+	}
 }
@@ -29,6 +29,12 @@ public class BTree {
 	private static final int DELMODE_NORMAL = 0;
 	private static final int DELMODE_DELETE_MINIMUM = 1;
 	private static final int DELMODE_DELETE_MAXIMUM = 2;
+	private static final int PREFIX_SIZE = 8;
+
+	/**
+	 * B-trees with fewer of their record slots in use are compacted by {@link #compactIfSparse()}.
+	 */
+	public static final int SPARSE_FILL_PERCENTAGE = 60;
 
 	protected final Database db;
 	protected final long rootPointer;
@@ -39,15 +45,18 @@ public class BTree {
 	protected final int MIN_RECORDS; 
 	protected final int OFFSET_CHILDREN;
 	protected final int MEDIAN_RECORD;
+	protected final int OFFSET_PREFIXES;
 
 	protected final IBTreeComparator cmp;
+	private final IBTreeKeyPrefixComparator prefixCmp;
 	
 	public BTree(Database db, long rootPointer, IBTreeComparator cmp) {
 		this(db, rootPointer, 8, cmp);
 	}
 
 	/**
-	 * Constructor.
+	 * Constructor. When the comparator is an {@link IBTreeKeyPrefixComparator}, the nodes of
+	 * the b-tree store the key prefix of each record.
 	 * 
 	 * @param db the database containing the btree
 	 * @param rootPointer offset into database of the pointer to the root node
@@ -59,6 +68,7 @@ public class BTree {
 		this.db = db;
 		this.rootPointer = rootPointer;
 		this.cmp = cmp;
+		this.prefixCmp = cmp instanceof IBTreeKeyPrefixComparator ? (IBTreeKeyPrefixComparator) cmp : null;
 		
 		this.DEGREE = degree;
 		this.MIN_RECORDS = DEGREE - 1;
@@ -66,14 +76,46 @@ public class BTree {
 		this.MAX_CHILDREN = 2*DEGREE;
 		this.OFFSET_CHILDREN = MAX_RECORDS * Database.INT_SIZE;
 		this.MEDIAN_RECORD = DEGREE - 1;
+		this.OFFSET_PREFIXES = OFFSET_CHILDREN + MAX_CHILDREN * Database.INT_SIZE;
 	}
 
 	protected long getRoot() throws CoreException {
 		return db.getRecPtr(rootPointer);
 	}
 
-	protected final void putRecord(Chunk chunk, long node, int index, long record) {
+	/**
+	 * Stores a record in a node, the key prefix of the record is computed.
+	 */
+	protected final void putRecord(Chunk chunk, long node, int index, long record) throws CoreException {
+		chunk.putRecPtr(node + index * Database.INT_SIZE, record);
+		if (prefixCmp != null) {
+			putPrefix(chunk, node, index, record == 0 ? 0 : prefixCmp.getKeyPrefix(record));
+		}
+	}
+
+	private void putRecord(Chunk chunk, long node, int index, long record, long prefix) {
 		chunk.putRecPtr(node + index * Database.INT_SIZE, record);
+		if (prefixCmp != null) {
+			putPrefix(chunk, node, index, prefix);
+		}
+	}
+
+	/**
+	 * Copies a record together with its key prefix.
+	 */
+	private void copyRecord(Chunk srcChunk, long srcNode, int srcIndex, Chunk dstChunk, long dstNode, int dstIndex) {
+		dstChunk.putRecPtr(dstNode + dstIndex * Database.INT_SIZE, getRecord(srcChunk, srcNode, srcIndex));
+		if (prefixCmp != null) {
+			putPrefix(dstChunk, dstNode, dstIndex, getPrefix(srcChunk, srcNode, srcIndex));
+		}
+	}
+
+	private void putPrefix(Chunk chunk, long node, int index, long prefix) {
+		chunk.putLong(node + OFFSET_PREFIXES + index * PREFIX_SIZE, prefix);
+	}
+
+	private long getPrefix(Chunk chunk, long node, int index) {
+		return chunk.getLong(node + OFFSET_PREFIXES + index * PREFIX_SIZE);
 	}
 
 	protected final long getRecord(Chunk chunk, long node, int index) {
@@ -97,17 +139,18 @@ public class BTree {
 	 */
 	public long insert(long record) throws CoreException {
 		long root = getRoot();
+		long prefix = prefixCmp != null ? prefixCmp.getKeyPrefix(record) : 0;
 
 		// is this our first time in
 		if (root == 0) {
-			firstInsert(record);
+			firstInsert(record, prefix);
 			return record;
 		}
 
-		return insert(null, 0, 0, root, record);
+		return insert(null, 0, 0, root, record, prefix);
 	}
 
-	private long insert(Chunk pChunk, long parent, int iParent, long node, long record) throws CoreException {
+	private long insert(Chunk pChunk, long parent, int iParent, long node, long record, long prefix) throws CoreException {
 		Chunk chunk = db.getChunk(node);
 
 		// if this node is full (last record isn't null), split it
@@ -122,8 +165,8 @@ public class BTree {
 				long newnode = allocateNode();
 				Chunk newchunk = db.getChunk(newnode);
 				for (int i = 0; i < MEDIAN_RECORD; ++i) {
-					putRecord(newchunk, newnode, i, getRecord(chunk, node, MEDIAN_RECORD + 1 + i));
-					putRecord(chunk, node, MEDIAN_RECORD + 1 + i, 0);
+					copyRecord(chunk, node, MEDIAN_RECORD + 1 + i, newchunk, newnode, i);
+					putRecord(chunk, node, MEDIAN_RECORD + 1 + i, 0, 0);
 					putChild(newchunk, newnode, i, getChild(chunk, node, MEDIAN_RECORD + 1 + i));
 					putChild(chunk, node, MEDIAN_RECORD + 1 + i, 0);
 				}
@@ -141,15 +184,15 @@ public class BTree {
 					for (int i = MAX_RECORDS - 2; i >= iParent; --i) {
 						long r = getRecord(pChunk, parent, i);
 						if (r != 0) {
-							putRecord(pChunk, parent, i + 1, r);
+							copyRecord(pChunk, parent, i, pChunk, parent, i + 1);
 							putChild(pChunk, parent, i + 2, getChild(pChunk, parent, i + 1));
 						}
 					}
 				}
-				putRecord(pChunk, parent, iParent, median);
+				copyRecord(chunk, node, MEDIAN_RECORD, pChunk, parent, iParent);
 				putChild(pChunk, parent, iParent + 1, newnode);
 
-				putRecord(chunk, node, MEDIAN_RECORD, 0);
+				putRecord(chunk, node, MEDIAN_RECORD, 0, 0);
 
 				// set the node to the correct one to follow
 				if (cmp.compare(record, median) > 0) {
@@ -173,7 +216,7 @@ public class BTree {
 				upper= middle;
 			}
 			else {
-				int compare= cmp.compare(checkRec, record);
+				int compare= compare(chunk, node, middle, checkRec, record, prefix);
 				if (compare > 0) {
 					upper= middle;
 				}
@@ -190,30 +233,252 @@ public class BTree {
 		long	child = getChild(chunk, node, i);
 		if (child != 0) {
 			// visit the children
-			return insert(chunk, node, i, child, record);
+			return insert(chunk, node, i, child, record, prefix);
 		} else {
 			// were at the leaf, add us in.
 			// first copy everything after over one
 			for (int j = MAX_RECORDS - 2; j >= i; --j) {
 				long r = getRecord(chunk, node, j);
 				if (r != 0)
-					putRecord(chunk, node, j + 1, r);
+					copyRecord(chunk, node, j, chunk, node, j + 1);
 			}
-			putRecord(chunk, node, i, record);
+			putRecord(chunk, node, i, record, prefix);
 			return record;
 		}
 	}
 
-	private void firstInsert(long record) throws CoreException {
+	/**
+	 * Compares a record of a node with another record, uses the key prefixes when available.
+	 */
+	private int compare(Chunk chunk, long node, int index, long record1, long record2, long prefix2)
+			throws CoreException {
+		if (prefixCmp != null) {
+			int result= KeyPrefix.compare(getPrefix(chunk, node, index), prefix2);
+			if (result != 0)
+				return result;
+		}
+		return cmp.compare(record1, record2);
+	}
+
+	/**
+	 * Inserts the records into the b-tree. The records are sorted first, when the b-tree is
+	 * empty it is built bottom-up with full nodes. Otherwise the records are inserted one by
+	 * one in sorted order. Of the records that compare equal, only the first one of the array
+	 * is inserted.
+	 * 
+	 * @param records offsets of the records, the array is sorted by this method.
+	 */
+	public void insertAll(long[] records) throws CoreException {
+		int length= sort(records);
+		if (getRoot() == 0) {
+			db.putRecPtr(rootPointer, buildTree(records, length));
+		} else {
+			for (int i = 0; i < length; i++) {
+				insert(records[i]);
+			}
+		}
+	}
+
+	/**
+	 * Rebuilds the b-tree bottom-up with full nodes, the nodes of the old tree are freed.
+	 * This reduces the size of the b-tree and the number of chunks accessed during lookups.
+	 */
+	public void compact() throws CoreException {
+		final long root= getRoot();
+		if (root == 0)
+			return;
+
+		final long[][] records= {new long[64]};
+		final int[] length= {0};
+		accept(new IBTreeVisitor() {
+			public int compare(long record) throws CoreException {
+				return 0;
+			}
+			public boolean visit(long record) throws CoreException {
+				if (length[0] == records[0].length) {
+					long[] newRecords= new long[length[0] * 2];
+					System.arraycopy(records[0], 0, newRecords, 0, length[0]);
+					records[0]= newRecords;
+				}
+				records[0][length[0]++]= record;
+				return true;
+			}
+		});
+		freeNodes(root);
+		db.putRecPtr(rootPointer, buildTree(records[0], length[0]));
+	}
+
+	/**
+	 * Rebuilds the b-tree with full nodes, if less than {@link #SPARSE_FILL_PERCENTAGE} of the
+	 * record slots of its nodes are in use. Checking this costs a traversal of the nodes.
+	 * <p>
+	 * A b-tree filled by inserts in random order uses about two thirds of its slots, compacting
+	 * it shrinks the nodes by about 30% but does not measurably speed up lookups. Inserts in
+	 * ascending order leave the nodes half empty, there compacting speeds up lookups by 10% to
+	 * 25% (see DBPerformanceTest.testCompactAfterInserts).
+	 * 
+	 * @return whether the b-tree has been compacted.
+	 */
+	public boolean compactIfSparse() throws CoreException {
+		if (getFillPercentage() >= SPARSE_FILL_PERCENTAGE)
+			return false;
+		compact();
+		return true;
+	}
+
+	/**
+	 * Returns the percentage of the record slots of the nodes that are in use, or <code>100</code>
+	 * for an empty b-tree. All nodes are visited, the records are not accessed.
+	 */
+	public int getFillPercentage() throws CoreException {
+		final long root= getRoot();
+		if (root == 0)
+			return 100;
+		final long[] counts= {0, 0};
+		countRecords(root, counts);
+		return (int) (counts[1] * 100 / (counts[0] * MAX_RECORDS));
+	}
+
+	/**
+	 * Adds the number of nodes and the number of records of the subtree to the counts.
+	 */
+	private void countRecords(long node, long[] counts) throws CoreException {
+		final Chunk chunk= db.getChunk(node);
+		int records= 0;
+		while (records < MAX_RECORDS && getRecord(chunk, node, records) != 0) {
+			records++;
+		}
+		counts[0]++;
+		counts[1]+= records;
+		for (int i = 0; i <= records; i++) {
+			final long child= getChild(chunk, node, i);
+			if (child == 0)
+				break;
+			countRecords(child, counts);
+		}
+	}
+
+	private void freeNodes(long node) throws CoreException {
+		final Chunk chunk= db.getChunk(node);
+		for (int i = 0; i < MAX_CHILDREN; i++) {
+			long child= getChild(chunk, node, i);
+			if (child == 0)
+				break;
+			freeNodes(child);
+		}
+		db.free(node);
+	}
+
+	/**
+	 * Builds the tree for sorted records bottom-up and returns its root. Each level
+	 * is divided into as few nodes as possible, the records are distributed evenly among them,
+	 * such that every node except the root holds at least MIN_RECORDS records.
+	 */
+	private long buildTree(long[] records, int length) throws CoreException {
+		if (length == 0)
+			return 0;
+
+		long[] keys= records;
+		long[] children= null;
+		while (length > MAX_RECORDS) {
+			final int nodeCount= (length + MAX_RECORDS + 1) / (MAX_RECORDS + 1);
+			final int perNode= (length - nodeCount + 1) / nodeCount;
+			final int extra= (length - nodeCount + 1) % nodeCount;
+			final long[] parentKeys= new long[nodeCount - 1];
+			final long[] parentChildren= new long[nodeCount];
+			int pos= 0;
+			for (int i = 0; i < nodeCount; i++) {
+				final int count= i < extra ? perNode + 1 : perNode;
+				parentChildren[i]= createNode(keys, children, pos, count);
+				pos+= count;
+				if (i < nodeCount - 1) {
+					parentKeys[i]= keys[pos++];
+				}
+			}
+			keys= parentKeys;
+			children= parentChildren;
+			length= parentKeys.length;
+		}
+		return createNode(keys, children, 0, length);
+	}
+
+	private long createNode(long[] keys, long[] children, int from, int count) throws CoreException {
+		final long node= allocateNode();
+		final Chunk chunk= db.getChunk(node);
+		for (int i = 0; i < count; i++) {
+			putRecord(chunk, node, i, keys[from + i]);
+		}
+		if (children != null) {
+			for (int i = 0; i <= count; i++) {
+				putChild(chunk, node, i, children[from + i]);
+			}
+		}
+		return node;
+	}
+
+	/**
+	 * Sorts the records with the comparator of this b-tree and removes the ones that compare
+	 * equal to a preceding record. Returns the number of remaining records.
+	 */
+	private int sort(long[] records) throws CoreException {
+		if (records.length < 2)
+			return records.length;
+
+		// merge sort is stable, of records comparing equal the first one is kept.
+		long[] src= records.clone();
+		long[] dst= records;
+		mergeSort(src, dst, 0, records.length);
+		int length= 1;
+		for (int i = 1; i < records.length; i++) {
+			if (cmp.compare(records[length - 1], records[i]) != 0) {
+				records[length++]= records[i];
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * Sorts src[from, to) into dst[from, to), both arrays must have the same content initially.
+	 */
+	private void mergeSort(long[] src, long[] dst, int from, int to) throws CoreException {
+		final int length= to - from;
+		if (length < 8) {
+			for (int i = from + 1; i < to; i++) {
+				final long r= dst[i];
+				int j= i;
+				while (j > from && cmp.compare(dst[j - 1], r) > 0) {
+					dst[j]= dst[j - 1];
+					j--;
+				}
+				dst[j]= r;
+			}
+			return;
+		}
+		final int middle= (from + to) >>> 1;
+		mergeSort(dst, src, from, middle);
+		mergeSort(dst, src, middle, to);
+		for (int i = from, p = from, q = middle; i < to; i++) {
+			if (q >= to || (p < middle && cmp.compare(src[p], src[q]) <= 0)) {
+				dst[i]= src[p++];
+			} else {
+				dst[i]= src[q++];
+			}
+		}
+	}
+
+	private void firstInsert(long record, long prefix) throws CoreException {
 		// create the node and save it as root
 		long root = allocateNode();
 		db.putRecPtr(rootPointer, root);
 		// put the record in the first slot of the node
-		putRecord(db.getChunk(root), root, 0, record); 
+		putRecord(db.getChunk(root), root, 0, record, prefix); 
 	}
 
 	private long allocateNode() throws CoreException {
-		return db.malloc((2 * MAX_RECORDS + 1) * Database.INT_SIZE);
+		if (prefixCmp != null) {
+			return db.malloc(OFFSET_PREFIXES + MAX_RECORDS * PREFIX_SIZE);
+		}
+		return db.malloc(OFFSET_PREFIXES);
 	}
 
 	/**
@@ -430,12 +695,15 @@ public class BTree {
 	public void mergeNodes(BTNode src, BTNode keyProvider, int kIndex, BTNode dst) 
 	throws CoreException {
 		nodeContentCopy(src, 0, dst, dst.keyCount+1, src.keyCount+1);
-		long midKey = getRecord(keyProvider.chunk, keyProvider.node, kIndex);
-		putRecord(dst.chunk, dst.node, dst.keyCount, midKey);
+		copyRecord(keyProvider.chunk, keyProvider.node, kIndex, dst.chunk, dst.node, dst.keyCount);
 		long keySucc = kIndex+1 == MAX_RECORDS ? 0 : getRecord(keyProvider.chunk, keyProvider.node, kIndex+1);
 		db.free(getChild(keyProvider.chunk, keyProvider.node,  kIndex+1));
+		if (keySucc != 0) {
+			copyRecord(keyProvider.chunk, keyProvider.node, kIndex+1, keyProvider.chunk, keyProvider.node, kIndex);
+		} else {
+			putRecord(keyProvider.chunk, keyProvider.node, kIndex, 0, 0);
+		}
 		nodeContentDelete(keyProvider, kIndex+1, 1);
-		putRecord(keyProvider.chunk, keyProvider.node, kIndex, keySucc);
 		if(kIndex == 0 && keySucc == 0) {
 			/*
 			 * The root node is excused from the property that a node must have a least MIN keys
@@ -457,7 +725,7 @@ public class BTree {
 	 * @param key the new leftmost (least) key
 	 * @param child the new leftmost (least) subtree root
 	 */
-	private void prepend(BTNode node, long key, long child) {
+	private void prepend(BTNode node, long key, long child) throws CoreException {
 		nodeContentCopy(node, 0, node, 1, node.keyCount+1);
 		putRecord(node.chunk, node.node, 0, key);
 		putChild(node.chunk, node.node, 0, child);
@@ -470,7 +738,7 @@ public class BTree {
 	 * @param key
 	 * @param child
 	 */
-	private void append(BTNode node, long key, long child) {
+	private void append(BTNode node, long key, long child) throws CoreException {
 		putRecord(node.chunk, node.node, node.keyCount, key);
 		putChild(node.chunk, node.node, node.keyCount + 1, child);
 	}
@@ -496,8 +764,7 @@ public class BTree {
 				putChild(dst.chunk, dst.node, dstIndex, srcChild);
 
 				if(srcIndex<src.keyCount) {
-					long srcKey = getRecord(src.chunk, src.node, srcIndex);
-					putRecord(dst.chunk, dst.node, dstIndex, srcKey);
+					copyRecord(src.chunk, src.node, srcIndex, dst.chunk, dst.node, dstIndex);
 				}
 			}
 		}
@@ -514,10 +781,13 @@ public class BTree {
 	 */
 	private void nodeContentDelete(BTNode node, int i, int length) {
 		for(int index=i; index<=MAX_RECORDS; index++) {
-			long newKey = (index+length) < node.keyCount ? getRecord(node.chunk, node.node, index+length) : 0;
 			long newChild = (index+length) < node.keyCount+1 ? getChild(node.chunk, node.node, index+length) : 0;
 			if(index<MAX_RECORDS) {
-				putRecord(node.chunk, node.node, index, newKey);
+				if((index+length) < node.keyCount) {
+					copyRecord(node.chunk, node.node, index+length, node.chunk, node.node, index);
+				} else {
+					putRecord(node.chunk, node.node, index, 0, 0);
+				}
 			}
 			if(index<MAX_CHILDREN) {
 				putChild(node.chunk, node.node, index, newChild);
@@ -543,6 +813,8 @@ public class BTree {
 		if (node == 0) {
 			return true;
 		}
+		final IBTreeKeyPrefixVisitor prefixVisitor= prefixCmp != null && visitor instanceof IBTreeKeyPrefixVisitor ?
+				(IBTreeKeyPrefixVisitor) visitor : null;
 		if(visitor instanceof IBTreeVisitor2) {
 			((IBTreeVisitor2)visitor).preNode(node);
 		}
@@ -563,7 +835,7 @@ public class BTree {
 					upper= middle;
 				}
 				else {
-					int compare= visitor.compare(checkRec);
+					int compare= compare(visitor, prefixVisitor, chunk, node, middle, checkRec);
 					if (compare >= 0) {
 						upper= middle;
 					}
@@ -580,7 +852,7 @@ public class BTree {
 				if (record == 0) 
 					break;
 
-				int compare= visitor.compare(record); 
+				int compare= compare(visitor, prefixVisitor, chunk, node, i, record); 
 				if (compare > 0) {
 					// 	start point is to the left
 					return accept(getChild(chunk, node, i), visitor);
@@ -600,6 +872,16 @@ public class BTree {
 		}
 	}
 
+	private int compare(IBTreeVisitor visitor, IBTreeKeyPrefixVisitor prefixVisitor, Chunk chunk, long node,
+			int index, long record) throws CoreException {
+		if (prefixVisitor != null) {
+			int result= prefixVisitor.comparePrefix(getPrefix(chunk, node, index));
+			if (result != IBTreeKeyPrefixVisitor.UNDECIDED)
+				return result;
+		}
+		return visitor.compare(record);
+	}
+
 	/*
 	 * TODO: It would be good to move these into IBTreeVisitor and eliminate
 	 * IBTreeVisitor2 if this is acceptable.
@@ -645,9 +927,17 @@ public class BTree {
 			int indexFirstBlankKey = MAX_RECORDS;
 			int indexLastNonBlankKey = 0; 
 			for(int i=0; i<MAX_RECORDS; i++) {
-				if(getRecord(db.getChunk(node), node, i)!=0) {
+				long record = getRecord(db.getChunk(node), node, i);
+				if(record!=0) {
 					keyCount++;
 					indexLastNonBlankKey = i;
+
+					// Check: The key prefix matches the record
+					if(prefixCmp!=null && getPrefix(db.getChunk(node), node, i) != prefixCmp.getKeyPrefix(record)) {
+						valid = false;
+						msg += MessageFormat.format(Messages.getString("BTree.IntegrityErrorE"), //$NON-NLS-1$
+								new Object[]{new Long(node), new Long(record)});
+					}
 				} else if(indexFirstBlankKey== MAX_RECORDS){
 					indexFirstBlankKey = i;
 				}
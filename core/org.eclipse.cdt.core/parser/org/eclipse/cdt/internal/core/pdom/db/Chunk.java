@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2009 QNX Software Systems and others.
+ * Copyright (c) 2005, 2011 QNX Software Systems and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -18,10 +18,17 @@ import java.nio.ByteBuffer;
 import org.eclipse.core.runtime.CoreException;
 
 /**
- * Caches the content of a piece of the database.
+ * Caches the content of a piece of the database. 
+ * <p>
+ * The content is either a copy of the piece held on the heap, or a view of a memory mapped
+ * region of the database file (see {@link Database#isMapped()}). Mapped chunks are read-only
+ * and are never added to the {@link ChunkCache}, the operating system caches them for us.
  */
 final class Chunk {
-	final private byte[] fBuffer= new byte[Database.CHUNK_SIZE];
+	final private ByteBuffer fBuffer;
+	final private int fBase;	// offset of the chunk within fBuffer, non-zero for mapped chunks only.
+	final private int fOffsetMask;
+	final private boolean fMapped;
 
 	final Database fDatabase;
 	final int fSequenceNumber;
@@ -29,62 +36,111 @@ final class Chunk {
 	boolean fCacheHitFlag= false;
 	boolean fDirty= false;
 	boolean fLocked= false;	// locked chunks must not be released from cache.
-	int fCacheIndex= -1;
+	volatile int fCacheIndex= -1;
 		
 	Chunk(Database db, int sequenceNumber) {
 		fDatabase= db;
 		fSequenceNumber= sequenceNumber;
+		fBuffer= ByteBuffer.wrap(new byte[db.getChunkSize()]);
+		fBase= 0;
+		fOffsetMask= db.getChunkSize() - 1;
+		fMapped= false;
+	}
+
+	/**
+	 * Creates a chunk that provides direct access to a region of a memory mapped database file.
+	 * @param region the mapped region of the file containing the chunk
+	 * @param base the offset of the chunk within the region.
+	 */
+	Chunk(Database db, int sequenceNumber, ByteBuffer region, int base) {
+		fDatabase= db;
+		fSequenceNumber= sequenceNumber;
+		fBuffer= region;
+		fBase= base;
+		fOffsetMask= db.getChunkSize() - 1;
+		fMapped= true;
+	}
+
+	boolean isMapped() {
+		return fMapped;
 	}
 
 	void read() throws CoreException {
+		assert !fMapped;
 		try {
-			final ByteBuffer buf= ByteBuffer.wrap(fBuffer);
-			fDatabase.read(buf, (long)fSequenceNumber*Database.CHUNK_SIZE);
+			final ByteBuffer buf= fBuffer.duplicate();
+			buf.clear();
+			fDatabase.readChunk(buf, fSequenceNumber);
 		} catch (IOException e) {
 			throw new CoreException(new DBStatus(e));
 		}
 	}
 
 	void flush() throws CoreException {
+		assert !fMapped;
 		try {
-			final ByteBuffer buf= ByteBuffer.wrap(fBuffer);
-			fDatabase.write(buf, (long)fSequenceNumber*Database.CHUNK_SIZE);
+			final ByteBuffer buf= fBuffer.duplicate();
+			buf.clear();
+			fDatabase.write(buf, (long)fSequenceNumber*getSize());
 		} catch (IOException e) {
 			throw new CoreException(new DBStatus(e));
 		}
 		fDirty= false;
 	}
-	private static int recPtrToIndex( final long offset ) {
-		return (int)(offset & Database.OFFSET_IN_CHUNK_MASK );
+
+	/**
+	 * Appends the content of the chunk to the transaction log rather than writing it to the file.
+	 */
+	void log(TransactionLog log) throws CoreException {
+		assert !fMapped;
+		try {
+			final ByteBuffer buf= fBuffer.duplicate();
+			buf.clear();
+			log.append(fSequenceNumber, buf);
+		} catch (IOException e) {
+			throw new CoreException(new DBStatus(e));
+		}
+		fDirty= false;
+	}
+
+	int getSize() {
+		return fOffsetMask + 1;
+	}
+
+	private int bufferIndex(final long offset) {
+		return fBase + (int)(offset & fOffsetMask);
 	}
 
 	public void putByte(final long offset, final byte value) {
 		assert fLocked;
 		fDirty= true;
-		fBuffer[recPtrToIndex( offset )]= value;
+		fBuffer.put(bufferIndex(offset), value);
 	}
 	
 	public byte getByte(final long offset) {
-		return fBuffer[recPtrToIndex( offset )];
+		return fBuffer.get(bufferIndex(offset));
 	}
 	
 	public byte[] getBytes(final long offset, final int length) {
 		final byte[] bytes = new byte[length];
-		System.arraycopy(fBuffer, recPtrToIndex( offset ), bytes, 0, length);
+		final ByteBuffer buf= fBuffer.duplicate();
+		buf.position(bufferIndex(offset));
+		buf.get(bytes, 0, length);
 		return bytes;
 	}
 	
 	public void putBytes(final long offset, final byte[] bytes) {
 		assert fLocked;
 		fDirty= true;
-		System.arraycopy(bytes, 0, fBuffer, recPtrToIndex( offset ), bytes.length);
+		final ByteBuffer buf= fBuffer.duplicate();
+		buf.position(bufferIndex(offset));
+		buf.put(bytes, 0, bytes.length);
 	}
 	
 	public void putInt(final long offset, final int value) {
 		assert fLocked;
 		fDirty= true;
-		int idx= recPtrToIndex( offset );
-		putInt(value, fBuffer, idx);
+		fBuffer.putInt(bufferIndex(offset), value);
 	}
 
 	static final void putInt(final int value, final byte[] buffer, int idx) {
@@ -96,7 +152,7 @@ final class Chunk {
 
 	
 	public int getInt(final long offset) {
-		return getInt(fBuffer, recPtrToIndex(offset));
+		return fBuffer.getInt(bufferIndex(offset));
 	}
 
 	static final int getInt(final byte[] buffer, int idx) {
@@ -140,8 +196,7 @@ final class Chunk {
 	 * This is a pointer to a block + BLOCK_HEADER_SIZE.
 	 */
 	static void putRecPtr(final long value, byte[] buffer, int idx) {
-		final int denseValue = value == 0 ? 0 : compressFreeRecPtr(value - Database.BLOCK_HEADER_SIZE);
-		putInt(denseValue, buffer, idx);
+		putInt(compressRecPtr(value), buffer, idx);
 	}
 
 	/**
@@ -149,7 +204,14 @@ final class Chunk {
 	 * This is a pointer to a block + BLOCK_HEADER_SIZE.
 	 */
 	static long getRecPtr(byte[] buffer, final int idx) {
-		int value = getInt(buffer, idx);
+		return expandToRecPtr(getInt(buffer, idx));
+	}
+
+	private static int compressRecPtr(final long value) {
+		return value == 0 ? 0 : compressFreeRecPtr(value - Database.BLOCK_HEADER_SIZE);
+	}
+
+	private static long expandToRecPtr(final int value) {
 		long address = expandToFreeRecPtr(value);
 		return address != 0 ? (address + Database.BLOCK_HEADER_SIZE) : address;
 	}
@@ -161,8 +223,7 @@ final class Chunk {
 	public void putRecPtr(final long offset, final long value) {
 		assert fLocked;
 		fDirty = true;
-		int idx = recPtrToIndex(offset);
-		putRecPtr(value, fBuffer, idx);
+		fBuffer.putInt(bufferIndex(offset), compressRecPtr(value));
 	}
 
 	
@@ -173,122 +234,90 @@ final class Chunk {
 	public void putFreeRecPtr(final long offset, final long value) {
 		assert fLocked;
 		fDirty = true;
-		int idx = recPtrToIndex(offset);
-		putInt(compressFreeRecPtr(value), fBuffer, idx);
+		fBuffer.putInt(bufferIndex(offset), compressFreeRecPtr(value));
 	}
 
 	public long getRecPtr(final long offset) {
-		final int idx = recPtrToIndex(offset);
-		return getRecPtr(fBuffer, idx);
+		return expandToRecPtr(fBuffer.getInt(bufferIndex(offset)));
 	}
 	
 	public long getFreeRecPtr(final long offset) {
-		final int idx = recPtrToIndex(offset);
-		int value = getInt(fBuffer, idx);
-		return expandToFreeRecPtr(value);
+		return expandToFreeRecPtr(fBuffer.getInt(bufferIndex(offset)));
 	}
 	
 	public void put3ByteUnsignedInt(final long offset, final int value) {
 		assert fLocked;
 		fDirty= true;
-		int idx= recPtrToIndex( offset );
-		fBuffer[idx]= (byte)(value >> 16);
-		fBuffer[++idx]= (byte)(value >> 8);
-		fBuffer[++idx]= (byte)(value);
+		int idx= bufferIndex(offset);
+		fBuffer.put(idx, (byte)(value >> 16));
+		fBuffer.put(++idx, (byte)(value >> 8));
+		fBuffer.put(++idx, (byte)(value));
 	}
 	
 	public int get3ByteUnsignedInt(final long offset) {
-		int idx= recPtrToIndex( offset );
-		return ((fBuffer[idx] & 0xff) << 16) |
-			((fBuffer[++idx] & 0xff) <<  8) |
-			((fBuffer[++idx] & 0xff) <<  0);
+		int idx= bufferIndex(offset);
+		return ((fBuffer.get(idx) & 0xff) << 16) |
+			((fBuffer.get(++idx) & 0xff) <<  8) |
+			((fBuffer.get(++idx) & 0xff) <<  0);
 	}
 
 	public void putShort(final long offset, final short value) {
 		assert fLocked;
 		fDirty= true;
-		int idx= recPtrToIndex( offset );
-		fBuffer[idx]= (byte)(value >> 8);
-		fBuffer[++idx]= (byte)(value);
+		fBuffer.putShort(bufferIndex(offset), value);
 	}
 	
 	public short getShort(final long offset) {
-		int idx= recPtrToIndex( offset );
-		return (short) (((fBuffer[idx] << 8) | (fBuffer[++idx] & 0xff)));
+		return fBuffer.getShort(bufferIndex(offset));
 	}
 
 	public long getLong(final long offset) {
-		int idx= recPtrToIndex( offset );
-		return ((((long)fBuffer[idx] & 0xff) << 56) |
-				(((long)fBuffer[++idx] & 0xff) << 48) |
-				(((long)fBuffer[++idx] & 0xff) << 40) |
-				(((long)fBuffer[++idx] & 0xff) << 32) |
-				(((long)fBuffer[++idx] & 0xff) << 24) |
-				(((long)fBuffer[++idx] & 0xff) << 16) |
-				(((long)fBuffer[++idx] & 0xff) <<  8) |
-				(((long)fBuffer[++idx] & 0xff) <<  0));
+		return fBuffer.getLong(bufferIndex(offset));
 	}
 
 	public void putLong(final long offset, final long value) {
 		assert fLocked;
 		fDirty= true;
-		int idx= recPtrToIndex( offset );
-
-		fBuffer[idx]=   (byte)(value >> 56);
-		fBuffer[++idx]= (byte)(value >> 48);
-		fBuffer[++idx]= (byte)(value >> 40);
-		fBuffer[++idx]= (byte)(value >> 32);
-		fBuffer[++idx]= (byte)(value >> 24);
-		fBuffer[++idx]= (byte)(value >> 16);
-		fBuffer[++idx]= (byte)(value >> 8);
-		fBuffer[++idx]= (byte)(value);
+		fBuffer.putLong(bufferIndex(offset), value);
 	}
 	
 	public void putChar(final long offset, final char value) {
 		assert fLocked;
 		fDirty= true;
-		int idx= recPtrToIndex( offset );
-		fBuffer[idx]= (byte)(value >> 8);
-		fBuffer[++idx]= (byte)(value);
+		fBuffer.putChar(bufferIndex(offset), value);
 	}
 	
 	public char getChar(final long offset) {
-		int idx= recPtrToIndex( offset );
-		return (char) (((fBuffer[idx] << 8) | (fBuffer[++idx] & 0xff)));
+		return fBuffer.getChar(bufferIndex(offset));
 	}
 
 	public void getCharArray(final long offset, final char[] result) {
-		final ByteBuffer buf= ByteBuffer.wrap(fBuffer);
-		buf.position(recPtrToIndex( offset ));
+		final ByteBuffer buf= fBuffer.duplicate();
+		buf.position(bufferIndex(offset));
 		buf.asCharBuffer().get(result);
 	}
 	
 	void clear(final long offset, final int length) {
 		assert fLocked;
 		fDirty= true;
-		int idx = recPtrToIndex(offset);
+		int idx = bufferIndex(offset);
 		final int end = idx + length;
 		for (; idx < end; idx++) {
-			fBuffer[idx] = 0;
+			fBuffer.put(idx, (byte) 0);
 		}
 	}
 
 	void put(final long offset, final byte[] data, final int len) {
 		assert fLocked;
 		fDirty= true;
-		int idx = recPtrToIndex(offset);
-		int i=0;
-		while (i<len) {
-			fBuffer[idx++]= data[i++];
-		}
+		final ByteBuffer buf= fBuffer.duplicate();
+		buf.position(bufferIndex(offset));
+		buf.put(data, 0, len);
 	}
 	
 	public void get(final long offset, byte[] data) {
-		int idx = recPtrToIndex(offset);
-		final int end= idx + data.length;
-		int i= 0;
-		while (idx < end) {
-			data[i++]= fBuffer[idx++];
-		}
+		final ByteBuffer buf= fBuffer.duplicate();
+		buf.position(bufferIndex(offset));
+		buf.get(data);
 	}
 }
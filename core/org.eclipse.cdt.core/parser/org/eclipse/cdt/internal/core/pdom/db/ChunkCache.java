@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007 Wind River Systems, Inc. and others.
+ * Copyright (c) 2007, 2011 Wind River Systems, Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -7,17 +7,33 @@
  *
  * Contributors:
  *    Markus Schorn - initial API and implementation
- *******************************************************************************/ 
+ *******************************************************************************/
 
 package org.eclipse.cdt.internal.core.pdom.db;
 
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cache for the chunks of one or more databases.
+ * <p>
+ * The cache is divided into segments, each of them has its own page table with a CLOCK
+ * replacement policy and its own lock. A chunk is assigned to a segment by its database and
+ * sequence number, such that threads working on different chunks rarely compete for the same
+ * lock. Hits on a chunk that is already in the cache are recorded via
+ * {@link Chunk#fCacheHitFlag} without any locking.
+ * <p>
+ * The size of the cache is limited by the total size of the chunks, which may differ between
+ * databases. Chunks evicted from the cache are returned to the caller, which has to release them from
+ * their database via {@link Database#releaseChunk(Chunk)} without holding any lock of the cache.
+ */
 public final class ChunkCache {
+	private static final int MAX_SEGMENTS= 64;
 	private static ChunkCache sSharedInstance= new ChunkCache();
-	
-	private Chunk[] fPageTable;
-	private boolean fTableIsFull= false;
-	private int fPointer= 0;
-	
+
+	private final Segment[] fSegments;
+	private final int fSegmentMask;
+
 	public static ChunkCache getSharedInstance() {
 		return sSharedInstance;
 	}
@@ -25,119 +41,202 @@ public final class ChunkCache {
 	public ChunkCache() {
 		this(5*1024*1024);
 	}
-	
+
 	public ChunkCache(long maxSize) {
-		fPageTable= new Chunk[computeLength(maxSize)];
+		this(maxSize, Runtime.getRuntime().availableProcessors() * 2);
+	}
+
+	/**
+	 * Creates a cache with the given maximum size in bytes and (at most) the given number of
+	 * segments. The number of segments is rounded down to a power of two.
+	 */
+	public ChunkCache(long maxSize, int segments) {
+		final int pages= computeLength(maxSize);
+		int n= 1;
+		while (n * 2 <= segments && n * 2 <= MAX_SEGMENTS && n * 2 <= pages) {
+			n*= 2;
+		}
+		fSegments= new Segment[n];
+		fSegmentMask= n - 1;
+		for (int i = 0; i < fSegments.length; i++) {
+			fSegments[i]= new Segment(segmentSize(pages, i));
+		}
 	}
-	
-	public synchronized void add(Chunk chunk, boolean locked) {
+
+	/**
+	 * Returns the number of segments the cache is divided into.
+	 */
+	public int getSegmentCount() {
+		return fSegments.length;
+	}
+
+	/**
+	 * Adds a chunk to the cache or records a hit for a chunk that is already cached.
+	 * @param chunk the chunk to add
+	 * @param locked whether the chunk is to be locked, the caller must hold the lock of the
+	 * chunk's database.
+	 * @return the chunks that have been evicted to make room for the new one, or <code>null</code>.
+	 */
+	public List<Chunk> add(Chunk chunk, boolean locked) {
 		if (locked) {
 			chunk.fLocked= true;
 		}
 		if (chunk.fCacheIndex >= 0) {
+			// A racy write is fine, worst case we lose a hit.
 			chunk.fCacheHitFlag= true;
-			return;
-		}
-		if (fTableIsFull) {
-			evictChunk();
-			chunk.fCacheIndex= fPointer;
-			fPageTable[fPointer]= chunk;
+			return null;
 		}
-		else {
-			chunk.fCacheIndex= fPointer;
-			fPageTable[fPointer]= chunk;
+		return getSegment(chunk).add(chunk);
+	}
 
-			fPointer++;
-			if (fPointer == fPageTable.length) {
-				fPointer= 0;
-				fTableIsFull= true;
-			}
-		}
+	public void remove(Chunk chunk) {
+		getSegment(chunk).remove(chunk);
 	}
-	
-	/**                                                                   
-	 * Evicts a chunk from the page table and the chunk table.            
-	 * After this method returns, {@link #fPointer}  will contain
-	 * the index of the evicted chunk within the page table.              
-	 */                                                                   
-	private void evictChunk() {
-		/*
-		 * Use the CLOCK algorithm to determine which chunk to evict.
-		 * i.e., if the chunk in the current slot of the page table has been
-		 * recently referenced (i.e. the reference flag is set), unset the
-		 * reference flag and move to the next slot.  Otherwise, evict the
-		 * chunk in the current slot.
-		 */
-		while (true) {
-			Chunk chunk = fPageTable[fPointer];
-			if (chunk.fCacheHitFlag) {
-				chunk.fCacheHitFlag= false;
-				fPointer= (fPointer + 1) % fPageTable.length;
-			} else {
-				chunk.fDatabase.releaseChunk(chunk);
-				chunk.fCacheIndex= -1;
-				fPageTable[fPointer] = null;
-				return;
-			}
+
+	/**
+	 * Returns the maximum size of the chunk cache in bytes.
+	 */
+	public long getMaxSize() {
+		long size= 0;
+		for (Segment segment : fSegments) {
+			size+= segment.getMaxSize();
 		}
+		return size;
 	}
 
-	public synchronized void remove(Chunk chunk) {
-		final int idx= chunk.fCacheIndex;
-		if (idx >= 0) {
-			if (fTableIsFull) {
-				fPointer= fPageTable.length-1;
-				fTableIsFull= false;
-			}
-			else {
-				fPointer--;
-			}
-			chunk.fCacheIndex= -1;
-			final Chunk move= fPageTable[fPointer];
-			fPageTable[idx]= move;
-			move.fCacheIndex= idx;
-			fPageTable[fPointer]= null;
-		}	
+	/**
+	 * Changes the cache to hold chunks with maximum total memory of <code>maxSize</code>,
+	 * chunks are evicted as necessary.
+	 * @param maxSize the total size of the chunks in bytes.
+	 */
+	public void setMaxSize(long maxSize) {
+		final int pages= computeLength(maxSize);
+		List<Chunk> evicted= new ArrayList<Chunk>();
+		for (int i = 0; i < fSegments.length; i++) {
+			fSegments[i].setMaxSize(segmentSize(pages, i), evicted);
+		}
+		for (Chunk chunk : evicted) {
+			chunk.fDatabase.releaseChunk(chunk);
+		}
 	}
 
-	/**                                                                           
-	 * Returns the maximum size of the chunk cache in bytes.
-	 */                                                                           
-	public synchronized long getMaxSize() {
-		return (long) fPageTable.length * Database.CHUNK_SIZE;
+	private Segment getSegment(Chunk chunk) {
+		int h= System.identityHashCode(chunk.fDatabase) + chunk.fSequenceNumber * 0x9E3779B9;
+		h^= h >>> 16;
+		return fSegments[h & fSegmentMask];
 	}
 
-	/**                                                                           
-	 * Clears the page table and changes it to hold chunks with
-	 * maximum total memory of <code>maxSize</code>.       
-	 * @param maxSize the total size of the chunks in bytes.                
-	 */                                                                           
-	public synchronized void setMaxSize(long maxSize) {
-		final int newLength= computeLength(maxSize);
-		final int oldLength= fTableIsFull ? fPageTable.length : fPointer;
-		if (newLength > oldLength) {
-			Chunk[] newTable= new Chunk[newLength];
-			System.arraycopy(fPageTable, 0, newTable, 0, oldLength);
-			fTableIsFull= false;
-			fPointer= oldLength;
-			fPageTable= newTable;
-		}
-		else {
-			for (int i=newLength; i<oldLength; i++) {
-				final Chunk chunk= fPageTable[i];
-				chunk.fDatabase.releaseChunk(chunk);
-				chunk.fCacheIndex= -1;
-			}
-			Chunk[] newTable= new Chunk[newLength];
-			System.arraycopy(fPageTable, 0, newTable, 0, newLength);
-			fTableIsFull= true;
-			fPointer= 0;
-			fPageTable= newTable;
-		}       
-	}                                                                             
+	/**
+	 * Computes the size in bytes for a segment, such that the pages are distributed evenly.
+	 */
+	private long segmentSize(int pages, int segment) {
+		final int n= fSegments.length;
+		return (long) Math.max(1, pages / n + (segment < pages % n ? 1 : 0)) * Database.CHUNK_SIZE;
+	}
 
+	/**
+	 * Computes the number of chunks of minimal size that fit into the given size.
+	 */
 	private int computeLength(long maxSize) {
 		long maxLength= Math.min(maxSize/Database.CHUNK_SIZE, Integer.MAX_VALUE);
 		return Math.max(1, (int)maxLength);
 	}
+
+	/**
+	 * A page table with CLOCK replacement, all methods are synchronized on the segment. 
+	 * The chunks occupy the first {@link #fSize} slots of the page table. As chunks may differ
+	 * in size, the total size of the chunks rather than the number of them is limited.
+	 */
+	private static final class Segment {
+		private Chunk[] fPageTable= new Chunk[16];
+		private int fSize= 0;
+		private int fPointer= 0;
+		private long fMaxSize;
+		private long fUsedSize= 0;
+
+		Segment(long maxSize) {
+			fMaxSize= maxSize;
+		}
+
+		synchronized long getMaxSize() {
+			return fMaxSize;
+		}
+
+		synchronized List<Chunk> add(Chunk chunk) {
+			if (chunk.fCacheIndex >= 0) {
+				chunk.fCacheHitFlag= true;
+				return null;
+			}
+			final int size= chunk.getSize();
+			List<Chunk> evicted= null;
+			while (fSize > 0 && fUsedSize + size > fMaxSize) {
+				if (evicted == null) {
+					evicted= new ArrayList<Chunk>(1);
+				}
+				evicted.add(evictChunk());
+			}
+			if (fSize == fPageTable.length) {
+				Chunk[] newTable= new Chunk[fPageTable.length * 2];
+				System.arraycopy(fPageTable, 0, newTable, 0, fSize);
+				fPageTable= newTable;
+			}
+			chunk.fCacheIndex= fSize;
+			fPageTable[fSize++]= chunk;
+			fUsedSize+= size;
+			return evicted;
+		}
+
+		/**
+		 * Evicts a chunk from the page table and returns it.
+		 */
+		private Chunk evictChunk() {
+			/*
+			 * Use the CLOCK algorithm to determine which chunk to evict.
+			 * i.e., if the chunk in the current slot of the page table has been
+			 * recently referenced (i.e. the reference flag is set), unset the
+			 * reference flag and move to the next slot.  Otherwise, evict the
+			 * chunk in the current slot.
+			 */
+			while (true) {
+				Chunk chunk = fPageTable[fPointer];
+				if (chunk.fCacheHitFlag) {
+					chunk.fCacheHitFlag= false;
+					fPointer= (fPointer + 1) % fSize;
+				} else {
+					removeAt(fPointer);
+					return chunk;
+				}
+			}
+		}
+
+		synchronized void remove(Chunk chunk) {
+			final int idx= chunk.fCacheIndex;
+			if (idx >= 0) {
+				removeAt(idx);
+			}
+		}
+
+		/**
+		 * Removes the chunk at the given index, the last chunk of the table takes its slot.
+		 */
+		private void removeAt(int idx) {
+			final Chunk chunk= fPageTable[idx];
+			final Chunk move= fPageTable[--fSize];
+			fPageTable[idx]= move;
+			move.fCacheIndex= idx;
+			fPageTable[fSize]= null;
+			chunk.fCacheIndex= -1;
+			fUsedSize-= chunk.getSize();
+			if (fPointer >= fSize) {
+				fPointer= 0;
+			}
+		}
+
+		synchronized void setMaxSize(long maxSize, List<Chunk> evicted) {
+			fMaxSize= maxSize;
+			while (fSize > 0 && fUsedSize > fMaxSize) {
+				evicted.add(evictChunk());
+			}
+		}
+	}
 }
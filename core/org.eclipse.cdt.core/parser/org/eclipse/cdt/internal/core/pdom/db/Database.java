@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2010 QNX Software Systems and others.
+ * Copyright (c) 2005, 2011 QNX Software Systems and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -21,7 +21,10 @@ import java.nio.ByteBuffer;
 import java.nio.channels.ClosedByInterruptException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.eclipse.cdt.core.CCorePlugin;
 import org.eclipse.core.runtime.CoreException;
@@ -37,9 +40,12 @@ import org.eclipse.osgi.util.NLS;
  * @author Doug Schaefer
  */
 /* 
- * The file encapsulated is divided into Chunks of size CHUNK_SIZE, and a table of contents
- * mapping chunk index to chunk address is maintained. Chunk structure exists only conceptually -
- * it is not a structure that appears in the file.
+ * The file encapsulated is divided into Chunks, and a table of contents mapping chunk index to
+ * chunk address is maintained. Chunk structure exists only conceptually - it is not a structure
+ * that appears in the file. The size of the chunks is a power of two between CHUNK_SIZE and
+ * MAX_CHUNK_SIZE, it is chosen when the database is created (or cleared) and stored in the header.
+ * Blocks never span more than CHUNK_SIZE bytes, larger chunks simply hold multiple blocks of
+ * maximum size.
  * 
  * ===== The first chunk is used by Database itself for house-keeping purposes and has structure
  * 
@@ -50,8 +56,11 @@ import org.eclipse.osgi.util.NLS;
  * ..               | ...
  * INT_SIZE * m (1) | pointer to head of linked list of blocks of size (m+MIN_BLOCK_DELTAS) * BLOCK_SIZE_DELTA 
  * DATA_AREA        | undefined (PDOM stores its own house-keeping data in this area) 
+ * ..               | ...
+ * CHUNK_SIZE_OFFSET| size of the chunks, 0 for databases created before the size was configurable (2)
  * 
  * (1) where 2 <= m <= CHUNK_SIZE/BLOCK_SIZE_DELTA - MIN_BLOCK_DELTAS + 1
+ * (2) such databases use chunks of CHUNK_SIZE bytes
  * 
  * ===== block structure
  * 
@@ -61,11 +70,25 @@ import org.eclipse.osgi.util.NLS;
  * PREV_OFFSET      | pointer to prev block (of same size) (only in free blocks)
  * NEXT_OFFSET      | pointer to next block (of same size) (only in free blocks)
  * 
+ * ===== memory mapping
+ * 
+ * A database that is opened read-only can access its chunks through a memory mapping of the file
+ * rather than through copies held by the chunk cache. The file is mapped lazily in regions of
+ * MAPPED_REGION_SIZE bytes, chunks are views on these regions.
+ * 
+ * ===== transaction log
+ * 
+ * Writable databases do not write modified chunks to the file directly. The chunks are appended
+ * to a TransactionLog and copied to the file after the transaction has been committed. Committed
+ * transactions that did not make it to the file are replayed when the database is opened. Without
+ * the log the version number in the header is cleared while chunks are written, such a database
+ * is incomplete after a crash.
  */
 public class Database {
 	// public for tests only, you shouldn't need these
 	public static final int INT_SIZE = 4;
-	public static final int CHUNK_SIZE = 1024 * 4;
+	public static final int CHUNK_SIZE = 1024 * 4;	// minimum size of a chunk, maximum size of a block
+	public static final int MAX_CHUNK_SIZE = 1024 * 64;
 	public static final int OFFSET_IN_CHUNK_MASK= CHUNK_SIZE-1;
 	public static final int BLOCK_HEADER_SIZE= 2;
 	public static final int BLOCK_SIZE_DELTA_BITS = 3;
@@ -81,9 +104,32 @@ public class Database {
 
 	public static final int VERSION_OFFSET = 0;
 	public static final int DATA_AREA = (CHUNK_SIZE / BLOCK_SIZE_DELTA - MIN_BLOCK_DELTAS + 2) * INT_SIZE;
+	public static final int CHUNK_SIZE_OFFSET = CHUNK_SIZE - INT_SIZE;
 	
 	private static final int BLOCK_PREV_OFFSET = BLOCK_HEADER_SIZE;
 	private static final int BLOCK_NEXT_OFFSET = BLOCK_HEADER_SIZE + INT_SIZE;
+
+	private static final int MAPPED_REGION_SIZE_BITS = 30;
+	private static final long MAPPED_REGION_SIZE = 1L << MAPPED_REGION_SIZE_BITS;
+
+	/**
+	 * System property to have read-only databases accessed via memory mapped files.
+	 */
+	public static final String PROPERTY_MAP_READ_ONLY_FILES = "org.eclipse.cdt.core.parser.pdom.db.mmap"; //$NON-NLS-1$
+	private static final boolean sMapReadOnlyFiles= Boolean.getBoolean(PROPERTY_MAP_READ_ONLY_FILES);
+
+	/**
+	 * System property for the size of the chunks (in bytes) of new databases.
+	 */
+	public static final String PROPERTY_CHUNK_SIZE = "org.eclipse.cdt.core.parser.pdom.db.chunksize"; //$NON-NLS-1$
+	private static final int sDefaultChunkSize= toValidChunkSize(Integer.getInteger(PROPERTY_CHUNK_SIZE, CHUNK_SIZE));
+
+	/**
+	 * System property to have writable databases write modified chunks directly to the file rather
+	 * than via the transaction log, set it to <code>false</code> to disable the log.
+	 */
+	public static final String PROPERTY_TRANSACTION_LOG = "org.eclipse.cdt.core.parser.pdom.db.log"; //$NON-NLS-1$
+	private static final boolean sUseTransactionLog= !"false".equals(System.getProperty(PROPERTY_TRANSACTION_LOG)); //$NON-NLS-1$
 	
 	private final File fLocation;
 	private final boolean fReadOnly;
@@ -93,16 +139,26 @@ public class Database {
 	private boolean fIsMarkedIncomplete= false;
 
 	private int fVersion;
-	private final Chunk fHeaderChunk;
-	private Chunk[] fChunks;
+	private int fChunkSize;
+	private int fChunkSizeBits;
+	private final int fNewChunkSize;	// used when the database is created or cleared.
+	private Chunk fHeaderChunk;
+	private volatile AtomicReferenceArray<Chunk> fChunks;	// read without locking on cache hits.
 	private int fChunksUsed;
 	private int fChunksAllocated;
 	private ChunkCache fCache;
+	private final Object fChunksMutex= new Object();	// protects changes of fChunks and the locked state of the chunks.
+	private ByteBuffer[] fMappedRegions;	// null, unless the file is accessed via memory mapping.
+	private long fMappedSize;
+	private TransactionLog fLog;			// null for read-only databases or when the log is disabled.
+	private boolean fSkipCheckpoint;		// for testing purposes, only.
+	private int fRecoveredChunks;
 	
 	private long malloced;
 	private long freed;
 	private long cacheHits;
 	private long cacheMisses;
+	private long cacheEvictions;
 	
 	/**
 	 * Construct a new Database object, creating a backing file if necessary.
@@ -113,25 +169,83 @@ public class Database {
 	 * @throws CoreException
 	 */
 	public Database(File location, ChunkCache cache, int version, boolean openReadOnly) throws CoreException {
+		this(location, cache, version, openReadOnly, openReadOnly && sMapReadOnlyFiles, sDefaultChunkSize);
+	}
+
+	/**
+	 * Construct a new Database object, creating a backing file if necessary.
+	 * @param location the local file path for the database 
+	 * @param cache the cache to be used optimization
+	 * @param version the version number to store in the database (only applicable for new databases)
+	 * @param openReadOnly whether this Database object will ever need writing to
+	 * @param mapFile whether to access the chunks via a memory mapping of the file rather than
+	 * through the cache. Only read-only databases can be mapped, the flag is ignored otherwise.
+	 * @throws CoreException
+	 */
+	public Database(File location, ChunkCache cache, int version, boolean openReadOnly, boolean mapFile) throws CoreException {
+		this(location, cache, version, openReadOnly, mapFile, sDefaultChunkSize);
+	}
+
+	/**
+	 * Construct a new Database object, creating a backing file if necessary.
+	 * @param location the local file path for the database 
+	 * @param cache the cache to be used optimization
+	 * @param version the version number to store in the database (only applicable for new databases)
+	 * @param openReadOnly whether this Database object will ever need writing to
+	 * @param mapFile whether to access the chunks via a memory mapping of the file rather than
+	 * through the cache. Only read-only databases can be mapped, the flag is ignored otherwise.
+	 * @param chunkSize the size of the chunks, a power of two between {@link #CHUNK_SIZE} and 
+	 * {@link #MAX_CHUNK_SIZE}. Only applicable for new databases or when the database is cleared,
+	 * existing databases use the chunk size stored in their header.
+	 * @throws CoreException
+	 */
+	public Database(File location, ChunkCache cache, int version, boolean openReadOnly, boolean mapFile, 
+			int chunkSize) throws CoreException {
 		try {
 			fLocation = location;
 			fReadOnly= openReadOnly;
 			fCache= cache;
+			fNewChunkSize= toValidChunkSize(chunkSize);
+			final boolean existed= location.exists();
 			openFile();
+			final boolean useLog= !openReadOnly && sUseTransactionLog;
+			if (useLog) {
+				final File logFile= TransactionLog.getLogFile(fLocation);
+				if (existed) {
+					fRecoveredChunks= TransactionLog.recover(logFile, fFile.getChannel());
+				} else {
+					// a log without its database has been left behind, it must not be replayed.
+					logFile.delete();
+				}
+			}
 			
-			int nChunksOnDisk = (int) (fFile.length() / CHUNK_SIZE);
-			fHeaderChunk= new Chunk(this, 0);
-			fHeaderChunk.fLocked= true;		// never makes it into the cache, needed to satisfy assertions
-			if (nChunksOnDisk <= 0) {
+			final long fileSize= fFile.length();
+			if (fileSize < CHUNK_SIZE) {
+				setChunkSize(fNewChunkSize);
+				fHeaderChunk= createHeaderChunk();
+				fHeaderChunk.putInt(CHUNK_SIZE_OFFSET, fChunkSize);
 				fVersion= version;
-				fChunks= new Chunk[1];
-				fChunksUsed = fChunksAllocated = fChunks.length;
+				fChunks= new AtomicReferenceArray<Chunk>(1);
+				fChunksUsed = fChunksAllocated = fChunks.length();
 			}
 			else {
+				setChunkSize(readChunkSize());
+				fHeaderChunk= createHeaderChunk();
 				fHeaderChunk.read();
 				fVersion= fHeaderChunk.getInt(VERSION_OFFSET);
-				fChunks = new Chunk[nChunksOnDisk];	// chunk[0] is unused.
+				int nChunksOnDisk = (int) (fileSize >>> fChunkSizeBits);
+				if (nChunksOnDisk < 1) {
+					nChunksOnDisk= 1;
+				}
+				fChunks = new AtomicReferenceArray<Chunk>(nChunksOnDisk);	// chunk[0] is unused.
 				fChunksUsed = fChunksAllocated = nChunksOnDisk;
+				if (mapFile && openReadOnly && nChunksOnDisk > 1) {
+					fMappedSize= (long) nChunksOnDisk << fChunkSizeBits;
+					fMappedRegions= new ByteBuffer[(int) ((fMappedSize + MAPPED_REGION_SIZE - 1) >>> MAPPED_REGION_SIZE_BITS)];
+				}
+			}
+			if (useLog) {
+				fLog= new TransactionLog(TransactionLog.getLogFile(fLocation), fChunkSize);
 			}
 		} catch (IOException e) {
 			throw new CoreException(new DBStatus(e));
@@ -142,6 +256,48 @@ public class Database {
 		fFile = new RandomAccessFile(fLocation, fReadOnly ? "r" : "rw"); //$NON-NLS-1$ //$NON-NLS-2$
 	}
 
+	private static int toValidChunkSize(int chunkSize) {
+		int result= CHUNK_SIZE;
+		while (result < chunkSize && result < MAX_CHUNK_SIZE) {
+			result <<= 1;
+		}
+		return result;
+	}
+
+	/**
+	 * Reads the chunk size from the header of an existing database file.
+	 */
+	private int readChunkSize() throws IOException {
+		final ByteBuffer buf= ByteBuffer.allocate(INT_SIZE);
+		read(buf, CHUNK_SIZE_OFFSET);
+		final int chunkSize= buf.getInt(0);
+		if (chunkSize == 0) {
+			return CHUNK_SIZE;	// database created before the chunk size was configurable.
+		}
+		if (chunkSize != toValidChunkSize(chunkSize)) {
+			throw new IOException("Invalid chunk size " + chunkSize + " in " + fLocation); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		return chunkSize;
+	}
+
+	private void setChunkSize(int chunkSize) {
+		fChunkSize= chunkSize;
+		fChunkSizeBits= Integer.numberOfTrailingZeros(chunkSize);
+	}
+
+	private Chunk createHeaderChunk() {
+		Chunk header= new Chunk(this, 0);
+		header.fLocked= true;	// never makes it into the cache, needed to satisfy assertions
+		return header;
+	}
+
+	/**
+	 * Returns the size of the chunks of this database in bytes.
+	 */
+	public int getChunkSize() {
+		return fChunkSize;
+	}
+
 	void read(ByteBuffer buf, long position) throws IOException {
 		int retries= 0;
 		do {
@@ -156,6 +312,15 @@ public class Database {
 		} while (true);
 	}
 
+	/**
+	 * Reads the content of a chunk, either from the transaction log or from the file.
+	 */
+	void readChunk(ByteBuffer buf, int sequenceNumber) throws IOException {
+		if (fLog == null || !fLog.read(sequenceNumber, buf)) {
+			read(buf, (long) sequenceNumber << fChunkSizeBits);
+		}
+	}
+
 	void write(ByteBuffer buf, long position) throws IOException {
 		int retries= 0;
 		do {
@@ -170,6 +335,10 @@ public class Database {
 		} while(true);
 	}
 
+	void force() throws IOException {
+		fFile.getChannel().force(false);
+	}
+
 	private void reopen(ClosedChannelException e, int attempt) throws ClosedChannelException, FileNotFoundException {
 		// only if the current thread was not interrupted we try to reopen the file.
 		if (e instanceof ClosedByInterruptException || attempt >= 20) {
@@ -206,7 +375,9 @@ public class Database {
 	}
 
 	/**
-	 * Empty the contents of the Database, make it ready to start again
+	 * Empty the contents of the Database, make it ready to start again. The database 
+	 * adopts the chunk size it was configured with, this is how databases created with a 
+	 * different chunk size are migrated.
 	 * @throws CoreException
 	 */
 	public void clear(int version) throws CoreException {
@@ -215,13 +386,25 @@ public class Database {
 		
 		fVersion= version;
 		// clear the first chunk.
-		fHeaderChunk.clear(0, CHUNK_SIZE);
+		if (fChunkSize != fNewChunkSize) {
+			setChunkSize(fNewChunkSize);
+			fHeaderChunk= createHeaderChunk();
+		} else {
+			fHeaderChunk.clear(0, fChunkSize);
+		}
+		fHeaderChunk.putInt(CHUNK_SIZE_OFFSET, fChunkSize);
 		// chunks have been removed from the cache, so we may just reset the array of chunks.
-		fChunks = new Chunk[] {null};
-		fChunksUsed = fChunksAllocated = fChunks.length;
+		fChunks = new AtomicReferenceArray<Chunk>(1);
+		fChunksUsed = fChunksAllocated = fChunks.length();
 		try {
+			if (fLog != null) {
+				// the changes of the transaction are discarded, the chunk size may have changed.
+				fLog.reset();
+				fLog.close();
+				fLog= new TransactionLog(TransactionLog.getLogFile(fLocation), fChunkSize);
+			}
 			fHeaderChunk.flush();	// zero out header chunk
-			fFile.getChannel().truncate(CHUNK_SIZE);	// truncate database
+			fFile.getChannel().truncate(fChunkSize);	// truncate database
 		}
 		catch (IOException e) {
 			CCorePlugin.log(e);
@@ -245,12 +428,12 @@ public class Database {
 	}
 
 	private void removeChunksFromCache() {
-		synchronized (fCache) {
-			for (int i=1; i < fChunks.length; i++) {
-				Chunk chunk= fChunks[i];
+		synchronized (fChunksMutex) {
+			for (int i=1; i < fChunks.length(); i++) {
+				Chunk chunk= fChunks.get(i);
 				if (chunk != null) {
 					fCache.remove(chunk);
-					fChunks[i]= null;
+					fChunks.set(i, null);
 				}
 			}
 		}
@@ -262,27 +445,88 @@ public class Database {
 	 * @throws CoreException 
 	 */
 	public Chunk getChunk(long offset) throws CoreException {
-		if (offset < CHUNK_SIZE) {
+		if (offset < fChunkSize) {
 			return fHeaderChunk;
 		}
-		long long_index = offset / CHUNK_SIZE;
+		long long_index = offset >>> fChunkSizeBits;
 		assert long_index < Integer.MAX_VALUE; 
+		final int index = (int)long_index;
 
-		synchronized(fCache) {
+		Chunk chunk;
+		if (!fExclusiveLock) {
+			// Readers do not compete with a writer, a chunk that is cached or mapped can be
+			// returned without locking. The hit counter is updated racily, it may miss a few hits.
+			chunk= fChunks.get(index);
+			if (chunk != null && (chunk.isMapped() || chunk.fCacheIndex >= 0)) {
+				cacheHits++;
+				chunk.fCacheHitFlag= true;
+				return chunk;
+			}
+		}
+
+		List<Chunk> evicted;
+		synchronized (fChunksMutex) {
 			assert fLocked;
-			final int index = (int)long_index;
-			Chunk chunk= fChunks[index];
+			chunk= fChunks.get(index);
 			if (chunk == null) {
 				cacheMisses++;
-				chunk = fChunks[index] = new Chunk(this, index);
+				if (fMappedRegions != null) {
+					chunk= createMappedChunk(index);
+					if (chunk != null) {
+						fChunks.set(index, chunk);
+						return chunk;
+					}
+				}
+				chunk = new Chunk(this, index);
 				chunk.read();
+				fChunks.set(index, chunk);
 			}
 			else {
 				cacheHits++;
+				if (chunk.isMapped()) {
+					return chunk;
+				}
 			}
-			fCache.add(chunk, fExclusiveLock);
-			return chunk;
+			evicted= fCache.add(chunk, fExclusiveLock);
 		}
+		if (evicted != null) {
+			releaseChunks(evicted);
+		}
+		return chunk;
+	}
+
+	/**
+	 * Creates a chunk that is a view on the mapped file, or returns <code>null</code> if the 
+	 * chunk cannot be mapped. Called while holding the lock on {@link #fChunksMutex}.
+	 */
+	private Chunk createMappedChunk(int index) {
+		final long address= (long) index << fChunkSizeBits;
+		final int region= (int) (address >>> MAPPED_REGION_SIZE_BITS);
+		if (region >= fMappedRegions.length) {
+			return null;
+		}
+		ByteBuffer buffer= fMappedRegions[region];
+		if (buffer == null) {
+			final long position= (long) region << MAPPED_REGION_SIZE_BITS;
+			try {
+				buffer= fFile.getChannel().map(MapMode.READ_ONLY, position, 
+						Math.min(MAPPED_REGION_SIZE, fMappedSize - position));
+				fMappedRegions[region]= buffer;
+			} catch (IOException e) {
+				// e.g. the address space is exhausted, fall back to reading the chunks.
+				CCorePlugin.log(e);
+				fMappedRegions= null;
+				return null;
+			}
+		}
+		return new Chunk(this, index, buffer, (int) (address & (MAPPED_REGION_SIZE - 1)));
+	}
+
+	/**
+	 * Returns whether the chunks of this database are accessed via a memory mapping of the file.
+	 */
+	public boolean isMapped() {
+		return fMappedRegions != null;
 	}
 
 	/**
@@ -313,6 +557,11 @@ public class Database {
 			freeblock= createNewChunk();
 			useDeltas = MAX_BLOCK_DELTAS;
 			chunk = getChunk(freeblock);
+			// a chunk larger than a block provides additional free blocks of maximum size
+			final int maxBlockSize= MAX_BLOCK_DELTAS*BLOCK_SIZE_DELTA;
+			for (int offset= fChunkSize - maxBlockSize; offset > 0; offset-= maxBlockSize) {
+				addBlock(chunk, maxBlockSize, freeblock + offset);
+			}
 		} else {
 			chunk = getChunk(freeblock);
 			removeBlock(chunk, useDeltas*BLOCK_SIZE_DELTA, freeblock);
@@ -338,7 +587,9 @@ public class Database {
 	
 	private long createNewChunk() throws CoreException {
 		assert fExclusiveLock;
-		synchronized (fCache) {
+		final long address;
+		final List<Chunk> evicted;
+		synchronized (fChunksMutex) {
 			final int newChunkIndex = fChunksUsed; // fChunks.length;
 
 			final Chunk chunk = new Chunk(this, newChunkIndex);
@@ -346,32 +597,32 @@ public class Database {
 
 			if (newChunkIndex >= fChunksAllocated) {
 				int increment = Math.max(1024, fChunksAllocated/20);
-				Chunk[] newchunks = new Chunk[fChunksAllocated + increment];
-				System.arraycopy(fChunks, 0, newchunks, 0, fChunksAllocated);
-
-				fChunks = newchunks;
+				fChunks = copyOf(fChunks, fChunksAllocated + increment);
 				fChunksAllocated += increment;
 			}
 			fChunksUsed += 1;
-			fChunks[newChunkIndex] = chunk;
-
-			fCache.add(chunk, true);
-			long address = (long) newChunkIndex * CHUNK_SIZE;
-
-			/*
-			 * non-dense pointers are at most 31 bits dense pointers are at most 35 bits Check the sizes here
-			 * and throw an exception if the address is too large. By throwing the CoreException with the
-			 * special status, the indexing operation should be stopped. This is desired since generally, once
-			 * the max size is exceeded, there are lots of errors.
-			 */
-			if (address >= MAX_DB_SIZE) {
-				Object bindings[] = { this.getLocation().getAbsolutePath(), MAX_DB_SIZE };
-				throw new CoreException(new Status(IStatus.ERROR, CCorePlugin.PLUGIN_ID,
-						CCorePlugin.STATUS_PDOM_TOO_LARGE, NLS.bind(CCorePlugin
-								.getResourceString("pdom.DatabaseTooLarge"), bindings), null)); //$NON-NLS-1$
-			}
-			return address;
+			fChunks.set(newChunkIndex, chunk);
+
+			evicted= fCache.add(chunk, true);
+			address = (long) newChunkIndex << fChunkSizeBits;
+		}
+		if (evicted != null) {
+			releaseChunks(evicted);
 		}
+
+		/*
+		 * non-dense pointers are at most 31 bits dense pointers are at most 35 bits Check the sizes here
+		 * and throw an exception if the address is too large. By throwing the CoreException with the
+		 * special status, the indexing operation should be stopped. This is desired since generally, once
+		 * the max size is exceeded, there are lots of errors.
+		 */
+		if (address >= MAX_DB_SIZE) {
+			Object bindings[] = { this.getLocation().getAbsolutePath(), MAX_DB_SIZE };
+			throw new CoreException(new Status(IStatus.ERROR, CCorePlugin.PLUGIN_ID,
+					CCorePlugin.STATUS_PDOM_TOO_LARGE, NLS.bind(CCorePlugin
+							.getResourceString("pdom.DatabaseTooLarge"), bindings), null)); //$NON-NLS-1$
+		}
+		return address;
 	}
 
 	/**
@@ -379,22 +630,33 @@ public class Database {
 	 */
 	private long createNewChunks(int numChunks) throws CoreException {
 		assert fExclusiveLock;
-		synchronized (fCache) {
-			final int oldLen= fChunks.length;
-			Chunk[] newchunks = new Chunk[oldLen+numChunks];
-			System.arraycopy(fChunks, 0, newchunks, 0, oldLen);
-			for( int i = oldLen; i < oldLen + numChunks; i++ ) {
-				newchunks[i]= null;
-			}
+		final List<Chunk> evicted;
+		final long address;
+		synchronized (fChunksMutex) {
+			final int oldLen= fChunks.length();
+			AtomicReferenceArray<Chunk> newchunks = copyOf(fChunks, oldLen+numChunks);
 			final Chunk chunk= new Chunk(this, oldLen + numChunks - 1);
 			chunk.fDirty= true;
-			newchunks[ oldLen + numChunks - 1 ] = chunk;
+			newchunks.set(oldLen + numChunks - 1, chunk);
 			fChunks= newchunks;
-			fCache.add(chunk, true);
+			evicted= fCache.add(chunk, true);
 			fChunksAllocated=oldLen+numChunks;
 			fChunksUsed=oldLen+numChunks;
-			return (long)(oldLen + numChunks - 1) * CHUNK_SIZE;
+			address= (long)(oldLen + numChunks - 1) << fChunkSizeBits;
+		}
+		if (evicted != null) {
+			releaseChunks(evicted);
+		}
+		return address;
+	}
+
+	private static AtomicReferenceArray<Chunk> copyOf(AtomicReferenceArray<Chunk> chunks, int newLength) {
+		AtomicReferenceArray<Chunk> result= new AtomicReferenceArray<Chunk>(newLength);
+		final int n= Math.min(chunks.length(), newLength);
+		for (int i = 0; i < n; i++) {
+			result.set(i, chunks.get(i));
 		}
+		return result;
 	}
 	
 	private long getFirstBlock(int blocksize) throws CoreException {
@@ -555,10 +817,10 @@ public class Database {
 	 * For debugging purposes, only.
 	 */
 	public void reportFreeBlocks() throws CoreException {
-		System.out.println("Allocated size: " + fChunksUsed * CHUNK_SIZE); //$NON-NLS-1$
+		System.out.println("Allocated size: " + ((long) fChunksUsed << fChunkSizeBits)); //$NON-NLS-1$
 		System.out.println("malloc'ed: " + malloced); //$NON-NLS-1$
 		System.out.println("free'd: " + freed); //$NON-NLS-1$
-		System.out.println("wasted: " + (fChunksUsed * CHUNK_SIZE - (malloced - freed))); //$NON-NLS-1$
+		System.out.println("wasted: " + (((long) fChunksUsed << fChunkSizeBits) - (malloced - freed))); //$NON-NLS-1$
 		System.out.println("Free blocks"); //$NON-NLS-1$
 		for (int bs = MIN_BLOCK_DELTAS*BLOCK_SIZE_DELTA; bs <= CHUNK_SIZE; bs += BLOCK_SIZE_DELTA) {
 			int count = 0;
@@ -582,14 +844,19 @@ public class Database {
 		assert fExclusiveLock;
 		flush();
 		removeChunksFromCache();
+		// the mapping is released when the buffers are garbage collected.
+		fMappedRegions= null;
 		
 		// chunks have been removed from the cache, so we are fine
-		fHeaderChunk.clear(0, CHUNK_SIZE);
+		fHeaderChunk.clear(0, fChunkSize);
 		fHeaderChunk.fDirty= false;
-		fChunks= new Chunk[] {null};
-		fChunksUsed = fChunksAllocated = fChunks.length;
+		fChunks= new AtomicReferenceArray<Chunk>(1);
+		fChunksUsed = fChunksAllocated = fChunks.length();
 		try {
 			fFile.close();
+			if (fLog != null) {
+				fLog.close();
+			}
 		} catch (IOException e) {
 			throw new CoreException(new DBStatus(e));
 		}
@@ -602,13 +869,26 @@ public class Database {
 		return fLocation;
 	}
 
+	private static void releaseChunks(List<Chunk> evicted) {
+		for (Chunk chunk : evicted) {
+			chunk.fDatabase.releaseChunk(chunk);
+		}
+	}
+
 	/**
-	 * Called from any thread via the cache, protected by {@link #fCache}.
+	 * Called from any thread for a chunk that has been evicted from the cache. Must not be
+	 * called while holding a lock of the cache.
 	 */
 	void releaseChunk(final Chunk chunk) {
-		if (!chunk.fLocked) {
-			fChunks[chunk.fSequenceNumber]= null;
-		}			
+		synchronized (fChunksMutex) {
+			cacheEvictions++;
+			// the chunk may have been locked, added to the cache again or dropped from the
+			// database in the meantime.
+			final int index= chunk.fSequenceNumber;
+			if (!chunk.fLocked && chunk.fCacheIndex < 0 && index < fChunks.length() && fChunks.get(index) == chunk) {
+				fChunks.set(index, null);
+			}
+		}
 	}
 
 	/**
@@ -636,9 +916,9 @@ public class Database {
 		if (fExclusiveLock) {
 			try {
 				ArrayList<Chunk> dirtyChunks= new ArrayList<Chunk>();
-				synchronized (fCache) {
+				synchronized (fChunksMutex) {
 					for (int i= 1; i < fChunksUsed; i++) {
-						Chunk chunk= fChunks[i];
+						Chunk chunk= fChunks.get(i);
 						if (chunk != null) {
 							if (chunk.fCacheIndex < 0) { 	
 								// locked chunk that has been removed from cache.
@@ -647,7 +927,7 @@ public class Database {
 								}
 								else {
 									chunk.fLocked= false;
-									fChunks[i]= null;
+									fChunks.set(i, null);
 								}
 							}
 							else if (chunk.fLocked) {
@@ -690,9 +970,9 @@ public class Database {
 
 		// be careful as other readers may access chunks concurrently
 		ArrayList<Chunk> dirtyChunks= new ArrayList<Chunk>();
-		synchronized (fCache) {
+		synchronized (fChunksMutex) {
 			for (int i= 1; i < fChunksUsed ; i++) {
-				Chunk chunk= fChunks[i];
+				Chunk chunk= fChunks.get(i);
 				if (chunk != null && chunk.fDirty) {
 					dirtyChunks.add(chunk);
 				}
@@ -703,33 +983,89 @@ public class Database {
 		flushAndUnlockChunks(dirtyChunks, true);
 	}
 
+	/**
+	 * For testing purposes, only: Commits the changes to the transaction log but does not copy them
+	 * to the file. This leaves the files in the state of a crash that occurs after a commit.
+	 */
+	public void commitWithoutCheckpoint() throws CoreException {
+		assert fLog != null;
+		fSkipCheckpoint= true;
+		try {
+			flush();
+		} finally {
+			fSkipCheckpoint= false;
+		}
+	}
+
+	/**
+	 * Returns the file used for the transaction log of the database at the given location.
+	 */
+	public static File getTransactionLogFile(File location) {
+		return TransactionLog.getLogFile(location);
+	}
+
+	/**
+	 * Deletes the database file at the given location together with its transaction log. Has to be
+	 * used whenever a database file is removed or about to be replaced, such that the log is not
+	 * replayed into another database at the same location. The database must not be open.
+	 * @return whether the database file does not exist anymore.
+	 */
+	public static boolean delete(File location) {
+		TransactionLog.getLogFile(location).delete();
+		return location.delete() || !location.exists();
+	}
+
+	/**
+	 * Returns the number of bytes written to the transaction log since the last commit, <code>0</code>
+	 * when the database does not use a transaction log.
+	 */
+	public long getUncommittedBytes() {
+		return fLog != null ? fLog.getSize() : 0;
+	}
+
+	/**
+	 * Returns the number of chunks that have been restored from the transaction log when the database
+	 * was opened.
+	 */
+	public int getRecoveredChunks() {
+		return fRecoveredChunks;
+	}
+
 	private void flushAndUnlockChunks(final ArrayList<Chunk> dirtyChunks, boolean isComplete) throws CoreException {
-		assert !Thread.holdsLock(fCache);
+		assert !Thread.holdsLock(fChunksMutex);
 		synchronized(fHeaderChunk) {
 			final boolean haveDirtyChunks = !dirtyChunks.isEmpty();
-			if (haveDirtyChunks || fHeaderChunk.fDirty) {
+			if (fLog == null && (haveDirtyChunks || fHeaderChunk.fDirty)) {
 				markFileIncomplete();
 			}
 			if (haveDirtyChunks) {
 				for (Chunk chunk : dirtyChunks) {
 					if (chunk.fDirty) {
-						chunk.flush();
+						if (fLog != null) {
+							chunk.log(fLog);
+						} else {
+							chunk.flush();
+						}
 					}
 				}
 
 				// only after the chunks are flushed we may unlock and release them.
-				synchronized (fCache) {
+				synchronized (fChunksMutex) {
 					for (Chunk chunk : dirtyChunks) {
 						chunk.fLocked= false;
 						if (chunk.fCacheIndex < 0) {
-							fChunks[chunk.fSequenceNumber]= null;
+							fChunks.set(chunk.fSequenceNumber, null);
 						}
 					}
 				}
 			}
 
 			if (isComplete) {
-				if (fHeaderChunk.fDirty || fIsMarkedIncomplete) {
+				if (fLog != null) {
+					if (fHeaderChunk.fDirty || !fLog.isEmpty()) {
+						commit();
+					}
+				} else if (fHeaderChunk.fDirty || fIsMarkedIncomplete) {
 					fHeaderChunk.putInt(VERSION_OFFSET, fVersion);
 					fHeaderChunk.flush();
 					fIsMarkedIncomplete= false;
@@ -737,6 +1073,23 @@ public class Database {
 			}
 		}
 	}
+
+	/**
+	 * Appends the header to the transaction log, commits the transaction and copies the chunks
+	 * to the file.
+	 */
+	private void commit() throws CoreException {
+		fHeaderChunk.putInt(VERSION_OFFSET, fVersion);
+		fHeaderChunk.log(fLog);
+		try {
+			fLog.commit(fChunksUsed);
+			if (!fSkipCheckpoint) {
+				fLog.checkpoint(this);
+			}
+		} catch (IOException e) {
+			throw new CoreException(new DBStatus(e));
+		}
+	}
 		
 	private void markFileIncomplete() throws CoreException {
 		if (!fIsMarkedIncomplete) {
@@ -751,7 +1104,9 @@ public class Database {
 	}
 
 	public void resetCacheCounters() {
-		cacheHits= cacheMisses= 0;
+		synchronized (fChunksMutex) {
+			cacheHits= cacheMisses= cacheEvictions= 0;
+		}
 	}
 	
 	public long getCacheHits() {
@@ -762,6 +1117,13 @@ public class Database {
 		return cacheMisses;
 	}
 
+	/**
+	 * Returns the number of chunks of this database that have been evicted from the cache.
+	 */
+	public long getCacheEvictions() {
+		return cacheEvictions;
+	}
+
 	public long getSizeBytes() {
 		try {
 			return fFile.length();
@@ -0,0 +1,29 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT project contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT project contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.pdom.db;
+
+import org.eclipse.core.runtime.CoreException;
+
+/**
+ * Comparator for b-trees that store a prefix of the key of each record inline in the nodes.
+ * Lookups with an {@link IBTreeKeyPrefixVisitor} can then decide most comparisons without
+ * reading the records.
+ */
+public interface IBTreeKeyPrefixComparator extends IBTreeComparator {
+
+	/**
+	 * Returns the key prefix of a record. The prefixes must be consistent with the comparison
+	 * of records: When the prefix of one record is less than the one of another record
+	 * (comparing them with {@link KeyPrefix#compare(long, long)}), then the first record must
+	 * be less than the second one.
+	 */
+	public long getKeyPrefix(long record) throws CoreException;
+}
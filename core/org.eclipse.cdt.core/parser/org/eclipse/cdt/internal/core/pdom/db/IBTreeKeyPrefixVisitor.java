@@ -0,0 +1,29 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT project contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT project contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.pdom.db;
+
+/**
+ * Visitor that compares its key with the key prefixes stored in b-trees that use an
+ * {@link IBTreeKeyPrefixComparator}. For other b-trees only {@link #compare(long)} is used.
+ */
+public interface IBTreeKeyPrefixVisitor extends IBTreeVisitor {
+	/**
+	 * Result of {@link #comparePrefix(long)} when the record has to be compared.
+	 */
+	public static final int UNDECIDED = Integer.MIN_VALUE;
+
+	/**
+	 * Compares the key prefix of a record against the internally held key.
+	 * @return the same as {@link #compare(long)} would return for the record, or {@link #UNDECIDED}
+	 * if this cannot be determined from the prefix.
+	 */
+	public int comparePrefix(long keyPrefix);
+}
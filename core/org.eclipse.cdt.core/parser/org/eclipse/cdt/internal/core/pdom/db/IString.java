@@ -100,6 +100,13 @@ public interface IString {
 	 */
 	public int comparePrefix(char[] name, boolean caseSensitive) throws CoreException;
 
+	/**
+	 * Get the key prefix of this IString record, used for comparisons in b-trees.
+	 * @see KeyPrefix
+	 * @throws CoreException
+	 */
+	public long getKeyPrefix() throws CoreException;
+
 	/**
 	 * Get an equivalent character array to this IString record<p>
 	 * <b>N.B. This method can be expensive: compare and equals can be used for
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT project contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT project contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.pdom.db;
+
+/**
+ * Utility for the key prefixes of names stored in b-trees, see {@link IBTreeKeyPrefixComparator}.
+ * <p>
+ * A key prefix packs the first {@link #LENGTH} characters of a name into a long, one byte per
+ * character with the first character in the most significant byte. The characters are
+ * normalized the same way as for case-insensitive comparisons, see
+ * {@link ShortString#compareChars(char, char, boolean)}. Names shorter than {@link #LENGTH}
+ * are padded with zeros. A character that does not fit into a byte and all the characters
+ * following it are stored as 0xff. Thus, when the unsigned comparison of two prefixes is not 0,
+ * it has the same result as the case-insensitive comparison of the names.
+ */
+public final class KeyPrefix {
+	/**
+	 * Number of characters stored in a key prefix.
+	 */
+	public static final int LENGTH = 8;
+
+	private static final int MAX_CHAR = 0xff;
+
+	private KeyPrefix() {
+	}
+
+	/**
+	 * Computes the key prefix for the first <code>length</code> characters of the array.
+	 */
+	public static long get(char[] chars, int length) {
+		long prefix= 0;
+		final int n= Math.min(length, LENGTH);
+		for (int i = 0; i < n; i++) {
+			char c= chars[i];
+			if (c >= 'a' && c <= 'z') {
+				c-= 32;
+			} else if (c >= MAX_CHAR) {
+				return prefix | (-1L >>> (8 * i));
+			}
+			prefix|= (long) c << (8 * (LENGTH - 1 - i));
+		}
+		return prefix;
+	}
+
+	/**
+	 * Computes the key prefix for a name.
+	 */
+	public static long get(char[] name) {
+		return get(name, name.length);
+	}
+
+	/**
+	 * Compares two key prefixes. A result different from 0 is the result of the case-insensitive
+	 * comparison of the names, 0 means the names have to be compared.
+	 */
+	public static int compare(long prefix1, long prefix2) {
+		if (prefix1 == prefix2)
+			return 0;
+		return (prefix1 ^ Long.MIN_VALUE) < (prefix2 ^ Long.MIN_VALUE) ? -1 : 1;
+	}
+
+	/**
+	 * Compares the key prefix of a name with a prefix to look for, compatible with
+	 * {@link IString#comparePrefix(char[], boolean)} ignoring case.
+	 * @param prefix the key prefix of the name
+	 * @param keyPrefix the key prefix of the prefix to look for.
+	 * @param keyLength the number of characters of the prefix to look for.
+	 * @return the result of the comparison or {@link IBTreeKeyPrefixVisitor#UNDECIDED}.
+	 */
+	public static int comparePrefix(long prefix, long keyPrefix, int keyLength) {
+		if (keyLength >= LENGTH) {
+			final int cmp= compare(prefix, keyPrefix);
+			return cmp == 0 ? IBTreeKeyPrefixVisitor.UNDECIDED : cmp;
+		}
+		final long mask= ~(-1L >>> (8 * keyLength));
+		keyPrefix&= mask;
+		final int cmp= compare(prefix & mask, keyPrefix);
+		if (cmp != 0)
+			return cmp;
+
+		// the name starts with the prefix, unless the prefix contains a character that is
+		// not represented exactly.
+		for (int i = 0; i < keyLength; i++) {
+			final int c= (int) (keyPrefix >>> (8 * (LENGTH - 1 - i))) & MAX_CHAR;
+			if (c == 0 || c == MAX_CHAR)
+				return IBTreeKeyPrefixVisitor.UNDECIDED;
+		}
+		return 0;
+	}
+}
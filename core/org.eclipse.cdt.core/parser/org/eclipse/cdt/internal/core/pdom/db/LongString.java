@@ -367,6 +367,16 @@ public class LongString implements IString {
 		return chars;
 	}
 
+	public long getKeyPrefix() throws CoreException {
+		// a long string is longer than the prefix
+		char[] chars = new char[KeyPrefix.LENGTH];
+		CharIterator it = new CharIterator();
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = it.next();
+		}
+		return KeyPrefix.get(chars);
+	}
+
 	public String getString() throws CoreException {
 		int length = db.getInt(record + LENGTH);
 		final StringBuilder buffer = new StringBuilder(length);
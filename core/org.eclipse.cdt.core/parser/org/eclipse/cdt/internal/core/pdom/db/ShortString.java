@@ -82,6 +82,18 @@ public class ShortString implements IString {
 	public String getString() throws CoreException {
 		return new String(getChars());
 	}
+
+	public long getKeyPrefix() throws CoreException {
+		Chunk chunk = db.getChunk(record);
+		int length = Math.min(chunk.getInt(record + LENGTH), KeyPrefix.LENGTH);
+		char[] chars = new char[length];
+		long p = record + CHARS;
+		for (int i = 0; i < length; i++) {
+			chars[i] = chunk.getChar(p);
+			p += 2;
+		}
+		return KeyPrefix.get(chars, length);
+	}
 	
 	@Override
 	public boolean equals(Object obj) {
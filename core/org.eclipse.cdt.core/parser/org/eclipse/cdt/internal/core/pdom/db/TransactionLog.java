@@ -0,0 +1,326 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT project contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT project contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.pdom.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Redo log for the chunks of a {@link Database}.
+ * <p>
+ * Modified chunks are appended to the log rather than written to the database file. A commit
+ * record terminates a transaction, only after it has been forced to disk the chunks are copied
+ * to the database file (checkpoint) and the log is truncated. When a database is opened, the
+ * committed transactions of a log that is left over from a crash are replayed, chunks of a
+ * transaction that was not committed are ignored.
+ * <p>
+ * Chunks written to the log during a transaction are read back from the log until the next
+ * checkpoint. A chunk that is written several times during a transaction overwrites its record
+ * in the transaction, such that the log does not grow beyond one record per modified chunk. A
+ * torn overwrite can only damage the uncommitted tail of the log, which is ignored on recovery.
+ * <p>
+ * The commit record holds the number of chunks of the database, on recovery the database file
+ * is truncated to this size.
+ */
+/*
+ * ===== log structure
+ *
+ * offset            content
+ * 	                 _____________________________
+ * 0                | LOG_MAGIC
+ * INT_SIZE         | size of the chunks
+ * LOG_HEADER_SIZE  | records
+ *
+ * ===== record structure
+ *
+ * 0                | CHUNK_RECORD or COMMIT_RECORD
+ * INT_SIZE         | sequence number of the chunk, or number of chunks of the database for a commit
+ * RECORD_HEADER_SIZE | content of the chunk (chunk records only)
+ * ..               | CRC32 checksum of the preceding fields of the record (8 bytes)
+ */
+final class TransactionLog {
+	private static final int LOG_MAGIC= 0x5044574c;
+	private static final int CHUNK_RECORD= 1;
+	private static final int COMMIT_RECORD= 2;
+	private static final int LOG_HEADER_SIZE= 2 * Database.INT_SIZE;
+	private static final int RECORD_HEADER_SIZE= 2 * Database.INT_SIZE;
+	private static final int CHECKSUM_SIZE= 8;
+
+	private final File fFile;
+	private final int fChunkSize;
+	private final ByteBuffer fRecord;
+	private final CRC32 fChecksum= new CRC32();
+	private RandomAccessFile fRandomAccessFile;
+	private long fSize;
+	private long fCommittedSize;		// end of the last commit record, records before it are not overwritten.
+	private final Map<Integer, Long> fLoggedChunks= new HashMap<Integer, Long>();
+
+	TransactionLog(File file, int chunkSize) {
+		fFile= file;
+		fChunkSize= chunkSize;
+		fRecord= ByteBuffer.allocate(RECORD_HEADER_SIZE + chunkSize + CHECKSUM_SIZE);
+	}
+
+	/**
+	 * Returns the log file used for the given database file.
+	 */
+	static File getLogFile(File dbFile) {
+		return new File(dbFile.getPath() + ".log"); //$NON-NLS-1$
+	}
+
+	/**
+	 * Returns whether the log contains any chunks that have not yet been copied to the database.
+	 */
+	synchronized boolean isEmpty() {
+		return fSize == 0;
+	}
+
+	/**
+	 * Returns the number of bytes written to the log since the last checkpoint.
+	 */
+	synchronized long getSize() {
+		return fSize;
+	}
+
+	/**
+	 * Appends the content of a chunk to the current transaction.
+	 */
+	synchronized void append(int sequenceNumber, ByteBuffer content) throws IOException {
+		assert content.remaining() == fChunkSize;
+		if (fSize == 0) {
+			writeHeader();
+		}
+		fRecord.clear();
+		fRecord.putInt(CHUNK_RECORD).putInt(sequenceNumber).put(content);
+		final Long logged= fLoggedChunks.get(sequenceNumber);
+		if (logged != null && logged - RECORD_HEADER_SIZE >= fCommittedSize) {
+			// the chunk is part of the current transaction already, overwrite its record.
+			writeRecord(logged - RECORD_HEADER_SIZE);
+			return;
+		}
+		final long contentPosition= fSize + RECORD_HEADER_SIZE;
+		fSize+= writeRecord(fSize);
+		fLoggedChunks.put(sequenceNumber, contentPosition);
+	}
+
+	/**
+	 * Terminates the current transaction and forces the log to disk.
+	 */
+	synchronized void commit(int chunkCount) throws IOException {
+		if (fSize == 0) {
+			writeHeader();
+		}
+		fRecord.clear();
+		fRecord.putInt(COMMIT_RECORD).putInt(chunkCount);
+		fSize+= writeRecord(fSize);
+		fRandomAccessFile.getChannel().force(false);
+		fCommittedSize= fSize;
+	}
+
+	/**
+	 * Reads the latest content of a chunk written to the log. Returns <code>false</code> if the chunk
+	 * was not written to the log since the last checkpoint.
+	 */
+	synchronized boolean read(int sequenceNumber, ByteBuffer buf) throws IOException {
+		Long position= fLoggedChunks.get(sequenceNumber);
+		if (position == null) {
+			return false;
+		}
+		readFully(fRandomAccessFile.getChannel(), buf, position);
+		return true;
+	}
+
+	/**
+	 * Copies the chunks of the committed transactions to the database file and forces it to disk.
+	 * Afterwards the log is truncated.
+	 */
+	synchronized void checkpoint(Database db) throws IOException {
+		if (fSize == 0)
+			return;
+
+		final ByteBuffer buf= ByteBuffer.allocate(fChunkSize);
+		final FileChannel channel= fRandomAccessFile.getChannel();
+		// write the chunks in the order of the file
+		for (Map.Entry<Integer, Long> entry : new TreeMap<Integer, Long>(fLoggedChunks).entrySet()) {
+			buf.clear();
+			readFully(channel, buf, entry.getValue());
+			buf.flip();
+			db.write(buf, (long) entry.getKey() * fChunkSize);
+		}
+		db.force();
+		reset();
+	}
+
+	/**
+	 * Discards the content of the log.
+	 */
+	synchronized void reset() throws IOException {
+		fLoggedChunks.clear();
+		if (fRandomAccessFile != null) {
+			fRandomAccessFile.getChannel().truncate(0);
+		}
+		fSize= 0;
+		fCommittedSize= 0;
+	}
+
+	/**
+	 * Closes the log, the file is deleted when it is empty.
+	 */
+	synchronized void close() throws IOException {
+		if (fRandomAccessFile != null) {
+			fRandomAccessFile.close();
+			fRandomAccessFile= null;
+		}
+		if (fSize == 0) {
+			fFile.delete();
+		}
+	}
+
+	private void writeHeader() throws IOException {
+		if (fRandomAccessFile == null) {
+			fRandomAccessFile= new RandomAccessFile(fFile, "rw"); //$NON-NLS-1$
+			fRandomAccessFile.setLength(0);
+		}
+		final ByteBuffer header= ByteBuffer.allocate(LOG_HEADER_SIZE);
+		header.putInt(LOG_MAGIC).putInt(fChunkSize).flip();
+		writeFully(fRandomAccessFile.getChannel(), header, 0);
+		fSize= LOG_HEADER_SIZE;
+		fCommittedSize= LOG_HEADER_SIZE;
+	}
+
+	/**
+	 * Writes the record at the given position and returns its length.
+	 */
+	private int writeRecord(long position) throws IOException {
+		fChecksum.reset();
+		fChecksum.update(fRecord.array(), 0, fRecord.position());
+		fRecord.putLong(fChecksum.getValue());
+		fRecord.flip();
+		final int length= fRecord.remaining();
+		writeFully(fRandomAccessFile.getChannel(), fRecord, position);
+		return length;
+	}
+
+	/**
+	 * Replays the transactions that have been committed to the log onto the database file,
+	 * truncates the file to the number of chunks recorded by the last commit and deletes the log.
+	 * Returns the number of chunks that have been copied to the database file.
+	 */
+	static int recover(File logFile, FileChannel db) throws IOException {
+		if (!logFile.exists()) {
+			return 0;
+		}
+		int result;
+		final RandomAccessFile raf= new RandomAccessFile(logFile, "r"); //$NON-NLS-1$
+		try {
+			result= replay(raf.getChannel(), db);
+		} finally {
+			raf.close();
+		}
+		logFile.delete();
+		return result;
+	}
+
+	private static int replay(FileChannel channel, FileChannel db) throws IOException {
+		final long size= channel.size();
+		final ByteBuffer header= ByteBuffer.allocate(LOG_HEADER_SIZE);
+		if (readFully(channel, header, 0) < LOG_HEADER_SIZE || header.getInt(0) != LOG_MAGIC) {
+			return 0;
+		}
+		final int chunkSize= header.getInt(Database.INT_SIZE);
+		if (chunkSize < Database.CHUNK_SIZE || chunkSize > Database.MAX_CHUNK_SIZE) {
+			return 0;
+		}
+
+		final ByteBuffer record= ByteBuffer.allocate(RECORD_HEADER_SIZE + chunkSize + CHECKSUM_SIZE);
+		final CRC32 checksum= new CRC32();
+		final Map<Integer, Long> pending= new HashMap<Integer, Long>();
+		final Map<Integer, Long> committed= new TreeMap<Integer, Long>();
+		int chunkCount= -1;
+		long position= LOG_HEADER_SIZE;
+		while (position + RECORD_HEADER_SIZE + CHECKSUM_SIZE <= size) {
+			record.clear();
+			record.limit(RECORD_HEADER_SIZE);
+			readFully(channel, record, position);
+			final int type= record.getInt(0);
+			final int contentSize;
+			if (type == CHUNK_RECORD) {
+				contentSize= chunkSize;
+			} else if (type == COMMIT_RECORD) {
+				contentSize= 0;
+			} else {
+				break;
+			}
+			final int recordSize= RECORD_HEADER_SIZE + contentSize + CHECKSUM_SIZE;
+			record.clear();
+			record.limit(recordSize);
+			if (readFully(channel, record, position) < recordSize) {
+				break;	// torn write
+			}
+			checksum.reset();
+			checksum.update(record.array(), 0, recordSize - CHECKSUM_SIZE);
+			if (record.getLong(recordSize - CHECKSUM_SIZE) != checksum.getValue()) {
+				break;	// torn write
+			}
+			if (type == CHUNK_RECORD) {
+				pending.put(record.getInt(Database.INT_SIZE), position + RECORD_HEADER_SIZE);
+			} else {
+				committed.putAll(pending);
+				pending.clear();
+				chunkCount= record.getInt(Database.INT_SIZE);
+			}
+			position+= recordSize;
+		}
+
+		final ByteBuffer buf= ByteBuffer.allocate(chunkSize);
+		for (Map.Entry<Integer, Long> entry : committed.entrySet()) {
+			buf.clear();
+			readFully(channel, buf, entry.getValue());
+			buf.flip();
+			writeFully(db, buf, (long) entry.getKey() * chunkSize);
+		}
+		if (chunkCount > 0) {
+			// chunks beyond the committed size of the database belong to no transaction.
+			final long dbSize= (long) chunkCount * chunkSize;
+			if (db.size() > dbSize) {
+				db.truncate(dbSize);
+			}
+		}
+		if (!committed.isEmpty() || chunkCount > 0) {
+			db.force(false);
+		}
+		return committed.size();
+	}
+
+	private static int readFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+		int total= 0;
+		while (buf.hasRemaining()) {
+			int read= channel.read(buf, position + total);
+			if (read < 0)
+				break;
+			total+= read;
+		}
+		return total;
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+		while (buf.hasRemaining()) {
+			position+= channel.write(buf, position);
+		}
+	}
+}
@@ -16,9 +16,10 @@ import org.eclipse.cdt.core.dom.IPDOMVisitor;
 import org.eclipse.cdt.internal.core.index.IIndexBindingConstants;
 import org.eclipse.cdt.internal.core.pdom.db.BTree;
 import org.eclipse.cdt.internal.core.pdom.db.Database;
-import org.eclipse.cdt.internal.core.pdom.db.IBTreeComparator;
-import org.eclipse.cdt.internal.core.pdom.db.IBTreeVisitor;
+import org.eclipse.cdt.internal.core.pdom.db.IBTreeKeyPrefixComparator;
+import org.eclipse.cdt.internal.core.pdom.db.IBTreeKeyPrefixVisitor;
 import org.eclipse.cdt.internal.core.pdom.db.IString;
+import org.eclipse.cdt.internal.core.pdom.db.KeyPrefix;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.OperationCanceledException;
 
@@ -26,7 +27,7 @@ import org.eclipse.core.runtime.OperationCanceledException;
  * Look up bindings in BTree objects and IPDOMNode objects
  */
 public class FindBinding {
-	public static class DefaultBindingBTreeComparator implements IBTreeComparator {
+	public static class DefaultBindingBTreeComparator implements IBTreeKeyPrefixComparator {
 		protected final PDOMLinkage linkage;
 		protected final Database database;
 
@@ -55,11 +56,16 @@ public class FindBinding {
 			}
 			return cmp;
 		}
+
+		public long getKeyPrefix(long record) throws CoreException {
+			return PDOMNamedNode.getDBName(database, record).getKeyPrefix();
+		}
 	}
 
-	public static class DefaultFindBindingVisitor implements IBTreeVisitor, IPDOMVisitor {
+	public static class DefaultFindBindingVisitor implements IBTreeKeyPrefixVisitor, IPDOMVisitor {
 		protected final PDOMLinkage fLinkage;
 		private final char[] fName;
+		private final long fNamePrefix;
 		private final int[] fConstants;
 		private final long fLocalToFile;
 		protected PDOMBinding fResult;
@@ -67,6 +73,7 @@ public class FindBinding {
 		protected DefaultFindBindingVisitor(PDOMLinkage linkage, char[] name, int[] constants, long localToFile) {
 			fLinkage = linkage;
 			fName = name;
+			fNamePrefix = KeyPrefix.get(name);
 			fConstants = constants;
 			fLocalToFile= localToFile;
 		}
@@ -83,6 +90,12 @@ public class FindBinding {
 			}
 			return cmp;
 		}
+
+		// IBTreeKeyPrefixVisitor
+		public int comparePrefix(long keyPrefix) {
+			int cmp= KeyPrefix.compare(keyPrefix, fNamePrefix);
+			return cmp == 0 ? UNDECIDED : cmp;
+		}
 	
 		// IBTreeVisitor
 		public boolean visit(long record) throws CoreException {
@@ -147,7 +160,7 @@ public class FindBinding {
 		}
 	}
 
-	public static class MacroBTreeComparator implements IBTreeComparator {
+	public static class MacroBTreeComparator implements IBTreeKeyPrefixComparator {
 		final private Database db;
 		
 		public MacroBTreeComparator(Database database) {
@@ -159,6 +172,9 @@ public class FindBinding {
 		private int compare(IString nameInDB, IString nameInDB2) throws CoreException {
 			return nameInDB.compareCompatibleWithIgnoreCase(nameInDB2);
 		}
+		public long getKeyPrefix(long record) throws CoreException {
+			return PDOMNamedNode.getDBName(db, record).getKeyPrefix();
+		}
 	}
 
 	public static PDOMBinding findBinding(BTree btree, final PDOMLinkage linkage, final char[] name, 
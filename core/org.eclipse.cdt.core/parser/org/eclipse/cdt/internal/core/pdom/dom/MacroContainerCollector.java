@@ -16,8 +16,9 @@ import java.util.List;
 
 import org.eclipse.cdt.core.parser.util.IContentAssistMatcher;
 import org.eclipse.cdt.internal.core.parser.util.ContentAssistMatcherFactory;
-import org.eclipse.cdt.internal.core.pdom.db.IBTreeVisitor;
+import org.eclipse.cdt.internal.core.pdom.db.IBTreeKeyPrefixVisitor;
 import org.eclipse.cdt.internal.core.pdom.db.IString;
+import org.eclipse.cdt.internal.core.pdom.db.KeyPrefix;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
@@ -26,9 +27,10 @@ import org.eclipse.core.runtime.OperationCanceledException;
  * Visitor to find macros in a BTree.
  * @since 4.0.2
  */
-public final class MacroContainerCollector implements IBTreeVisitor {
+public final class MacroContainerCollector implements IBTreeKeyPrefixVisitor {
 	private final PDOMLinkage linkage;
 	private final char[] matchChars;
+	private final long matchPrefix;
 	private final boolean prefixLookup;
 	private final IContentAssistMatcher contentAssistMatcher;
 	private final boolean caseSensitive;
@@ -68,6 +70,7 @@ public final class MacroContainerCollector implements IBTreeVisitor {
 			this.prefixLookup= prefixLookup;
 			this.caseSensitive= caseSensitive;
 		}
+		this.matchPrefix= KeyPrefix.get(matchChars);
 		this.linkage= linkage;
 	}
 	
@@ -86,6 +89,22 @@ public final class MacroContainerCollector implements IBTreeVisitor {
 		return compare(rhsName);
 	}
 
+	final public int comparePrefix(long keyPrefix) {
+		int cmp;
+		if (prefixLookup) {
+			cmp= KeyPrefix.comparePrefix(keyPrefix, matchPrefix, matchChars.length);
+			if (caseSensitive && cmp == 0) {
+				cmp= UNDECIDED;
+			}
+		} else {
+			cmp= KeyPrefix.compare(keyPrefix, matchPrefix);
+			if (cmp == 0) {
+				cmp= UNDECIDED;
+			}
+		}
+		return cmp;
+	}
+
 	private int compare(IString rhsName) throws CoreException {
 		int cmp;
 		if (prefixLookup) {
@@ -10,16 +10,18 @@
  *******************************************************************************/
 package org.eclipse.cdt.internal.core.pdom.dom;
 
-import org.eclipse.cdt.internal.core.pdom.db.IBTreeVisitor;
+import org.eclipse.cdt.internal.core.pdom.db.IBTreeKeyPrefixVisitor;
 import org.eclipse.cdt.internal.core.pdom.db.IString;
+import org.eclipse.cdt.internal.core.pdom.db.KeyPrefix;
 import org.eclipse.core.runtime.CoreException;
 
 /**
  * Visitor to find a macro container in a BTree.
  */
-public final class MacroContainerFinder implements IBTreeVisitor {
+public final class MacroContainerFinder implements IBTreeKeyPrefixVisitor {
 	private final PDOMLinkage fLinkage;
 	private final char[] fName;
+	private final long fNamePrefix;
 	private PDOMMacroContainer fMacroContainer;
 		
 	/**
@@ -28,6 +30,7 @@ public final class MacroContainerFinder implements IBTreeVisitor {
 	 */
 	public MacroContainerFinder(PDOMLinkage linkage, char[] name) {
 		fName= name;
+		fNamePrefix= KeyPrefix.get(name);
 		fLinkage= linkage;
 	}
 		
@@ -36,6 +39,11 @@ public final class MacroContainerFinder implements IBTreeVisitor {
 		return compare(name);
 	}
 
+	final public int comparePrefix(long keyPrefix) {
+		int cmp= KeyPrefix.compare(keyPrefix, fNamePrefix);
+		return cmp == 0 ? UNDECIDED : cmp;
+	}
+
 	private int compare(IString rhsName) throws CoreException {
 		return rhsName.compareCompatibleWithIgnoreCase(fName);
 	}
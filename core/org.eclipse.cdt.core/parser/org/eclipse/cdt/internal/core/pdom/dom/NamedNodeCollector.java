@@ -18,8 +18,9 @@ import org.eclipse.cdt.core.dom.IPDOMNode;
 import org.eclipse.cdt.core.dom.IPDOMVisitor;
 import org.eclipse.cdt.core.parser.util.IContentAssistMatcher;
 import org.eclipse.cdt.internal.core.parser.util.ContentAssistMatcherFactory;
-import org.eclipse.cdt.internal.core.pdom.db.IBTreeVisitor;
+import org.eclipse.cdt.internal.core.pdom.db.IBTreeKeyPrefixVisitor;
 import org.eclipse.cdt.internal.core.pdom.db.IString;
+import org.eclipse.cdt.internal.core.pdom.db.KeyPrefix;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
@@ -28,10 +29,11 @@ import org.eclipse.core.runtime.OperationCanceledException;
  * Visitor to find named nodes in a BTree or below a PDOMNode. Nested nodes are not visited.
  * @since 4.0
  */
-public class NamedNodeCollector implements IBTreeVisitor, IPDOMVisitor {
+public class NamedNodeCollector implements IBTreeKeyPrefixVisitor, IPDOMVisitor {
 	
 	private final PDOMLinkage linkage;
 	private final char[] matchChars;
+	private final long matchPrefix;
 	private final boolean prefixLookup;
 	private final IContentAssistMatcher contentAssistMatcher;
 	private final boolean caseSensitive;
@@ -77,6 +79,7 @@ public class NamedNodeCollector implements IBTreeVisitor, IPDOMVisitor {
 			this.prefixLookup= prefixLookup;
 			this.caseSensitive= caseSensitive;
 		}
+		this.matchPrefix= KeyPrefix.get(matchChars);
 	}
 	
 	/**
@@ -94,6 +97,22 @@ public class NamedNodeCollector implements IBTreeVisitor, IPDOMVisitor {
 		return compare(rhsName);
 	}
 
+	final public int comparePrefix(long keyPrefix) {
+		int cmp;
+		if (prefixLookup) {
+			cmp= KeyPrefix.comparePrefix(keyPrefix, matchPrefix, matchChars.length);
+			if (caseSensitive && cmp == 0) {
+				cmp= UNDECIDED;
+			}
+		} else {
+			cmp= KeyPrefix.compare(keyPrefix, matchPrefix);
+			if (cmp == 0) {
+				cmp= UNDECIDED;
+			}
+		}
+		return cmp;
+	}
+
 	private int compare(IString rhsName) throws CoreException {
 		int cmp;
 		if (prefixLookup) {
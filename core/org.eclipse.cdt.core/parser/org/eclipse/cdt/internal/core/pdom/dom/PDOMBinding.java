@@ -14,6 +14,9 @@ package org.eclipse.cdt.internal.core.pdom.dom;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.eclipse.cdt.core.CCorePlugin;
 import org.eclipse.cdt.core.dom.ast.ASTTypeUtil;
@@ -33,7 +36,10 @@ import org.eclipse.cdt.internal.core.index.IIndexFragmentBinding;
 import org.eclipse.cdt.internal.core.index.IIndexFragmentBindingComparator;
 import org.eclipse.cdt.internal.core.index.IIndexScope;
 import org.eclipse.cdt.internal.core.pdom.PDOM;
+import org.eclipse.cdt.internal.core.pdom.db.BTree;
 import org.eclipse.cdt.internal.core.pdom.db.Database;
+import org.eclipse.cdt.internal.core.pdom.db.IBTreeKeyPrefixVisitor;
+import org.eclipse.cdt.internal.core.pdom.db.IBTreeVisitor;
 import org.eclipse.cdt.internal.core.pdom.db.IString;
 import org.eclipse.core.runtime.CoreException;
 
@@ -47,9 +53,28 @@ public abstract class PDOMBinding extends PDOMNamedNode implements IPDOMBinding
 	private static final int FIRST_DEF_OFFSET    = PDOMNamedNode.RECORD_SIZE + 4; // size 4
 	private static final int FIRST_REF_OFFSET    = PDOMNamedNode.RECORD_SIZE + 8; // size 4
 	private static final int LOCAL_TO_FILE		 = PDOMNamedNode.RECORD_SIZE + 12; // size 4
+	private static final int REFERENCE_COUNT	 = PDOMNamedNode.RECORD_SIZE + 16; // size 4
+	private static final int REFERENCE_INDEX	 = PDOMNamedNode.RECORD_SIZE + 20; // size 4
 	
 	@SuppressWarnings("hiding")
-	protected static final int RECORD_SIZE = PDOMNamedNode.RECORD_SIZE + 16;
+	protected static final int RECORD_SIZE = PDOMNamedNode.RECORD_SIZE + 24;
+
+	/**
+	 * Number of references from which on the references of a binding are also stored in a b-tree
+	 * ordered by file and offset. Smaller lists of references are cheaper to walk.
+	 */
+	public static final int REFERENCE_INDEX_THRESHOLD = 64;
+
+	/**
+	 * Visitor for the references of a binding.
+	 */
+	public interface IReferenceVisitor {
+		/**
+		 * Visits a reference and returns whether to continue the visit.
+		 */
+		boolean visit(PDOMName name) throws CoreException;
+	}
+
 	private byte hasDeclaration= -1;
 	
 	protected PDOMBinding(PDOMLinkage linkage, PDOMNode parent, char[] name) throws CoreException {
@@ -124,6 +149,151 @@ public abstract class PDOMBinding extends PDOMNamedNode implements IPDOMBinding
 			name.setNextInBinding(first);
 		}
 		setFirstReference(name);
+
+		final Database db= getDB();
+		final int count= db.getInt(record + REFERENCE_COUNT) + 1;
+		db.putInt(record + REFERENCE_COUNT, count);
+		if (db.getRecPtr(record + REFERENCE_INDEX) != 0) {
+			getReferenceIndex().insert(name.getRecord());
+		} else if (count >= REFERENCE_INDEX_THRESHOLD) {
+			// Build the index from the list of references.
+			long[] records= new long[count];
+			int i= 0;
+			for (PDOMName ref= name; ref != null && i < count; ref= ref.getNextInBinding()) {
+				records[i++]= ref.getRecord();
+			}
+			getReferenceIndex().insertAll(records);
+		}
+	}
+
+	/**
+	 * Called by a reference that is about to be deleted, after it has been removed from the
+	 * list of references.
+	 */
+	void removeReference(PDOMName name) throws CoreException {
+		final Database db= getDB();
+		db.putInt(record + REFERENCE_COUNT, db.getInt(record + REFERENCE_COUNT) - 1);
+		removeFromReferenceIndex(name);
+	}
+
+	/**
+	 * Removes a reference from the reference index, if there is one. Needs to be called before
+	 * the location of the reference changes.
+	 */
+	void removeFromReferenceIndex(PDOMName name) throws CoreException {
+		if (getDB().getRecPtr(record + REFERENCE_INDEX) != 0) {
+			getReferenceIndex().delete(name.getRecord());
+		}
+	}
+
+	/**
+	 * Adds a reference to the reference index, if there is one. Needs to be called after the
+	 * location of the reference changed.
+	 */
+	void addToReferenceIndex(PDOMName name) throws CoreException {
+		if (getDB().getRecPtr(record + REFERENCE_INDEX) != 0) {
+			getReferenceIndex().insert(name.getRecord());
+		}
+	}
+
+	private BTree getReferenceIndex() {
+		return new BTree(getDB(), record + REFERENCE_INDEX, new PDOMName.ReferenceComparator(getDB()));
+	}
+
+	/**
+	 * Returns the number of references to this binding.
+	 */
+	public int getReferenceCount() throws CoreException {
+		return getDB().getInt(record + REFERENCE_COUNT);
+	}
+
+	/**
+	 * Visits the references to this binding ordered by file and offset. For bindings with many
+	 * references this uses the reference index, such that only the references in the requested
+	 * files are read.
+	 * @param fileRecords the records of the files to visit the references for, or <code>null</code>
+	 * to visit the references in all files.
+	 * @param visitor the visitor, it may stop the visit.
+	 */
+	public void acceptReferences(long[] fileRecords, final IReferenceVisitor visitor) throws CoreException {
+		if (fileRecords != null) {
+			fileRecords= fileRecords.clone();
+			Arrays.sort(fileRecords);
+		}
+		if (getDB().getRecPtr(record + REFERENCE_INDEX) == 0) {
+			acceptReferencesInList(fileRecords, visitor);
+			return;
+		}
+
+		final BTree index= getReferenceIndex();
+		final PDOMLinkage linkage= getLinkage();
+		if (fileRecords == null) {
+			index.accept(new IBTreeVisitor() {
+				public int compare(long rec) throws CoreException {
+					return 0;
+				}
+				public boolean visit(long rec) throws CoreException {
+					return visitor.visit(new PDOMName(linkage, rec));
+				}
+			});
+			return;
+		}
+		final boolean[] done= {false};
+		for (int i = 0; i < fileRecords.length && !done[0]; i++) {
+			final long fileRecord= fileRecords[i];
+			if (i > 0 && fileRecord == fileRecords[i-1])
+				continue;
+			index.accept(new IBTreeKeyPrefixVisitor() {
+				public int comparePrefix(long keyPrefix) {
+					return compareFileRecords(PDOMName.getFileRecordOfReferenceKey(keyPrefix), fileRecord);
+				}
+				public int compare(long rec) throws CoreException {
+					return compareFileRecords(new PDOMName(linkage, rec).getFileRecord(), fileRecord);
+				}
+				public boolean visit(long rec) throws CoreException {
+					if (!visitor.visit(new PDOMName(linkage, rec))) {
+						done[0]= true;
+						return false;
+					}
+					return true;
+				}
+			});
+		}
+	}
+
+	private static int compareFileRecords(long fileRecord1, long fileRecord2) {
+		return fileRecord1 < fileRecord2 ? -1 : (fileRecord1 > fileRecord2 ? 1 : 0);
+	}
+
+	private void acceptReferencesInList(long[] sortedFileRecords, IReferenceVisitor visitor) throws CoreException {
+		final Database db= getDB();
+		final List<PDOMName> names= new ArrayList<PDOMName>();
+		for (PDOMName name= getFirstReference(); name != null; name= name.getNextInBinding()) {
+			if (sortedFileRecords == null || Arrays.binarySearch(sortedFileRecords, name.getFileRecord()) >= 0) {
+				names.add(name);
+			}
+		}
+		final int size= names.size();
+		final long[] keys= new long[size];
+		for (int i = 0; i < size; i++) {
+			keys[i]= PDOMName.getReferenceKey(db, names.get(i).getRecord());
+		}
+		// Sort by key, the list is short.
+		for (int i = 1; i < size; i++) {
+			final long key= keys[i];
+			final PDOMName name= names.get(i);
+			int j= i;
+			for (; j > 0 && (keys[j-1] > key || (keys[j-1] == key && names.get(j-1).getRecord() > name.getRecord())); j--) {
+				keys[j]= keys[j-1];
+				names.set(j, names.get(j-1));
+			}
+			keys[j]= key;
+			names.set(j, name);
+		}
+		for (PDOMName name : names) {
+			if (!visitor.visit(name))
+				return;
+		}
 	}
 	
 	public PDOMName getFirstDeclaration() throws CoreException {
@@ -333,6 +333,16 @@ public abstract class PDOMLinkage extends PDOMNamedNode implements IIndexLinkage
 		return fMacroIndex;
 	}
 
+	/**
+	 * Rebuilds the sparse b-trees of this linkage with full nodes, requires a write-lock.
+	 * @see BTree#compactIfSparse()
+	 */
+	public void compactIndexes() throws CoreException {
+		getIndex().compactIfSparse();
+		getNestedBindingsIndex().compactIfSparse();
+		getMacroIndex().compactIfSparse();
+	}
+
 	public PDOMMacroContainer findMacroContainer(final char[] name) throws CoreException {
 		return findMacroContainer(name, fPDOM.createKeyForCache(record, name));
 	}
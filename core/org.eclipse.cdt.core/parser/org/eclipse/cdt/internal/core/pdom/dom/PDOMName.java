@@ -25,6 +25,8 @@ import org.eclipse.cdt.internal.core.index.IIndexFragment;
 import org.eclipse.cdt.internal.core.index.IIndexFragmentName;
 import org.eclipse.cdt.internal.core.pdom.PDOM;
 import org.eclipse.cdt.internal.core.pdom.db.Database;
+import org.eclipse.cdt.internal.core.pdom.db.IBTreeKeyPrefixComparator;
+import org.eclipse.cdt.internal.core.pdom.db.KeyPrefix;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 
@@ -70,19 +72,6 @@ public final class PDOMName implements IIndexFragmentName, IASTFileLocation {
 		flags |= binding.getAdditionalNameFlags(flags, name);
 		db.putByte(record + FLAGS, (byte) flags);
 
-		// Hook us up to the binding
-		switch (flags & DECL_DEF_REF_MASK) {
-		case IS_DEFINITION:
-			binding.addDefinition(this);
-			break;
-		case IS_DECLARATION:
-			binding.addDeclaration(this);
-			break;
-		case IS_REFERENCE:
-			binding.addReference(this);
-			break;
-		}
-
 		db.putRecPtr(record + BINDING_REC_OFFSET, binding.getRecord());
 		
 		db.putRecPtr(record + FILE_REC_OFFSET, file.getRecord());
@@ -94,6 +83,19 @@ public final class PDOMName implements IIndexFragmentName, IASTFileLocation {
 		IASTFileLocation fileloc = name.getFileLocation();
 		db.put3ByteUnsignedInt(record + NODE_OFFSET_OFFSET, fileloc.getNodeOffset());
 		db.putShort(record + NODE_LENGTH_OFFSET, (short) fileloc.getNodeLength());
+
+		// Hook us up to the binding, the reference index of the binding needs the location.
+		switch (flags & DECL_DEF_REF_MASK) {
+		case IS_DEFINITION:
+			binding.addDefinition(this);
+			break;
+		case IS_DECLARATION:
+			binding.addDeclaration(this);
+			break;
+		case IS_REFERENCE:
+			binding.addReference(this);
+			break;
+		}
 	}
 
 	private int getRoleOfName(IASTName name) {
@@ -173,7 +175,15 @@ public final class PDOMName implements IIndexFragmentName, IASTFileLocation {
 	}
 
 	void setFile(PDOMFile file) throws CoreException {
+		// The file is part of the key in the reference index of the binding.
+		final PDOMBinding binding= getFlags(DECL_DEF_REF_MASK) == IS_REFERENCE ? getBinding() : null;
+		if (binding != null) {
+			binding.removeFromReferenceIndex(this);
+		}
 		linkage.getDB().putRecPtr(record + FILE_REC_OFFSET, file != null ? file.getRecord() : 0);
+		if (binding != null) {
+			binding.addToReferenceIndex(this);
+		}
 	}
 
 	public IIndexName getEnclosingDefinition() throws CoreException {
@@ -368,6 +378,10 @@ public final class PDOMName implements IIndexFragmentName, IASTFileLocation {
 		if (nextName != null)
 			nextName.setPrevInBinding(prevName);
 
+		if (getFlags(DECL_DEF_REF_MASK) == IS_REFERENCE) {
+			getBinding().removeReference(this);
+		}
+
 		// Delete our record
 		linkage.getDB().free(record);
 	}
@@ -387,4 +401,43 @@ public final class PDOMName implements IIndexFragmentName, IASTFileLocation {
 		}
 		return result.toArray(new PDOMName[result.size()]);
 	}
+
+	/**
+	 * Returns the key of a name in the reference index of its binding, it combines the record
+	 * of the file and the offset of the name.
+	 */
+	static long getReferenceKey(Database db, long record) throws CoreException {
+		return (db.getRecPtr(record + FILE_REC_OFFSET) << 24) | db.get3ByteUnsignedInt(record + NODE_OFFSET_OFFSET);
+	}
+
+	/**
+	 * Returns the record of the file encoded in a key of the reference index.
+	 */
+	static long getFileRecordOfReferenceKey(long key) {
+		return key >>> 24;
+	}
+
+	/**
+	 * Orders names by file and offset, the key is stored in the nodes of the b-tree such that
+	 * the names need not be read for lookups by file.
+	 */
+	static class ReferenceComparator implements IBTreeKeyPrefixComparator {
+		private final Database db;
+
+		ReferenceComparator(Database db) {
+			this.db= db;
+		}
+
+		public long getKeyPrefix(long record) throws CoreException {
+			return getReferenceKey(db, record);
+		}
+
+		public int compare(long record1, long record2) throws CoreException {
+			int cmp= KeyPrefix.compare(getReferenceKey(db, record1), getReferenceKey(db, record2));
+			if (cmp == 0) {
+				cmp= record1 < record2 ? -1 : (record1 > record2 ? 1 : 0);
+			}
+			return cmp;
+		}
+	}
 }
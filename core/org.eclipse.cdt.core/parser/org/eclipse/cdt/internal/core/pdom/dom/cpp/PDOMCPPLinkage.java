@@ -814,6 +814,12 @@ class PDOMCPPLinkage extends PDOMLinkage implements IIndexCPPBindingConstants {
 		return null;
 	}
 
+	@Override
+	public void compactIndexes() throws CoreException {
+		super.compactIndexes();
+		PDOMCPPNamespace.compactIndexes(getDB(), this, record + FIRST_NAMESPACE_CHILD_OFFSET);
+	}
+
 	@Override
 	public IBTreeComparator getIndexComparator() {
 		return new CPPFindBinding.CPPBindingBTreeComparator(this);
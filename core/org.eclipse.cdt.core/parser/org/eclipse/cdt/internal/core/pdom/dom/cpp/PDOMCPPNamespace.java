@@ -288,6 +288,19 @@ class PDOMCPPNamespace extends PDOMCPPBinding
 		return nslist;
 	}
 
+	/**
+	 * Compacts the sparse indexes of the namespaces in the list and of the namespaces nested in them.
+	 * @see BTree#compactIfSparse()
+	 */
+	public static void compactIndexes(Database db, PDOMLinkage linkage, long listRecord) throws CoreException {
+		long rec= db.getRecPtr(listRecord);
+		while (rec != 0) {
+			new PDOMCPPNamespace(linkage, rec).getIndex().compactIfSparse();
+			compactIndexes(db, linkage, rec + FIRST_NAMESPACE_CHILD_OFFSET);
+			rec= db.getRecPtr(rec + NEXT_NAMESPACE_SIBBLING_OFFSET);
+		}
+	}
+
 	public boolean isInline() {
 		if (fFlag == -1) {
 			try {
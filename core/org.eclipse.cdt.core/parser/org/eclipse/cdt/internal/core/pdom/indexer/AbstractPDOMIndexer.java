@@ -31,6 +31,9 @@ public abstract class AbstractPDOMIndexer implements IPDOMIndexer {
 		fProperties.put(IndexerPreferences.KEY_INDEX_ON_OPEN, String.valueOf(false));
 		fProperties.put(IndexerPreferences.KEY_INCLUDE_HEURISTICS, String.valueOf(true));
 		fProperties.put(IndexerPreferences.KEY_SKIP_FILES_LARGER_THAN_MB, String.valueOf(IndexerPreferences.DEFAULT_FILE_SIZE_LIMIT));
+		fProperties.put(IndexerPreferences.KEY_WORKER_THREADS, String.valueOf(IndexerPreferences.DEFAULT_WORKER_THREADS));
+		fProperties.put(IndexerPreferences.KEY_TEMPLATE_INSTANTIATION_BUDGET, String.valueOf(IndexerPreferences.DEFAULT_TEMPLATE_INSTANTIATION_BUDGET));
+		fProperties.put(IndexerPreferences.KEY_COMMIT_INTERVAL_SECONDS, String.valueOf(IndexerPreferences.DEFAULT_COMMIT_INTERVAL_SECONDS));
 		fProperties.put(IndexerPreferences.KEY_FILES_TO_PARSE_UP_FRONT, ""); //$NON-NLS-1$
 		fProperties.put(IndexerPreferences.KEY_SKIP_ALL_REFERENCES, String.valueOf(false)); 
 		fProperties.put(IndexerPreferences.KEY_SKIP_IMPLICIT_REFERENCES, String.valueOf(false)); 
@@ -54,6 +57,10 @@ public abstract class AbstractPDOMIndexer implements IPDOMIndexer {
 		for (Map.Entry<Object,Object> entry : fProperties.entrySet()) {
 			String key = (String) entry.getKey();
 			String myval = (String) entry.getValue();
+			if (IndexerPreferences.KEY_WORKER_THREADS.equals(key)
+					|| IndexerPreferences.KEY_COMMIT_INTERVAL_SECONDS.equals(key)) {
+				continue; // does not affect the content of the index
+			}
 
 			if (myval != null) { // relevant property
 				String v2= (String) props.get(key);
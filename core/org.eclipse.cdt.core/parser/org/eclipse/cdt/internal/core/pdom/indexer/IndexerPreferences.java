@@ -57,6 +57,9 @@ public class IndexerPreferences {
 	public static final String KEY_SKIP_MACRO_REFERENCES= "skipMacroReferences"; //$NON-NLS-1$
 	public static final String KEY_UPDATE_POLICY= "updatePolicy"; //$NON-NLS-1$
 	public static final String KEY_SKIP_FILES_LARGER_THAN_MB = "skipFilesLargerThanMB"; //$NON-NLS-1$
+	public static final String KEY_WORKER_THREADS = "workerThreads"; //$NON-NLS-1$
+	public static final String KEY_TEMPLATE_INSTANTIATION_BUDGET = "templateInstantiationBudget"; //$NON-NLS-1$
+	public static final String KEY_COMMIT_INTERVAL_SECONDS = "commitIntervalSeconds"; //$NON-NLS-1$
 
 	private static final String KEY_INDEXER_PREFS_SCOPE = "preferenceScope"; //$NON-NLS-1$
 	private static final String KEY_INDEX_IMPORT_LOCATION = "indexImportLocation"; //$NON-NLS-1$
@@ -76,6 +79,12 @@ public class IndexerPreferences {
 		"cstdio";              // configures stdio.h for c++ !! fragments bits/signum.h !!	//$NON-NLS-1$
 	private static final int DEFAULT_UPDATE_POLICY= 0;
 	public static final int DEFAULT_FILE_SIZE_LIMIT = 8;
+	/** Number of threads parsing files for the indexer, {@code 0} for one thread per processor. */
+	public static final int DEFAULT_WORKER_THREADS = 1;
+	/** Number of template instances that may be created per translation unit, {@code 0} for no limit. */
+	public static final int DEFAULT_TEMPLATE_INSTANTIATION_BUDGET = 100000;
+	/** Maximum number of seconds between two commits of the index, {@code 0} for no time limit. */
+	public static final int DEFAULT_COMMIT_INTERVAL_SECONDS = 60;
 
 	private static final String QUALIFIER = CCorePlugin.PLUGIN_ID;
 	private static final String INDEXER_NODE = "indexer"; //$NON-NLS-1$
@@ -335,6 +344,9 @@ public class IndexerPreferences {
 		prefs.putBoolean(KEY_INDEX_ON_OPEN, false);
 		prefs.putBoolean(KEY_INCLUDE_HEURISTICS, true);
 		prefs.putInt(KEY_SKIP_FILES_LARGER_THAN_MB, DEFAULT_FILE_SIZE_LIMIT);
+		prefs.putInt(KEY_WORKER_THREADS, DEFAULT_WORKER_THREADS);
+		prefs.putInt(KEY_TEMPLATE_INSTANTIATION_BUDGET, DEFAULT_TEMPLATE_INSTANTIATION_BUDGET);
+		prefs.putInt(KEY_COMMIT_INTERVAL_SECONDS, DEFAULT_COMMIT_INTERVAL_SECONDS);
 		prefs.putBoolean(KEY_SKIP_ALL_REFERENCES, false);
 		prefs.putBoolean(KEY_SKIP_IMPLICIT_REFERENCES, false);
 		prefs.putBoolean(KEY_SKIP_TYPE_REFERENCES, false);
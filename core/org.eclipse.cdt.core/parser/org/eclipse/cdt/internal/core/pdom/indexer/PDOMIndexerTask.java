@@ -32,6 +32,7 @@ import org.eclipse.cdt.core.parser.IScannerInfoProvider;
 import org.eclipse.cdt.core.parser.ScannerInfo;
 import org.eclipse.cdt.internal.core.index.IWritableIndex;
 import org.eclipse.cdt.internal.core.index.IWritableIndexManager;
+import org.eclipse.cdt.internal.core.parser.scanner.IncludeResolutionCache;
 import org.eclipse.cdt.internal.core.pdom.AbstractIndexerTask;
 import org.eclipse.cdt.internal.core.pdom.ITodoTaskUpdater;
 import org.eclipse.cdt.internal.core.pdom.IndexerProgress;
@@ -70,6 +71,15 @@ public abstract class PDOMIndexerTask extends AbstractIndexerTask implements IPD
 		setShowProblems(checkDebugOption(TRACE_PROBLEMS, TRUE));
 		final long limit = getIntProperty(IndexerPreferences.KEY_SKIP_FILES_LARGER_THAN_MB, 0);
 		setFileSizeLimit(limit * 1024 * 1024);
+		int threads= getIntProperty(IndexerPreferences.KEY_WORKER_THREADS, IndexerPreferences.DEFAULT_WORKER_THREADS);
+		if (threads == 0) {
+			threads= Runtime.getRuntime().availableProcessors();
+		}
+		setWorkerThreads(threads);
+		setInstantiationBudget(getIntProperty(IndexerPreferences.KEY_TEMPLATE_INSTANTIATION_BUDGET,
+				IndexerPreferences.DEFAULT_TEMPLATE_INSTANTIATION_BUDGET));
+		setCommitInterval(getIntProperty(IndexerPreferences.KEY_COMMIT_INTERVAL_SECONDS,
+				IndexerPreferences.DEFAULT_COMMIT_INTERVAL_SECONDS));
 		if (checkProperty(IndexerPreferences.KEY_SKIP_ALL_REFERENCES)) {
 			setSkipReferences(SKIP_ALL_REFERENCES);
 		} else {
@@ -248,6 +258,11 @@ public abstract class PDOMIndexerTask extends AbstractIndexerTask implements IPD
 	protected final ITodoTaskUpdater createTodoTaskUpdater() {
 		return new TodoTaskUpdater();
 	}
+
+	@Override
+	protected IncludeResolutionCache getIncludeResolutionCache() {
+		return IncludeResolutionCache.getInstance();
+	}
 	
 	protected void traceEnd(long start, IWritableIndex index, boolean wasCancelled) {
 		// log entry
@@ -338,6 +353,16 @@ public abstract class PDOMIndexerTask extends AbstractIndexerTask implements IPD
 					+ hits + " hits, "      //$NON-NLS-1$
 					+ misses + "(" + nfPercent.format(missPct) + ") misses.");      //$NON-NLS-1$ //$NON-NLS-2$
 
+			final int headerHits= fStatistics.fHeaderCacheHits;
+			final int headerTries= headerHits + fStatistics.fHeaderCacheMisses;
+			double headerHitPct= headerTries == 0 ? 0.0 : (double) headerHits / (double) headerTries;
+			System.out.println(ident + " Header cache: "    //$NON-NLS-1$
+					+ headerHits + "(" + nfPercent.format(headerHitPct) + ") hits, "      //$NON-NLS-1$ //$NON-NLS-2$
+					+ fStatistics.fHeaderCacheMisses + " misses, "      //$NON-NLS-1$
+					+ fStatistics.fSkippedGuardedInclusions + " guarded inclusions skipped.");      //$NON-NLS-1$
+			System.out.println(ident + " Templates: "    //$NON-NLS-1$
+					+ fStatistics.fInstantiationBudgetExceeded + " files exceeded the instantiation budget.");      //$NON-NLS-1$
+
 			if ("true".equals(System.getProperty("SHOW_COMPRESSED_INDEXER_INFO"))) {    //$NON-NLS-1$ //$NON-NLS-2$
 				Calendar cal = Calendar.getInstance();
 				NumberFormat twoDigits= NumberFormat.getNumberInstance();
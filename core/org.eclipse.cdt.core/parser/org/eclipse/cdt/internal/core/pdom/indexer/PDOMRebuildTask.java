@@ -83,6 +83,32 @@ public class PDOMRebuildTask implements IPDOMIndexerTask {
 		
 		if (fDelegate != null) {
 			fDelegate.run(monitor);
+			if (!monitor.isCanceled()) {
+				compactIndex(fIndexer.getProject());
+			}
+		}
+	}
+
+	/**
+	 * The nodes of b-trees built by single inserts are partially filled, rebuild the sparse ones
+	 * with full nodes.
+	 */
+	private void compactIndex(ICProject project) throws InterruptedException {
+		try {
+			IWritableIndex index= ((IWritableIndexManager) CCorePlugin.getIndexManager()).getWritableIndex(project);
+			if (index != null) {
+				IWritableIndexFragment wf= index.getWritableFragment();
+				if (wf instanceof WritablePDOM) {
+					index.acquireWriteLock(0);
+					try {
+						((WritablePDOM) wf).compactIndexes();
+					} finally {
+						index.releaseWriteLock(0);
+					}
+				}
+			}
+		} catch (CoreException e) {
+			CCorePlugin.log(e);
 		}
 	}
 	
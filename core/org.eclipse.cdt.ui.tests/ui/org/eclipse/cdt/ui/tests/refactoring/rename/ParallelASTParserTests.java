@@ -0,0 +1,238 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT project contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT project contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.ui.tests.refactoring.rename;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.ltk.core.refactoring.RefactoringStatus;
+
+import org.eclipse.cdt.core.CCorePlugin;
+import org.eclipse.cdt.core.dom.ast.IASTTranslationUnit;
+import org.eclipse.cdt.core.dom.ast.IBinding;
+import org.eclipse.cdt.core.index.IIndex;
+import org.eclipse.cdt.core.model.CoreModel;
+import org.eclipse.cdt.core.model.ITranslationUnit;
+
+import org.eclipse.cdt.internal.ui.refactoring.rename.ASTManager;
+import org.eclipse.cdt.internal.ui.refactoring.rename.CRefactoringArgument;
+import org.eclipse.cdt.internal.ui.refactoring.rename.CRefactoringMatch;
+import org.eclipse.cdt.internal.ui.refactoring.rename.CRefactory;
+import org.eclipse.cdt.internal.ui.refactoring.rename.CRenameProcessor;
+import org.eclipse.cdt.internal.ui.refactoring.rename.ParallelASTParser;
+
+/**
+ * Tests that the text matches of a rename are classified the same way, whether the
+ * candidate files are parsed in parallel or one after the other.
+ */
+public class ParallelASTParserTests extends RenameTests {
+	private static final String NAME= "target";
+	private static final int FILE_COUNT= 12;
+
+	private List<IFile> fFiles;
+
+	public ParallelASTParserTests(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return suite(true);
+	}
+
+	public static Test suite(boolean cleanup) {
+		TestSuite suite= new TestSuite(ParallelASTParserTests.class);
+		if (cleanup) {
+			suite.addTest(new RefactoringTests("cleanupProject"));
+		}
+		return suite;
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		fFiles= new ArrayList<IFile>();
+		importFile("decl.h", "int target(int);\nstruct S { int target; };\n");
+		for (int i = 0; i < FILE_COUNT; i++) {
+			StringBuilder code= new StringBuilder();
+			code.append("#include \"decl.h\"\n");
+			code.append("int use" + i + "() {\n");
+			code.append("  S s;\n");
+			code.append("  return target(s.target) + target(" + i + ");\n");
+			code.append("}\n");
+			if (i % 3 == 0) {
+				// a local variable hides the function
+				code.append("int hide" + i + "() { int target= 1; return target; }\n");
+			}
+			fFiles.add(importFile("source" + i + ".cpp", code.toString()));
+		}
+		ParallelASTParser.setParallel(true);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		ParallelASTParser.setParallel(true);
+		super.tearDown();
+	}
+
+	public void testParallelAndSequentialClassificationsMatch() throws Exception {
+		Map<String, Integer> sequential= classifyMatches(false);
+		Map<String, Integer> parallel= classifyMatches(true);
+		assertEquals(sequential, parallel);
+
+		int references= 0;
+		int others= 0;
+		for (Integer astInformation : parallel.values()) {
+			if (astInformation == CRefactoringMatch.AST_REFERENCE) {
+				references++;
+			} else if (astInformation == CRefactoringMatch.AST_REFERENCE_OTHER) {
+				others++;
+			}
+		}
+		assertEquals(2 * FILE_COUNT, references);
+		assertTrue(others >= FILE_COUNT);
+	}
+
+	public void testCancelParallel() throws Exception {
+		checkCancel(true);
+	}
+
+	public void testCancelSequential() throws Exception {
+		checkCancel(false);
+	}
+
+	/**
+	 * Renames the function 'target' and returns the classification of the matches in code.
+	 */
+	private Map<String, Integer> classifyMatches(boolean parallel) throws Exception {
+		ParallelASTParser.setParallel(parallel);
+		IFile source= fFiles.get(0);
+		String contents= getContents(source);
+		CRefactoringArgument arg= new CRefactoringArgument(source, contents.indexOf(NAME + "(s."), 0);
+		CRenameProcessor proc= new CRenameProcessor(CRefactory.getInstance(), arg);
+		proc.lockIndex();
+		try {
+			RefactoringStatus status= proc.checkInitialConditions(new NullProgressMonitor());
+			assertFalse(status.hasError());
+			List<CRefactoringMatch> matches= new ArrayList<CRefactoringMatch>();
+			for (IFile file : fFiles) {
+				String code= getContents(file);
+				for (int offset= code.indexOf(NAME); offset >= 0; offset= code.indexOf(NAME, offset + 1)) {
+					matches.add(new CRefactoringMatch(file, offset, NAME.length(), CRefactory.OPTION_IN_CODE));
+				}
+			}
+
+			ASTManager astManager= proc.getAstManager();
+			astManager.setValidBindings(new IBinding[] { proc.getArgument().getBinding() });
+			astManager.setRenameTo("renamed");
+			astManager.analyzeTextMatches(proc.getIndex(), matches, new NullProgressMonitor(), status);
+			assertFalse(status.hasError());
+
+			Map<String, Integer> result= new HashMap<String, Integer>();
+			for (CRefactoringMatch match : matches) {
+				result.put(match.getFile().getName() + ":" + match.getOffset(), match.getAstInformation());
+			}
+			return result;
+		} finally {
+			proc.unlockIndex();
+		}
+	}
+
+	/**
+	 * Cancels the monitor when the first AST is handled and checks that the exception is
+	 * thrown only after all parser tasks have completed.
+	 */
+	private void checkCancel(boolean parallel) throws Exception {
+		ParallelASTParser.setParallel(parallel);
+		final AtomicInteger running= new AtomicInteger();
+		final AtomicInteger parsed= new AtomicInteger();
+		ITranslationUnit[] tus= new ITranslationUnit[fFiles.size()];
+		for (int i = 0; i < tus.length; i++) {
+			tus[i]= createSlowUnit((ITranslationUnit) CoreModel.getDefault().create(fFiles.get(i)), running, parsed);
+		}
+
+		final NullProgressMonitor monitor= new NullProgressMonitor();
+		final AtomicInteger handled= new AtomicInteger();
+		IIndex index= CCorePlugin.getIndexManager().getIndex(cproject);
+		index.acquireReadLock();
+		try {
+			ParallelASTParser parser= new ParallelASTParser(index, ITranslationUnit.AST_SKIP_ALL_HEADERS);
+			parser.parse(tus, new ParallelASTParser.IASTHandler() {
+				public boolean handle(int i, IASTTranslationUnit ast) {
+					assertNotNull(ast);
+					handled.incrementAndGet();
+					monitor.setCanceled(true);
+					return true;
+				}
+			}, monitor, new RefactoringStatus());
+			fail("parser was not canceled");
+		} catch (OperationCanceledException e) {
+			assertEquals(0, running.get());
+		} finally {
+			index.releaseReadLock();
+		}
+		assertEquals(1, handled.get());
+		assertTrue(parsed.get() < tus.length);
+		// no task is started after the parser has returned
+		final int count= parsed.get();
+		Thread.sleep(200);
+		assertEquals(count, parsed.get());
+		assertEquals(0, running.get());
+	}
+
+	/**
+	 * Returns a translation unit that counts the running parses and takes a while to parse.
+	 */
+	private static ITranslationUnit createSlowUnit(final ITranslationUnit tu, final AtomicInteger running,
+			final AtomicInteger parsed) {
+		return (ITranslationUnit) Proxy.newProxyInstance(ITranslationUnit.class.getClassLoader(),
+				new Class<?>[] { ITranslationUnit.class }, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (!method.getName().equals("getAST")) {
+					return invokeOn(tu, method, args);
+				}
+				running.incrementAndGet();
+				try {
+					Thread.sleep(50);
+					return invokeOn(tu, method, args);
+				} finally {
+					parsed.incrementAndGet();
+					running.decrementAndGet();
+				}
+			}
+		});
+	}
+
+	private static Object invokeOn(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	private static String getContents(IFile file) throws Exception {
+		ITranslationUnit tu= (ITranslationUnit) CoreModel.getDefault().create(file);
+		return new String(tu.getContents());
+	}
+}
@@ -49,6 +49,7 @@ public class RenameRegressionTests extends RenameTests {
         suite.addTest(RenameTypeTests.suite(false));
         suite.addTest(RenameMacroTests.suite(false));
         suite.addTest(RenameTemplatesTests.suite(false));
+        suite.addTest(ParallelASTParserTests.suite(false));
         
         if (cleanup)
             suite.addTest(new RenameRegressionTests("cleanupProject"));    //$NON-NLS-1$
@@ -17,7 +17,6 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -916,96 +915,163 @@ public class ASTManager implements IDisposable {
 			RefactoringStatus status) {
         IASTTranslationUnit ast=  fTranslationUnits.get(sourceFile);
         if (ast == null) {
-            ICElement celem= CoreModel.getDefault().create(sourceFile);
-            if (celem instanceof ITranslationUnit) {
-            	ITranslationUnit tu= CModelUtil.toWorkingCopy((ITranslationUnit) celem);
-        		if (fSharedAST != null && tu.equals(fSharedAST.getOriginatingTranslationUnit())) {
-        			ast = fSharedAST;
-        		} else {
-                	// Try to get a shared AST before creating our own.
-    	        	ast = ASTProvider.getASTProvider().acquireSharedAST(tu, index,
-    	        			ASTProvider.WAIT_ACTIVE_ONLY, null);
-    	        	if (ast == null) {
-    					try {
-							ast= tu.getAST(index, PARSE_MODE);
-						} catch (CoreException e) {
-		            		status.addError(e.getMessage());
-						}
-    	            	if (cacheit) {
-    	            		fTranslationUnits.put(sourceFile, ast);
-    	            	}
-    	        	} else {
-    	        		if (fSharedAST != null) {
-    	        			ASTProvider.getASTProvider().releaseSharedAST(fSharedAST);
-    	        		}
-    	        		fSharedAST = ast;
+            ITranslationUnit tu= getWorkingCopy(sourceFile);
+            if (tu != null) {
+            	ast= getSharedAST(index, tu);
+    	        if (ast == null) {
+    	        	try {
+    	        		ast= tu.getAST(index, PARSE_MODE);
+    	        	} catch (CoreException e) {
+    	        		status.addError(e.getMessage());
     	        	}
-        		}
+    	        	if (cacheit) {
+    	        		fTranslationUnits.put(sourceFile, ast);
+    	        	}
+    	        }
             }
         }
         return ast;
     }
 
+	private ITranslationUnit getWorkingCopy(IFile sourceFile) {
+		ICElement celem= CoreModel.getDefault().create(sourceFile);
+		if (celem instanceof ITranslationUnit) {
+			return CModelUtil.toWorkingCopy((ITranslationUnit) celem);
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the shared AST of the translation unit, or <code>null</code> if the translation
+	 * unit is not open in the active editor.
+	 */
+	private IASTTranslationUnit getSharedAST(IIndex index, ITranslationUnit tu) {
+		if (fSharedAST != null && tu.equals(fSharedAST.getOriginatingTranslationUnit())) {
+			return fSharedAST;
+		}
+		// Try to get a shared AST before creating our own.
+		IASTTranslationUnit ast= ASTProvider.getASTProvider().acquireSharedAST(tu, index,
+				ASTProvider.WAIT_ACTIVE_ONLY, null);
+		if (ast != null) {
+			if (fSharedAST != null) {
+				ASTProvider.getASTProvider().releaseSharedAST(fSharedAST);
+			}
+			fSharedAST= ast;
+		}
+		return ast;
+	}
+
+    /**
+     * Classifies the text matches using the ASTs of the files containing them. Files with
+     * matches in comments, strings or include directives only are not parsed. The ASTs of the
+     * remaining files are created in parallel and each one is analyzed as soon as it is
+     * available, on the calling thread. The index needs to be read-locked by the caller.
+     */
     public void analyzeTextMatches(IIndex index, Collection<CRefactoringMatch> matches,
-    		IProgressMonitor monitor, RefactoringStatus status) {
-        CRefactoringMatchStore store= new CRefactoringMatchStore();
+    		final IProgressMonitor monitor, final RefactoringStatus status) {
+        final CRefactoringMatchStore store= new CRefactoringMatchStore();
         for (CRefactoringMatch match : matches) {
             store.addMatch(match);
         }
         
-        int count= store.getFileCount();
+        final int count= store.getFileCount();
         String taskName= RenameMessages.ASTManager_task_generateAst;
         monitor.beginTask(taskName, 2 * count);
         monitor.setTaskName(taskName);
 
         List<IFile> files= store.getFileList();
-        int cc= 0;
-        long now= System.currentTimeMillis();
-        long update= now;
+        final List<IFile> parseFiles= new ArrayList<IFile>();
+        List<ITranslationUnit> parseUnits= new ArrayList<ITranslationUnit>();
         for (IFile file : files) {
-            cc++;
-            if (store.contains(file)) {
-                if ((now = System.currentTimeMillis()) > update) {
-                    String nofm= nth_of_m(cc, count);
-                    String taskname= NLS.bind(RenameMessages.ASTManager_subtask_analyzing, nofm);
-                    monitor.subTask(taskname); 
-                    update= now + 1000;
-                }
-                boolean doParse= false;
-                Collection<CRefactoringMatch> fm= store.getMatchesForFile(file);
-                for (Iterator<CRefactoringMatch> iterator = fm.iterator(); !doParse && iterator.hasNext();) {
-                    CRefactoringMatch match = iterator.next();
-                    switch (match.getLocation()) {
-                    case CRefactory.OPTION_IN_COMMENT:
-                    case CRefactory.OPTION_IN_INCLUDE_DIRECTIVE:
-                    case CRefactory.OPTION_IN_STRING_LITERAL:
-                        break;
-                    default:
-                        doParse= true;
-                    }
-                }
-
-                if (doParse) {
-                    IASTTranslationUnit tu= getTranslationUnit(index, file, false, status);
-                    monitor.worked(1);
-                    analyzeTextMatchesOfTranslationUnit(tu, store, status);
-                    if (status.hasFatalError()) {
-                        return;
-                    }
-                    monitor.worked(1);
-                } else {
-                    monitor.worked(2);
-                }
-                if (monitor.isCanceled()) {
-                    throw new OperationCanceledException();
+            if (!needsAST(store, file)) {
+                monitor.worked(2);
+                continue;
+            }
+            IASTTranslationUnit ast= fTranslationUnits.get(file);
+            ITranslationUnit tu= null;
+            if (ast == null) {
+                tu= getWorkingCopy(file);
+                if (tu != null) {
+                	ast= getSharedAST(index, tu);
                 }
+            }
+            if (ast != null) {
+                // The AST is available already, it is analyzed before the others.
+                monitor.worked(1);
+                if (!analyzeParsedTextMatches(file, ast, store, monitor, status))
+                    return;
+            } else if (tu != null) {
+                parseFiles.add(file);
+                parseUnits.add(tu);
             } else {
                 monitor.worked(2);
             }
+            if (monitor.isCanceled()) {
+                throw new OperationCanceledException();
+            }
         }
+
+        final int[] analyzed= { count - parseFiles.size() };
+        ParallelASTParser parser= new ParallelASTParser(index, PARSE_MODE);
+        parser.parse(parseUnits.toArray(new ITranslationUnit[parseUnits.size()]),
+        		new ParallelASTParser.IASTHandler() {
+        	private long fUpdate= System.currentTimeMillis();
+
+        	public boolean handle(int i, IASTTranslationUnit ast) {
+        		analyzed[0]++;
+        		long now= System.currentTimeMillis();
+        		if (now > fUpdate) {
+        			String nofm= nth_of_m(analyzed[0], count);
+        			String taskname= NLS.bind(RenameMessages.ASTManager_subtask_analyzing, nofm);
+        			monitor.subTask(taskname); 
+        			fUpdate= now + 1000;
+        		}
+        		monitor.worked(1);
+        		return analyzeParsedTextMatches(parseFiles.get(i), ast, store, monitor, status);
+        	}
+        }, monitor, status);
         monitor.done();
     }
 
+    /**
+     * Checks whether the file has a match that cannot be classified without an AST.
+     */
+    private static boolean needsAST(CRefactoringMatchStore store, IFile file) {
+        if (!store.contains(file))
+            return false;
+        for (CRefactoringMatch match : store.getMatchesForFile(file)) {
+            switch (match.getLocation()) {
+            case CRefactory.OPTION_IN_COMMENT:
+            case CRefactory.OPTION_IN_INCLUDE_DIRECTIVE:
+            case CRefactory.OPTION_IN_STRING_LITERAL:
+                break;
+            default:
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Analyzes the matches of a file using its AST.
+     * @return <code>false</code> if the analysis has found a fatal error.
+     */
+    private boolean analyzeParsedTextMatches(IFile file, IASTTranslationUnit ast,
+    		CRefactoringMatchStore store, IProgressMonitor monitor, RefactoringStatus status) {
+        // The matches of the file may have been analyzed with the AST of another file.
+        if (ast != null && store.contains(file)) {
+            analyzeTextMatchesOfTranslationUnit(ast, store, status);
+            if (status.hasFatalError()) {
+                return false;
+            }
+        }
+        monitor.worked(1);
+        if (monitor.isCanceled()) {
+            throw new OperationCanceledException();
+        }
+        return true;
+    }
+
     private void analyzeTextMatchesOfTranslationUnit(IASTTranslationUnit tu, 
             final CRefactoringMatchStore store, final RefactoringStatus status) {
         fKnownBindings= new HashMap<IBinding, Integer>();
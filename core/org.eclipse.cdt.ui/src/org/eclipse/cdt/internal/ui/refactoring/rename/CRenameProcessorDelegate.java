@@ -167,13 +167,13 @@ public abstract class CRenameProcessorDelegate {
     	if ((getSelectedOptions() & CRefactory.OPTION_EXHAUSTIVE_FILE_SEARCH) != 0) {
     		return null;
     	}
+    	// The index is read-locked by the processor for the duration of the refactoring.
     	IIndex index = getIndex();
     	if (index == null) {
     		return null;
     	}
 		Set<IIndexFileLocation> locations = new HashSet<IIndexFileLocation>();
     	try {
-    		index.acquireReadLock();
         	for (IBinding binding : bindings) {
 				IIndexName[] names = index.findNames(binding,
 						IIndex.FIND_ALL_OCCURRENCES | IIndex.SEARCH_ACROSS_LANGUAGE_BOUNDARIES);
@@ -181,12 +181,8 @@ public abstract class CRenameProcessorDelegate {
 					locations.add(name.getFile().getLocation());
 				}
         	}
-		} catch (InterruptedException e) {
-			return null;
 		} catch (CoreException e) {
 			return null;
-		} finally {
-    		index.releaseReadLock();
     	}
 
 		ArrayList<IResource> files = new ArrayList<IResource>(locations.size());
@@ -0,0 +1,218 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT project contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT project contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.ui.refactoring.rename;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.ltk.core.refactoring.RefactoringStatus;
+
+import org.eclipse.cdt.core.dom.ast.IASTTranslationUnit;
+import org.eclipse.cdt.core.index.IIndex;
+import org.eclipse.cdt.core.model.ITranslationUnit;
+
+/**
+ * Parses the translation units participating in a refactoring on a bounded pool of threads.
+ * The ASTs are passed to the calling thread in the order in which they complete, such that
+ * the caller can analyze one AST while the next ones are being parsed.
+ * <p>
+ * The caller needs to hold the read lock of the index for the duration of the parse, the
+ * lock is shared by the parser threads. Only a few more ASTs than there are threads are
+ * kept in memory at any time. An AST passed to the caller is not referenced by the parser
+ * anymore, it can be accessed by the calling thread only.
+ */
+public final class ParallelASTParser {
+	/**
+	 * Receives the ASTs, always called on the thread that runs the parser.
+	 */
+	public interface IASTHandler {
+		/**
+		 * Handles the AST of the translation unit with the given index.
+		 * @param ast the AST, or <code>null</code> if the translation unit could not be parsed.
+		 * @return <code>false</code> to stop parsing the remaining translation units.
+		 */
+		boolean handle(int index, IASTTranslationUnit ast);
+	}
+
+	private static final int MAX_THREADS= Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+	private static final int MAX_PENDING= 2 * MAX_THREADS;
+
+	private static final ThreadPoolExecutor sExecutor;
+	static {
+		ThreadFactory factory= new ThreadFactory() {
+			private int fCount;
+			public synchronized Thread newThread(Runnable r) {
+				Thread thread= new Thread(r, "C/C++ Refactoring Parser " + ++fCount); //$NON-NLS-1$
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+		// Idle threads terminate. When all threads are busy, the calling thread parses the
+		// translation unit itself.
+		sExecutor= new ThreadPoolExecutor(0, MAX_THREADS, 10, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(), factory, new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+
+	private static volatile boolean sParallel= MAX_THREADS > 1;
+
+	private final IIndex fIndex;
+	private final int fParseMode;
+	private volatile boolean fCanceled;
+
+	/**
+	 * Enables or disables parsing in parallel, for testing and benchmarking.
+	 */
+	public static void setParallel(boolean parallel) {
+		sParallel= parallel && MAX_THREADS > 1;
+	}
+
+	/**
+	 * @param index the index with the read lock held by the caller.
+	 * @param parseMode the style bits for {@link ITranslationUnit#getAST(IIndex, int)}.
+	 */
+	public ParallelASTParser(IIndex index, int parseMode) {
+		fIndex= index;
+		fParseMode= parseMode;
+	}
+
+	/**
+	 * Parses the given translation units and passes their ASTs to the handler. Parse errors
+	 * are added to the status, the AST is passed as <code>null</code> in this case.
+	 * @throws OperationCanceledException when the monitor is canceled.
+	 */
+	public void parse(ITranslationUnit[] tus, IASTHandler handler, IProgressMonitor monitor,
+			RefactoringStatus status) {
+		fCanceled= false;
+		if (!sParallel || tus.length < 2) {
+			for (int i = 0; i < tus.length; i++) {
+				checkCanceled(monitor);
+				Object[] result= parse(i, tus[i]);
+				if (!handle(result, handler, status))
+					return;
+			}
+			return;
+		}
+
+		CompletionService<Object[]> service= new ExecutorCompletionService<Object[]>(sExecutor);
+		List<Future<Object[]>> futures= new ArrayList<Future<Object[]>>(tus.length);
+		try {
+			int submitted= 0;
+			for (; submitted < tus.length && submitted < MAX_PENDING; submitted++) {
+				futures.add(service.submit(createTask(submitted, tus[submitted])));
+			}
+			for (int i = 0; i < tus.length; i++) {
+				Object[] result= take(service, monitor);
+				if (submitted < tus.length) {
+					futures.add(service.submit(createTask(submitted, tus[submitted])));
+					submitted++;
+				}
+				if (!handle(result, handler, status))
+					return;
+			}
+		} finally {
+			// Stop the tasks that have not started yet and wait for the running ones, such
+			// that the caller can release the index lock afterwards.
+			fCanceled= true;
+			waitFor(futures);
+		}
+	}
+
+	private Callable<Object[]> createTask(final int index, final ITranslationUnit tu) {
+		return new Callable<Object[]>() {
+			public Object[] call() {
+				if (fCanceled) {
+					return new Object[] { index, null, null };
+				}
+				return parse(index, tu);
+			}
+		};
+	}
+
+	private Object[] parse(int index, ITranslationUnit tu) {
+		try {
+			return new Object[] { index, tu.getAST(fIndex, fParseMode), null };
+		} catch (CoreException e) {
+			return new Object[] { index, null, e };
+		}
+	}
+
+	private static boolean handle(Object[] result, IASTHandler handler, RefactoringStatus status) {
+		CoreException e= (CoreException) result[2];
+		if (e != null) {
+			status.addError(e.getMessage());
+		}
+		return handler.handle((Integer) result[0], (IASTTranslationUnit) result[1]);
+	}
+
+	private static void checkCanceled(IProgressMonitor monitor) {
+		if (monitor != null && monitor.isCanceled()) {
+			throw new OperationCanceledException();
+		}
+	}
+
+	private static Object[] take(CompletionService<Object[]> service, IProgressMonitor monitor) {
+		boolean interrupted= false;
+		try {
+			while (true) {
+				checkCanceled(monitor);
+				try {
+					Future<Object[]> future= service.poll(100, TimeUnit.MILLISECONDS);
+					if (future != null) {
+						return future.get();
+					}
+				} catch (InterruptedException e) {
+					interrupted= true;
+				}
+			}
+		} catch (ExecutionException e) {
+			final Throwable cause= e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IllegalStateException(cause);
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static void waitFor(List<Future<Object[]>> futures) {
+		boolean interrupted= false;
+		for (Future<Object[]> future : futures) {
+			while (!future.isDone()) {
+				try {
+					future.get();
+				} catch (InterruptedException e) {
+					interrupted= true;
+				} catch (ExecutionException e) {
+					// Reported by take(), if at all.
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -172,6 +172,7 @@ public abstract class BaseExtensibleLanguage extends AbstractLanguage {
 		final ParserLanguage pl = getParserLanguage();
 		final IScanner preprocessor = new CPreprocessor(reader, scanInfo, pl, log, config, fileCreator);
 		preprocessor.setComputeImageLocations((options & ILanguage.OPTION_NO_IMAGE_LOCATIONS) == 0);
+		preprocessor.setScanComments((options & ILanguage.OPTION_SKIP_COMMENTS) == 0);
 		
 		final Map<String,String> parserProperties = new HashMap<String,String>();
 		parserProperties.put(LRParserProperties.TRANSLATION_UNIT_PATH, reader.getFileLocation());